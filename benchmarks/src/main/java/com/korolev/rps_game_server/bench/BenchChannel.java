@@ -0,0 +1,23 @@
+package com.korolev.rps_game_server.bench;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Active in-memory channel that reports a caller-chosen event loop, so several channels can
+ * pretend to live on the same worker (EmbeddedChannel gives every channel its own loop).
+ */
+final class BenchChannel extends EmbeddedChannel {
+
+    private final EventLoop loop;
+
+    BenchChannel(EventLoop loop) {
+        this.loop = loop;
+    }
+
+    @Override
+    public EventLoop eventLoop() {
+        // null while EmbeddedChannel's constructor registers the channel
+        return loop != null ? loop : super.eventLoop();
+    }
+}
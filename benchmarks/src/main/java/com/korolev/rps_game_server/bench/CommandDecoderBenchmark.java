@@ -0,0 +1,107 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.net.Attrs;
+import com.korolev.rps_game_server.net.CommandDecoder;
+import com.korolev.rps_game_server.protocol.CommandParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One inbound line through the decoding pipeline, up to the parsed Command.
+ * <p>
+ * {@code bytes} is the {@link CommandDecoder}; {@code legacy} is the previous
+ * {@code LineBasedFrameDecoder(256)} + {@code StringDecoder} + {@code CommandParser.parse(String)} chain.
+ * Run with {@code -prof gc}: the move lines should report {@code gc.alloc.rate.norm} ≈ 0 B/op for {@code bytes}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDecoderBenchmark {
+
+    @Param({"rock", "S", "abracadabra", "/help"})
+    public String line;
+
+    private EmbeddedChannel bytes;
+    private EmbeddedChannel legacy;
+    private ByteBuf input;
+    private Sink bytesSink;
+    private Sink legacySink;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bytesSink = new Sink(false);
+        legacySink = new Sink(true);
+        bytes = inGame(new EmbeddedChannel(new CommandDecoder(), bytesSink));
+        legacy = inGame(new EmbeddedChannel(
+                new LineBasedFrameDecoder(256), new StringDecoder(StandardCharsets.UTF_8), legacySink));
+
+        byte[] raw = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        input = PooledByteBufAllocator.DEFAULT.directBuffer(raw.length).writeBytes(raw);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        bytes.finishAndReleaseAll();
+        legacy.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object bytes() {
+        bytes.pipeline().fireChannelRead(input.retainedDuplicate());
+        return bytesSink.last;
+    }
+
+    @Benchmark
+    public Object legacy() {
+        legacy.pipeline().fireChannelRead(input.retainedDuplicate());
+        return legacySink.last;
+    }
+
+    private static EmbeddedChannel inGame(EmbeddedChannel ch) {
+        PlayerContext pc = new PlayerContext();
+        pc.setNickname("bench");
+        pc.setState(PlayerState.IN_GAME);
+        ch.attr(Attrs.PLAYER_CTX).set(pc);
+        return ch;
+    }
+
+    private static final class Sink extends ChannelInboundHandlerAdapter {
+        private final boolean parseString;
+        Object last;
+
+        Sink(boolean parseString) {
+            this.parseString = parseString;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            last = parseString ? CommandParser.parse((String) msg, false) : msg;
+        }
+    }
+}
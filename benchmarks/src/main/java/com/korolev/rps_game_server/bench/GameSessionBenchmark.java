@@ -0,0 +1,86 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Player;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link GameSession} on {@link EmbeddedChannel}s: game logic plus reply encoding, without
+ * event-loop hops (those are {@link SessionAffinityBenchmark}).
+ * <p>
+ * {@code drawRound} is one ROCK/ROCK round on a long-lived session: two moves, two draw replies.
+ * {@code decisiveMatch} is a whole short game: channels, session, start, one decisive round and the
+ * close of both channels. Every outbound reply is drained and released so {@code -prof gc} shows the
+ * per-operation allocation of the session path itself. The JMH thread is not an event-loop thread, so
+ * pooled reply buffers miss the per-thread cache; the few bytes left in {@code drawRound} come from there.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameSessionBenchmark {
+
+    private EmbeddedChannel c1;
+    private EmbeddedChannel c2;
+    private Player p1;
+    private Player p2;
+    private GameSession session;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        c1 = new EmbeddedChannel();
+        c2 = new EmbeddedChannel();
+        p1 = new Player("p1", c1);
+        p2 = new Player("p2", c2);
+        session = new GameSession(p1, p2);
+        session.start();
+        drain(c1);
+        drain(c2);
+    }
+
+    @Benchmark
+    public int drawRound() {
+        session.submitMove(p1, Move.ROCK);
+        session.submitMove(p2, Move.ROCK);
+        return drain(c1) + drain(c2);
+    }
+
+    @Benchmark
+    public int decisiveMatch() {
+        EmbeddedChannel a = new EmbeddedChannel();
+        EmbeddedChannel b = new EmbeddedChannel();
+        Player pa = new Player("p1", a);
+        Player pb = new Player("p2", b);
+        GameSession s = new GameSession(pa, pb);
+        s.start();
+        s.submitMove(pa, Move.PAPER);
+        s.submitMove(pb, Move.ROCK);
+        return drain(a) + drain(b);
+    }
+
+    /** Run the session's deferred flush and release everything written so far; returns the number of messages. */
+    private static int drain(EmbeddedChannel ch) {
+        ch.runPendingTasks();
+        int n = 0;
+        for (Object msg; (msg = ch.readOutbound()) != null; n++) {
+            ReferenceCountUtil.release(msg);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,37 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Outcome;
+import java.util.Locale;
+
+/**
+ * The classic-only rules from before variants: the switch {@code RpsRules.outcome} and the String switch
+ * {@code Move.parse}, kept as the baselines for {@link RulesBenchmark} and {@link ProtocolBenchmark}.
+ * Only the {@code default} branches are new, since {@link Move} now has more constants.
+ */
+final class LegacyRules {
+
+    private LegacyRules() {
+    }
+
+    static Outcome outcome(Move self, Move opponent) {
+        if (self == opponent) return Outcome.DRAW;
+
+        return switch (self) {
+            case ROCK -> (opponent == Move.SCISSORS) ? Outcome.WIN : Outcome.LOSE;
+            case PAPER -> (opponent == Move.ROCK) ? Outcome.WIN : Outcome.LOSE;
+            case SCISSORS -> (opponent == Move.PAPER) ? Outcome.WIN : Outcome.LOSE;
+            default -> null;
+        };
+    }
+
+    static Move parse(String raw) {
+        String s = raw.trim().toUpperCase(Locale.ROOT);
+        return switch (s) {
+            case "ROCK", "R" -> Move.ROCK;
+            case "PAPER", "P" -> Move.PAPER;
+            case "SCISSORS", "S" -> Move.SCISSORS;
+            default -> null;
+        };
+    }
+}
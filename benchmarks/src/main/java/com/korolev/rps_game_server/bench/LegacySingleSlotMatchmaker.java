@@ -0,0 +1,62 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Player;
+import io.netty.channel.Channel;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The original global single-slot matchmaker (one {@code AtomicReference<Player>}), kept as the
+ * baseline for {@link MatchmakerBenchmark}. Logging removed, logic unchanged.
+ */
+final class LegacySingleSlotMatchmaker {
+
+    private final AtomicReference<Player> waiting = new AtomicReference<>();
+
+    GameSession tryMatch(Player me) {
+        if (me == null || me.channel() == null || !me.channel().isActive()) {
+            return null;
+        }
+
+        while (true) {
+            Player other = waiting.get();
+
+            if (other == null) {
+                if (waiting.compareAndSet(null, me)) {
+                    return null;
+                }
+                continue;
+            }
+
+            if (!other.channel().isActive()) {
+                waiting.compareAndSet(other, null);
+                continue;
+            }
+
+            if (waiting.compareAndSet(other, null)) {
+                if (!other.channel().isActive()) {
+                    continue;
+                }
+                return new GameSession(other, me);
+            }
+        }
+    }
+
+    boolean removeIfWaiting(Player me) {
+        if (me == null || me.channel() == null) {
+            return false;
+        }
+
+        Channel ch = me.channel();
+
+        while (true) {
+            Player cur = waiting.get();
+            if (cur == null || cur.channel() != ch) {
+                return false;
+            }
+            if (waiting.compareAndSet(cur, null)) {
+                return true;
+            }
+        }
+    }
+}
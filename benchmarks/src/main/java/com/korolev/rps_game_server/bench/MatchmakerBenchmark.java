@@ -0,0 +1,110 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Matchmaker;
+import com.korolev.rps_game_server.domain.Player;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matchmaking throughput under contention: sharded {@link Matchmaker} vs the original single slot.
+ * <p>
+ * Every benchmark thread plays one event loop with a pool of players on it. An operation is one
+ * arrival ({@code tryMatch}); a player that is still queued from its previous turn first leaves
+ * ({@code removeIfWaiting}), which models queue churn. Vary contention with {@code -t 1..64}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class MatchmakerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Matchmaker sharded;
+        LegacySingleSlotMatchmaker legacy;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            sharded = new Matchmaker();
+            legacy = new LegacySingleSlotMatchmaker();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Loop {
+        static final int PLAYERS = 64;
+
+        EventLoop loop;
+        Player[] players;
+        boolean[] queued;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            loop = new DefaultEventLoop();
+            players = new Player[PLAYERS];
+            queued = new boolean[PLAYERS];
+            for (int i = 0; i < PLAYERS; i++) {
+                players[i] = new Player("p" + i, new BenchChannel(loop));
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            Arrays.fill(queued, false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            loop.shutdownGracefully();
+        }
+
+        int nextIndex() {
+            int i = next;
+            next = (i + 1) % PLAYERS;
+            return i;
+        }
+    }
+
+    @Benchmark
+    public GameSession sharded(Shared shared, Loop l) {
+        int i = l.nextIndex();
+        Player p = l.players[i];
+        if (l.queued[i]) {
+            shared.sharded.removeIfWaiting(p);
+        }
+        GameSession s = shared.sharded.tryMatch(p);
+        l.queued[i] = s == null;
+        return s;
+    }
+
+    @Benchmark
+    public GameSession legacy(Shared shared, Loop l) {
+        int i = l.nextIndex();
+        Player p = l.players[i];
+        if (l.queued[i]) {
+            shared.legacy.removeIfWaiting(p);
+        }
+        GameSession s = shared.legacy.tryMatch(p);
+        l.queued[i] = s == null;
+        return s;
+    }
+}
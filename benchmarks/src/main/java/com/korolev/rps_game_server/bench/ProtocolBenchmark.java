@@ -0,0 +1,57 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.protocol.Command;
+import com.korolev.rps_game_server.protocol.CommandParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The String-level parsers: {@link CommandParser#parse(String, boolean)} and {@link Move#parse(String)}.
+ * <p>
+ * {@code line} covers a valid move, its one-letter alias, a bad move, a slash command and a nickname;
+ * {@code parseCommand} reads it in the IN_GAME sense, {@code parseNick} in the WAIT_NICK sense.
+ * {@code moveParse} is the perfect-hash lookup over every variant's moves; {@code legacyMoveParse} is the
+ * classic-only String switch it replaced ({@link LegacyRules}), for the lines both understand.
+ * The byte-level path is {@link CommandDecoderBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    @Param({"rock", "S", "abracadabra", "/help", "player_42", "Spock", "lightning"})
+    public String line;
+
+    @Benchmark
+    public Command parseCommand() {
+        return CommandParser.parse(line, false);
+    }
+
+    @Benchmark
+    public Command parseNick() {
+        return CommandParser.parse(line, true);
+    }
+
+    @Benchmark
+    public Move moveParse() {
+        return Move.parse(line);
+    }
+
+    @Benchmark
+    public Move legacyMoveParse() {
+        return LegacyRules.parse(line);
+    }
+}
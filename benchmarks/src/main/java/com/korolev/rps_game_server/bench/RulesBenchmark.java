@@ -0,0 +1,98 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.RpsRules;
+import com.korolev.rps_game_server.domain.Variant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RpsRules#outcome(Move, Move)} over all nine classic move pairs per invocation, so the branch
+ * predictor sees a mixed stream rather than one fixed pair. Scores are per single outcome.
+ * <p>
+ * {@code outcome} is the table lookup, {@code legacyOutcome} the switch it replaced ({@link LegacyRules})
+ * on the same pairs; {@code rps15Outcome} is the table over all 225 pairs of the 15-move variant, which
+ * the switch never had to handle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+    private static final int PAIRS = 9;
+    private static final int RPS15_PAIRS = 15 * 15;
+
+    private Move[] selves;
+    private Move[] opponents;
+    private Move[] rps15Selves;
+    private Move[] rps15Opponents;
+
+    @Setup
+    public void setup() {
+        Move[] moves = {Move.ROCK, Move.PAPER, Move.SCISSORS};
+        selves = new Move[PAIRS];
+        opponents = new Move[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            selves[i] = moves[i / moves.length];
+            opponents[i] = moves[i % moves.length];
+        }
+
+        List<Move> rps15 = new ArrayList<>();
+        for (Move m : Move.values()) {
+            if (Variant.RPS15.allows(m)) {
+                rps15.add(m);
+            }
+        }
+        rps15Selves = new Move[RPS15_PAIRS];
+        rps15Opponents = new Move[RPS15_PAIRS];
+        for (int i = 0; i < RPS15_PAIRS; i++) {
+            rps15Selves[i] = rps15.get(i / rps15.size());
+            rps15Opponents[i] = rps15.get(i % rps15.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int outcome() {
+        int acc = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            acc += RpsRules.outcome(selves[i], opponents[i]).ordinal();
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int legacyOutcome() {
+        int acc = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            acc += LegacyRules.outcome(selves[i], opponents[i]).ordinal();
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RPS15_PAIRS)
+    public int rps15Outcome() {
+        int acc = 0;
+        for (int i = 0; i < RPS15_PAIRS; i++) {
+            acc += RpsRules.outcome(rps15Selves[i], rps15Opponents[i]).ordinal();
+        }
+        return acc;
+    }
+}
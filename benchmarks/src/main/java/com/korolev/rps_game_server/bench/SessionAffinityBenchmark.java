@@ -0,0 +1,111 @@
+package com.korolev.rps_game_server.bench;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Player;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one game round when both players share the session's owner loop (what
+ * {@code LoopAffinity} migrates to) versus when the second player lives on another loop.
+ * <p>
+ * An operation submits both moves from the players' own loops and waits until both draw replies
+ * have been written to their channels. Cross-loop pays for the move hop to the owner and the write hop
+ * back to the second player's loop.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionAffinityBenchmark {
+
+    @Param({"same_loop", "cross_loop"})
+    public String placement;
+
+    private EventLoop ownerLoop;
+    private EventLoop otherLoop;
+    private Player p1;
+    private Player p2;
+    private WriteCounter w1;
+    private WriteCounter w2;
+    private GameSession session;
+    private long rounds;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ownerLoop = new DefaultEventLoop();
+        otherLoop = "same_loop".equals(placement) ? ownerLoop : new DefaultEventLoop();
+
+        w1 = new WriteCounter();
+        w2 = new WriteCounter();
+        p1 = new Player("p1", channel(ownerLoop, w1));
+        p2 = new Player("p2", channel(otherLoop, w2));
+
+        session = new GameSession(p1, p2);
+        session.start();
+        while (w1.writes.get() < 1 || w2.writes.get() < 1) {
+            Thread.onSpinWait();
+        }
+        w1.writes.set(0);
+        w2.writes.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ownerLoop.shutdownGracefully();
+        otherLoop.shutdownGracefully();
+    }
+
+    /** ROCK vs ROCK is a draw, so the session keeps going: two replies per player per round. */
+    @Benchmark
+    public long round() {
+        long target = 2 * ++rounds;
+        ownerLoop.execute(() -> session.submitMove(p1, Move.ROCK));
+        otherLoop.execute(() -> session.submitMove(p2, Move.ROCK));
+        while (w1.writes.get() < target || w2.writes.get() < target) {
+            Thread.onSpinWait();
+        }
+        return target;
+    }
+
+    private static BenchChannel channel(EventLoop loop, WriteCounter counter) throws Exception {
+        BenchChannel ch = new BenchChannel(loop);
+        // the handler context runs on the overridden loop, so wait for handlerAdded there
+        loop.submit(() -> ch.pipeline().addLast(counter)).sync();
+        return ch;
+    }
+
+    /** Swallows outbound messages; counts them on the channel's (overridden) loop. */
+    private static final class WriteCounter extends ChannelOutboundHandlerAdapter {
+        final AtomicLong writes = new AtomicLong();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            writes.incrementAndGet();
+            promise.trySuccess();
+        }
+    }
+}
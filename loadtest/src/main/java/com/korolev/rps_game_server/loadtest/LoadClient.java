@@ -0,0 +1,186 @@
+package com.korolev.rps_game_server.loadtest;
+
+import com.korolev.rps_game_server.protocol.Messages;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scripted player on one connection: welcome, nickname, match, then moves until the game ends.
+ * <p>
+ * Reads decoded lines. Each game may instead end early on the client's side: with
+ * {@code quitRatio} it sends {@code /quit}, with {@code disconnectRatio} it just closes the socket,
+ * both at the point where it would have made its first move. The server closes the connection when
+ * the game is over; the generator then opens a fresh one for the same slot. A keep-alive server instead
+ * prompts for {@code /rematch} or {@code /queue}: the client sends {@code /queue} until it has played
+ * {@code gamesPerConnection} games on the connection, then closes it itself.
+ */
+final class LoadClient extends SimpleChannelInboundHandler<String> {
+
+    private static final String NICK_PROMPT = "Enter your nickname";
+    private static final String OPPONENT_FOUND = Messages.OPPONENT_FOUND_PREFIX;
+    private static final String DRAW = Messages.DRAW_PREFIX;
+    private static final String RESULT = Messages.RESULT_PREFIX;
+    private static final String ROUND = Messages.ROUND_PREFIX;
+    private static final String NEXT_ROUND = Messages.ROUND_NEXT.strip();
+    private static final String OPPONENT_LEFT = "Opponent ";
+    private static final String TIMEOUT = "Timeout";
+    private static final String GAME_OVER_PROMPT = "Game over. Type /";
+
+    private static final ByteBuf[] MOVES = {
+            line("ROCK"), line("PAPER"), line("SCISSORS")
+    };
+    private static final ByteBuf QUIT = line("/quit");
+    private static final ByteBuf QUEUE = line("/queue");
+
+    private final LoadOptions options;
+    private final LoadStats stats;
+    private final String nickname;
+    private final long connectStartNanos;
+
+    private long sentAtNanos;
+    private boolean welcomed;
+    private boolean matched;
+    /** The game reached an end the server announced, or the client left on purpose. */
+    private boolean done;
+    private int gamesOnConnection;
+
+    LoadClient(LoadOptions options, LoadStats stats, String nickname, long connectStartNanos) {
+        this.options = options;
+        this.stats = stats;
+        this.nickname = nickname;
+        this.connectStartNanos = connectStartNanos;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        stats.open.increment();
+        stats.connects.increment();
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        stats.open.decrement();
+        if (!done) {
+            stats.unexpectedCloses.increment();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, String line) {
+        long now = System.nanoTime();
+        if (!welcomed && line.startsWith(NICK_PROMPT)) {
+            welcomed = true;
+            stats.record(LoadStats.Step.CONNECT_WELCOME, connectStartNanos, now);
+            afterThink(ctx, () -> send(ctx, Unpooled.copiedBuffer(nickname + "\r\n", StandardCharsets.US_ASCII)));
+        } else if (!matched && line.startsWith(OPPONENT_FOUND)) {
+            matched = true;
+            stats.record(LoadStats.Step.NICK_MATCH, sentAtNanos, now);
+            firstMove(ctx);
+        } else if (line.startsWith(DRAW)) {
+            stats.record(LoadStats.Step.MOVE_RESULT, sentAtNanos, now);
+            stats.rounds.increment();
+            stats.draws.increment();
+            afterThink(ctx, () -> move(ctx));
+        } else if (line.startsWith(RESULT)) {
+            stats.record(LoadStats.Step.MOVE_RESULT, sentAtNanos, now);
+            stats.rounds.increment();
+            stats.games.increment();
+            done = true;
+        } else if (line.startsWith(ROUND)) {
+            // decided round of a best-of-N series: either the next round or the end of the series
+            stats.record(LoadStats.Step.MOVE_RESULT, sentAtNanos, now);
+            stats.rounds.increment();
+            if (line.endsWith(NEXT_ROUND)) {
+                afterThink(ctx, () -> move(ctx));
+            } else {
+                stats.games.increment();
+                done = true;
+            }
+        } else if (line.startsWith(OPPONENT_LEFT)) {
+            stats.opponentLeft.increment();
+            done = true;
+        } else if (line.startsWith(TIMEOUT)) {
+            stats.timeouts.increment();
+            done = true;
+        } else if (line.startsWith(GAME_OVER_PROMPT)) {
+            nextGame(ctx);
+        }
+        // prompts, "Hi, ...", "Waiting for opponent's move..." and the logo need no answer
+    }
+
+    private void firstMove(ChannelHandlerContext ctx) {
+        double r = ThreadLocalRandom.current().nextDouble();
+        if (r < options.quitRatio()) {
+            afterThink(ctx, () -> {
+                done = true;
+                stats.quits.increment();
+                ctx.writeAndFlush(QUIT.retainedDuplicate());
+            });
+        } else if (r < options.quitRatio() + options.disconnectRatio()) {
+            afterThink(ctx, () -> {
+                done = true;
+                stats.disconnects.increment();
+                ctx.close();
+            });
+        } else {
+            afterThink(ctx, () -> move(ctx));
+        }
+    }
+
+    /** Kept-alive connection after a game: queue again, or close once this connection has played its share. */
+    private void nextGame(ChannelHandlerContext ctx) {
+        if (++gamesOnConnection >= options.gamesPerConnection()) {
+            ctx.close();
+            return;
+        }
+        afterThink(ctx, () -> {
+            matched = false;
+            done = false;
+            stats.requeues.increment();
+            send(ctx, QUEUE.retainedDuplicate());
+        });
+    }
+
+    private void move(ChannelHandlerContext ctx) {
+        send(ctx, MOVES[ThreadLocalRandom.current().nextInt(MOVES.length)].retainedDuplicate());
+    }
+
+    private void send(ChannelHandlerContext ctx, ByteBuf line) {
+        sentAtNanos = System.nanoTime();
+        ctx.writeAndFlush(line);
+    }
+
+    /** Run {@code action} after a think time uniform in {@code [0, 2 * think]} ms, on this channel's loop. */
+    private void afterThink(ChannelHandlerContext ctx, Runnable action) {
+        int think = options.thinkMillis();
+        if (think == 0) {
+            action.run();
+            return;
+        }
+        long delay = ThreadLocalRandom.current().nextLong(2L * think + 1);
+        ctx.executor().schedule(() -> {
+            if (ctx.channel().isActive()) {
+                action.run();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+
+    /** Same scheme as the server's reply catalogue: never released, written as retained duplicates. */
+    private static ByteBuf line(String s) {
+        byte[] bytes = (s + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        return Unpooled.unreleasableBuffer(
+                Unpooled.directBuffer(bytes.length, bytes.length).writeBytes(bytes).asReadOnly());
+    }
+}
@@ -0,0 +1,148 @@
+package com.korolev.rps_game_server.loadtest;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds {@code connections} scripted players against a running server and reports latency percentiles.
+ * <p>
+ * Every connection slot plays one game per TCP connection (the server closes it at game over) and then
+ * reconnects, so the steady state is a constant number of open sockets cycling through the whole
+ * protocol: connect, welcome, nickname, queue, match, moves, result. Against a keep-alive server,
+ * {@code --games-per-connection=N} plays N games per connection, requeueing in between.
+ * <pre>
+ * java -jar loadtest/target/loadtest.jar --port=8080 --connections=20000 --ramp=2000 --duration=120
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final int MAX_LINE = 1024;
+
+    private final LoadOptions options;
+    private final LoadStats stats = new LoadStats();
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "loadtest-report");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile boolean running = true;
+
+    LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.group = new NioEventLoopGroup(options.threads());
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000)
+                .remoteAddress(options.host(), options.port());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new LoadGenerator(options).run();
+    }
+
+    void run() throws InterruptedException, IOException {
+        System.out.printf("target=%s:%d connections=%d ramp=%d/s duration=%ds think=%dms quit=%.2f disconnect=%.2f"
+                        + " games/conn=%d%n",
+                options.host(), options.port(), options.connections(), options.rampPerSecond(),
+                options.durationSeconds(), options.thinkMillis(), options.quitRatio(), options.disconnectRatio(),
+                options.gamesPerConnection());
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        int every = options.reportSeconds();
+        reporter.scheduleAtFixedRate(
+                () -> stats.report(System.out, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), every),
+                every, every, TimeUnit.SECONDS);
+
+        // ramp: slot i opens at start + i / ramp seconds
+        long spacing = TimeUnit.SECONDS.toNanos(1) / options.rampPerSecond();
+        for (int slot = 0; slot < options.connections() && System.nanoTime() < end; slot++) {
+            sleepUntil(start + slot * spacing);
+            connect(slot, 0);
+        }
+        sleepUntil(end);
+
+        running = false;
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        String json = stats.summary(System.out, seconds);
+        if (options.summaryFile() != null) {
+            Files.writeString(Path.of(options.summaryFile()), json + "\n", StandardCharsets.UTF_8);
+        }
+
+        channels.close().awaitUninterruptibly(10, TimeUnit.SECONDS);
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    /** Open one connection for {@code slot}; the next game on this slot is {@code game + 1}. */
+    private void connect(int slot, int game) {
+        if (!running) {
+            return;
+        }
+        long connectStart = System.nanoTime();
+        String nickname = "lt" + Integer.toString(slot, 36) + "-" + Integer.toString(game, 36);
+        ChannelFuture f = bootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new LineBasedFrameDecoder(MAX_LINE),
+                                new StringDecoder(StandardCharsets.US_ASCII),
+                                new LoadClient(options, stats, nickname, connectStart));
+                    }
+                })
+                .connect();
+        f.addListener((ChannelFuture cf) -> {
+            Channel ch = cf.channel();
+            if (!cf.isSuccess()) {
+                stats.connectFailures.increment();
+                // back off instead of hammering a server that is not accepting
+                group.next().schedule(() -> connect(slot, game + 1), 1, TimeUnit.SECONDS);
+                return;
+            }
+            channels.add(ch);
+            ch.closeFuture().addListener(c -> connect(slot, game + 1));
+        });
+    }
+
+    private static void sleepUntil(long deadlineNanos) throws InterruptedException {
+        long wait;
+        while ((wait = deadlineNanos - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
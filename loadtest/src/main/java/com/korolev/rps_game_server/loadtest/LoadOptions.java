@@ -0,0 +1,112 @@
+package com.korolev.rps_game_server.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Load generator settings, parsed from {@code --name=value} arguments.
+ *
+ * @param host             server address
+ * @param port             server game port
+ * @param connections      concurrent client connections to hold open
+ * @param rampPerSecond    new connections opened per second until {@code connections} is reached
+ * @param durationSeconds  measured run time, counted from the first connect
+ * @param threads          client event loop threads, 0 = Netty default (2 * cores)
+ * @param thinkMillis      mean delay before each nickname and move, uniform in {@code [0, 2 * think]}
+ * @param quitRatio        share of games in which the client sends {@code /quit} instead of its first move
+ * @param disconnectRatio  share of games in which the client drops the connection instead of its first move
+ * @param gamesPerConnection games played on one connection with {@code /queue} in between before closing it;
+ *                         needs a server with {@code rps.session.keep-alive=true}, otherwise every game reconnects
+ * @param reportSeconds    interval between progress lines
+ * @param summaryFile      where to write the final summary as JSON, {@code null} = stdout only
+ */
+public record LoadOptions(String host,
+                          int port,
+                          int connections,
+                          int rampPerSecond,
+                          int durationSeconds,
+                          int threads,
+                          int thinkMillis,
+                          double quitRatio,
+                          double disconnectRatio,
+                          int gamesPerConnection,
+                          int reportSeconds,
+                          String summaryFile) {
+
+    private static final Set<String> KNOWN = Set.of(
+            "host", "port", "connections", "ramp", "duration", "threads", "think",
+            "quit-ratio", "disconnect-ratio", "games-per-connection", "report", "summary");
+
+    public LoadOptions {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("port must be in 1..65535, got " + port);
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be >= 1, got " + connections);
+        }
+        if (rampPerSecond < 1) {
+            throw new IllegalArgumentException("ramp must be >= 1 connection per second, got " + rampPerSecond);
+        }
+        if (durationSeconds < 1) {
+            throw new IllegalArgumentException("duration must be >= 1 second, got " + durationSeconds);
+        }
+        if (threads < 0 || thinkMillis < 0) {
+            throw new IllegalArgumentException("threads and think must not be negative");
+        }
+        if (quitRatio < 0 || disconnectRatio < 0 || quitRatio + disconnectRatio > 1) {
+            throw new IllegalArgumentException("quit + disconnect ratios must be within 0..1");
+        }
+        if (gamesPerConnection < 1) {
+            throw new IllegalArgumentException("games-per-connection must be >= 1, got " + gamesPerConnection);
+        }
+        if (reportSeconds < 1) {
+            throw new IllegalArgumentException("report interval must be >= 1 second, got " + reportSeconds);
+        }
+    }
+
+    public static LoadOptions defaults() {
+        return new LoadOptions("127.0.0.1", 8080, 1000, 500, 60, 0, 50, 0.0, 0.0, 1, 5, null);
+    }
+
+    /** {@link #defaults()} overridden by {@code --host=}, {@code --port=}, {@code --connections=} and so on. */
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> kv = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("expected --name=value, got " + arg);
+            }
+            kv.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        LoadOptions d = defaults();
+        LoadOptions o = new LoadOptions(
+                kv.getOrDefault("host", d.host()),
+                intArg(kv, "port", d.port()),
+                intArg(kv, "connections", d.connections()),
+                intArg(kv, "ramp", d.rampPerSecond()),
+                intArg(kv, "duration", d.durationSeconds()),
+                intArg(kv, "threads", d.threads()),
+                intArg(kv, "think", d.thinkMillis()),
+                doubleArg(kv, "quit-ratio", d.quitRatio()),
+                doubleArg(kv, "disconnect-ratio", d.disconnectRatio()),
+                intArg(kv, "games-per-connection", d.gamesPerConnection()),
+                intArg(kv, "report", d.reportSeconds()),
+                kv.getOrDefault("summary", d.summaryFile()));
+        kv.keySet().removeAll(KNOWN);
+        if (!kv.isEmpty()) {
+            throw new IllegalArgumentException("unknown options: " + kv.keySet());
+        }
+        return o;
+    }
+
+    private static int intArg(Map<String, String> kv, String name, int def) {
+        String v = kv.get(name);
+        return v == null ? def : Integer.parseInt(v);
+    }
+
+    private static double doubleArg(Map<String, String> kv, String name, double def) {
+        String v = kv.get(name);
+        return v == null ? def : Double.parseDouble(v);
+    }
+}
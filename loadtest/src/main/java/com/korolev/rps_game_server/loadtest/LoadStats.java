@@ -0,0 +1,134 @@
+package com.korolev.rps_game_server.loadtest;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counters and latency histograms shared by all client connections.
+ * <p>
+ * Latencies are recorded in microseconds into HdrHistogram {@link Recorder}s, which take writes from any
+ * event loop without locks; every report swaps out the interval histogram and folds it into the run total.
+ */
+final class LoadStats {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    /** One measured protocol step. */
+    enum Step {
+        CONNECT_WELCOME("connect->welcome"),
+        NICK_MATCH("nick->match"),
+        MOVE_RESULT("move->result");
+
+        final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Recorder[] recorders = new Recorder[Step.values().length];
+    private final Histogram[] intervals = new Histogram[Step.values().length];
+    private final Histogram[] totals = new Histogram[Step.values().length];
+
+    final LongAdder connects = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder requeues = new LongAdder();
+    final LongAdder games = new LongAdder();
+    final LongAdder rounds = new LongAdder();
+    final LongAdder draws = new LongAdder();
+    final LongAdder quits = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder opponentLeft = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder unexpectedCloses = new LongAdder();
+    final LongAdder open = new LongAdder();
+
+    private long lastGames;
+    private long lastRounds;
+
+    LoadStats() {
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Recorder(MAX_MICROS, 3);
+            totals[i] = new Histogram(MAX_MICROS, 3);
+        }
+    }
+
+    void record(Step step, long startNanos, long endNanos) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, (endNanos - startNanos) / 1_000));
+        recorders[step.ordinal()].recordValue(micros);
+    }
+
+    /** One progress line for the interval since the previous call. Called from a single thread. */
+    void report(PrintStream out, long elapsedSeconds, long intervalSeconds) {
+        long g = games.sum();
+        long r = rounds.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "t=%ds open=%d games/s=%.1f rounds/s=%.1f",
+                elapsedSeconds, open.sum(),
+                (g - lastGames) / (double) intervalSeconds, (r - lastRounds) / (double) intervalSeconds));
+        lastGames = g;
+        lastRounds = r;
+        for (Step step : Step.values()) {
+            int i = step.ordinal();
+            intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+            totals[i].add(intervals[i]);
+            Histogram h = intervals[i];
+            sb.append(String.format(Locale.ROOT, " %s p50=%s p99=%s", step.label,
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99))));
+        }
+        out.println(sb);
+    }
+
+    /**
+     * Run totals: throughput, outcome counters and the full percentile table per step, printed to
+     * {@code out} and returned as one JSON object built from the same snapshot.
+     */
+    String summary(PrintStream out, double seconds) {
+        for (int i = 0; i < recorders.length; i++) {
+            totals[i].add(recorders[i].getIntervalHistogram());
+        }
+        long g = games.sum(), r = rounds.sum(), d = draws.sum();
+        long c = connects.sum(), cf = connectFailures.sum(), rq = requeues.sum(), q = quits.sum(), dc = disconnects.sum();
+        long ol = opponentLeft.sum(), to = timeouts.sum(), uc = unexpectedCloses.sum();
+
+        out.println();
+        out.printf(Locale.ROOT, "duration=%.1fs games=%d (%.1f/s) rounds=%d (%.1f/s) draws=%d%n",
+                seconds, g, g / seconds, r, r / seconds, d);
+        out.printf(Locale.ROOT,
+                "connects=%d connect_failures=%d requeues=%d quits=%d disconnects=%d opponent_left=%d timeouts=%d"
+                        + " unexpected_closes=%d%n",
+                c, cf, rq, q, dc, ol, to, uc);
+        out.printf(Locale.ROOT, "%-18s %10s %9s %9s %9s %9s %9s%n",
+                "latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+
+        StringBuilder json = new StringBuilder(512);
+        json.append(String.format(Locale.ROOT, "{\"durationSeconds\":%.3f,\"games\":%d,\"gamesPerSecond\":%.3f,"
+                        + "\"rounds\":%d,\"roundsPerSecond\":%.3f,\"draws\":%d,\"connects\":%d,\"connectFailures\":%d,"
+                        + "\"requeues\":%d,\"quits\":%d,\"disconnects\":%d,\"opponentLeft\":%d,\"timeouts\":%d,"
+                        + "\"unexpectedCloses\":%d",
+                seconds, g, g / seconds, r, r / seconds, d, c, cf, rq, q, dc, ol, to, uc));
+        json.append(",\"latencyMicros\":{");
+        for (Step step : Step.values()) {
+            Histogram h = totals[step.ordinal()];
+            out.printf(Locale.ROOT, "%-18s %10d %9s %9s %9s %9s %9s%n", step.label, h.getTotalCount(),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                    ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+            if (step.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ROOT,
+                    "\"%s\":{\"count\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                    step.label, h.getTotalCount(), h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+                    h.getValueAtPercentile(99), h.getValueAtPercentile(99.9), h.getMaxValue()));
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String ms(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+}
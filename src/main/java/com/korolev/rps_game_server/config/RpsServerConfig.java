@@ -1,9 +1,30 @@
 package com.korolev.rps_game_server.config;
 
+import com.korolev.rps_game_server.domain.MatchListener;
+import com.korolev.rps_game_server.domain.Matchmaker;
+import com.korolev.rps_game_server.domain.MatchmakingOptions;
+import com.korolev.rps_game_server.domain.MovePredictor;
+import com.korolev.rps_game_server.domain.Ratings;
+import com.korolev.rps_game_server.domain.SessionListener;
+import com.korolev.rps_game_server.domain.SessionMetrics;
+import com.korolev.rps_game_server.domain.SessionOptions;
+import com.korolev.rps_game_server.domain.Variant;
+import com.korolev.rps_game_server.journal.JournalEndpoint;
+import com.korolev.rps_game_server.journal.JournalOptions;
+import com.korolev.rps_game_server.journal.MatchJournal;
+import com.korolev.rps_game_server.net.EventLoopLagSampler;
 import com.korolev.rps_game_server.net.NettyServer;
 import com.korolev.rps_game_server.net.RpsChannelInitializer;
+import com.korolev.rps_game_server.net.SessionResumes;
+import com.korolev.rps_game_server.net.Spectators;
+import com.korolev.rps_game_server.net.TransportOptions;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -18,16 +39,124 @@ public class RpsServerConfig {
     @Value("${rps.port:8080}")
     private int port;
 
+    @Value("${rps.transport:auto}")
+    private String transport;
+
+    @Value("${rps.acceptors:1}")
+    private int acceptors;
+
+    @Value("${rps.worker-threads:0}")
+    private int workerThreads;
+
+    @Value("${rps.epoll.tcp-quickack:false}")
+    private boolean tcpQuickAck;
+
+    @Value("${rps.epoll.tcp-fastopen:0}")
+    private int tcpFastOpen;
+
+    @Value("${rps.epoll.busy-poll-micros:0}")
+    private int busyPollMicros;
+
+    @Value("${rps.matchmaking.shards:0}")
+    private int matchmakingShards;
+
+    @Value("${rps.matchmaking.batch-tick-millis:0}")
+    private int batchTickMillis;
+
+    @Value("${rps.matchmaking.rating.enabled:false}")
+    private boolean ratedMatchmaking;
+
+    @Value("${rps.matchmaking.rating.initial-window:100}")
+    private int ratingInitialWindow;
+
+    @Value("${rps.matchmaking.rating.widen-per-second:50}")
+    private int ratingWidenPerSecond;
+
+    @Value("${rps.matchmaking.rating.sweep-millis:250}")
+    private int ratingSweepMillis;
+
+    @Value("${rps.session.keep-alive:false}")
+    private boolean keepAlive;
+
+    @Value("${rps.series.best-of:1}")
+    private int bestOf;
+
+    @Value("${rps.rules.variant:classic}")
+    private String variant;
+
+    @Value("${rps.ffa.players:4}")
+    private int ffaPlayers;
+
+    @Value("${rps.journal.dir:journal}")
+    private String journalDir;
+
+    @Value("${rps.journal.segment-records:262144}")
+    private int journalSegmentRecords;
+
+    @Value("${rps.journal.retain-segments:16}")
+    private int journalRetainSegments;
+
+    @Value("${rps.journal.force-millis:1000}")
+    private int journalForceMillis;
+
+    @Value("${rps.journal.buffer-size:65536}")
+    private int journalBufferSize;
+
     @Bean(destroyMethod = "close")
-    public NettyServer nettyServer() {
-        return new NettyServer(port);
+    public NettyServer nettyServer(EventLoopLagSampler lagSampler) {
+        return new NettyServer(port,
+                new TransportOptions(transport, acceptors, workerThreads, tcpQuickAck, tcpFastOpen, busyPollMicros),
+                lagSampler.taskQueueFactory());
+    }
+
+    @Bean(destroyMethod = "close")
+    public Matchmaker matchmaker(Ratings ratings,
+                                 MovePredictor movePredictor,
+                                 SessionMetrics sessionMetrics,
+                                 Spectators spectators,
+                                 SessionResumes resumes,
+                                 ObjectProvider<MatchListener> matchListener,
+                                 ObjectProvider<MatchJournal> journal) {
+        List<SessionListener> listeners =
+                new ArrayList<>(List.of(ratings, movePredictor, sessionMetrics, spectators, resumes));
+        journal.ifAvailable(listeners::add);
+        Matchmaker matchmaker = new Matchmaker(
+                new MatchmakingOptions(matchmakingShards, batchTickMillis, ratedMatchmaking,
+                        ratingInitialWindow, ratingWidenPerSecond, ratingSweepMillis),
+                ratings,
+                SessionListener.compose(listeners.toArray(SessionListener[]::new)));
+        matchListener.ifAvailable(matchmaker::setMatchListener);
+        Variant rules = Variant.byId(variant);
+        if (rules == null) {
+            throw new IllegalArgumentException("rps.rules.variant must be one of "
+                    + Arrays.toString(Variant.values()) + ", got " + variant);
+        }
+        matchmaker.setSessionOptions(new SessionOptions(keepAlive, bestOf, rules));
+        matchmaker.setFreeForAllSize(ffaPlayers);
+        return matchmaker;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "rps.journal.enabled", havingValue = "true")
+    public MatchJournal matchJournal() {
+        return new MatchJournal(new JournalOptions(Path.of(journalDir), journalSegmentRecords,
+                journalRetainSegments, journalForceMillis, journalBufferSize));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rps.journal.enabled", havingValue = "true")
+    public JournalEndpoint journalEndpoint(MatchJournal matchJournal) {
+        return new JournalEndpoint(matchJournal);
     }
 
     @Bean
     @ConditionalOnProperty(name = "rps.enabled", havingValue = "true", matchIfMissing = true)
-    public CommandLineRunner run(NettyServer nettyServer, RpsChannelInitializer channelInitializer) {
+    public CommandLineRunner run(NettyServer nettyServer,
+                                 RpsChannelInitializer channelInitializer,
+                                 EventLoopLagSampler lagSampler) {
         return args -> {
             nettyServer.start(channelInitializer);
+            lagSampler.start(nettyServer.getWorkerGroup());
             log.info("RPS server started on port {}", port);
         };
     }
@@ -0,0 +1,7 @@
+package com.korolev.rps_game_server.domain;
+
+/**
+ * Pipeline user event fired by the {@link Lobby} on a challenger's channel when the target disconnected
+ * or was paired with someone else before accepting; the challenger goes back to the open queue.
+ */
+public record ChallengeGone(String target) {}
@@ -0,0 +1,18 @@
+package com.korolev.rps_game_server.domain;
+
+/** Why a {@link GameSession} ended. {@link #tag()} is the value used in logs and metrics. */
+public enum FinishReason {
+    RESULT("result"),
+    IDLE_TIMEOUT("idle_timeout"),
+    DISCONNECT("disconnect");
+
+    private final String tag;
+
+    FinishReason(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
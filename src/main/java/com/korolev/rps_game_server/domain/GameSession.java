@@ -1,39 +1,130 @@
 package com.korolev.rps_game_server.domain;
 
+import com.korolev.rps_game_server.logging.LogContext;
+import com.korolev.rps_game_server.protocol.Reply;
+import com.korolev.rps_game_server.protocol.ReplyTemplates;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.util.concurrent.EventExecutor;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
+/**
+ * One match between two players, confined to the owner event loop.
+ * <p>
+ * A match is a best-of-N series ({@code rps.series.best-of}, or the players' {@code /bestof} choice):
+ * draws are replayed, and the first player to win {@code (N + 1) / 2} decided rounds wins the match.
+ * Score and move history are packed into an int and a long (see {@link #score()} and {@link #history()}),
+ * so a round allocates nothing but its replies, one per player.
+ * <p>
+ * The session plays one {@link Variant} ({@code rps.rules.variant}, or the players' {@code /variant} choice):
+ * moves outside it are refused, and {@link RpsRules} decides the rest with one table lookup. A variant with
+ * more moves needs more history bits per move, so it caps the series length at {@link Variant#maxBestOf()}.
+ * <p>
+ * The deciding round, an idle timeout or a disconnect finishes the session. By default that closes both
+ * channels. A keep-alive session ({@code rps.session.keep-alive}) closes only the idle loser and fires a
+ * {@link SessionEnded} event on every other open channel instead; those players can then
+ * {@link #offerRematch rematch} on the same owner loop or {@link #declineRematch leave} for the queue.
+ * <p>
+ * With resume tokens ({@link #resumeTokens}) a dropped player can be {@link #park parked} instead of losing
+ * at once, and {@link #resume resumed} on a new connection: its seat is rebound to the new channel, so
+ * {@link #p1()} and {@link #p2()} may change during a session, though never their nicknames.
+ */
 public final class GameSession {
 
     private static final Logger log = LoggerFactory.getLogger(GameSession.class);
 
-    private final Player p1;
-    private final Player p2;
+    private static final AtomicLong IDS = new AtomicLong();
+
+    /** Process-unique session number, used as the {@code sess} log key. */
+    private final long id = nextId();
+
+    // Rebound by resume() on the owner loop; other threads only read the (unchanging) nicknames.
+    private Player p1;
+    private Player p2;
 
     private final EventExecutor owner;
+    private final SessionListener listener;
+    private final SessionOptions options;
+    /** Id of the session this one is a rematch of, 0 for a fresh pairing. */
+    private final long rematchOf;
+
+    /** Round wins that take the match: (bestOf + 1) / 2. */
+    private int winsNeeded;
+    private Variant variant;
 
     private Move m1;
     private Move m2;
 
+    /** p1 round wins in bits 0-7, p2 round wins in bits 8-15, decided rounds in bits 16-23. */
+    private int score;
+    /**
+     * Both moves of every decided round as {@link Variant#code} values, {@code 2 * variant.bits()} bits per
+     * round (p1 code, then p2 code), first round lowest.
+     */
+    private long history;
+
     private boolean finished;
 
+    /** Per-seat tokens for {@link #resume}, 0 if the seat has none. Set before start. */
+    private long p1Token;
+    private long p2Token;
+
+    // Keep-alive, after finish: who asked for a rematch, and whether one can still happen.
+    private boolean p1Rematch;
+    private boolean p2Rematch;
+    private boolean rematchClosed;
+
+    /** System.nanoTime() when {@link #start()} ran, 0 if it has not. */
+    private long startedNanos;
+    private int draws;
+
+    // Channels written to during the current owner task; flushed once when the task ends.
+    private boolean p1Dirty;
+    private boolean p2Dirty;
+
     public GameSession(Player p1, Player p2) {
+        this(p1, p2, SessionListener.NONE);
+    }
+
+    public GameSession(Player p1, Player p2, SessionListener listener) {
+        this(p1, p2, listener, SessionOptions.defaults());
+    }
+
+    public GameSession(Player p1, Player p2, SessionListener listener, SessionOptions options) {
+        this(p1, p2, listener, options, 0);
+    }
+
+    private GameSession(Player p1, Player p2, SessionListener listener, SessionOptions options, long rematchOf) {
         this.p1 = Objects.requireNonNull(p1);
         this.p2 = Objects.requireNonNull(p2);
+        this.listener = Objects.requireNonNull(listener);
+        this.options = Objects.requireNonNull(options);
+        this.rematchOf = rematchOf;
+        this.variant = options.variant();
+        this.winsNeeded = (options.bestOf() + 1) / 2;
 
         // Choose owner = eventLoop of one of the players.
         this.owner = p1.channel().eventLoop();
 
-        log.info("session_created p1={}({}) p2={}({}) owner={}",
-                p1.nickname(), shortId(p1.channel()),
+        log.info("session_created sess={} p1={}({}) p2={}({}) owner={}",
+                id, p1.nickname(), shortId(p1.channel()),
                 p2.nickname(), shortId(p2.channel()),
                 owner);
     }
 
+    public long id() {
+        return id;
+    }
+
+    /** Next session number; a {@link GroupSession} takes its id from the same sequence. */
+    static long nextId() {
+        return IDS.incrementAndGet();
+    }
+
     public Player p1() {
         return p1;
     }
@@ -42,6 +133,117 @@ public final class GameSession {
         return p2;
     }
 
+    /** Event loop all session state is confined to (p1's loop). */
+    public EventExecutor owner() {
+        return owner;
+    }
+
+    /** Whether the channels stay open after the game. */
+    public boolean keepAlive() {
+        return options.keepAlive();
+    }
+
+    /** Series length of this match. */
+    public int bestOf() {
+        return winsNeeded * 2 - 1;
+    }
+
+    /**
+     * Play this match as a best-of-{@code bestOf} series instead of the configured length, or as the longest
+     * series the variant allows if that is shorter. Only before {@link #start()}; the launcher calls it with
+     * the players' {@code /bestof} choice.
+     */
+    public void bestOf(int bestOf) {
+        if (!SessionOptions.isValidBestOf(bestOf)) {
+            throw new IllegalArgumentException("best-of must be odd and within 1.."
+                    + SessionOptions.MAX_BEST_OF + ", got " + bestOf);
+        }
+        this.winsNeeded = (Math.min(bestOf, variant.maxBestOf()) + 1) / 2;
+    }
+
+    /** Move set of this match. */
+    public Variant variant() {
+        return variant;
+    }
+
+    /**
+     * Play {@code variant} instead of the configured one, shortening the series to its
+     * {@link Variant#maxBestOf()} if needed. Only before {@link #start()}, and before {@link #bestOf(int)};
+     * the launcher calls it with the players' {@code /variant} choice.
+     */
+    public void variant(Variant variant) {
+        this.variant = Objects.requireNonNull(variant);
+        this.winsNeeded = Math.min(winsNeeded, (variant.maxBestOf() + 1) / 2);
+    }
+
+    /** Packed series score, see {@link #p1Wins(int)}, {@link #p2Wins(int)}, {@link #rounds(int)}. Owner loop. */
+    public int score() {
+        return score;
+    }
+
+    /** Moves of the decided rounds so far, see {@link #p1Move(Variant, long, int)}. Owner loop. */
+    public long history() {
+        return history;
+    }
+
+    public static int p1Wins(int score) {
+        return score & 0xFF;
+    }
+
+    public static int p2Wins(int score) {
+        return (score >>> 8) & 0xFF;
+    }
+
+    /** Decided (non-draw) rounds. */
+    public static int rounds(int score) {
+        return (score >>> 16) & 0xFF;
+    }
+
+    static int score(int p1Wins, int p2Wins, int rounds) {
+        return p1Wins | p2Wins << 8 | rounds << 16;
+    }
+
+    /** p1's move in decided round {@code round} (0-based) of a {@link #history()} of {@code variant}. */
+    public static Move p1Move(Variant variant, long history, int round) {
+        int bits = variant.bits();
+        return variant.move((int) (history >>> (2 * bits * round)) & ((1 << bits) - 1));
+    }
+
+    /** p2's move in decided round {@code round} (0-based) of a {@link #history()} of {@code variant}. */
+    public static Move p2Move(Variant variant, long history, int round) {
+        int bits = variant.bits();
+        return variant.move((int) (history >>> (2 * bits * round + bits)) & ((1 << bits) - 1));
+    }
+
+    /**
+     * Tokens a dropped player can reconnect with, announced to each player when the session starts;
+     * 0 leaves a seat without one. Only before {@link #start()}.
+     */
+    public void resumeTokens(long p1Token, long p2Token) {
+        this.p1Token = p1Token;
+        this.p2Token = p2Token;
+    }
+
+    /** Resume token of seat 1 or 2, 0 if none. */
+    public long resumeToken(int seat) {
+        return seat == 1 ? p1Token : p2Token;
+    }
+
+    /** Id of the finished session this one is a rematch of, 0 if the players were freshly paired. */
+    public long rematchOf() {
+        return rematchOf;
+    }
+
+    /** System.nanoTime() at start, 0 if the session never started. Read on the owner loop. */
+    public long startedNanos() {
+        return startedNanos;
+    }
+
+    /** Drawn rounds so far. Read on the owner loop. */
+    public int draws() {
+        return draws;
+    }
+
     /**
      * Start match: notify both players and request a move.
      * Can be called from any thread.
@@ -53,10 +255,22 @@ public final class GameSession {
                 return;
             }
 
-            log.info("session_started");
+            log.info("session_started variant={}", variant);
+            startedNanos = System.nanoTime();
+            try {
+                listener.onStart(this);
+            } catch (RuntimeException e) {
+                log.warn("session_listener_failed", e);
+            }
 
-            send(p1, "Opponent found: " + p2.nickname() + "\r\nType ROCK/PAPER/SCISSORS:\r\n");
-            send(p2, "Opponent found: " + p1.nickname() + "\r\nType ROCK/PAPER/SCISSORS:\r\n");
+            send(p1, ReplyTemplates.opponentFound(p1.channel().alloc(), p2.nickname(), bestOf(), variant));
+            send(p2, ReplyTemplates.opponentFound(p2.channel().alloc(), p1.nickname(), bestOf(), variant));
+            if (p1Token != 0) {
+                send(p1, ReplyTemplates.resumeToken(p1.channel().alloc(), p1Token));
+            }
+            if (p2Token != 0) {
+                send(p2, ReplyTemplates.resumeToken(p2.channel().alloc(), p2Token));
+            }
         });
     }
 
@@ -64,71 +278,141 @@ public final class GameSession {
      * Player submitted a move. Can be called from any thread.
      */
     public void submitMove(Player player, Move move) {
-        runOnOwner(() -> {
-            if (finished) {
-                log.debug("move_ignored_finished from={}", nick(player));
+        // the hot path: on the owner loop the move is applied directly, without a task object
+        if (!owner.inEventLoop()) {
+            owner.execute(() -> submitMove(player, move));
+            return;
+        }
+        LogContext lc = LogContext.current();
+        long outer = lc.enterSession(id);
+        try {
+            applyMove(player, move);
+        } finally {
+            flushPending();
+            lc.exitSession(outer);
+        }
+    }
+
+    private void applyMove(Player player, Move move) {
+        if (finished) {
+            log.debug("move_ignored_finished from={}", nick(player));
+            return;
+        }
+        if (isNotParticipant(player)) {
+            log.warn("move_from_non_participant ch={}", shortId(player.channel()));
+            return;
+        }
+        if (!variant.allows(move)) {
+            send(player, ReplyTemplates.badMove(player.channel().alloc(), variant));
+            return;
+        }
+
+        int idx = indexOf(player);
+
+        if (idx == 1) {
+            if (m1 != null) {
+                log.debug("duplicate_move player={} move={}", p1.nickname(), move);
+                send(p1, Reply.ALREADY_MOVED.encoded(p1.channel().alloc()));
                 return;
             }
-            if (isNotParticipant(player)) {
-                log.warn("move_from_non_participant ch={}", shortId(player.channel()));
+            m1 = move;
+            movePlayed(1, move);
+            if (debugSampled()) {
+                log.debug("move_accepted player={} move={}", p1.nickname(), move);
+            }
+
+            // UX: if the second player hasn't moved yet - remind them it's their turn
+            if (m2 == null) {
+                send(p2, ReplyTemplates.yourTurn(p2.channel().alloc(), variant));
+            }
+        } else {
+            if (m2 != null) {
+                log.debug("duplicate_move player={} move={}", p2.nickname(), move);
+                send(p2, Reply.ALREADY_MOVED.encoded(p2.channel().alloc()));
                 return;
             }
+            m2 = move;
+            movePlayed(2, move);
+            if (debugSampled()) {
+                log.debug("move_accepted player={} move={}", p2.nickname(), move);
+            }
 
-            int idx = indexOf(player);
+            if (m1 == null) {
+                send(p1, ReplyTemplates.yourTurn(p1.channel().alloc(), variant));
+            }
+        }
 
-            if (idx == 1) {
-                if (m1 != null) {
-                    log.debug("duplicate_move player={} move={}", p1.nickname(), move);
-                    send(p1, "You already made a move. Waiting for opponent...\r\n");
-                    return;
-                }
-                m1 = move;
-                log.debug("move_accepted player={} move={}", p1.nickname(), move);
+        // If the other player hasn't moved yet - just wait
+        if (m1 == null || m2 == null) {
+            send(player, Reply.WAITING_MOVE.encoded(player.channel().alloc()));
+            return;
+        }
 
-                // UX: if the second player hasn't moved yet - remind them it's their turn
-                if (m2 == null) {
-                    send(p2, "Your turn. Type ROCK/PAPER/SCISSORS:\r\n");
-                }
-            } else {
-                if (m2 != null) {
-                    log.debug("duplicate_move player={} move={}", p2.nickname(), move);
-                    send(p2, "You already made a move. Waiting for opponent...\r\n");
-                    return;
-                }
-                m2 = move;
-                log.debug("move_accepted player={} move={}", p2.nickname(), move);
+        // Both moves received - calculate result
+        Move a = m1, b = m2;
+        resetRound();
+        Outcome o1 = RpsRules.outcome(a, b);
 
-                if (m1 == null) {
-                    send(p1, "Your turn. Type ROCK/PAPER/SCISSORS:\r\n");
-                }
-            }
+        if (o1 == Outcome.DRAW) {
+            draws++;
+            roundPlayed(a, b);
 
-            // If the other player hasn't moved yet - just wait
-            if (m1 == null || m2 == null) {
-                send(player, "Waiting for opponent's move...\r\n");
-                return;
+            if (debugSampled()) {
+                log.debug("round_draw p1Move={} p2Move={}", a, b);
             }
 
-            // Both moves received - calculate result
-            Outcome o1 = RpsRules.outcome(m1, m2);
-            Outcome o2 = invert(o1);
-
-            if (o1 == Outcome.DRAW) {
-                Move a = m1, b = m2;
-                resetRound();
+            send(p1, ReplyTemplates.draw(p1.channel().alloc(), variant, a));
+            send(p2, ReplyTemplates.draw(p2.channel().alloc(), variant, b));
+            return;
+        }
 
-                log.info("round_draw p1Move={} p2Move={}", a, b);
+        roundDecided(a, b, o1);
+    }
 
-                send(p1, "Draw! You chose " + a + ", opponent chose " + b + ". Try again: ROCK/PAPER/SCISSORS\r\n");
-                send(p2, "Draw! You chose " + b + ", opponent chose " + a + ". Try again: ROCK/PAPER/SCISSORS\r\n");
-                return;
+    /** Score the round and send each player one reply: the round, the score and what comes next. */
+    private void roundDecided(Move a, Move b, Outcome o1) {
+        int w1 = p1Wins(score) + (o1 == Outcome.WIN ? 1 : 0);
+        int w2 = p2Wins(score) + (o1 == Outcome.LOSE ? 1 : 0);
+        int round = rounds(score) + 1;
+        score = score(w1, w2, round);
+        int bits = variant.bits();
+        history |= (long) (variant.code(a) | variant.code(b) << bits) << (2 * bits * (round - 1));
+        boolean over = w1 == winsNeeded || w2 == winsNeeded;
+        roundPlayed(a, b);
+
+        log.info("round_finished p1Move={} p2Move={} p1Result={} p2Result={} score={}-{} round={}",
+                a, b, o1, invert(o1), w1, w2, round);
+
+        boolean keepAlive = options.keepAlive();
+        if (winsNeeded == 1) {
+            // a single game keeps its classic reply
+            if (keepAlive) {
+                send(p1, ReplyTemplates.resultNext(p1.channel().alloc(), a, b));
+                send(p2, ReplyTemplates.resultNext(p2.channel().alloc(), b, a));
+            } else {
+                send(p1, ReplyTemplates.result(p1.channel().alloc(), a, b));
+                send(p2, ReplyTemplates.result(p2.channel().alloc(), b, a));
             }
+        } else {
+            int bestOf = bestOf();
+            send(p1, ReplyTemplates.round(p1.channel().alloc(), variant, round, a, b, w1, w2, bestOf, over, keepAlive));
+            send(p2, ReplyTemplates.round(p2.channel().alloc(), variant, round, b, a, w2, w1, bestOf, over, keepAlive));
+        }
+        if (!over) {
+            return;
+        }
 
-            log.info("round_finished p1Move={} p2Move={} p1Result={} p2Result={}",
-                    m1, m2, o1, o2);
+        try {
+            if (w1 > w2) {
+                listener.onResult(this, p1, p2);
+            } else {
+                listener.onResult(this, p2, p1);
+            }
+        } catch (RuntimeException e) {
+            log.warn("session_listener_failed", e);
+        }
 
-            finishByResult(m1, m2, o1, o2);
-        });
+        finish(FinishReason.RESULT, null);
     }
 
     /**
@@ -157,10 +441,10 @@ public final class GameSession {
 
             log.info("idle_timeout_loss loser={} winner={}", nick(p), winner.nickname());
 
-            send(p, "Timeout. You LOSE.\r\nGame over. Bye!\r\n");
-            send(winner, "Opponent timeout. You WIN!\r\nGame over. Bye!\r\n");
+            send(p, Reply.TIMEOUT_LOSE.encoded());
+            send(winner, (options.keepAlive() ? Reply.OPPONENT_TIMEOUT_WIN_NEXT : Reply.OPPONENT_TIMEOUT_WIN).encoded());
 
-            finish("idle_timeout");
+            finish(FinishReason.IDLE_TIMEOUT, p);
         });
     }
 
@@ -184,52 +468,213 @@ public final class GameSession {
                     nick(leaver), winner.nickname());
 
             if (winner.channel().isActive()) {
-                send(winner, "Opponent disconnected. You WIN!\r\nGame over. Bye!\r\n");
+                send(winner, (options.keepAlive() ? Reply.OPPONENT_DISCONNECTED_WIN_NEXT : Reply.OPPONENT_DISCONNECTED_WIN)
+                        .encoded());
             }
 
-            finish("disconnect");
+            finish(FinishReason.DISCONNECT, leaver);
         });
     }
 
-    private void finishByResult(Move p1Move, Move p2Move, Outcome o1, Outcome o2) {
-        if (finished) {
-            return;
-        }
+    /**
+     * {@code leaver}'s connection dropped but it holds a resume token: tell the opponent and keep the seat.
+     * The caller ends the wait with {@link #onDisconnect} once the grace period is over; by then a
+     * {@link #resume} has replaced {@code leaver}, which makes that call a no-op.
+     */
+    public void park(Player leaver) {
+        runOnOwner(() -> {
+            if (finished || isNotParticipant(leaver)) {
+                return;
+            }
+            log.info("player_parked leaver={}", nick(leaver));
+            send(other(leaver), Reply.OPPONENT_AWAY.encoded());
+        });
+    }
+
+    /**
+     * Rebind seat {@code seat} (1 or 2) to {@code returning}, a new connection of the same player, and
+     * carry on where the round stood. Refused (with a reply and a close) once the session is over or while
+     * the seat's old connection is still open. {@code decided} is told on the owner loop whether the seat
+     * was taken back, before anything is sent. Can be called from any thread.
+     */
+    public void resume(int seat, Player returning, Consumer<Boolean> decided) {
+        runOnOwner(() -> {
+            Player old = seat == 1 ? p1 : p2;
+            if (finished || old.channel().isActive()) {
+                log.info("resume_refused seat={} finished={}", seat, finished);
+                decided.accept(false);
+                Channel ch = returning.channel();
+                ch.writeAndFlush(Reply.RESUME_FAILED.encoded()).addListener(f -> ch.close());
+                return;
+            }
+            if (seat == 1) {
+                p1 = returning;
+            } else {
+                p2 = returning;
+            }
+            decided.accept(true);
+            Player opponent = other(returning);
+            int mine = seat == 1 ? p1Wins(score) : p2Wins(score);
+            int theirs = seat == 1 ? p2Wins(score) : p1Wins(score);
+            boolean moved = (seat == 1 ? m1 : m2) != null;
+            log.info("player_resumed player={}({}) moved={}", returning.nickname(), shortId(returning.channel()), moved);
+
+            send(returning, ReplyTemplates.resumed(returning.channel().alloc(), opponent.nickname(),
+                    mine, theirs, bestOf()));
+            send(returning, moved ? Reply.WAITING_MOVE.encoded()
+                    : ReplyTemplates.yourTurn(returning.channel().alloc(), variant));
+            send(opponent, Reply.OPPONENT_BACK.encoded());
+        });
+    }
+
+    /**
+     * Keep-alive only: {@code player} wants to play the same opponent again. The first offer is relayed
+     * to the opponent; once both have asked, a new session for the same pair (and so the same owner loop),
+     * variant and series length is handed to {@code launch} on the owner loop. Can be called from any thread.
+     */
+    public void offerRematch(Player player, Consumer<GameSession> launch) {
+        runOnOwner(() -> {
+            if (!finished || isNotParticipant(player)) {
+                log.debug("rematch_ignored player={} finished={}", nick(player), finished);
+                return;
+            }
+            Player opponent = other(player);
+            if (rematchClosed || !opponent.channel().isActive()) {
+                send(player, Reply.REMATCH_UNAVAILABLE.encoded());
+                return;
+            }
+
+            if (indexOf(player) == 1) {
+                p1Rematch = true;
+            } else {
+                p2Rematch = true;
+            }
+            if (!p1Rematch || !p2Rematch) {
+                log.info("rematch_offered by={}", player.nickname());
+                send(player, Reply.REMATCH_WAITING.encoded());
+                send(opponent, Reply.REMATCH_OFFERED.encoded());
+                return;
+            }
 
-        send(p1, "You chose " + p1Move + ", opponent chose " + p2Move + ". You " + o1 + "!\r\nGame over. Bye!\r\n");
-        send(p2, "You chose " + p2Move + ", opponent chose " + p1Move + ". You " + o2 + "!\r\nGame over. Bye!\r\n");
+            rematchClosed = true;
+            GameSession next = new GameSession(p1, p2, listener, options, id);
+            next.variant = variant;
+            next.winsNeeded = winsNeeded;
+            log.info("rematch_agreed next_sess={}", next.id());
+            launch.accept(next);
+        });
+    }
 
-        finish("result");
+    /**
+     * Keep-alive only: {@code player} will not rematch (it asked for a new opponent, quit or disconnected).
+     * An opponent who already offered is told. {@code then} runs on the owner loop unless a rematch has
+     * already been agreed, in which case the player is about to be put into that game instead.
+     * Can be called from any thread.
+     */
+    public void declineRematch(Player player, Runnable then) {
+        runOnOwner(() -> {
+            if (isNotParticipant(player)) {
+                return;
+            }
+            if (rematchClosed && p1Rematch && p2Rematch) {
+                log.debug("decline_ignored_rematch_agreed player={}", nick(player));
+                return;
+            }
+            boolean opponentOffered = indexOf(player) == 1 ? p2Rematch : p1Rematch;
+            if (!rematchClosed && opponentOffered) {
+                send(other(player), Reply.REMATCH_UNAVAILABLE.encoded());
+            }
+            rematchClosed = true;
+            then.run();
+        });
     }
 
     /**
-     * Idempotent finish: closes both channels exactly once.
+     * Idempotent finish: closes both channels exactly once, or in keep-alive mode hands every open channel
+     * except {@code dropped}'s back to its handler.
      */
-    private void finish(String reason) {
+    private void finish(FinishReason reason, Player dropped) {
         if (finished) {
             return;
         }
         finished = true;
+        rematchClosed = reason != FinishReason.RESULT;
 
-        log.info("session_finished {} reason={}", sessionKey(), reason);
+        log.info("session_finished {} reason={}", sessionKey(), reason.tag());
+        try {
+            listener.onFinish(this, reason);
+        } catch (RuntimeException e) {
+            log.warn("session_listener_failed", e);
+        }
 
+        // pending farewell messages must be flushed before close()
+        flushPending();
+        if (options.keepAlive()) {
+            release(p1, dropped);
+            release(p2, dropped);
+            return;
+        }
         // close() is safe even if already closed/inactive
         p1.channel().close();
         p2.channel().close();
     }
 
+    private void release(Player p, Player dropped) {
+        Channel ch = p.channel();
+        if (!ch.isActive() || (dropped != null && dropped.channel() == ch)) {
+            ch.close();
+            return;
+        }
+        // dispatched to the channel's loop, behind the flush above
+        ch.pipeline().fireUserEventTriggered(new SessionEnded(this));
+    }
+
+    /** {@link SessionListener#onMove}, as soon as the move is taken for the round. */
+    private void movePlayed(int seat, Move move) {
+        try {
+            listener.onMove(this, seat, move);
+        } catch (RuntimeException e) {
+            log.warn("session_listener_failed", e);
+        }
+    }
+
+    /** {@link SessionListener#onRound}, once {@link #score()} and {@link #draws()} include the round. */
+    private void roundPlayed(Move a, Move b) {
+        try {
+            listener.onRound(this, a, b);
+        } catch (RuntimeException e) {
+            log.warn("session_listener_failed", e);
+        }
+    }
+
     private void resetRound() {
         m1 = null;
         m2 = null;
     }
 
-    private void send(Player p, String msg) {
+    private void send(Player p, ByteBuf msg) {
         Channel ch = p.channel();
         if (ch.isActive()) {
-            ch.writeAndFlush(msg);
+            ch.write(msg, ch.voidPromise());
+            if (ch == p1.channel()) {
+                p1Dirty = true;
+            } else {
+                p2Dirty = true;
+            }
         } else {
-            log.debug("send_skipped_inactive {} to={}({})",
-                    sessionKey(), p.nickname(), shortId(ch));
+            msg.release();
+            log.debug("send_skipped_inactive to={}({})", p.nickname(), shortId(ch));
+        }
+    }
+
+    private void flushPending() {
+        if (p1Dirty) {
+            p1Dirty = false;
+            p1.channel().flush();
+        }
+        if (p2Dirty) {
+            p2Dirty = false;
+            p2.channel().flush();
         }
     }
 
@@ -254,23 +699,27 @@ public final class GameSession {
         };
     }
 
+    /** Debug logging of per-move events, kept for one session in {@code rps.logging.debug-sample-every}. */
+    private boolean debugSampled() {
+        return log.isDebugEnabled() && LogContext.sampled(id);
+    }
+
     private void runOnOwner(Runnable task) {
         if (owner.inEventLoop()) {
-            MDC.put("sess", sessionKey());
-            try {
-                task.run();
-            } finally {
-                MDC.remove("sess");
-            }
+            runScoped(task);
         } else {
-            owner.execute(() -> {
-                MDC.put("sess", sessionKey());
-                try {
-                    task.run();
-                } finally {
-                    MDC.remove("sess");
-                }
-            });
+            owner.execute(() -> runScoped(task));
+        }
+    }
+
+    private void runScoped(Runnable task) {
+        LogContext lc = LogContext.current();
+        long outer = lc.enterSession(id);
+        try {
+            task.run();
+        } finally {
+            flushPending();
+            lc.exitSession(outer);
         }
     }
 
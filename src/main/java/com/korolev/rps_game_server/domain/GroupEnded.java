@@ -0,0 +1,7 @@
+package com.korolev.rps_game_server.domain;
+
+/**
+ * Pipeline user event fired by a keep-alive {@link GroupSession} on every channel still open when it
+ * finishes, instead of closing it. Delivered on the channel's own event loop, after the final replies.
+ */
+public record GroupEnded(GroupSession group) {}
@@ -0,0 +1,384 @@
+package com.korolev.rps_game_server.domain;
+
+import com.korolev.rps_game_server.logging.LogContext;
+import com.korolev.rps_game_server.protocol.Reply;
+import com.korolev.rps_game_server.protocol.ReplyTemplates;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A free-for-all ({@code /ffa}) between {@value #MIN_PLAYERS} to {@value #MAX_PLAYERS} players, confined
+ * to the owner event loop like a {@link GameSession}.
+ * <p>
+ * Every round, all players still in move at once. When the round is complete, the moves that were played
+ * decide it. A move is beaten if another played move beats it, and its players are out. If every played
+ * move is beaten (all three classic moves, say), or only one move was played, nobody is out and the round
+ * is replayed. The last player in wins.
+ * <p>
+ * Seats are bit positions in a long: who is still in, and who has moved this round, are two longs, and
+ * the round is complete when they are equal. The played moves are an int with a bit per move ordinal.
+ * A move's {@link RpsRules#beaters beaters} mask against that set decides whether it is beaten, so a round
+ * is settled in one pass over the seats and one over the distinct moves. A round's result is the same
+ * for everyone, so it is encoded once and every player is written a duplicate of the shared buffer.
+ * <p>
+ * A player who leaves or idles out is out at once; the others are told, and the round goes on without
+ * them. A player knocked out keeps receiving the rounds until the end. Free-for-alls are not rated,
+ * cannot be watched or resumed, and have no rematch: a keep-alive session ({@code rps.session.keep-alive})
+ * fires {@link GroupEnded} on the open channels, and the handler puts those players back in the queue.
+ */
+public final class GroupSession {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupSession.class);
+
+    private static final Move[] MOVES = Move.values();
+
+    public static final int MIN_PLAYERS = 3;
+    /** Seats are the bits of a long. */
+    public static final int MAX_PLAYERS = 64;
+
+    private final long id = GameSession.nextId();
+    private final Player[] players;
+    private final EventExecutor owner;
+    private final boolean keepAlive;
+    private final Variant variant;
+
+    /** Seats still in the game. */
+    private long alive;
+    /** Seats still in that have moved this round. */
+    private long moved;
+    /** This round's move by seat, where {@link #moved} has the bit. */
+    private final Move[] moves;
+    /** Players per move ordinal in the round being settled; all zero between rounds. */
+    private final int[] counts = new int[MOVES.length];
+
+    private int round;
+    private int draws;
+    private boolean finished;
+
+    /** Seats written to during the current owner task; flushed once when the task ends. */
+    private long dirty;
+
+    /**
+     * @param players in seat order; the owner loop is the last player's, i.e. the loop of the player whose
+     *                arrival completed the group
+     */
+    public GroupSession(Player[] players, SessionOptions options) {
+        if (players.length < MIN_PLAYERS || players.length > MAX_PLAYERS) {
+            throw new IllegalArgumentException("a free-for-all needs " + MIN_PLAYERS + ".." + MAX_PLAYERS
+                    + " players, got " + players.length);
+        }
+        this.players = players.clone();
+        for (Player p : this.players) {
+            Objects.requireNonNull(p);
+        }
+        this.owner = this.players[players.length - 1].channel().eventLoop();
+        this.keepAlive = options.keepAlive();
+        this.variant = options.variant();
+        this.moves = new Move[players.length];
+        this.alive = seats(players.length);
+
+        log.info("group_created sess={} players={} owner={}", id, players.length, owner);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    /** The players in seat order; do not modify. */
+    public Player[] players() {
+        return players;
+    }
+
+    /** Event loop all session state is confined to. */
+    public EventExecutor owner() {
+        return owner;
+    }
+
+    public Variant variant() {
+        return variant;
+    }
+
+    /** Whether the channels stay open after the game. */
+    public boolean keepAlive() {
+        return keepAlive;
+    }
+
+    /** Bit per seat still in the game. Owner loop. */
+    public long alive() {
+        return alive;
+    }
+
+    /** Rounds played so far, drawn ones included. Owner loop. */
+    public int round() {
+        return round;
+    }
+
+    /** Drawn rounds so far. Owner loop. */
+    public int draws() {
+        return draws;
+    }
+
+    /** Announce the players to everyone and open the first round. Can be called from any thread. */
+    public void start() {
+        runOnOwner(() -> {
+            if (finished) {
+                log.debug("group_start_ignored_finished");
+                return;
+            }
+            log.info("group_started players={} variant={}", players.length, variant);
+            broadcast(ReplyTemplates.groupStarted(alloc(), players, variant), 0);
+        });
+    }
+
+    /** Player submitted a move. Can be called from any thread. */
+    public void submitMove(Player player, Move move) {
+        if (!owner.inEventLoop()) {
+            owner.execute(() -> submitMove(player, move));
+            return;
+        }
+        LogContext lc = LogContext.current();
+        long outer = lc.enterSession(id);
+        try {
+            applyMove(player, move);
+        } finally {
+            flushPending();
+            lc.exitSession(outer);
+        }
+    }
+
+    private void applyMove(Player player, Move move) {
+        if (finished) {
+            log.debug("move_ignored_finished from={}", player.nickname());
+            return;
+        }
+        int seat = seatOf(player);
+        if (seat < 0) {
+            log.warn("move_from_non_participant ch={}", shortId(player.channel()));
+            return;
+        }
+        long bit = 1L << seat;
+        if ((alive & bit) == 0) {
+            send(seat, Reply.FFA_ALREADY_OUT.encoded(player.channel().alloc()));
+            return;
+        }
+        if (!variant.allows(move)) {
+            send(seat, ReplyTemplates.badMove(player.channel().alloc(), variant));
+            return;
+        }
+        if ((moved & bit) != 0) {
+            send(seat, Reply.ALREADY_MOVED.encoded(player.channel().alloc()));
+            return;
+        }
+        moves[seat] = move;
+        moved |= bit;
+        if (moved != alive) {
+            send(seat, Reply.FFA_WAITING_MOVES.encoded(player.channel().alloc()));
+            return;
+        }
+        settleRound();
+    }
+
+    /** Everyone still in has moved: knock out the beaten moves' players, or replay if no move stands out. */
+    private void settleRound() {
+        long seats = moved;
+        moved = 0;
+        int present = 0;
+        for (long s = seats; s != 0; s &= s - 1) {
+            int m = moves[Long.numberOfTrailingZeros(s)].ordinal();
+            counts[m]++;
+            present |= 1 << m;
+        }
+        int beaten = 0;
+        for (int p = present; p != 0; p &= p - 1) {
+            int m = Integer.numberOfTrailingZeros(p);
+            if ((RpsRules.beaters(MOVES[m]) & present) != 0) {
+                beaten |= 1 << m;
+            }
+        }
+        round++;
+
+        long out = 0;
+        if (beaten != 0 && beaten != present) {
+            for (long s = seats; s != 0; s &= s - 1) {
+                int seat = Long.numberOfTrailingZeros(s);
+                if ((beaten & 1 << moves[seat].ordinal()) != 0) {
+                    out |= 1L << seat;
+                }
+            }
+            alive &= ~out;
+        } else {
+            draws++;
+        }
+        int winner = Long.bitCount(alive) == 1 ? Long.numberOfTrailingZeros(alive) : -1;
+
+        log.info("group_round round={} moves={} out={} left={}",
+                round, Integer.bitCount(present), Long.bitCount(out), Long.bitCount(alive));
+        broadcast(ReplyTemplates.groupRound(alloc(), variant, round, counts, present, players,
+                out, winner, keepAlive), 0);
+        for (int p = present; p != 0; p &= p - 1) {
+            counts[Integer.numberOfTrailingZeros(p)] = 0;
+        }
+        for (long s = out; s != 0; s &= s - 1) {
+            int seat = Long.numberOfTrailingZeros(s);
+            send(seat, Reply.FFA_OUT.encoded());
+        }
+        if (winner >= 0) {
+            log.info("group_won winner={} rounds={}", players[winner].nickname(), round);
+            finish(FinishReason.RESULT);
+        }
+    }
+
+    /**
+     * Idle timeout from Netty: a player still in who has not moved this round is out. One already out is
+     * only watching, so its connection is closed.
+     */
+    public void onIdle(Player p) {
+        runOnOwner(() -> {
+            int seat = finished ? -1 : seatOf(p);
+            if (seat < 0) {
+                log.debug("group_idle_ignored player={} finished={}", p.nickname(), finished);
+                return;
+            }
+            long bit = 1L << seat;
+            if ((moved & bit) != 0) {
+                log.debug("idle_ignored_player_already_moved player={}", p.nickname());
+                return;
+            }
+            Channel ch = p.channel();
+            if ((alive & bit) == 0) {
+                ch.writeAndFlush(Reply.TIMEOUT_GENERIC.encoded()).addListener(f -> ch.close());
+                return;
+            }
+            log.info("group_idle_out player={}", p.nickname());
+            ch.writeAndFlush(Reply.FFA_TIMEOUT_OUT.encoded()).addListener(f -> ch.close());
+            drop(seat, true);
+        });
+    }
+
+    /** Player channel disconnected, or the player quit: out of the game. */
+    public void onDisconnect(Player leaver) {
+        runOnOwner(() -> {
+            int seat = finished ? -1 : seatOf(leaver);
+            if (seat < 0 || (alive & 1L << seat) == 0) {
+                log.debug("group_disconnect_ignored player={} finished={}", leaver.nickname(), finished);
+                return;
+            }
+            log.info("group_player_left player={}", leaver.nickname());
+            drop(seat, false);
+        });
+    }
+
+    /** Take {@code seat} out of the game and carry on with the others: a winner, or a round now complete. */
+    private void drop(int seat, boolean timedOut) {
+        long bit = 1L << seat;
+        alive &= ~bit;
+        moved &= ~bit;
+        broadcast(ReplyTemplates.groupLeft(alloc(), players[seat].nickname(), timedOut), bit);
+        if (Long.bitCount(alive) == 1) {
+            Player winner = players[Long.numberOfTrailingZeros(alive)];
+            log.info("group_won winner={} rounds={}", winner.nickname(), round);
+            broadcast(ReplyTemplates.groupWinner(winner.channel().alloc(), winner.nickname(), keepAlive), bit);
+            finish(timedOut ? FinishReason.IDLE_TIMEOUT : FinishReason.DISCONNECT);
+        } else if (alive != 0 && moved == alive) {
+            settleRound();
+        }
+    }
+
+    /** Closes every channel exactly once, or in keep-alive mode hands every open one back to its handler. */
+    private void finish(FinishReason reason) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        log.info("group_finished players={} rounds={} reason={}", players.length, round, reason.tag());
+
+        // the final replies must be flushed before close()
+        flushPending();
+        for (Player p : players) {
+            Channel ch = p.channel();
+            if (keepAlive && ch.isActive()) {
+                // dispatched to the channel's loop, behind the flush above
+                ch.pipeline().fireUserEventTriggered(new GroupEnded(this));
+            } else {
+                ch.close();
+            }
+        }
+    }
+
+    /** Write one shared buffer to every open seat but {@code except}'s, then let go of it. */
+    private void broadcast(ByteBuf line, long except) {
+        try {
+            for (int seat = 0; seat < players.length; seat++) {
+                if ((except & 1L << seat) == 0) {
+                    send(seat, line.retainedDuplicate());
+                }
+            }
+        } finally {
+            line.release();
+        }
+    }
+
+    private void send(int seat, ByteBuf msg) {
+        Channel ch = players[seat].channel();
+        if (ch.isActive()) {
+            ch.write(msg, ch.voidPromise());
+            dirty |= 1L << seat;
+        } else {
+            msg.release();
+        }
+    }
+
+    private void flushPending() {
+        for (long s = dirty; s != 0; s &= s - 1) {
+            players[Long.numberOfTrailingZeros(s)].channel().flush();
+        }
+        dirty = 0;
+    }
+
+    private int seatOf(Player p) {
+        Channel ch = p.channel();
+        for (int i = 0; i < players.length; i++) {
+            if (players[i].channel() == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void runOnOwner(Runnable task) {
+        if (owner.inEventLoop()) {
+            runScoped(task);
+        } else {
+            owner.execute(() -> runScoped(task));
+        }
+    }
+
+    private void runScoped(Runnable task) {
+        LogContext lc = LogContext.current();
+        long outer = lc.enterSession(id);
+        try {
+            task.run();
+        } finally {
+            flushPending();
+            lc.exitSession(outer);
+        }
+    }
+
+    /** Allocator of the owner's channel, for the shared replies. */
+    private ByteBufAllocator alloc() {
+        return players[players.length - 1].channel().alloc();
+    }
+
+    private static long seats(int n) {
+        return n == MAX_PLAYERS ? -1L : (1L << n) - 1;
+    }
+
+    private String shortId(Channel ch) {
+        return ch.id().asShortText();
+    }
+}
@@ -0,0 +1,338 @@
+package com.korolev.rps_game_server.domain;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.util.AttributeKey;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Who is online under which nickname, plus the ways to pick opponents besides the open queue: named rooms
+ * ({@code /join}), direct challenges ({@code /challenge}, {@code /accept}) and the free-for-all table
+ * ({@code /ffa}).
+ * <p>
+ * Every structure is a {@link ConcurrentHashMap} updated with single atomic calls (putIfAbsent, compute,
+ * conditional remove), so the loops of different players never take a shared lock and each operation is
+ * O(1) whatever the churn. A player's own lobby state (its room, its outgoing challenge) lives in a
+ * {@link Member} attached to its channel, like the matchmaker's ticket, and is only written by that
+ * player's loop except where a compare-and-set settles a race with the other side.
+ * <p>
+ * A room is a private two-seat queue: the first player to join waits in it, the second is paired with
+ * them. A challenge is one pending offer per target; the challenger leaves the open queue while it
+ * stands, and the target takes it with /accept. The free-for-all table gathers players until it holds
+ * {@code rps.ffa.players}; it is one immutable array swapped by compare-and-set, so the player who
+ * completes it takes everyone out at once.
+ */
+@Component
+public final class Lobby implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(Lobby.class);
+
+    private static final AttributeKey<Member> MEMBER = AttributeKey.valueOf("lobbyMember");
+
+    /** Online nicknames, lower-cased so uniqueness ignores case (room names likewise). */
+    private final ConcurrentHashMap<String, Member> byNick = new ConcurrentHashMap<>();
+    /** The player waiting in each room. */
+    private final ConcurrentHashMap<String, Member> rooms = new ConcurrentHashMap<>();
+    /** Pending challenge by target. */
+    private final ConcurrentHashMap<Member, Member> challenges = new ConcurrentHashMap<>();
+    /** Members waiting for the next free-for-all, in arrival order. */
+    private final AtomicReference<Member[]> table = new AtomicReference<>(NO_MEMBERS);
+
+    private static final Member[] NO_MEMBERS = new Member[0];
+
+    private final LongAdder roomMatches = new LongAdder();
+    private final LongAdder challengeMatches = new LongAdder();
+    private final LongAdder freeForAlls = new LongAdder();
+
+    /** A registered player and where it is waiting outside the open queue. */
+    public static final class Member {
+        private final Player player;
+        private final String key;
+        /** Room this member waits in; cleared by whoever takes it out of the room. */
+        private volatile String room;
+        /** Target of this member's pending challenge; cleared by the target's accept or by a withdraw. */
+        private final AtomicReference<Member> challenging = new AtomicReference<>();
+        /** Seated at the free-for-all table; cleared by whoever takes it off the table. */
+        private volatile boolean atTable;
+
+        private Member(Player player, String key) {
+            this.player = player;
+            this.key = key;
+        }
+
+        public Player player() {
+            return player;
+        }
+
+        public String room() {
+            return room;
+        }
+
+        public Member challenging() {
+            return challenging.get();
+        }
+
+        public boolean atTable() {
+            return atTable;
+        }
+
+        /** Waiting in a room, on a challenge or for a free-for-all, i.e. not in the open queue. */
+        public boolean away() {
+            return room != null || challenging.get() != null || atTable;
+        }
+    }
+
+    /**
+     * Claim {@code player}'s nickname for as long as its connection lives.
+     *
+     * @return the new member, or null if another connection holds the nickname
+     */
+    public Member register(Player player) {
+        Member m = new Member(player, player.nickname().toLowerCase(Locale.ROOT));
+        if (byNick.putIfAbsent(m.key, m) != null) {
+            return null;
+        }
+        player.channel().attr(MEMBER).set(m);
+        return m;
+    }
+
+    /** The member behind a connection, or null before its nickname is registered (and for bots). */
+    public Member member(Player player) {
+        return player.channel().attr(MEMBER).get();
+    }
+
+    public Member find(String nickname) {
+        return byNick.get(nickname.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The connection is gone: release the nickname, the room seat and both directions of challenges.
+     * Every step is a conditional remove, so a newer registration of the same nickname is left alone.
+     */
+    public void unregister(Player player) {
+        Member m = player.channel().attr(MEMBER).getAndSet(null);
+        if (m == null) {
+            return;
+        }
+        byNick.remove(m.key, m);
+        String room = m.room;
+        if (room != null) {
+            rooms.remove(room, m);
+        }
+        leaveFreeForAll(m);
+        withdraw(m);
+        release(m);
+    }
+
+    /**
+     * {@code player} was paired (or is otherwise no longer waiting): a challenge still pending for it
+     * can never be accepted, so its challenger is sent {@link ChallengeGone}. Called on the player's loop.
+     */
+    public void engaged(Player player) {
+        Member m = member(player);
+        if (m != null) {
+            release(m);
+        }
+    }
+
+    private void release(Member target) {
+        Member challenger = challenges.remove(target);
+        if (challenger != null && challenger.challenging.compareAndSet(target, null)) {
+            challenger.player.channel().pipeline().fireUserEventTriggered(new ChallengeGone(target.player.nickname()));
+        }
+    }
+
+    // -------- rooms --------
+
+    /**
+     * Take a seat in {@code room}.
+     *
+     * @return the member who was waiting there, now out of the room and to be paired with {@code me};
+     *         null if {@code me} is now the one waiting
+     */
+    public Member join(Member me, String room) {
+        String key = room.toLowerCase(Locale.ROOT);
+        // set before the seat is visible, so whoever takes the seat can clear it
+        me.room = key;
+        Member[] waiting = new Member[1];
+        rooms.compute(key, (k, w) -> {
+            if (w == null || w == me || !w.player.channel().isActive()) {
+                return me;
+            }
+            waiting[0] = w;
+            return null;
+        });
+        Member opponent = waiting[0];
+        if (opponent == null) {
+            return null;
+        }
+        me.room = null;
+        opponent.room = null;
+        roomMatches.increment();
+        log.info("lobby_room_matched room={} p1={} p2={}", room, opponent.player.nickname(), me.player.nickname());
+        return opponent;
+    }
+
+    /** @return whether {@code me} was still waiting in its room; false once someone joined it first */
+    public boolean leaveRoom(Member me) {
+        String room = me.room;
+        if (room == null || !rooms.remove(room, me)) {
+            return false;
+        }
+        me.room = null;
+        return true;
+    }
+
+    // -------- free-for-all --------
+
+    /**
+     * Sit at the free-for-all table. Members whose connection is gone are dropped from it on the way.
+     *
+     * @return everyone at the table, {@code me} last, once {@code me} makes it {@code size} players; they
+     *         are off the table and to be put into one game. Null if {@code me} is now waiting.
+     */
+    public Member[] joinFreeForAll(Member me, int size) {
+        // set before the seat is visible, so whoever takes the table can clear it
+        me.atTable = true;
+        while (true) {
+            Member[] seated = table.get();
+            Member[] next = new Member[seated.length + 1];
+            int n = 0;
+            for (Member m : seated) {
+                if (m != me && m.player.channel().isActive()) {
+                    next[n++] = m;
+                }
+            }
+            next[n++] = me;
+            if (n < size) {
+                if (table.compareAndSet(seated, n == next.length ? next : Arrays.copyOf(next, n))) {
+                    return null;
+                }
+                continue;
+            }
+            if (table.compareAndSet(seated, NO_MEMBERS)) {
+                Member[] players = Arrays.copyOf(next, n);
+                for (Member m : players) {
+                    m.atTable = false;
+                }
+                freeForAlls.increment();
+                log.info("lobby_ffa_gathered players={}", n);
+                return players;
+            }
+        }
+    }
+
+    /** @return whether {@code me} was still at the table; false once a free-for-all took it first */
+    public boolean leaveFreeForAll(Member me) {
+        while (me.atTable) {
+            Member[] seated = table.get();
+            int at = -1;
+            for (int i = 0; i < seated.length; i++) {
+                if (seated[i] == me) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                return false;
+            }
+            Member[] next = new Member[seated.length - 1];
+            System.arraycopy(seated, 0, next, 0, at);
+            System.arraycopy(seated, at + 1, next, at, next.length - at);
+            if (table.compareAndSet(seated, next)) {
+                me.atTable = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Players waiting at the free-for-all table. */
+    public int waitingFreeForAll() {
+        return table.get().length;
+    }
+
+    // -------- challenges --------
+
+    /** @return false if {@code target} already has a pending challenge */
+    public boolean challenge(Member me, Member target) {
+        // set before the offer is visible, so an accept racing with us can always settle it by CAS
+        me.challenging.set(target);
+        if (challenges.putIfAbsent(target, me) != null) {
+            me.challenging.set(null);
+            return false;
+        }
+        return true;
+    }
+
+    public boolean hasChallenge(Member me) {
+        return challenges.containsKey(me);
+    }
+
+    /**
+     * Take the challenge pending for {@code me}.
+     *
+     * @return the challenger, now committed to play {@code me}; null if there was none or it was withdrawn
+     */
+    public Member accept(Member me) {
+        Member challenger = challenges.remove(me);
+        if (challenger == null || !challenger.challenging.compareAndSet(me, null)) {
+            return null;
+        }
+        challengeMatches.increment();
+        log.info("lobby_challenge_accepted challenger={} target={}", challenger.player.nickname(), me.player.nickname());
+        return challenger;
+    }
+
+    /** @return whether {@code me} had a challenge out and took it back before the target accepted */
+    public boolean withdraw(Member me) {
+        Member target = me.challenging.get();
+        if (target == null || !me.challenging.compareAndSet(target, null)) {
+            return false;
+        }
+        challenges.remove(target, me);
+        return true;
+    }
+
+    public int online() {
+        return byNick.size();
+    }
+
+    public int waitingRooms() {
+        return rooms.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rps.lobby.players", this, Lobby::online)
+                .description("Connections holding a nickname")
+                .register(registry);
+        Gauge.builder("rps.lobby.rooms", this, Lobby::waitingRooms)
+                .description("Rooms with a player waiting for a second one")
+                .register(registry);
+        FunctionCounter.builder("rps.lobby.matches", roomMatches, LongAdder::sum)
+                .tag("kind", "room")
+                .description("Sessions paired outside the open queue")
+                .register(registry);
+        FunctionCounter.builder("rps.lobby.matches", challengeMatches, LongAdder::sum)
+                .tag("kind", "challenge")
+                .description("Sessions paired outside the open queue")
+                .register(registry);
+        FunctionCounter.builder("rps.lobby.matches", freeForAlls, LongAdder::sum)
+                .tag("kind", "ffa")
+                .description("Sessions paired outside the open queue")
+                .register(registry);
+        Gauge.builder("rps.lobby.ffa.waiting", this, Lobby::waitingFreeForAll)
+                .description("Players at the free-for-all table")
+                .register(registry);
+    }
+}
@@ -0,0 +1,12 @@
+package com.korolev.rps_game_server.domain;
+
+import java.util.List;
+
+/**
+ * Receives sessions paired by a {@link Matchmaker} batch tick. Called on the tick thread; the sessions
+ * are created but not started, and their players may live on any event loop.
+ */
+public interface MatchListener {
+
+    void onMatched(List<GameSession> sessions);
+}
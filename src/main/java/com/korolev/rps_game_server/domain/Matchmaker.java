@@ -1,18 +1,181 @@
 package com.korolev.rps_game_server.domain;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import io.netty.channel.Channel;
-import java.util.concurrent.atomic.AtomicReference;
-import org.springframework.stereotype.Component;
+import io.netty.util.AttributeKey;
+import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.LongSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@Component
-public final class Matchmaker {
+/**
+ * Matchmaking over one waiting queue per event loop.
+ * <p>
+ * A player is paired with someone waiting on its own loop first and steals from the other shards
+ * only when the local one is empty. Every call does a bounded amount of work: each queue is scanned
+ * past at most {@link #MAX_SCAN} live entries and the post-enqueue re-check retries at most
+ * {@link #MAX_CLAIM_RETRIES} times, so nothing spins on a single hot CAS.
+ * <p>
+ * Waiting players are represented by a {@link Ticket} stored on their channel;
+ * {@link #removeIfWaiting(Player)} is a single CAS on it and the queue entry is unlinked lazily.
+ * <p>
+ * Batch mode ({@code rps.matchmaking.batch-tick-millis} 1..50): {@link #tryMatch(Player)} only enqueues,
+ * and a periodic tick pairs everyone waiting at once (same event loop first, then oldest first) and hands
+ * the whole batch of sessions to the {@link MatchListener}.
+ * <p>
+ * Rated mode ({@code rps.matchmaking.rating.enabled}): each shard is split into {@link #BUCKET_WIDTH}-point
+ * rating buckets and a search walks outward from the player's own bucket, so the nearest opponent costs at
+ * most {@code window / BUCKET_WIDTH} bucket probes however many players are queued. The accepted gap
+ * starts at {@code initial-window} and widens while a player waits; a periodic sweep retries the longest
+ * waiter of every bucket, so a widened window turns into a match without needing a new arrival.
+ */
+public final class Matchmaker implements AutoCloseable, MeterBinder {
 
     private static final Logger log = LoggerFactory.getLogger(Matchmaker.class);
 
-    private final AtomicReference<Player> waiting = new AtomicReference<>();
+    static final int MAX_SCAN = 64;
+    static final int MAX_CLAIM_RETRIES = 8;
+    static final int MAX_BATCH_TICK_MILLIS = 50;
+    static final int BUCKET_WIDTH = 50;
+    /** Ratings 0..4000; the outer buckets take everything beyond. */
+    static final int RATED_BUCKETS = 80;
 
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+    static final int DEFAULT_FREE_FOR_ALL_SIZE = 4;
+
+    private static final AttributeKey<Ticket> TICKET = AttributeKey.valueOf("matchTicket");
+
+    private final Shard[] shards;
+    private final ConcurrentHashMap<EventExecutor, Shard> shardByLoop = new ConcurrentHashMap<>();
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    private final boolean batch;
+    private final boolean rated;
+    private final int initialWindow;
+    private final int widenPerSecond;
+    private final Ratings ratings;
+    private final SessionListener sessionListener;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService ticker;
+    private volatile MatchListener matchListener;
+    private volatile SessionOptions sessionOptions = SessionOptions.defaults();
+    private volatile int freeForAllSize = DEFAULT_FREE_FOR_ALL_SIZE;
+
+    private volatile Timer waitTimer;
+    private volatile DistributionSummary gapSummary;
+
+    public Matchmaker() {
+        this(0);
+    }
+
+    public Matchmaker(int shards) {
+        this(shards, 0);
+    }
+
+    public Matchmaker(int shards, int batchTickMillis) {
+        this(new MatchmakingOptions(shards, batchTickMillis, false, 0, 0, 0), new Ratings());
+    }
+
+    public Matchmaker(MatchmakingOptions options, Ratings ratings) {
+        this(options, ratings, ratings);
+    }
+
+    /**
+     * @param ratings         rating lookups for rated pairing
+     * @param sessionListener attached to every session this matchmaker creates (normally includes {@code ratings})
+     */
+    public Matchmaker(MatchmakingOptions options, Ratings ratings, SessionListener sessionListener) {
+        this(options, ratings, sessionListener, System::nanoTime);
+    }
+
+    Matchmaker(MatchmakingOptions options, Ratings ratings, LongSupplier clock) {
+        this(options, ratings, ratings, clock);
+    }
+
+    Matchmaker(MatchmakingOptions options, Ratings ratings, SessionListener sessionListener, LongSupplier clock) {
+        int batchTickMillis = options.batchTickMillis();
+        if (batchTickMillis < 0 || batchTickMillis > MAX_BATCH_TICK_MILLIS) {
+            throw new IllegalArgumentException("rps.matchmaking.batch-tick-millis must be 0..."
+                    + MAX_BATCH_TICK_MILLIS + ", got " + batchTickMillis);
+        }
+        this.batch = batchTickMillis > 0;
+        this.rated = options.rated();
+        this.initialWindow = options.initialWindow();
+        this.widenPerSecond = options.widenPerSecond();
+        this.ratings = ratings;
+        this.sessionListener = sessionListener;
+        this.clock = clock;
+
+        int n = options.shards() > 0 ? options.shards() : NettyRuntime.availableProcessors() * 2;
+        this.shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            this.shards[i] = new Shard(i, rated ? RATED_BUCKETS : 1);
+        }
+
+        if (batch || rated) {
+            ticker = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rps-match-tick", true));
+            long period = batch ? batchTickMillis : Math.max(1, options.sweepMillis());
+            Runnable task = batch ? this::tick : this::sweep;
+            ticker.scheduleWithFixedDelay(() -> runSafely(task), period, period, TimeUnit.MILLISECONDS);
+        } else {
+            ticker = null;
+        }
+    }
+
+    /** Receives the sessions paired by a batch tick or a rated sweep; unused in plain inline mode. */
+    public void setMatchListener(MatchListener matchListener) {
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * Options of the sessions created from now on: keep-alive ({@code rps.session.keep-alive}) and the default
+     * series length ({@code rps.series.best-of}).
+     */
+    public void setSessionOptions(SessionOptions sessionOptions) {
+        this.sessionOptions = Objects.requireNonNull(sessionOptions);
+    }
+
+    /** Players a free-for-all ({@code /ffa}) starts with: {@code rps.ffa.players}. */
+    public void setFreeForAllSize(int players) {
+        if (players < GroupSession.MIN_PLAYERS || players > GroupSession.MAX_PLAYERS) {
+            throw new IllegalArgumentException("rps.ffa.players must be within " + GroupSession.MIN_PLAYERS + ".."
+                    + GroupSession.MAX_PLAYERS + ", got " + players);
+        }
+        this.freeForAllSize = players;
+    }
+
+    public int freeForAllSize() {
+        return freeForAllSize;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Pair {@code me} with a waiting player, or queue it. Always returns null in batch mode:
+     * the session is delivered to the {@link MatchListener} by the next tick.
+     */
     public GameSession tryMatch(Player me) {
         if (me == null || me.channel() == null || !me.channel().isActive()) {
             log.debug("tryMatch: skip inactive player nick={} ch={}",
@@ -21,60 +184,592 @@ public final class Matchmaker {
             return null;
         }
 
-        while (true) {
-            Player other = waiting.get();
+        Channel ch = me.channel();
+        Shard home = shardFor(ch);
+        int rating = rated ? ratings.rating(me.nickname()) : 0;
+        long now = clock.getAsLong();
 
-            if (other == null) {
-                if (waiting.compareAndSet(null, me)) {
-                    log.info("matchmaker_wait nick={} ch={}", me.nickname(), me.channel().id());
-                    return null;
+        if (batch) {
+            enqueue(me, home, rating, now);
+            return null;
+        }
+
+        int window = rated ? initialWindow : UNBOUNDED;
+
+        // 1) same loop (only needs a filtered pass when the shard serves several loops),
+        // 2) rest of the local shard, 3) steal from the others
+        Ticket other = home.loops.get() > 1 ? home.take(ch, null, ch.eventLoop(), rating, window, now) : null;
+        if (other == null) {
+            other = home.take(ch, null, null, rating, window, now);
+        }
+        for (int i = 1; other == null && i < shards.length; i++) {
+            other = shards[(home.index + i) % shards.length].take(ch, null, null, rating, window, now);
+        }
+        if (other != null) {
+            return matched(other, null, me, rating, home, now);
+        }
+
+        // 3) wait; 4) someone may have enqueued on another shard while we were scanning
+        return recheck(enqueue(me, home, rating, now), now);
+    }
+
+    /**
+     * A session outside of queue pairing (e.g. against a bot), wired to the same listeners
+     * as matched sessions.
+     */
+    public GameSession newSession(Player p1, Player p2) {
+        return new GameSession(p1, p2, sessionListener, sessionOptions);
+    }
+
+    /** A free-for-all between {@code players}, with the keep-alive and variant of the two-player sessions. */
+    public GroupSession newGroup(Player[] players) {
+        return new GroupSession(players, sessionOptions);
+    }
+
+    public boolean removeIfWaiting(Player me) {
+        if (me == null || me.channel() == null) {
+            return false;
+        }
+
+        Ticket t = me.channel().attr(TICKET).getAndSet(null);
+        if (t == null || !t.cancel()) {
+            return false;
+        }
+        log.info("matchmaker_removed_waiting nick={} ch={}", me.nickname(), me.channel().id());
+        return true;
+    }
+
+    /** Players currently waiting across all shards. */
+    public int waitingCount() {
+        int n = 0;
+        for (Shard s : shards) {
+            n += s.size.get();
+        }
+        return n;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rps.matchmaking.queue.depth", this, Matchmaker::waitingCount)
+                .description("Players currently waiting for an opponent")
+                .register(registry);
+        waitTimer = Timer.builder("rps.matchmaking.wait")
+                .description("Time a player spent queued before being paired (0 when an opponent was already waiting)")
+                .publishPercentileHistogram()
+                .register(registry);
+        gapSummary = DistributionSummary.builder("rps.matchmaking.rating.gap")
+                .description("Rating difference between paired players")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * One batch: pair every live waiting player. Runs on the tick thread only, so the sole race is
+     * with {@link #removeIfWaiting(Player)}, which the per-ticket claim resolves.
+     *
+     * @return sessions created, already handed to the listener
+     */
+    List<GameSession> tick() {
+        MatchListener listener = matchListener;
+        if (listener == null) {
+            return List.of();
+        }
+
+        // snapshot in queue (= arrival) order per bucket
+        List<Ticket> waiting = new ArrayList<>();
+        for (Shard s : shards) {
+            if (s.size.get() == 0) {
+                continue;
+            }
+            for (Bucket b : s.buckets) {
+                for (Iterator<Ticket> it = b.queue.iterator(); it.hasNext(); ) {
+                    Ticket t = it.next();
+                    if (t.isDone()) {
+                        it.remove();
+                    } else if (t.state == Ticket.WAITING) {
+                        waiting.add(t);
+                    }
                 }
+            }
+        }
+        if (waiting.size() < 2) {
+            return List.of();
+        }
+
+        long now = clock.getAsLong();
+        List<GameSession> sessions = new ArrayList<>(waiting.size() / 2);
+        if (rated) {
+            pairByRating(waiting, sessions, now);
+        } else {
+            pairByLoop(waiting, sessions, now);
+        }
+
+        for (Shard s : shards) {
+            for (Bucket b : s.buckets) {
+                b.queue.removeIf(Ticket::isDone);
+            }
+        }
+
+        if (!sessions.isEmpty()) {
+            log.info("matchmaker_batch waiting={} paired={}", waiting.size(), sessions.size());
+            listener.onMatched(sessions);
+        }
+        return sessions;
+    }
+
+    /**
+     * Rated inline mode: give every bucket's longest waiter (widest window in the bucket) another try.
+     * If it still finds nobody, neither would anyone younger in that bucket, so the sweep moves on.
+     *
+     * @return sessions created, already handed to the listener
+     */
+    List<GameSession> sweep() {
+        MatchListener listener = matchListener;
+        if (listener == null) {
+            return List.of();
+        }
+
+        long now = clock.getAsLong();
+        List<GameSession> sessions = new ArrayList<>();
+        for (Shard s : shards) {
+            if (s.size.get() == 0) {
                 continue;
             }
+            for (Bucket b : s.buckets) {
+                for (int i = 0; i < MAX_SCAN && b.size.get() > 0; i++) {
+                    Ticket oldest = b.oldestWaiting();
+                    GameSession session = oldest == null ? null : matchWaiting(oldest, now);
+                    if (session == null) {
+                        break;
+                    }
+                    sessions.add(session);
+                }
+            }
+        }
+
+        if (!sessions.isEmpty()) {
+            log.info("matchmaker_sweep paired={}", sessions.size());
+            listener.onMatched(sessions);
+        }
+        return sessions;
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // never let one bad batch cancel the periodic task
+            log.error("matchmaker_tick_failed", e);
+        }
+    }
 
-            if (!other.channel().isActive()) {
-                waiting.compareAndSet(other, null);
-                log.debug("matchmaker_drop_inactive_waiting nick={} ch={}", other.nickname(), other.channel().id());
+    /** Same-loop pairs first, then the odd ones out across loops, oldest first. */
+    private void pairByLoop(List<Ticket> waiting, List<GameSession> sessions, long now) {
+        Map<EventExecutor, List<Ticket>> byLoop = new IdentityHashMap<>();
+        for (Ticket t : waiting) {
+            byLoop.computeIfAbsent(t.player.channel().eventLoop(), l -> new ArrayList<>()).add(t);
+        }
+        List<Ticket> leftovers = new ArrayList<>();
+        for (List<Ticket> group : byLoop.values()) {
+            pairInOrder(group, sessions, leftovers, now);
+        }
+        leftovers.sort(Comparator.comparingLong(t -> t.enqueuedNanos));
+        pairInOrder(leftovers, sessions, null, now);
+    }
+
+    /** Neighbours in rating order, when their gap fits the wider of the two windows. */
+    private void pairByRating(List<Ticket> waiting, List<GameSession> sessions, long now) {
+        waiting.sort(Comparator.comparingInt(t -> t.rating));
+        Ticket prev = null;
+        for (Ticket t : waiting) {
+            if (dropIfInactive(t)) {
                 continue;
             }
+            if (prev != null
+                    && t.rating - prev.rating <= Math.max(windowOf(prev, now), windowOf(t, now))
+                    && claimPair(prev, t)) {
+                sessions.add(matched(prev, t, t.player, t.rating, t.shard, now));
+                prev = null;
+            } else {
+                prev = t;
+            }
+        }
+    }
 
-            if (waiting.compareAndSet(other, null)) {
-                if (!other.channel().isActive()) {
-                    log.debug("matchmaker_drop_inactive_after_take nick={} ch={}", other.nickname(),
-                            other.channel().id());
+    private void pairInOrder(List<Ticket> tickets, List<GameSession> sessions, List<Ticket> leftovers, long now) {
+        Ticket first = null;
+        for (Ticket t : tickets) {
+            if (dropIfInactive(t)) {
+                continue;
+            }
+            if (first == null) {
+                first = t;
+                continue;
+            }
+            if (!first.claim()) {
+                first = t; // cancelled meanwhile
+                continue;
+            }
+            if (!t.claim()) {
+                first.unclaim();
+                continue;
+            }
+            first.complete();
+            t.complete();
+            sessions.add(matched(first, t, t.player, t.rating, t.shard, now));
+            first = null;
+        }
+        if (first != null && leftovers != null) {
+            leftovers.add(first);
+        }
+    }
+
+    private static boolean claimPair(Ticket a, Ticket b) {
+        if (!a.claim()) {
+            return false;
+        }
+        if (!b.claim()) {
+            a.unclaim();
+            return false;
+        }
+        a.complete();
+        b.complete();
+        return true;
+    }
+
+    private static boolean dropIfInactive(Ticket t) {
+        if (t.player.channel().isActive()) {
+            return false;
+        }
+        if (t.cancel()) {
+            log.debug("matchmaker_drop_inactive_waiting nick={} ch={}",
+                    t.player.nickname(), t.player.channel().id());
+        }
+        return true;
+    }
+
+    private Ticket enqueue(Player me, Shard home, int rating, long now) {
+        Ticket mine = new Ticket(me, home, home.bucket(rating), rating, now);
+        me.channel().attr(TICKET).set(mine);
+        home.add(mine);
+        log.info("matchmaker_wait nick={} ch={} shard={} rating={}",
+                me.nickname(), me.channel().id(), home.index, rating);
+        return mine;
+    }
+
+    private GameSession recheck(Ticket mine, long now) {
+        Channel self = mine.player.channel();
+        int window = windowOf(mine, now);
+        for (int attempt = 0; attempt < MAX_CLAIM_RETRIES; attempt++) {
+            boolean contended = false;
+            for (int i = 0; i < shards.length; i++) {
+                Shard s = shards[(mine.shard.index + i) % shards.length];
+                if (s.size.get() == 0) {
                     continue;
                 }
+                Ticket other = s.take(self, mine, null, mine.rating, window, now);
+                if (other != null) {
+                    return matched(other, mine, mine.player, mine.rating, mine.shard, now);
+                }
+                switch (mine.state) {
+                    case Ticket.WAITING -> { /* nobody else waiting there */ }
+                    case Ticket.CLAIMING -> contended = true; // someone is trying to pair with us right now
+                    default -> { return null; } // already matched by another thread (or cancelled)
+                }
+            }
+            if (!contended) {
+                return null;
+            }
+            Thread.onSpinWait();
+        }
+        return null;
+    }
 
-                log.info("matchmaker_matched p1={}({}) vs p2={}({})",
-                        other.nickname(), other.channel().id(),
-                        me.nickname(), me.channel().id());
-
-                return new GameSession(other, me);
+    /** Sweep step for one waiting ticket; both sides are claimed together. */
+    private GameSession matchWaiting(Ticket mine, long now) {
+        int window = windowOf(mine, now);
+        for (int i = 0; i < shards.length; i++) {
+            Shard s = shards[(mine.shard.index + i) % shards.length];
+            if (s.size.get() == 0) {
+                continue;
+            }
+            Ticket other = s.take(mine.player.channel(), mine, null, mine.rating, window, now);
+            if (other != null) {
+                return matched(other, mine, mine.player, mine.rating, mine.shard, now);
+            }
+            if (mine.state != Ticket.WAITING) {
+                return null;
             }
         }
+        return null;
     }
 
-    public boolean removeIfWaiting(Player me) {
-        if (me == null || me.channel() == null) {
-            return false;
+    /**
+     * @param other    the waiting ticket that was claimed; its player becomes p1
+     * @param mine     {@code me}'s own ticket if it had been queued too, else null
+     */
+    private GameSession matched(Ticket other, Ticket mine, Player me, int myRating, Shard home, long now) {
+        Player p1 = other.player;
+        int gap = Math.abs(other.rating - myRating);
+
+        Timer wait = waitTimer;
+        if (wait != null) {
+            wait.record(now - other.enqueuedNanos, TimeUnit.NANOSECONDS);
+            wait.record(mine == null ? 0 : now - mine.enqueuedNanos, TimeUnit.NANOSECONDS);
+        }
+        DistributionSummary gaps = gapSummary;
+        if (rated && gaps != null) {
+            gaps.record(gap);
         }
 
-        Channel ch = me.channel();
+        log.info("matchmaker_matched p1={}({}) vs p2={}({}) stolen={} sameLoop={} ratingGap={}",
+                p1.nickname(), p1.channel().id(), me.nickname(), me.channel().id(), other.shard != home,
+                p1.channel().eventLoop() == me.channel().eventLoop(), gap);
+        return newSession(p1, me);
+    }
 
-        while (true) {
-            Player cur = waiting.get();
-            if (cur == null) {
-                return false;
+    /** Rating gap {@code t} accepts at {@code now}; unbounded when not rated. */
+    int windowOf(Ticket t, long now) {
+        if (!rated) {
+            return UNBOUNDED;
+        }
+        long waitedNanos = Math.max(0, now - t.enqueuedNanos);
+        long w = initialWindow + widenPerSecond * waitedNanos / TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.min(w, UNBOUNDED);
+    }
+
+    private Shard shardFor(Channel ch) {
+        EventExecutor loop = ch.eventLoop();
+        Shard s = shardByLoop.get(loop);
+        if (s != null) {
+            return s;
+        }
+        return shardByLoop.computeIfAbsent(loop, l -> {
+            Shard assigned = shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
+            assigned.loops.incrementAndGet();
+            return assigned;
+        });
+    }
+
+    private final class Shard {
+        final int index;
+        final Bucket[] buckets;
+        /** Tickets in WAITING/CLAIMING state; lets scanners skip empty shards without iterating. */
+        final AtomicInteger size = new AtomicInteger();
+        /** Event loops mapped to this shard; more than one only when there are fewer shards than loops. */
+        final AtomicInteger loops = new AtomicInteger();
+
+        Shard(int index, int bucketCount) {
+            this.index = index;
+            this.buckets = new Bucket[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                buckets[i] = new Bucket();
             }
+        }
+
+        Bucket bucket(int rating) {
+            return buckets[bucketIndex(rating)];
+        }
+
+        int bucketIndex(int rating) {
+            return Math.min(buckets.length - 1, Math.max(0, rating / BUCKET_WIDTH));
+        }
 
-            if (cur.channel() != ch) {
-                return false;
+        void add(Ticket t) {
+            size.incrementAndGet();
+            t.bucket.add(t);
+        }
+
+        /**
+         * Nearest acceptable ticket: the player's own bucket first, then neighbours at growing distance
+         * until {@code window} is covered.
+         */
+        Ticket take(Channel self, Ticket mine, EventExecutor loop, int rating, int window, long now) {
+            if (size.get() == 0) {
+                return null;
+            }
+            if (buckets.length == 1) {
+                return buckets[0].take(self, mine, loop, rating, window, now);
             }
+            int home = bucketIndex(rating);
+            int span = window >= UNBOUNDED - BUCKET_WIDTH ? buckets.length : window / BUCKET_WIDTH + 1;
+            for (int d = 0; d <= span; d++) {
+                int lo = home - d;
+                int hi = home + d;
+                if (lo < 0 && hi >= buckets.length) {
+                    break;
+                }
+                Ticket t = lo >= 0 ? buckets[lo].take(self, mine, loop, rating, window, now) : null;
+                if (t == null && d > 0 && hi < buckets.length) {
+                    t = buckets[hi].take(self, mine, loop, rating, window, now);
+                }
+                if (t != null) {
+                    return t;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class Bucket {
+        final ConcurrentLinkedQueue<Ticket> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(Ticket t) {
+            // players that left while nobody was scanning this bucket must not pile up at the head
+            Ticket head;
+            while ((head = queue.peek()) != null && head.isDone()) {
+                queue.remove(head);
+            }
+            size.incrementAndGet();
+            queue.add(t);
+        }
+
+        Ticket oldestWaiting() {
+            int scanned = 0;
+            for (Iterator<Ticket> it = queue.iterator(); it.hasNext() && scanned < MAX_SCAN; scanned++) {
+                Ticket t = it.next();
+                if (t.state == Ticket.WAITING) {
+                    return t;
+                }
+                if (t.isDone()) {
+                    it.remove();
+                }
+            }
+            return null;
+        }
 
-            if (waiting.compareAndSet(cur, null)) {
-                log.info("matchmaker_removed_waiting nick={} ch={}", cur.nickname(), cur.channel().id());
+        /**
+         * Claim the oldest live waiting ticket that is not {@code self}, lives on {@code loop} (if given)
+         * and whose rating gap fits the wider of the two windows.
+         * When {@code mine} is given, {@code mine} is claimed atomically together with it;
+         * if that fails the other ticket is put back untouched and null is returned.
+         */
+        Ticket take(Channel self, Ticket mine, EventExecutor loop, int rating, int window, long now) {
+            if (size.get() == 0) {
+                return null;
+            }
+            // dead entries are unlinked as we go (each at most once), only live ones we skip count toward the bound
+            int skipped = 0;
+            for (Iterator<Ticket> it = queue.iterator(); it.hasNext() && skipped < MAX_SCAN; ) {
+                Ticket t = it.next();
+                int st = t.state;
+                if (st == Ticket.CANCELLED || st == Ticket.TAKEN) {
+                    it.remove(); // cancelled, or a pairing player's own ticket that nobody else unlinks
+                    continue;
+                }
+                if (st != Ticket.WAITING || t == mine || t.player.channel() == self
+                        || (loop != null && t.player.channel().eventLoop() != loop)
+                        || Math.abs(t.rating - rating) > Math.max(window, windowOf(t, now))) {
+                    skipped++; // being claimed, ourselves, or filtered out
+                    continue;
+                }
+                if (!t.player.channel().isActive()) {
+                    if (t.cancel()) {
+                        log.debug("matchmaker_drop_inactive_waiting nick={} ch={}",
+                                t.player.nickname(), t.player.channel().id());
+                    }
+                    it.remove();
+                    continue;
+                }
+                if (!t.claim()) {
+                    continue;
+                }
+                if (mine != null && !mine.takeFromWaiting()) {
+                    t.unclaim();
+                    return null;
+                }
+                t.complete();
+                it.remove();
+                return t;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waiting-queue entry. States: WAITING → CLAIMING → TAKEN (or back to WAITING), WAITING → CANCELLED.
+     * TAKEN and CANCELLED are final and leave the shard's and bucket's size counts exactly once.
+     */
+    static final class Ticket {
+        static final int WAITING = 0;
+        static final int CLAIMING = 1;
+        static final int TAKEN = 2;
+        static final int CANCELLED = 3;
+
+        private static final AtomicIntegerFieldUpdater<Ticket> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Ticket.class, "state");
+
+        final Player player;
+        final Shard shard;
+        final Bucket bucket;
+        final int rating;
+        final long enqueuedNanos;
+        volatile int state = WAITING;
+
+        Ticket(Player player, Shard shard, Bucket bucket, int rating, long enqueuedNanos) {
+            this.player = player;
+            this.shard = shard;
+            this.bucket = bucket;
+            this.rating = rating;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        boolean isDone() {
+            int st = state;
+            return st == TAKEN || st == CANCELLED;
+        }
+
+        boolean claim() {
+            return STATE.compareAndSet(this, WAITING, CLAIMING);
+        }
+
+        void unclaim() {
+            state = WAITING;
+        }
+
+        void complete() {
+            state = TAKEN;
+            left();
+        }
+
+        /** Claim our own ticket in one step (we are the one pairing). */
+        boolean takeFromWaiting() {
+            if (STATE.compareAndSet(this, WAITING, TAKEN)) {
+                left();
                 return true;
             }
+            return false;
+        }
+
+        /** Bounded: CLAIMING only lasts for the claimer's single CAS on its own ticket. */
+        boolean cancel() {
+            for (;;) {
+                int st = state;
+                if (st == CLAIMING) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (st != WAITING) {
+                    return false;
+                }
+                if (STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                    left();
+                    return true;
+                }
+            }
+        }
+
+        private void left() {
+            bucket.size.decrementAndGet();
+            shard.size.decrementAndGet();
         }
     }
 }
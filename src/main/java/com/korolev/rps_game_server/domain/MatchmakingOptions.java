@@ -0,0 +1,23 @@
+package com.korolev.rps_game_server.domain;
+
+/**
+ * {@link Matchmaker} settings, bound from {@code rps.matchmaking.*} properties.
+ *
+ * @param shards           waiting queues, 0 = one per default worker loop (2 * cores)
+ * @param batchTickMillis  0 = pair on arrival; 1..50 = pair everyone waiting every N ms
+ * @param rated            pair by rating (nearest first) instead of arrival order
+ * @param initialWindow    rating gap accepted right after queueing
+ * @param widenPerSecond   growth of the accepted gap per second of waiting
+ * @param sweepMillis      how often waiting players retry with their widened window (rated, inline mode)
+ */
+public record MatchmakingOptions(int shards,
+                                 int batchTickMillis,
+                                 boolean rated,
+                                 int initialWindow,
+                                 int widenPerSecond,
+                                 int sweepMillis) {
+
+    public static MatchmakingOptions defaults() {
+        return new MatchmakingOptions(0, 0, false, 100, 50, 250);
+    }
+}
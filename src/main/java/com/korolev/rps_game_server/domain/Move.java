@@ -1,15 +1,124 @@
 package com.korolev.rps_game_server.domain;
 
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Every move of every {@link Variant}; a session only accepts the moves of its own variant.
+ * <p>
+ * The classic three come first, so their ordinals are the same as before variants existed. Names and the
+ * classic one-letter shorthands are found through a perfect hash built when the class loads: the first
+ * byte, last byte and length of the lower-cased word pick a slot, and one compare against that slot's
+ * alias confirms it. The lookup is the same for a String and for bytes still in the inbound buffer, so
+ * both parsers accept exactly the same words. Matching is ASCII-only.
+ */
 public enum Move {
-    ROCK, PAPER, SCISSORS;
+    ROCK("r"), PAPER("p"), SCISSORS("s"),
+    LIZARD, SPOCK,
+    FIRE, SNAKE, HUMAN, TREE, WOLF, SPONGE, AIR, WATER, DRAGON, DEVIL, LIGHTNING, GUN;
+
+    private static final int SLOT_BITS = 6;
+
+    private static final Move[] SLOT_MOVES = new Move[1 << SLOT_BITS];
+    private static final byte[][] SLOT_ALIASES = new byte[1 << SLOT_BITS][];
+    private static final int MAX_ALIAS;
+    /** Multiplier under which no two aliases share a slot. */
+    private static final int SEED;
+
+    static {
+        List<byte[]> aliases = new ArrayList<>();
+        List<Move> moves = new ArrayList<>();
+        for (Move m : values()) {
+            aliases.add(m.name().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
+            moves.add(m);
+            for (String s : m.shorthands) {
+                aliases.add(s.getBytes(StandardCharsets.US_ASCII));
+                moves.add(m);
+            }
+        }
+        SEED = findSeed(aliases);
+        int max = 0;
+        for (int i = 0; i < aliases.size(); i++) {
+            byte[] a = aliases.get(i);
+            int slot = slot(a[0], a[a.length - 1], a.length, SEED);
+            SLOT_ALIASES[slot] = a;
+            SLOT_MOVES[slot] = moves.get(i);
+            max = Math.max(max, a.length);
+        }
+        MAX_ALIAS = max;
+    }
+
+    private final String[] shorthands;
+
+    Move(String... shorthands) {
+        this.shorthands = shorthands;
+    }
 
+    /** @return the move named by {@code raw} (surrounding whitespace ignored), or null */
     public static Move parse(String raw) {
-        String s = raw.trim().toUpperCase();
-        return switch (s) {
-            case "ROCK", "R" -> ROCK;
-            case "PAPER", "P" -> PAPER;
-            case "SCISSORS", "S" -> SCISSORS;
-            default -> null;
-        };
-    }
-}
\ No newline at end of file
+        String s = raw.trim();
+        int len = s.length();
+        if (len == 0 || len > MAX_ALIAS) {
+            return null;
+        }
+        int slot = slot(s.charAt(0) | 0x20, s.charAt(len - 1) | 0x20, len, SEED);
+        byte[] alias = SLOT_ALIASES[slot];
+        if (alias == null || alias.length != len) {
+            return null;
+        }
+        for (int i = 0; i < len; i++) {
+            if ((s.charAt(i) | 0x20) != alias[i]) {
+                return null;
+            }
+        }
+        return SLOT_MOVES[slot];
+    }
+
+    /** Byte-level twin of {@link #parse(String)} over the already trimmed {@code buf[from, from + len)}. */
+    public static Move parse(ByteBuf buf, int from, int len) {
+        if (len == 0 || len > MAX_ALIAS) {
+            return null;
+        }
+        int slot = slot(buf.getByte(from) | 0x20, buf.getByte(from + len - 1) | 0x20, len, SEED);
+        byte[] alias = SLOT_ALIASES[slot];
+        if (alias == null || alias.length != len) {
+            return null;
+        }
+        for (int i = 0; i < len; i++) {
+            if ((buf.getByte(from + i) | 0x20) != alias[i]) {
+                return null;
+            }
+        }
+        return SLOT_MOVES[slot];
+    }
+
+    private static int slot(int first, int last, int len, int seed) {
+        int key = (first & 0xFF) << 16 | (last & 0xFF) << 8 | (len & 0xFF);
+        return (key * seed) >>> (32 - SLOT_BITS);
+    }
+
+    private static int findSeed(List<byte[]> aliases) {
+        boolean[] taken = new boolean[1 << SLOT_BITS];
+        int seed = 0x9E3779B1;
+        for (int attempt = 0; attempt < 1 << 20; attempt++, seed += 2) {
+            Arrays.fill(taken, false);
+            boolean clash = false;
+            for (byte[] a : aliases) {
+                int slot = slot(a[0], a[a.length - 1], a.length, seed);
+                if (taken[slot]) {
+                    clash = true;
+                    break;
+                }
+                taken[slot] = true;
+            }
+            if (!clash) {
+                return seed;
+            }
+        }
+        throw new IllegalStateException("no collision-free move alias hash in " + (1 << SLOT_BITS) + " slots");
+    }
+}
@@ -0,0 +1,137 @@
+package com.korolev.rps_game_server.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-nickname move history and a first-order Markov guess of the next move.
+ * <p>
+ * Every played move is recorded (both sides of every round, human or bot game, any variant). The last
+ * {@link #HISTORY} moves of a nickname live in a ring of move ordinals, one byte each, so a known player
+ * costs about a hundred bytes and a prediction is a scan over at most 64 moves. Predictions only consider
+ * the moves of the variant being played, and the counter is the move that beats the guess in that variant.
+ * At most {@link #MAX_PLAYERS} nicknames are remembered; the ones that played least recently are forgotten
+ * first ({@link RecencyCap}).
+ */
+@Component
+public final class MovePredictor implements SessionListener {
+
+    static final int HISTORY = 64;
+    static final int MAX_PLAYERS = 100_000;
+
+    private static final Move[] MOVES = Move.values();
+
+    private final ConcurrentHashMap<String, MoveHistory> byNick = new ConcurrentHashMap<>();
+    private final RecencyCap<MoveHistory> cap;
+
+    public MovePredictor() {
+        this(MAX_PLAYERS);
+    }
+
+    MovePredictor(int maxPlayers) {
+        this.cap = new RecencyCap<>(maxPlayers, h -> h.lastSeen);
+    }
+
+    @Override
+    public void onRound(GameSession session, Move p1Move, Move p2Move) {
+        record(session.p1().nickname(), p1Move);
+        record(session.p2().nickname(), p2Move);
+    }
+
+    public void record(String nickname, Move move) {
+        MoveHistory h = byNick.get(nickname);
+        if (h == null) {
+            h = byNick.computeIfAbsent(nickname, n -> new MoveHistory());
+            cap.enforce(byNick);
+        }
+        h.add(move);
+    }
+
+    /** Nicknames with a history. */
+    int players() {
+        return byNick.size();
+    }
+
+    /** Most likely next {@code variant} move of {@code nickname}, or null when nothing is known yet. */
+    public Move predict(String nickname, Variant variant) {
+        MoveHistory h = byNick.get(nickname);
+        return h == null ? null : h.predict(variant);
+    }
+
+    /** The move that beats {@link #predict}; uniformly random among the variant's moves without history. */
+    public Move counter(String nickname, Variant variant) {
+        Move expected = predict(nickname, variant);
+        if (expected == null) {
+            return variant.move(ThreadLocalRandom.current().nextInt(variant.size()));
+        }
+        return variant.counter(expected);
+    }
+
+    /**
+     * Ring of the last {@link #HISTORY} moves. The same nickname can play on two loops at once, so access
+     * is synchronized; it is uncontended in practice.
+     */
+    static final class MoveHistory {
+        /** Transitions from the last move needed before they are trusted over plain frequencies. */
+        static final int MIN_TRANSITIONS = 2;
+
+        private final byte[] moves = new byte[HISTORY];
+        private int next;   // slot the next move goes to
+        private int count;  // valid moves, <= HISTORY
+        private volatile long lastSeen = System.nanoTime();
+
+        synchronized void add(Move m) {
+            lastSeen = System.nanoTime();
+            moves[next] = (byte) m.ordinal();
+            next = (next + 1) % HISTORY;
+            if (count < HISTORY) {
+                count++;
+            }
+        }
+
+        /** Moves outside {@code variant} are skipped, as if they had not been played. */
+        synchronized Move predict(Variant variant) {
+            int[] freq = new int[MOVES.length];
+            int[] after = new int[MOVES.length]; // what followed earlier occurrences of the last move
+            int oldest = (next - count + HISTORY) % HISTORY;
+            int last = -1;
+            for (int i = count - 1; i >= 0 && last < 0; i--) {
+                int m = moves[(oldest + i) % HISTORY];
+                if (variant.allows(MOVES[m])) {
+                    last = m;
+                }
+            }
+            if (last < 0) {
+                return null;
+            }
+            int prev = -1;
+            int transitions = 0;
+            for (int i = 0; i < count; i++) {
+                int m = moves[(oldest + i) % HISTORY];
+                if (!variant.allows(MOVES[m])) {
+                    continue;
+                }
+                freq[m]++;
+                if (prev == last) {
+                    after[m]++;
+                    transitions++;
+                }
+                prev = m;
+            }
+            int[] counts = transitions >= MIN_TRANSITIONS ? after : freq;
+            return MOVES[argMax(counts)];
+        }
+
+        /** First index of the highest count. */
+        private static int argMax(int[] counts) {
+            int best = 0;
+            for (int i = 1; i < counts.length; i++) {
+                if (counts[i] > counts[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+}
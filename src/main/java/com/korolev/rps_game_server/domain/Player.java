@@ -1,5 +1,14 @@
 package com.korolev.rps_game_server.domain;
 
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 
-public record Player(String nickname, Channel channel) {}
+public record Player(String nickname, Channel channel) {
+
+    /** Marks the channel of a server-side bot seat. */
+    public static final AttributeKey<Boolean> BOT = AttributeKey.valueOf("bot");
+
+    public boolean bot() {
+        return channel.hasAttr(BOT);
+    }
+}
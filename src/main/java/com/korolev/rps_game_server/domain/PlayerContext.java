@@ -1,11 +1,94 @@
 package com.korolev.rps_game_server.domain;
 
+import io.netty.util.Timeout;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 @Setter
 @Getter
 public class PlayerContext {
-    private PlayerState state = PlayerState.WAIT_NICK;
+
+    /** Told about every state change of a connection, including entering and leaving. */
+    public interface StateObserver {
+        StateObserver NONE = (from, to) -> {
+        };
+
+        /** {@code from} is null when the connection opens, {@code to} is null when it closes. */
+        void onTransition(PlayerState from, PlayerState to);
+    }
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    /** Process-unique connection number, used as the {@code ch} log key. */
+    private final long id = IDS.incrementAndGet();
+
+    /** Written on the channel's loop only; volatile so /challenge can see whether a target is still waiting. */
+    private volatile PlayerState state = PlayerState.WAIT_NICK;
     private String nickname;
+
+    /** Last inbound command (or state change), System.nanoTime(); the idle deadline is this + timeout(state). */
+    private long lastActivityNanos;
+    /** Pending wheel check for this connection, owned by the IdleTracker. */
+    private Timeout idleCheck;
+    private long idleCheckAtNanos;
+    /** Pending bot-fill deadline of the current queue entry, armed by BotFill; cancelled on leaving WAIT_MATCH. */
+    @Setter(AccessLevel.NONE)
+    private Timeout botFill;
+    /** Bumped on every queue entry and cancellation, so a bot-fill deadline already on its way is recognized as stale. */
+    @Setter(AccessLevel.NONE)
+    private long queueGeneration;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private StateObserver observer;
+
+    public PlayerContext() {
+        this(StateObserver.NONE);
+    }
+
+    public PlayerContext(StateObserver observer) {
+        this.observer = observer;
+        observer.onTransition(null, state);
+    }
+
+    public void setState(PlayerState state) {
+        if (state != this.state) {
+            if (this.state == PlayerState.WAIT_MATCH) {
+                cancelBotFill();
+            }
+            observer.onTransition(this.state, state);
+            this.state = state;
+        }
+    }
+
+    /** A new queue entry: drops the previous entry's bot-fill deadline and returns the new entry's generation. */
+    public long nextQueueEntry() {
+        cancelBotFill();
+        return queueGeneration;
+    }
+
+    /** The bot-fill deadline of the entry {@link #nextQueueEntry()} just opened. */
+    public void armBotFill(Timeout deadline) {
+        botFill = deadline;
+    }
+
+    /** Drop the bot-fill deadline, if any; a deadline already queued on the loop sees a newer generation. */
+    public void cancelBotFill() {
+        Timeout t = botFill;
+        if (t != null) {
+            botFill = null;
+            t.cancel();
+        }
+        queueGeneration++;
+    }
+
+    /** The connection is gone: report the final transition once and stop reporting. */
+    public void close() {
+        cancelBotFill();
+        StateObserver o = observer;
+        observer = StateObserver.NONE;
+        o.onTransition(state, null);
+    }
 }
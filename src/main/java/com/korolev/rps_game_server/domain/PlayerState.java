@@ -3,5 +3,9 @@ package com.korolev.rps_game_server.domain;
 public enum PlayerState {
     WAIT_NICK,
     WAIT_MATCH,
-    IN_GAME
+    IN_GAME,
+    /** Keep-alive mode only: the game is over and the connection waits for /rematch or /queue. */
+    GAME_OVER,
+    /** Spectating a live session (/watch); back to WAIT_NICK when it ends or on /unwatch. */
+    WATCHING
 }
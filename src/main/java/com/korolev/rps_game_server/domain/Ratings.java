@@ -0,0 +1,86 @@
+package com.korolev.rps_game_server.domain;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory Elo ratings per nickname, updated from {@link GameSession} results. Games against a bot are
+ * not rated.
+ * <p>
+ * Nicknames are keyed lower-cased, like the {@link Lobby}'s, so one player has one rating whatever its
+ * capitalization. Both players' updates are computed from the ratings read before the game was scored; a
+ * nickname playing two sessions at once may lose one concurrent update, which is fine for matchmaking.
+ * At most {@link #MAX_PLAYERS} nicknames are kept; the ones that played least recently fall back to
+ * {@link #INITIAL} first ({@link RecencyCap}).
+ */
+@Component
+public final class Ratings implements SessionListener {
+
+    public static final int INITIAL = 1500;
+    static final int MAX_PLAYERS = 100_000;
+
+    private final int kFactor;
+    private final ConcurrentHashMap<String, Rating> byNick = new ConcurrentHashMap<>();
+    private final RecencyCap<Rating> cap;
+
+    /** A nickname's rating and when it last changed. */
+    private record Rating(int value, long seenNanos) {
+    }
+
+    public Ratings() {
+        this(32);
+    }
+
+    public Ratings(@Value("${rps.rating.k-factor:32}") int kFactor) {
+        this(kFactor, MAX_PLAYERS);
+    }
+
+    Ratings(int kFactor, int maxPlayers) {
+        this.kFactor = kFactor;
+        this.cap = new RecencyCap<>(maxPlayers, Rating::seenNanos);
+    }
+
+    public int rating(String nickname) {
+        Rating r = byNick.get(key(nickname));
+        return r == null ? INITIAL : r.value();
+    }
+
+    @Override
+    public void onResult(GameSession session, Player winner, Player loser) {
+        if (winner.bot() || loser.bot()) {
+            return;
+        }
+        record(winner.nickname(), loser.nickname());
+    }
+
+    /** Apply one decisive game; returns the winner's rating change. */
+    public int record(String winner, String loser) {
+        String w = key(winner);
+        String l = key(loser);
+        int rw = rating(w);
+        int rl = rating(l);
+        int delta = delta(rw, rl, kFactor);
+        long now = System.nanoTime();
+        byNick.merge(w, new Rating(INITIAL + delta, now), (old, ignored) -> new Rating(old.value() + delta, now));
+        byNick.merge(l, new Rating(INITIAL - delta, now), (old, ignored) -> new Rating(old.value() - delta, now));
+        cap.enforce(byNick);
+        return delta;
+    }
+
+    /** Nicknames with a rating. */
+    int players() {
+        return byNick.size();
+    }
+
+    private static String key(String nickname) {
+        return nickname.toLowerCase(Locale.ROOT);
+    }
+
+    /** Points the winner takes from the loser: {@code K * (1 - expected score of the winner)}, at least 1. */
+    static int delta(int winnerRating, int loserRating, int kFactor) {
+        double expected = 1.0 / (1.0 + Math.pow(10.0, (loserRating - winnerRating) / 400.0));
+        return Math.max(1, (int) Math.round(kFactor * (1.0 - expected)));
+    }
+}
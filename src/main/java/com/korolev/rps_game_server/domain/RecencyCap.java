@@ -0,0 +1,56 @@
+package com.korolev.rps_game_server.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+
+/**
+ * Size cap for a per-nickname {@link ConcurrentHashMap} that would otherwise keep every nickname ever seen.
+ * <p>
+ * Each value carries the {@link System#nanoTime()} it was last seen at. Once the map grows past its
+ * capacity, the caller that noticed drops the least recently seen entries in one pass, down to
+ * seven eighths of the capacity, so the sort is paid once per capacity / 8 new nicknames. Other callers
+ * skip the pass while one is running, and an entry touched during the pass may still be dropped: this is
+ * a cache, not a record.
+ */
+final class RecencyCap<V> {
+
+    private final int capacity;
+    private final ToLongFunction<V> lastSeen;
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    RecencyCap(int capacity, ToLongFunction<V> lastSeen) {
+        if (capacity < 8) {
+            throw new IllegalArgumentException("capacity must be >= 8, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.lastSeen = lastSeen;
+    }
+
+    /** Call after adding to {@code map}; trims it when it is over capacity. */
+    void enforce(ConcurrentHashMap<String, V> map) {
+        if (map.size() <= capacity || !trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long[] seen = new long[map.size()];
+            int n = 0;
+            for (V v : map.values()) {
+                if (n == seen.length) {
+                    break;
+                }
+                seen[n++] = lastSeen.applyAsLong(v);
+            }
+            int drop = n - (capacity - capacity / 8);
+            if (drop <= 0) {
+                return;
+            }
+            Arrays.sort(seen, 0, n);
+            long cutoff = seen[drop - 1];
+            map.values().removeIf(v -> lastSeen.applyAsLong(v) - cutoff <= 0);
+        } finally {
+            trimming.set(false);
+        }
+    }
+}
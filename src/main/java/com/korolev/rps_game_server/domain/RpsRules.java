@@ -1,13 +1,57 @@
 package com.korolev.rps_game_server.domain;
 
-public class RpsRules {
+/**
+ * Outcomes of every pair of moves that share a {@link Variant}, precomputed when the class loads.
+ * <p>
+ * The variants agree wherever their move sets overlap (the larger games extend the smaller ones), so one
+ * table over all moves serves every session and an outcome is a single array load at
+ * {@code self << 5 | opponent}, with no branch on the moves. A variant that decided some pair differently
+ * from another fails the class initialisation instead.
+ * <p>
+ * {@link #beaters(Move)} reads the same table a column at a time, as a bitmask, for the free-for-all.
+ */
+public final class RpsRules {
+
+    private static final int SHIFT = 5;
+    private static final Outcome[] TABLE = new Outcome[Move.values().length << SHIFT];
+    /** Bit per move ordinal of the moves that beat each move, by ordinal. */
+    private static final int[] BEATERS = new int[Move.values().length];
+
+    static {
+        if (Move.values().length > 1 << SHIFT) {
+            throw new IllegalStateException("outcome table rows hold " + (1 << SHIFT) + " moves");
+        }
+        for (Variant v : Variant.values()) {
+            Move[] cycle = v.cycle();
+            int n = cycle.length;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    int ahead = (j - i + n) % n;
+                    Outcome o = ahead == 0 ? Outcome.DRAW : ahead <= v.beatsNext() ? Outcome.WIN : Outcome.LOSE;
+                    int at = cycle[i].ordinal() << SHIFT | cycle[j].ordinal();
+                    if (TABLE[at] != null && TABLE[at] != o) {
+                        throw new IllegalStateException(v + " says " + cycle[i] + " vs " + cycle[j] + " is " + o
+                                + ", another variant says " + TABLE[at]);
+                    }
+                    TABLE[at] = o;
+                    if (o == Outcome.WIN) {
+                        BEATERS[cycle[j].ordinal()] |= 1 << cycle[i].ordinal();
+                    }
+                }
+            }
+        }
+    }
+
+    private RpsRules() {
+    }
+
+    /** @return {@code self}'s outcome against {@code opponent}; null if no variant has both moves */
     public static Outcome outcome(Move self, Move opponent) {
-        if (self == opponent) return Outcome.DRAW;
+        return TABLE[self.ordinal() << SHIFT | opponent.ordinal()];
+    }
 
-        return switch (self) {
-            case ROCK -> (opponent == Move.SCISSORS) ? Outcome.WIN : Outcome.LOSE;
-            case PAPER -> (opponent == Move.ROCK) ? Outcome.WIN : Outcome.LOSE;
-            case SCISSORS -> (opponent == Move.PAPER) ? Outcome.WIN : Outcome.LOSE;
-        };
+    /** @return a bit per move ordinal of the moves that beat {@code move}, in any variant */
+    public static int beaters(Move move) {
+        return BEATERS[move.ordinal()];
     }
-}
\ No newline at end of file
+}
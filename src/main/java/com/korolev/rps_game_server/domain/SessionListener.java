@@ -0,0 +1,107 @@
+package com.korolev.rps_game_server.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Observer of {@link GameSession} lifecycle events. Called on the session's owner loop, so
+ * implementations must be cheap and must not block.
+ */
+public interface SessionListener {
+
+    SessionListener NONE = new SessionListener() {
+    };
+
+    /** Both players have been told about each other; the first round is open. */
+    default void onStart(GameSession session) {
+    }
+
+    /** A move was accepted for the open round; {@code seat} is 1 for {@link GameSession#p1()}, 2 for p2. */
+    default void onMove(GameSession session, int seat, Move move) {
+    }
+
+    /**
+     * Both players moved; called for draws as well as for decided rounds, with {@link GameSession#score()}
+     * already counting this round.
+     */
+    default void onRound(GameSession session, Move p1Move, Move p2Move) {
+    }
+
+    /** A round produced a winner (draws never get here). */
+    default void onResult(GameSession session, Player winner, Player loser) {
+    }
+
+    /** The session ended, exactly once, whether or not it ever started. */
+    default void onFinish(GameSession session, FinishReason reason) {
+    }
+
+    /** Fan out to several listeners, in order; one that throws is logged and the rest still run. */
+    static SessionListener compose(SessionListener... listeners) {
+        SessionListener[] all = listeners.clone();
+        if (all.length == 1) {
+            return all[0];
+        }
+        return new SessionListener() {
+            private static final Logger log = LoggerFactory.getLogger(SessionListener.class);
+
+            @Override
+            public void onStart(GameSession session) {
+                for (SessionListener l : all) {
+                    try {
+                        l.onStart(session);
+                    } catch (RuntimeException e) {
+                        failed(l, e);
+                    }
+                }
+            }
+
+            @Override
+            public void onMove(GameSession session, int seat, Move move) {
+                for (SessionListener l : all) {
+                    try {
+                        l.onMove(session, seat, move);
+                    } catch (RuntimeException e) {
+                        failed(l, e);
+                    }
+                }
+            }
+
+            @Override
+            public void onRound(GameSession session, Move p1Move, Move p2Move) {
+                for (SessionListener l : all) {
+                    try {
+                        l.onRound(session, p1Move, p2Move);
+                    } catch (RuntimeException e) {
+                        failed(l, e);
+                    }
+                }
+            }
+
+            @Override
+            public void onResult(GameSession session, Player winner, Player loser) {
+                for (SessionListener l : all) {
+                    try {
+                        l.onResult(session, winner, loser);
+                    } catch (RuntimeException e) {
+                        failed(l, e);
+                    }
+                }
+            }
+
+            @Override
+            public void onFinish(GameSession session, FinishReason reason) {
+                for (SessionListener l : all) {
+                    try {
+                        l.onFinish(session, reason);
+                    } catch (RuntimeException e) {
+                        failed(l, e);
+                    }
+                }
+            }
+
+            private void failed(SessionListener l, RuntimeException e) {
+                log.warn("session_listener_failed listener={}", l.getClass().getSimpleName(), e);
+            }
+        };
+    }
+}
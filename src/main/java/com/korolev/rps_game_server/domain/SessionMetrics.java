@@ -0,0 +1,103 @@
+package com.korolev.rps_game_server.domain;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Session meters, fed as a {@link SessionListener}: active sessions, session duration, draws per session,
+ * finish reasons and rematches.
+ * <p>
+ * Every meter is registered once in {@link #bindTo}; the owner-loop callbacks only bump adders and
+ * record into the already registered timer and summary, so they do not allocate.
+ */
+@Component
+public final class SessionMetrics implements SessionListener, MeterBinder {
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder ended = new LongAdder();
+    private final LongAdder rematches = new LongAdder();
+    private final LongAdder[] finished = new LongAdder[FinishReason.values().length];
+
+    private volatile Timer duration;
+    private volatile DistributionSummary drawsPerSession;
+
+    public SessionMetrics() {
+        for (int i = 0; i < finished.length; i++) {
+            finished[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onStart(GameSession session) {
+        started.increment();
+        if (session.rematchOf() != 0) {
+            rematches.increment();
+        }
+    }
+
+    @Override
+    public void onFinish(GameSession session, FinishReason reason) {
+        finished[reason.ordinal()].increment();
+        long startedAt = session.startedNanos();
+        if (startedAt == 0) {
+            return; // ended before start (e.g. migration failure): never counted as active
+        }
+        ended.increment();
+        Timer d = duration;
+        if (d != null) {
+            d.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        DistributionSummary dr = drawsPerSession;
+        if (dr != null) {
+            dr.record(session.draws());
+        }
+    }
+
+    /** Sessions started and not yet finished. */
+    public long active() {
+        return started.sum() - ended.sum();
+    }
+
+    /** Sessions started as a rematch on kept-alive connections. */
+    public long rematches() {
+        return rematches.sum();
+    }
+
+    public long finished(FinishReason reason) {
+        return finished[reason.ordinal()].sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rps.sessions.active", this, SessionMetrics::active)
+                .description("Sessions started and not yet finished")
+                .register(registry);
+        for (FinishReason reason : FinishReason.values()) {
+            FunctionCounter.builder("rps.sessions.finished", finished[reason.ordinal()], LongAdder::sum)
+                    .tag("reason", reason.tag())
+                    .description("Finished sessions by reason")
+                    .register(registry);
+        }
+        FunctionCounter.builder("rps.sessions.rematches", this, SessionMetrics::rematches)
+                .description("Sessions started as a rematch on kept-alive connections")
+                .register(registry);
+        duration = Timer.builder("rps.sessions.duration")
+                .description("Time from session start to finish")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(30))
+                .register(registry);
+        drawsPerSession = DistributionSummary.builder("rps.sessions.draws")
+                .description("Drawn rounds per finished session")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(64.0)
+                .register(registry);
+    }
+}
@@ -0,0 +1,39 @@
+package com.korolev.rps_game_server.domain;
+
+/**
+ * {@link GameSession} settings, bound from {@code rps.session.*}, {@code rps.series.*} and
+ * {@code rps.rules.*} properties.
+ *
+ * @param keepAlive leave the channels open after the game for {@code /rematch} or {@code /queue}
+ * @param bestOf    series length, odd and at most {@link #MAX_BEST_OF} (and the variant's
+ *                  {@link Variant#maxBestOf()}); 1 is a single decisive round
+ * @param variant   move set of sessions whose players did not pick one with {@code /variant}
+ */
+public record SessionOptions(boolean keepAlive, int bestOf, Variant variant) {
+
+    /** Keeps every decided round of a classic series in the 64-bit move history (4 bits per round). */
+    public static final int MAX_BEST_OF = 15;
+
+    public SessionOptions {
+        if (!isValidBestOf(bestOf)) {
+            throw new IllegalArgumentException("rps.series.best-of must be odd and within 1.."
+                    + MAX_BEST_OF + ", got " + bestOf);
+        }
+        if (bestOf > variant.maxBestOf()) {
+            throw new IllegalArgumentException("rps.series.best-of can be at most " + variant.maxBestOf()
+                    + " with rps.rules.variant=" + variant + ", got " + bestOf);
+        }
+    }
+
+    public SessionOptions(boolean keepAlive, int bestOf) {
+        this(keepAlive, bestOf, Variant.CLASSIC);
+    }
+
+    public static SessionOptions defaults() {
+        return new SessionOptions(false, 1);
+    }
+
+    public static boolean isValidBestOf(int bestOf) {
+        return bestOf >= 1 && bestOf <= MAX_BEST_OF && (bestOf & 1) == 1;
+    }
+}
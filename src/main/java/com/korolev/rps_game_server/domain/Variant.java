@@ -0,0 +1,173 @@
+package com.korolev.rps_game_server.domain;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+import static com.korolev.rps_game_server.domain.Move.*;
+
+/**
+ * A game's move set: {@code rps.rules.variant} for every session by default, or the players' {@code /variant}
+ * choice.
+ * <p>
+ * Each variant is given as a balanced cycle: every move beats the {@code (n - 1) / 2} moves after it
+ * (wrapping around) and loses to the rest, which is how Rock-Paper-Scissors-Lizard-Spock and the 7- and
+ * 15-move games are built. {@link RpsRules} turns the cycles into one outcome table; everything a session
+ * needs per move (whether it is allowed, its history code, the move that beats it) is a lookup by
+ * {@link Move#ordinal()} in arrays filled here.
+ */
+public enum Variant {
+    CLASSIC("classic", ROCK, SCISSORS, PAPER),
+    RPSLS("rpsls", ROCK, SCISSORS, LIZARD, PAPER, SPOCK),
+    RPS7("rps7", ROCK, FIRE, SCISSORS, SPONGE, PAPER, AIR, WATER),
+    RPS15("rps15", ROCK, FIRE, SCISSORS, SNAKE, HUMAN, TREE, WOLF, SPONGE, PAPER, AIR, WATER, DRAGON, DEVIL,
+            LIGHTNING, GUN);
+
+    private final String id;
+    private final Move[] cycle;
+    /** The same moves in {@link Move} order, as prompts list them; a move's history code is its index here. */
+    private final Move[] moves;
+    /** History code by move ordinal, -1 for moves outside the variant. */
+    private final int[] codes = new int[Move.values().length];
+    /** The move that beats each move, by ordinal. */
+    private final Move[] counters = new Move[Move.values().length];
+    private final int bits;
+    private final int maxBestOf;
+
+    Variant(String id, Move... cycle) {
+        if (cycle.length < 3 || (cycle.length & 1) == 0) {
+            throw new IllegalArgumentException(id + ": a balanced cycle needs an odd number of moves, got " + cycle.length);
+        }
+        this.id = id;
+        this.cycle = cycle;
+        this.moves = cycle.clone();
+        Arrays.sort(moves);
+        Arrays.fill(codes, -1);
+        for (int i = 0; i < moves.length; i++) {
+            if (codes[moves[i].ordinal()] >= 0) {
+                throw new IllegalArgumentException(id + ": " + moves[i] + " appears twice");
+            }
+            codes[moves[i].ordinal()] = i;
+        }
+        for (int i = 0; i < cycle.length; i++) {
+            // the one just before a move in the cycle has it among the ones it beats
+            counters[cycle[i].ordinal()] = cycle[(i - 1 + cycle.length) % cycle.length];
+        }
+        this.bits = 32 - Integer.numberOfLeadingZeros(moves.length - 1);
+        // a series of best-of-N has at most N decided rounds, two moves each, in the 64-bit history
+        int rounds = Math.min(64 / (2 * bits), SessionOptions.MAX_BEST_OF);
+        this.maxBestOf = (rounds & 1) == 1 ? rounds : rounds - 1;
+    }
+
+    /** Name used in {@code rps.rules.variant} and {@code /variant}. */
+    public String id() {
+        return id;
+    }
+
+    /** @return the variant named {@code id} (ASCII case ignored), or null */
+    public static Variant byId(String id) {
+        for (Variant v : values()) {
+            if (v.id.length() == id.length() && matchesId(v, id)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /** Byte-level twin of {@link #byId(String)} over {@code buf[from, from + len)}. */
+    public static Variant byId(ByteBuf buf, int from, int len) {
+        for (Variant v : values()) {
+            if (v.id.length() == len && matchesId(v, buf, from)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesId(Variant v, String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (lower(id.charAt(i)) != v.id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesId(Variant v, ByteBuf buf, int from) {
+        for (int i = 0; i < v.id.length(); i++) {
+            if (lower(buf.getByte(from + i) & 0xFF) != v.id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    /** The moves in cycle order: each beats the {@link #beatsNext()} moves after it. */
+    Move[] cycle() {
+        return cycle;
+    }
+
+    public int beatsNext() {
+        return cycle.length / 2;
+    }
+
+    public int size() {
+        return moves.length;
+    }
+
+    public boolean allows(Move m) {
+        return codes[m.ordinal()] >= 0;
+    }
+
+    /** The move with history code {@code code}. */
+    public Move move(int code) {
+        return moves[code];
+    }
+
+    /** History code of an {@link #allows allowed} move, in {@code 0..size() - 1}. */
+    public int code(Move m) {
+        return codes[m.ordinal()];
+    }
+
+    /** Bits of one history code. */
+    public int bits() {
+        return bits;
+    }
+
+    /** Longest series whose every decided round fits the 64-bit move history. */
+    public int maxBestOf() {
+        return maxBestOf;
+    }
+
+    /** The move of this variant that beats {@code m}. */
+    public Move counter(Move m) {
+        return counters[m.ordinal()];
+    }
+
+    /** {@code ROCK/PAPER/SCISSORS}: the moves as the prompts list them. */
+    public String prompt() {
+        StringJoiner j = new StringJoiner("/");
+        for (Move m : moves) {
+            j.add(m.name());
+        }
+        return j.toString();
+    }
+
+    /** {@code ROCK > SCISSORS > PAPER}: the cycle the rules are read from. */
+    public String cycleText() {
+        StringJoiner j = new StringJoiner(" > ");
+        for (Move m : cycle) {
+            j.add(m.name());
+        }
+        return j.toString();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
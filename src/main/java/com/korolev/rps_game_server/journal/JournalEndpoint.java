@@ -0,0 +1,37 @@
+package com.korolev.rps_game_server.journal;
+
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+/**
+ * Actuator view of the {@link MatchJournal}: {@code /actuator/journal} lists the latest finished matches
+ * ({@code ?limit=N}, default 20) and {@code /actuator/journal/{id}} replays one match. Reads run on the
+ * management server's threads, never on an event loop.
+ */
+@Endpoint(id = "journal")
+public class JournalEndpoint {
+
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 1000;
+
+    private final MatchJournal journal;
+
+    public JournalEndpoint(MatchJournal journal) {
+        this.journal = journal;
+    }
+
+    @ReadOperation
+    public List<JournalMatch> recent(@Nullable Integer limit) {
+        int n = limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        return journal.reader().recent(n);
+    }
+
+    /** Null (404) when no match with this id is left on disk. */
+    @ReadOperation
+    public JournalMatch match(@Selector long id) {
+        return journal.reader().replay(id);
+    }
+}
@@ -0,0 +1,79 @@
+package com.korolev.rps_game_server.journal;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Variant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One match rebuilt from its journal records, in the order they were played.
+ *
+ * @param finishedAt epoch millis of the finish, 0 while the match is still running
+ * @param winner     nickname of the series winner; null while running and when the match ended by a timeout
+ *                   or a disconnect
+ * @param reason     null while the match is still running
+ */
+public record JournalMatch(long id,
+                           String p1,
+                           String p2,
+                           Variant variant,
+                           int bestOf,
+                           long startedAt,
+                           long finishedAt,
+                           List<Round> rounds,
+                           String winner,
+                           FinishReason reason) {
+
+    /**
+     * One round, drawn or decided, with when each move was accepted.
+     *
+     * @param p1Wins rounds won by p1 after this one
+     */
+    public record Round(int number,
+                        Move p1Move,
+                        Move p2Move,
+                        boolean draw,
+                        int p1Wins,
+                        int p2Wins,
+                        long p1MovedAt,
+                        long p2MovedAt) {
+    }
+
+    /** @param records one session's records, oldest first, starting with its {@link JournalRecord.Type#START} */
+    static JournalMatch of(List<JournalRecord> records) {
+        JournalRecord start = records.get(0);
+        List<Round> rounds = new ArrayList<>();
+        long p1MovedAt = 0;
+        long p2MovedAt = 0;
+        String winner = null;
+        long finishedAt = 0;
+        FinishReason reason = null;
+        for (JournalRecord r : records) {
+            switch (r.type()) {
+                case MOVE -> {
+                    if (r.seat() == 1) {
+                        p1MovedAt = r.epochMillis();
+                    } else {
+                        p2MovedAt = r.epochMillis();
+                    }
+                }
+                case DRAW, ROUND -> {
+                    rounds.add(new Round(rounds.size() + 1, r.p1Move(), r.p2Move(), r.type() == JournalRecord.Type.DRAW,
+                            r.p1Wins(), r.p2Wins(), p1MovedAt, p2MovedAt));
+                    p1MovedAt = 0;
+                    p2MovedAt = 0;
+                }
+                case RESULT -> winner = r.seat() == 1 ? start.p1() : start.p2();
+                case FINISH -> {
+                    finishedAt = r.epochMillis();
+                    reason = r.reason();
+                }
+                case START -> {
+                }
+            }
+        }
+        return new JournalMatch(start.session(), start.p1(), start.p2(), start.variant(), start.bestOf(),
+                start.epochMillis(), finishedAt, List.copyOf(rounds), winner, reason);
+    }
+}
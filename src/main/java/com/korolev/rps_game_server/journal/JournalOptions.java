@@ -0,0 +1,23 @@
+package com.korolev.rps_game_server.journal;
+
+import java.nio.file.Path;
+
+/**
+ * {@link MatchJournal} settings, bound from {@code rps.journal.*} properties.
+ *
+ * @param dir             directory holding the segment files
+ * @param segmentRecords  records per segment; a full segment is forced and a new one started
+ * @param retainSegments  segments kept on disk, the oldest are deleted on rotation
+ * @param forceMillis     at most this long between {@code force()} calls while records are coming in
+ * @param bufferSize      records queued for the writer; a full queue drops records
+ */
+public record JournalOptions(Path dir,
+                             int segmentRecords,
+                             int retainSegments,
+                             int forceMillis,
+                             int bufferSize) {
+
+    public static JournalOptions defaults(Path dir) {
+        return new JournalOptions(dir, 262_144, 16, 1000, 65_536);
+    }
+}
@@ -0,0 +1,227 @@
+package com.korolev.rps_game_server.journal;
+
+import io.netty.util.internal.PlatformDependent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the segments of a {@link MatchJournal} directory: every record in order, one match by id, or the
+ * most recently finished matches. Safe to use while the journal is being written, and on a copy of the
+ * directory with no server running.
+ * <p>
+ * Each call maps the segments it needs read-only and unmaps them before returning. The end of a segment's
+ * data is found by binary search for the first empty slot, since records are only ever appended; the live
+ * segment of an open journal is read only up to what its writer has published.
+ */
+public final class JournalReader {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReader.class);
+
+    private final Path dir;
+    private final LongSupplier committed;
+
+    /** A reader for a directory no journal in this process is writing to. */
+    public JournalReader(Path dir) {
+        this(dir, () -> -1L);
+    }
+
+    JournalReader(Path dir, LongSupplier committed) {
+        this.dir = dir;
+        this.committed = committed;
+    }
+
+    /** Every record still on disk, oldest first. */
+    public void forEach(Consumer<JournalRecord> action) {
+        for (Path file : segments(dir)) {
+            read(file, (run, buf, end) -> {
+                for (int at = JournalRecord.SIZE; at < end; at += JournalRecord.SIZE) {
+                    JournalRecord r = JournalRecord.readFrom(buf, at);
+                    if (r != null) {
+                        action.accept(r);
+                    }
+                }
+                return true;
+            });
+        }
+    }
+
+    /**
+     * The latest match with this session id, finished or still running, or null if its start is no longer
+     * on disk. Ids restart with the server, so an older match with the same id is not returned.
+     */
+    public JournalMatch replay(long session) {
+        List<JournalRecord> found = new ArrayList<>();
+        long[] matchRun = {0};
+        scanBackwards((run, r) -> {
+            if (!found.isEmpty() && run != matchRun[0]) {
+                return false; // the match's start would have been in its own run
+            }
+            if (r.session() != session) {
+                return true;
+            }
+            matchRun[0] = run;
+            found.add(r);
+            return r.type() != JournalRecord.Type.START;
+        });
+        if (found.isEmpty() || found.get(found.size() - 1).type() != JournalRecord.Type.START) {
+            return null;
+        }
+        Collections.reverse(found);
+        return JournalMatch.of(found);
+    }
+
+    /** Up to {@code limit} finished matches, the most recently finished first. */
+    public List<JournalMatch> recent(int limit) {
+        List<JournalMatch> matches = new ArrayList<>(Math.min(limit, 64));
+        if (limit < 1) {
+            return matches;
+        }
+        Map<Long, List<JournalRecord>> open = new HashMap<>();
+        long[] current = {0};
+        scanBackwards((run, r) -> {
+            if (run != current[0]) {
+                open.clear();
+                current[0] = run;
+            }
+            List<JournalRecord> records = r.type() == JournalRecord.Type.FINISH
+                    ? open.computeIfAbsent(r.session(), id -> new ArrayList<>())
+                    : open.get(r.session());
+            if (records == null) {
+                return true;
+            }
+            records.add(r);
+            if (r.type() == JournalRecord.Type.START) {
+                open.remove(r.session());
+                Collections.reverse(records);
+                matches.add(JournalMatch.of(records));
+            }
+            // a match still open here finished after every one not seen yet, so it may still make the cut
+            return matches.size() < limit || !open.isEmpty();
+        });
+        matches.sort(Comparator.comparingLong(JournalMatch::finishedAt).reversed());
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /** Records newest first, across segments, until {@code visitor} returns false. */
+    private void scanBackwards(RecordVisitor visitor) {
+        List<Path> files = segments(dir);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            boolean more = read(files.get(i), (run, buf, end) -> {
+                for (int at = end - JournalRecord.SIZE; at >= JournalRecord.SIZE; at -= JournalRecord.SIZE) {
+                    JournalRecord r = JournalRecord.readFrom(buf, at);
+                    if (r != null && !visitor.visit(run, r)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /** Map one segment and hand its data to {@code reader}; a segment deleted meanwhile is skipped. */
+    private boolean read(Path file, SegmentReader reader) {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read journal segment " + file, e);
+        }
+        try {
+            if (buf.capacity() < JournalRecord.SIZE || buf.getInt(0) != MatchJournal.MAGIC
+                    || buf.getInt(4) != MatchJournal.VERSION || buf.getInt(8) != JournalRecord.SIZE) {
+                log.warn("journal_segment_skipped file={} reason=bad_header", file.getFileName());
+                return true;
+            }
+            return reader.read(buf.getLong(16), buf, end(buf, indexOf(file)));
+        } finally {
+            PlatformDependent.freeDirectBuffer(buf);
+        }
+    }
+
+    /** Offset just past the last record: the live segment's published end, else the first empty slot. */
+    private int end(MappedByteBuffer buf, long index) {
+        long c = committed.getAsLong();
+        if (c >= 0 && c >>> 32 == index) {
+            return (int) c;
+        }
+        if (c >= 0 && index > c >>> 32) {
+            return JournalRecord.SIZE; // created by the writer, nothing published yet
+        }
+        int slots = buf.capacity() / JournalRecord.SIZE;
+        int lo = 1;
+        int hi = slots;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buf.get(mid * JournalRecord.SIZE + 16) != 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo * JournalRecord.SIZE;
+    }
+
+    /** Segment files in {@code dir}, oldest first. */
+    static List<Path> segments(Path dir) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + MatchJournal.SUFFIX)) {
+            for (Path p : stream) {
+                if (indexOf(p) > 0) {
+                    files.add(p);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot list journal segments in " + dir, e);
+        }
+        files.sort(Comparator.comparingLong(JournalReader::indexOf));
+        return files;
+    }
+
+    static String fileName(long index) {
+        return String.format("%016d%s", index, MatchJournal.SUFFIX);
+    }
+
+    /** The segment index in a file name, 0 if it is not a segment name. */
+    static long indexOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - MatchJournal.SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SegmentReader {
+        boolean read(long run, MappedByteBuffer buf, int end);
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        boolean visit(long run, JournalRecord record);
+    }
+}
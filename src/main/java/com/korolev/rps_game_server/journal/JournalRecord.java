@@ -0,0 +1,161 @@
+package com.korolev.rps_game_server.journal;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Variant;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One journal entry: a fixed {@value #SIZE}-byte slot, so a segment is an array of records and a record's
+ * position is its index times the size.
+ * <pre>
+ *  0  long  session id            16 byte type      20 byte variant    23 byte p1 wins
+ *  8  long  epoch millis          17 byte seat      21 byte best of    24 byte p2 wins
+ *                                 18 byte p1 move   22 byte reason     25..31 reserved
+ *                                 19 byte p2 move
+ * 32  16 bytes p1 nickname, 48  16 bytes p2 nickname (ASCII, zero padded, start records only)
+ * </pre>
+ * Moves are stored as ordinal + 1, so 0 means none. The type byte is written last and a zero type ends
+ * the segment's data; the rest of a preallocated segment is zeros.
+ *
+ * @param seat 1 or 2: who moved ({@link Type#MOVE}) or who won ({@link Type#RESULT}), 0 otherwise
+ */
+public record JournalRecord(Type type,
+                            long session,
+                            long epochMillis,
+                            int seat,
+                            Move p1Move,
+                            Move p2Move,
+                            Variant variant,
+                            int bestOf,
+                            FinishReason reason,
+                            int p1Wins,
+                            int p2Wins,
+                            String p1,
+                            String p2) {
+
+    public static final int SIZE = 64;
+
+    private static final int TYPE = 16;
+    private static final int NICK = 16;
+    private static final Move[] MOVES = Move.values();
+    private static final Variant[] VARIANTS = Variant.values();
+    private static final FinishReason[] REASONS = FinishReason.values();
+
+    public enum Type {
+        /** The players were told about each other: nicknames, variant and series length. */
+        START,
+        /** One accepted move. */
+        MOVE,
+        /** Both moves of a drawn round. */
+        DRAW,
+        /** Both moves of a decided round and the score after it. */
+        ROUND,
+        /** The series has a winner. */
+        RESULT,
+        /** The session ended, with its {@link FinishReason}. */
+        FINISH;
+
+        private static final Type[] TYPES = values();
+
+        byte code() {
+            return (byte) (ordinal() + 1);
+        }
+
+        /** Null for 0 (no record) and for codes this version does not know. */
+        static Type of(int code) {
+            return code < 1 || code > TYPES.length ? null : TYPES[code - 1];
+        }
+    }
+
+    static JournalRecord start(GameSession s) {
+        return new JournalRecord(Type.START, s.id(), System.currentTimeMillis(), 0, null, null,
+                s.variant(), s.bestOf(), null, 0, 0, s.p1().nickname(), s.p2().nickname());
+    }
+
+    static JournalRecord move(GameSession s, int seat, Move move) {
+        return new JournalRecord(Type.MOVE, s.id(), System.currentTimeMillis(), seat,
+                seat == 1 ? move : null, seat == 2 ? move : null, null, 0, null, 0, 0, null, null);
+    }
+
+    /** A draw when the score did not change, a decided round otherwise. */
+    static JournalRecord round(GameSession s, Move p1Move, Move p2Move, boolean draw) {
+        int score = s.score();
+        return new JournalRecord(draw ? Type.DRAW : Type.ROUND, s.id(), System.currentTimeMillis(), 0,
+                p1Move, p2Move, null, 0, null, GameSession.p1Wins(score), GameSession.p2Wins(score), null, null);
+    }
+
+    static JournalRecord result(GameSession s, int winnerSeat) {
+        return new JournalRecord(Type.RESULT, s.id(), System.currentTimeMillis(), winnerSeat, null, null,
+                null, 0, null, 0, 0, null, null);
+    }
+
+    static JournalRecord finish(GameSession s, FinishReason reason) {
+        return new JournalRecord(Type.FINISH, s.id(), System.currentTimeMillis(), 0, null, null,
+                null, 0, reason, 0, 0, null, null);
+    }
+
+    /** Write this record into the slot at {@code at}, type byte last. Does not move the buffer's position. */
+    void writeTo(ByteBuffer buf, int at) {
+        buf.putLong(at, session);
+        buf.putLong(at + 8, epochMillis);
+        buf.put(at + 17, (byte) seat);
+        buf.put(at + 18, moveCode(p1Move));
+        buf.put(at + 19, moveCode(p2Move));
+        buf.put(at + 20, variant == null ? 0 : (byte) (variant.ordinal() + 1));
+        buf.put(at + 21, (byte) bestOf);
+        buf.put(at + 22, reason == null ? 0 : (byte) (reason.ordinal() + 1));
+        buf.put(at + 23, (byte) p1Wins);
+        buf.put(at + 24, (byte) p2Wins);
+        putNick(buf, at + 32, p1);
+        putNick(buf, at + 48, p2);
+        buf.put(at + TYPE, type.code());
+    }
+
+    /** The record in the slot at {@code at}, or null if the slot is empty or of an unknown type. */
+    static JournalRecord readFrom(ByteBuffer buf, int at) {
+        Type type = Type.of(buf.get(at + TYPE));
+        if (type == null) {
+            return null;
+        }
+        return new JournalRecord(type, buf.getLong(at), buf.getLong(at + 8), buf.get(at + 17),
+                move(buf.get(at + 18)), move(buf.get(at + 19)),
+                byCode(VARIANTS, buf.get(at + 20)), buf.get(at + 21), byCode(REASONS, buf.get(at + 22)),
+                buf.get(at + 23), buf.get(at + 24), nick(buf, at + 32), nick(buf, at + 48));
+    }
+
+    private static byte moveCode(Move m) {
+        return m == null ? 0 : (byte) (m.ordinal() + 1);
+    }
+
+    private static Move move(int code) {
+        return byCode(MOVES, code);
+    }
+
+    private static <T> T byCode(T[] values, int code) {
+        return code < 1 || code > values.length ? null : values[code - 1];
+    }
+
+    /** Nicknames are ASCII by validation; longer names (a configured bot name) are cut to 16 bytes. */
+    private static void putNick(ByteBuffer buf, int at, String nick) {
+        int n = nick == null ? 0 : Math.min(nick.length(), NICK);
+        for (int i = 0; i < NICK; i++) {
+            buf.put(at + i, i < n ? (byte) nick.charAt(i) : 0);
+        }
+    }
+
+    private static String nick(ByteBuffer buf, int at) {
+        int n = 0;
+        while (n < NICK && buf.get(at + n) != 0) {
+            n++;
+        }
+        if (n == 0) {
+            return null;
+        }
+        byte[] b = new byte[n];
+        buf.get(at, b);
+        return new String(b, StandardCharsets.US_ASCII);
+    }
+}
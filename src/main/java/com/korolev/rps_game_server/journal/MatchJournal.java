@@ -0,0 +1,291 @@
+package com.korolev.rps_game_server.journal;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Outcome;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.RpsRules;
+import com.korolev.rps_game_server.domain.SessionListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.util.internal.PlatformDependent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of every {@link GameSession} event, fed as a {@link SessionListener}.
+ * <p>
+ * Owner-loop callbacks only build a {@link JournalRecord} and offer it to a bounded lock-free queue; a full
+ * queue drops the record and counts it ({@code rps.journal.dropped}), so an event loop never waits on disk.
+ * One writer thread, parked while the queue is empty and woken by the next offer, copies records into a
+ * memory-mapped segment, preallocated to
+ * {@link JournalOptions#segmentRecords()} fixed-size slots, and calls {@code force()} at most once per
+ * {@link JournalOptions#forceMillis()} while records keep coming, and on rotation and close.
+ * <p>
+ * Each segment starts with a header slot (magic, version, record size, the run's start time and the
+ * segment's index) and every start of the journal opens a new segment, so session ids, which restart
+ * with the process, are unique within a segment's run. On rotation the oldest segments beyond
+ * {@link JournalOptions#retainSegments()} are deleted. {@link #reader()} reads the segments, the live one
+ * up to what the writer has published.
+ */
+public final class MatchJournal implements SessionListener, MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchJournal.class);
+
+    static final int MAGIC = 0x5250534A; // "RPSJ"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".journal";
+
+    private static final int MAX_FLUSH_MILLIS = 5000;
+
+    private final JournalOptions options;
+    private final long run = System.currentTimeMillis();
+    private final long forceNanos;
+    private final Queue<JournalRecord> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean running = true;
+    /** The writer is parked, or about to, and an offer has to wake it. */
+    private volatile boolean parked;
+
+    // written by the writer thread only
+    private volatile long written;
+    /** Index of the live segment in the high 32 bits, the end of its published records in the low 32. */
+    private volatile long committed;
+    private volatile int segments;
+
+    // writer thread only
+    private MappedByteBuffer segment;
+    private long index;
+    private int end;
+    private boolean dirty;
+    private long lastForce;
+
+    public MatchJournal(JournalOptions options) {
+        if (options.segmentRecords() < 1 || options.segmentRecords() >= Integer.MAX_VALUE / JournalRecord.SIZE) {
+            throw new IllegalArgumentException("rps.journal.segment-records must be 1.."
+                    + (Integer.MAX_VALUE / JournalRecord.SIZE - 1) + ", got " + options.segmentRecords());
+        }
+        if (options.retainSegments() < 1) {
+            throw new IllegalArgumentException(
+                    "rps.journal.retain-segments must be positive, got " + options.retainSegments());
+        }
+        if (options.forceMillis() < 1) {
+            throw new IllegalArgumentException(
+                    "rps.journal.force-millis must be positive, got " + options.forceMillis());
+        }
+        if (options.bufferSize() < 1) {
+            throw new IllegalArgumentException(
+                    "rps.journal.buffer-size must be positive, got " + options.bufferSize());
+        }
+        this.options = options;
+        this.forceNanos = TimeUnit.MILLISECONDS.toNanos(options.forceMillis());
+        this.queue = PlatformDependent.newFixedMpscQueue(options.bufferSize());
+        try {
+            Files.createDirectories(options.dir());
+            List<Path> existing = JournalReader.segments(options.dir());
+            openSegment(existing.isEmpty() ? 1 : JournalReader.indexOf(existing.get(existing.size() - 1)) + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open the match journal in " + options.dir(), e);
+        }
+        publish();
+        writer = new Thread(this::drain, "rps-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("journal_opened dir={} segment={} records={}", options.dir(), index, options.segmentRecords());
+    }
+
+    @Override
+    public void onStart(GameSession session) {
+        append(JournalRecord.start(session));
+    }
+
+    @Override
+    public void onMove(GameSession session, int seat, Move move) {
+        append(JournalRecord.move(session, seat, move));
+    }
+
+    @Override
+    public void onRound(GameSession session, Move p1Move, Move p2Move) {
+        append(JournalRecord.round(session, p1Move, p2Move, RpsRules.outcome(p1Move, p2Move) == Outcome.DRAW));
+    }
+
+    @Override
+    public void onResult(GameSession session, Player winner, Player loser) {
+        append(JournalRecord.result(session, winner == session.p1() ? 1 : 2));
+    }
+
+    @Override
+    public void onFinish(GameSession session, FinishReason reason) {
+        append(JournalRecord.finish(session, reason));
+    }
+
+    /** Reads the journal's directory, the live segment up to the last record the writer has published. */
+    public JournalReader reader() {
+        return new JournalReader(options.dir(), () -> committed);
+    }
+
+    public long written() {
+        return written;
+    }
+
+    /** Records dropped on a full queue or a failed write since startup. */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /** Drain what is queued, force it and unmap the live segment. */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(MAX_FLUSH_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("journal_close_timeout millis={}", MAX_FLUSH_MILLIS);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rps.journal.records", this, MatchJournal::written)
+                .description("Session events written to the match journal")
+                .register(registry);
+        FunctionCounter.builder("rps.journal.dropped", this, MatchJournal::dropped)
+                .description("Session events dropped because the journal queue was full or a write failed")
+                .register(registry);
+        Gauge.builder("rps.journal.segments", this, j -> j.segments)
+                .description("Journal segment files on disk")
+                .register(registry);
+    }
+
+    private void append(JournalRecord record) {
+        if (!queue.offer(record)) {
+            dropped.increment();
+        } else if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            JournalRecord r = queue.poll();
+            if (r != null) {
+                write(r);
+                continue;
+            }
+            publish();
+            if (!running) {
+                break;
+            }
+            long sinceForce = System.nanoTime() - lastForce;
+            if (dirty && sinceForce >= forceNanos) {
+                force();
+            }
+            // set before the last look at the queue, so an offer made after that look sees it and unparks
+            parked = true;
+            if (queue.isEmpty() && running) {
+                if (dirty) {
+                    LockSupport.parkNanos(this, forceNanos - sinceForce);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            parked = false;
+        }
+        closeSegment();
+        log.info("journal_closed records={} dropped={}", written, dropped.sum());
+    }
+
+    private void write(JournalRecord r) {
+        try {
+            if (segment == null || end == segment.capacity()) {
+                rotate();
+            }
+            r.writeTo(segment, end);
+            end += JournalRecord.SIZE;
+            dirty = true;
+            written++;
+        } catch (IOException | RuntimeException e) {
+            dropped.increment();
+            log.warn("journal_write_failed segment={}", index, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        long next = index + 1;
+        closeSegment();
+        openSegment(next);
+        publish();
+        List<Path> all = JournalReader.segments(options.dir());
+        for (int i = 0; i < all.size() - options.retainSegments(); i++) {
+            Files.deleteIfExists(all.get(i));
+            log.info("journal_segment_deleted file={}", all.get(i).getFileName());
+        }
+        segments = Math.min(all.size(), options.retainSegments());
+    }
+
+    private void openSegment(long next) throws IOException {
+        Path file = options.dir().resolve(JournalReader.fileName(next));
+        int size = (options.segmentRecords() + 1) * JournalRecord.SIZE;
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, JournalRecord.SIZE);
+        segment.putLong(16, run);
+        segment.putLong(24, next);
+        index = next;
+        end = JournalRecord.SIZE;
+        dirty = true;
+        segments = JournalReader.segments(options.dir()).size();
+    }
+
+    private void force() {
+        try {
+            segment.force();
+        } catch (UncheckedIOException e) {
+            log.warn("journal_force_failed segment={}", index, e);
+        }
+        dirty = false;
+        lastForce = System.nanoTime();
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        force();
+        PlatformDependent.freeDirectBuffer(segment);
+        segment = null;
+    }
+
+    /** Make everything written so far visible to readers of the live segment. */
+    private void publish() {
+        committed = index << 32 | end;
+    }
+}
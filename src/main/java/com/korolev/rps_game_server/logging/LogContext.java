@@ -0,0 +1,107 @@
+package com.korolev.rps_game_server.logging;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import java.util.Map;
+
+/**
+ * Per-thread logging context: the connection and session the current event loop task works for.
+ * <p>
+ * A replacement for {@code MDC.put}/{@code MDC.clear} around every inbound line. Entering a scope only
+ * stores numeric IDs and a nickname reference in a thread-local object; the {@code ch}, {@code nick} and
+ * {@code sess} MDC entries are built by {@link RingBufferAppender} for events that are actually logged.
+ * <p>
+ * Also decides which high-volume debug events are logged: one connection (or session) in
+ * {@code rps.logging.debug-sample-every} is sampled, and for it every such event is kept, so a sampled
+ * game can be followed end to end.
+ */
+public final class LogContext {
+
+    private static final FastThreadLocal<LogContext> CURRENT = new FastThreadLocal<>() {
+        @Override
+        protected LogContext initialValue() {
+            return new LogContext();
+        }
+    };
+
+    private static volatile long sampleMask = 15;
+
+    private long channel;
+    private String nick;
+    private long session;
+
+    private LogContext() {
+    }
+
+    /** Context of the calling thread. */
+    public static LogContext current() {
+        return CURRENT.get();
+    }
+
+    /** Context of the calling thread if it ever entered a scope, else null. */
+    static LogContext currentIfSet() {
+        return CURRENT.getIfExists();
+    }
+
+    /** Keep sampled debug events for one ID in {@code every}; a power of two, 1 keeps all. */
+    static void sampleEvery(int every) {
+        if (every < 1 || Integer.bitCount(every) != 1) {
+            throw new IllegalArgumentException("debug sample rate must be a power of two, got " + every);
+        }
+        sampleMask = every - 1;
+    }
+
+    /** Whether sampled debug events of connection or session {@code id} are logged. */
+    public static boolean sampled(long id) {
+        return (id & sampleMask) == 0;
+    }
+
+    /** Enter the scope of a connection; clears any session scope. */
+    public void enter(long channel, String nick) {
+        this.channel = channel;
+        this.nick = nick;
+        this.session = 0;
+    }
+
+    public void nick(String nick) {
+        this.nick = nick;
+    }
+
+    /** Enter the scope of a session; returns the previous session ID for {@link #exitSession}. */
+    public long enterSession(long session) {
+        long previous = this.session;
+        this.session = session;
+        return previous;
+    }
+
+    public void exitSession(long previous) {
+        this.session = previous;
+    }
+
+    public void clear() {
+        channel = 0;
+        nick = null;
+        session = 0;
+    }
+
+    /** Whether sampled debug events are logged in the innermost scope; true outside any scope. */
+    public boolean sampled() {
+        long id = session != 0 ? session : channel;
+        return id == 0 || sampled(id);
+    }
+
+    boolean isEmpty() {
+        return channel == 0 && session == 0;
+    }
+
+    void copyTo(Map<String, String> mdc) {
+        if (channel != 0) {
+            mdc.put("ch", Long.toString(channel));
+            if (nick != null) {
+                mdc.put("nick", nick);
+            }
+        }
+        if (session != 0) {
+            mdc.put("sess", Long.toString(session));
+        }
+    }
+}
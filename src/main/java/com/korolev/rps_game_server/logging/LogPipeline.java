@@ -0,0 +1,30 @@
+package com.korolev.rps_game_server.logging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spring side of the logging pipeline: applies the debug sample rate to {@link LogContext} and exposes
+ * {@link RingBufferAppender}'s drop count as {@code rps.logging.dropped}.
+ */
+@Component
+public final class LogPipeline implements MeterBinder {
+
+    public LogPipeline(@Value("${rps.logging.debug-sample-every:16}") int debugSampleEvery) {
+        if (debugSampleEvery < 1 || Integer.bitCount(debugSampleEvery) != 1) {
+            throw new IllegalArgumentException(
+                    "rps.logging.debug-sample-every must be a power of two, got " + debugSampleEvery);
+        }
+        LogContext.sampleEvery(debugSampleEvery);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rps.logging.dropped", this, p -> RingBufferAppender.droppedTotal())
+                .description("Log events dropped because the async appender's ring was full")
+                .register(registry);
+    }
+}
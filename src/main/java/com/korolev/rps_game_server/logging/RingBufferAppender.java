@@ -0,0 +1,206 @@
+package com.korolev.rps_game_server.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import io.netty.util.internal.PlatformDependent;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * Asynchronous appender: callers hand events to a bounded lock-free ring and one writer thread passes them
+ * to the attached appenders.
+ * <p>
+ * Unlike logback's {@code AsyncAppender} (an {@code ArrayBlockingQueue}, a lock per event and a blocking
+ * {@code put} when full) an event loop logging here never waits: a full ring drops the event. Drops are
+ * counted, reported by the writer as one {@code log_events_dropped} warning per idle pass and exposed as
+ * {@link #droppedTotal()} for metrics.
+ * <p>
+ * On the caller thread the appender fills the event's MDC from {@link LogContext} and prepares it for
+ * deferred processing, which formats the message from its arguments (so they are captured as they were
+ * when logged) and copies the MDC and thread name. The writer thread does the layout, encoding and I/O.
+ * It parks while the ring is empty and an append that finds it parked wakes it.
+ */
+public final class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private static final LongAdder DROPPED_TOTAL = new LongAdder();
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final LongAdder dropped = new LongAdder();
+
+    private int bufferSize = 8192;
+    private int idleMicros = 1_000_000;
+    private int maxFlushMillis = 1000;
+
+    private Queue<ILoggingEvent> ring;
+    private Thread writer;
+    private volatile boolean running;
+    /** The writer is parked, or about to, and an append has to wake it. */
+    private volatile boolean parked;
+
+    /** Events dropped on a full ring by all instances since startup. */
+    public static long droppedTotal() {
+        return DROPPED_TOTAL.sum();
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /** The longest the writer parks when the ring is empty; an append wakes it sooner. */
+    public void setIdleMicros(int idleMicros) {
+        this.idleMicros = idleMicros;
+    }
+
+    /** How long {@link #stop()} waits for the writer to drain the ring. */
+    public void setMaxFlushMillis(int maxFlushMillis) {
+        this.maxFlushMillis = maxFlushMillis;
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (bufferSize < 1) {
+            addError("bufferSize must be positive, got " + bufferSize);
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender attached to [" + name + "]");
+            return;
+        }
+        ring = PlatformDependent.newFixedMpscQueue(bufferSize);
+        running = true;
+        writer = new Thread(this::drain, "rps-log-writer-" + name);
+        writer.setDaemon(true);
+        super.start();
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(maxFlushMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            addWarn("Writer of [" + name + "] did not drain within " + maxFlushMillis + " ms");
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        LogContext lc = LogContext.currentIfSet();
+        if (lc != null && !lc.isEmpty() && event instanceof LoggingEvent le) {
+            MDCAdapter adapter = ((LoggerContext) getContext()).getMDCAdapter();
+            Map<String, String> mdc = adapter == null ? null : adapter.getCopyOfContextMap();
+            if (mdc == null) {
+                mdc = new HashMap<>(4);
+            }
+            lc.copyTo(mdc);
+            try {
+                le.setMDCPropertyMap(mdc);
+            } catch (IllegalStateException alreadyRead) {
+                // another appender already captured the MDC; keep that
+            }
+        }
+        event.prepareForDeferredProcessing();
+        if (!ring.offer(event)) {
+            dropped.increment();
+            DROPPED_TOTAL.increment();
+        } else if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        long idleNanos = TimeUnit.MICROSECONDS.toNanos(idleMicros);
+        while (true) {
+            ILoggingEvent e = ring.poll();
+            if (e != null) {
+                appenders.appendLoopOnAppenders(e);
+                continue;
+            }
+            reportDropped();
+            if (!running) {
+                break;
+            }
+            // set before the last look at the ring, so an append made after that look sees it and unparks
+            parked = true;
+            if (ring.isEmpty() && running) {
+                LockSupport.parkNanos(this, idleNanos);
+            }
+            parked = false;
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    private void reportDropped() {
+        long n = dropped.sumThenReset();
+        if (n == 0) {
+            return;
+        }
+        LoggerContext lc = (LoggerContext) getContext();
+        LoggingEvent warn = new LoggingEvent(RingBufferAppender.class.getName(),
+                lc.getLogger(RingBufferAppender.class), Level.WARN,
+                "log_events_dropped appender={} count={}", null, new Object[]{name, n});
+        appenders.appendLoopOnAppenders(warn);
+    }
+
+    // -------- AppenderAttachable --------
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
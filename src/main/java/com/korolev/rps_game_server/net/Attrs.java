@@ -1,10 +1,22 @@
 package com.korolev.rps_game_server.net;
 
 import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.GroupSession;
+import com.korolev.rps_game_server.domain.Player;
 import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.Variant;
 import io.netty.util.AttributeKey;
 
 public class Attrs {
     public static final AttributeKey<PlayerContext> PLAYER_CTX = AttributeKey.valueOf("playerCtx");
+    /** The connection's {@link Player} identity, created once when the nickname is accepted. */
+    public static final AttributeKey<Player> PLAYER = AttributeKey.valueOf("player");
+    /** The connection's session; in GAME_OVER the finished one, kept for /rematch. */
     public static final AttributeKey<GameSession> SESSION = AttributeKey.valueOf("session");
+    /** The connection's free-for-all while it is IN_GAME in one; a connection never has both. */
+    public static final AttributeKey<GroupSession> GROUP = AttributeKey.valueOf("group");
+    /** Series length asked for with /bestof, applied by {@link SessionLauncher} to later matches. */
+    public static final AttributeKey<Integer> BEST_OF = AttributeKey.valueOf("bestOf");
+    /** Variant asked for with /variant, applied by {@link SessionLauncher} like {@link #BEST_OF}. */
+    public static final AttributeKey<Variant> VARIANT = AttributeKey.valueOf("variant");
 }
@@ -0,0 +1,120 @@
+package com.korolev.rps_game_server.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+import java.net.SocketAddress;
+import java.util.function.BiConsumer;
+
+/**
+ * Socket-less channel for an in-process player. It is registered on a real event loop and carries the
+ * normal pipeline, so the game code cannot tell it from a TCP connection: replies written to it are
+ * handed to {@code onReply}, and {@link #type(byte[])} feeds a command line in as if it had been read.
+ */
+final class BotChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final BiConsumer<BotChannel, ByteBuf> onReply;
+    private volatile boolean open = true;
+
+    BotChannel(BiConsumer<BotChannel, ByteBuf> onReply) {
+        super(null);
+        this.onReply = onReply;
+    }
+
+    /** Deliver one inbound line (CRLF-terminated) through the pipeline. Must run on the event loop. */
+    void type(byte[] line) {
+        if (!open) {
+            return;
+        }
+        pipeline().fireChannelRead(Unpooled.wrappedBuffer(line));
+        pipeline().fireChannelReadComplete();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                return;
+            }
+            if (msg instanceof ByteBuf buf) {
+                onReply.accept(this, buf);
+            }
+            in.remove(); // releases msg
+        }
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new AbstractUnsafe() {
+            @Override
+            public void connect(SocketAddress remote, SocketAddress local, ChannelPromise promise) {
+                promise.setFailure(new UnsupportedOperationException("bot channels are not connected"));
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return true; // no I/O to register for
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return null;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException("bot channels cannot bind");
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+    }
+
+    @Override
+    protected void doBeginRead() {
+        // input only arrives through type()
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+}
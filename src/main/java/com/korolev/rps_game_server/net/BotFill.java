@@ -0,0 +1,189 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Lobby;
+import com.korolev.rps_game_server.domain.Matchmaker;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.MovePredictor;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.Variant;
+import com.korolev.rps_game_server.protocol.Messages;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pairs a player who has waited past {@code rps.bot.fill-after-seconds} with an in-process bot.
+ * <p>
+ * The bot is a {@link BotChannel} registered on the player's own event loop with the regular
+ * {@link CommandDecoder} + {@link RpsServerHandler} pipeline, so the session is an ordinary same-loop
+ * {@link GameSession}: the bot receives the same replies and "types" its moves as command lines.
+ * Whenever a round opens it plays the counter to {@link MovePredictor}'s guess for its opponent.
+ */
+@Component
+public final class BotFill implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(BotFill.class);
+
+    private static final byte[] OPPONENT_FOUND = Messages.OPPONENT_FOUND_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DRAW = Messages.DRAW_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    /** The series next-round prompt by variant ordinal. */
+    private static final byte[][] NEXT_ROUNDS = new byte[Variant.values().length][];
+    private static final byte[][] MOVE_LINES = new byte[Move.values().length][];
+
+    static {
+        for (Variant v : Variant.values()) {
+            NEXT_ROUNDS[v.ordinal()] = (Messages.ROUND_NEXT_PREFIX + v.prompt() + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        for (Move m : Move.values()) {
+            MOVE_LINES[m.ordinal()] = (m.name() + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final Matchmaker matchmaker;
+    private final IdleTracker idleTracker;
+    private final SessionLauncher sessionLauncher;
+    private final MovePredictor predictor;
+    private final ServerMetrics metrics;
+    private final long fillAfterNanos;
+    private final String botNickname;
+    /** Shared by all bot channels, like the initializer's handler for client channels. */
+    private final RpsServerHandler botHandler;
+
+    private final LongAdder games = new LongAdder();
+
+    public BotFill(Matchmaker matchmaker,
+                   IdleTracker idleTracker,
+                   SessionLauncher sessionLauncher,
+                   MovePredictor predictor,
+                   ServerMetrics metrics,
+                   Spectators spectators,
+                   Lobby lobby,
+                   SessionResumes resumes,
+                   @Value("${rps.bot.fill-after-seconds:0}") int fillAfterSeconds,
+                   @Value("${rps.bot.nickname:RPS-Bot}") String botNickname) {
+        this.matchmaker = matchmaker;
+        this.idleTracker = idleTracker;
+        this.sessionLauncher = sessionLauncher;
+        this.predictor = predictor;
+        this.metrics = metrics;
+        this.fillAfterNanos = TimeUnit.SECONDS.toNanos(Math.max(0, fillAfterSeconds));
+        this.botNickname = botNickname;
+        this.botHandler = new RpsServerHandler(matchmaker, idleTracker, sessionLauncher, this, metrics, spectators, lobby, resumes);
+    }
+
+    public boolean isEnabled() {
+        return fillAfterNanos > 0;
+    }
+
+    /**
+     * Arm the deadline for a player that has just been queued, on the shared idle wheel, replacing the deadline
+     * of any earlier queue entry. Leaving WAIT_MATCH or the queue cancels it (see {@link PlayerContext}).
+     * Must run on the channel's event loop.
+     */
+    public void schedule(Channel ch, PlayerContext pc) {
+        if (!isEnabled()) {
+            return;
+        }
+        long generation = pc.nextQueueEntry();
+        pc.armBotFill(idleTracker.schedule(ch.eventLoop(), () -> fill(ch, pc, generation), fillAfterNanos));
+    }
+
+    /** Deadline reached: take the player out of the queue, unless someone beat us to it, and start a bot game. */
+    void fill(Channel ch, PlayerContext pc, long generation) {
+        if (!ch.isActive() || pc.getState() != PlayerState.WAIT_MATCH || pc.getQueueGeneration() != generation) {
+            return; // a later queue entry, or no longer queued: that entry has its own deadline, if any
+        }
+        Player human = ch.attr(Attrs.PLAYER).get();
+        if (human == null) {
+            return;
+        }
+        if (!matchmaker.removeIfWaiting(human)) {
+            return; // matched meanwhile (state flip is on its way) or already gone
+        }
+
+        BotChannel bot = new BotChannel(this::onReply);
+        bot.attr(Player.BOT).set(Boolean.TRUE);
+        bot.pipeline().addLast(new CommandDecoder(), botHandler);
+        // same loop as the player: registration (and channelActive) completes inline
+        ch.eventLoop().register(bot);
+        PlayerContext botCtx = bot.attr(Attrs.PLAYER_CTX).get();
+        botCtx.setNickname(botNickname);
+        botCtx.setState(PlayerState.WAIT_MATCH);
+        Player botPlayer = new Player(botNickname, bot);
+        bot.attr(Attrs.PLAYER).set(botPlayer);
+
+        games.increment();
+        log.info("bot_fill nick={} ch={} bot={}", human.nickname(), ch.id().asShortText(), bot.id().asShortText());
+
+        GameSession session = matchmaker.newSession(human, botPlayer);
+        sessionLauncher.launch(session);
+    }
+
+    /**
+     * Replies to the bot: a new round opens with "Opponent found", "Draw!" or, within a series, a round
+     * reply ending with the next-round prompt; everything else is ignored.
+     */
+    private void onReply(BotChannel bot, ByteBuf msg) {
+        GameSession session = bot.attr(Attrs.SESSION).get();
+        if (session == null) {
+            return;
+        }
+        Variant variant = session.variant();
+        if (!startsWith(msg, OPPONENT_FOUND) && !startsWith(msg, DRAW)
+                && !endsWith(msg, NEXT_ROUNDS[variant.ordinal()])) {
+            return;
+        }
+        Move move = predictor.counter(session.p1().nickname(), variant);
+        // not from inside the session's own write
+        bot.eventLoop().execute(() -> bot.type(MOVE_LINES[move.ordinal()]));
+    }
+
+    private static boolean startsWith(ByteBuf msg, byte[] prefix) {
+        if (msg.readableBytes() < prefix.length) {
+            return false;
+        }
+        int from = msg.readerIndex();
+        for (int i = 0; i < prefix.length; i++) {
+            if (msg.getByte(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(ByteBuf msg, byte[] suffix) {
+        if (msg.readableBytes() < suffix.length) {
+            return false;
+        }
+        int from = msg.writerIndex() - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (msg.getByte(from + i) != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long games() {
+        return games.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rps.bot.games", this, BotFill::games)
+                .description("Sessions started against the in-process bot after the fill deadline")
+                .register(registry);
+    }
+}
@@ -0,0 +1,110 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.protocol.CommandParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ByteProcessor;
+import java.util.List;
+
+/**
+ * Frames {@code \n}/{@code \r\n}-terminated lines and parses them in place into
+ * {@link com.korolev.rps_game_server.protocol.Command}s, replacing
+ * {@code LineBasedFrameDecoder} + {@code StringDecoder} + {@code CommandParser.parse(String)}.
+ * <p>
+ * Decodes one line per call, so each command reaches the handler (and may change the
+ * player state) before the next pipelined line is parsed.
+ * <p>
+ * Between commands the decoder normally holds no buffer: {@link ByteToMessageDecoder} releases the
+ * cumulation once it is fully read. Only an unfinished line is kept, and it is {@linkplain #compact
+ * compacted} so that a connection parked mid-line pins a few bytes rather than the whole socket read
+ * buffer (2 KiB or more from the adaptive allocator).
+ */
+public final class CommandDecoder extends ByteToMessageDecoder {
+
+    public static final int MAX_LINE_LENGTH = 256;
+
+    /** Unused capacity above which a held partial line is moved to a right-sized buffer. */
+    private static final int COMPACT_SLACK = 512;
+
+    private final int maxLength;
+
+    /** Skipping the rest of an over-long line; mirrors LineBasedFrameDecoder with failFast=false. */
+    private boolean discarding;
+    private int discardedBytes;
+
+    public CommandDecoder() {
+        this(MAX_LINE_LENGTH);
+    }
+
+    public CommandDecoder(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int start = in.readerIndex();
+        int eol = in.forEachByte(ByteProcessor.FIND_LF);
+
+        if (discarding) {
+            if (eol < 0) {
+                discardedBytes += in.readableBytes();
+                in.skipBytes(in.readableBytes());
+                return;
+            }
+            int length = discardedBytes + eol - start;
+            in.readerIndex(eol + 1);
+            discarding = false;
+            discardedBytes = 0;
+            throw tooLong(length);
+        }
+
+        if (eol < 0) {
+            int length = in.readableBytes();
+            if (length > maxLength) {
+                discarding = true;
+                discardedBytes = length;
+                in.skipBytes(length);
+            } else {
+                compact(in);
+            }
+            return;
+        }
+
+        int end = eol;
+        if (end > start && in.getByte(end - 1) == '\r') {
+            end--;
+        }
+        in.readerIndex(eol + 1);
+
+        if (end - start > maxLength) {
+            throw tooLong(end - start);
+        }
+
+        out.add(CommandParser.parse(in, start, end, expectingNick(ctx)));
+    }
+
+    /**
+     * {@code in} is the cumulation and keeps only an unfinished line: shrink it to that line. For a
+     * pooled buffer this reallocates into a small size class and frees the read buffer.
+     */
+    private static void compact(ByteBuf in) {
+        if (in.capacity() - in.readableBytes() < COMPACT_SLACK || in.refCnt() != 1 || in.isReadOnly()) {
+            return;
+        }
+        in.discardReadBytes();
+        in.capacity(in.readableBytes());
+    }
+
+    private static boolean expectingNick(ChannelHandlerContext ctx) {
+        PlayerContext pc = ctx.channel().attr(Attrs.PLAYER_CTX).get();
+        return pc == null || pc.getState() == PlayerState.WAIT_NICK;
+    }
+
+    private TooLongFrameException tooLong(int length) {
+        return new TooLongFrameException("frame length (" + length + ") exceeds the allowed maximum (" + maxLength + ')');
+    }
+}
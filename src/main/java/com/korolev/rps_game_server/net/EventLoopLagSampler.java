@@ -0,0 +1,272 @@
+package com.korolev.rps_game_server.net;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.EventLoopTaskQueueFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Samples every worker event loop in the background: scheduling lag, pending tasks and task run time.
+ * <p>
+ * Every {@code rps.health.lag.sample-millis} the sampler thread hands each loop a probe (one reused
+ * {@code Runnable} per loop, no allocation) and the probe measures on the loop how long it waited. A probe
+ * still queued from the previous round is not submitted again; its age is the loop's current stall.
+ * The probe also reads the pending task count and, when the group was built with {@link #taskQueueFactory()},
+ * the longest task and busy time since the previous probe.
+ * <p>
+ * Results go to per-loop histograms ({@code rps.eventloop.*}, tag {@code loop}) and to a window of the last
+ * {@code rps.health.lag.window-seconds} of lag samples that {@link #snapshot()} summarises for the health
+ * indicator without touching the loops.
+ */
+@Component
+public final class EventLoopLagSampler implements MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLoopLagSampler.class);
+
+    private final long sampleNanos;
+    private final int windowSize;
+    private final List<TimedTaskQueue> taskQueues = TimedTaskQueue.newRegistry();
+
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rps-loop-lag");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile List<Probe> probes = List.of();
+    private volatile MeterRegistry registry;
+
+    public EventLoopLagSampler(@Value("${rps.health.lag.sample-millis:100}") int sampleMillis,
+                               @Value("${rps.health.lag.window-seconds:60}") int windowSeconds) {
+        if (sampleMillis < 1 || sampleMillis > 10_000) {
+            throw new IllegalArgumentException("rps.health.lag.sample-millis must be in 1..10000, got " + sampleMillis);
+        }
+        if (windowSeconds < 1) {
+            throw new IllegalArgumentException("rps.health.lag.window-seconds must be >= 1, got " + windowSeconds);
+        }
+        this.sampleNanos = TimeUnit.MILLISECONDS.toNanos(sampleMillis);
+        this.windowSize = (int) Math.max(1, TimeUnit.SECONDS.toNanos(windowSeconds) / sampleNanos);
+    }
+
+    /** Task queues for the worker group, so the probes can report task run times. */
+    public EventLoopTaskQueueFactory taskQueueFactory() {
+        return TimedTaskQueue.factory(taskQueues);
+    }
+
+    /** Start sampling the loops of {@code group}; call once, after the group is created. */
+    public void start(EventLoopGroup group) {
+        List<EventExecutor> loops = new ArrayList<>();
+        group.forEach(loops::add);
+        boolean timed = taskQueues.size() == loops.size();
+        List<Probe> created = new ArrayList<>(loops.size());
+        for (int i = 0; i < loops.size(); i++) {
+            Probe p = new Probe(Integer.toString(i), loops.get(i), timed ? taskQueues.get(i) : null, windowSize);
+            MeterRegistry r = registry;
+            if (r != null) {
+                p.register(r);
+            }
+            created.add(p);
+        }
+        probes = List.copyOf(created);
+        sampler.scheduleAtFixedRate(this::sample, sampleNanos, sampleNanos, TimeUnit.NANOSECONDS);
+        log.info("loop_lag_sampler_started loops={} task_timing={} sample_ms={}",
+                loops.size(), timed, TimeUnit.NANOSECONDS.toMillis(sampleNanos));
+    }
+
+    /** One sampling round: submit a probe to every loop whose previous probe has run. */
+    void sample() {
+        long now = System.nanoTime();
+        for (Probe p : probes) {
+            if (p.queued) {
+                continue; // still waiting: the stall shows up as its age
+            }
+            p.submittedNanos = now;
+            p.queued = true;
+            try {
+                p.loop.execute(p);
+            } catch (RejectedExecutionException e) {
+                p.queued = false; // shutting down
+            }
+        }
+    }
+
+    /** Current per-loop figures, computed from cached samples; never blocks on a loop. */
+    public List<LoopLag> snapshot() {
+        long now = System.nanoTime();
+        List<Probe> ps = probes;
+        List<LoopLag> out = new ArrayList<>(ps.size());
+        for (Probe p : ps) {
+            out.add(p.summarise(now));
+        }
+        return out;
+    }
+
+    public long sampleNanos() {
+        return sampleNanos;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (Probe p : probes) {
+            p.register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * One loop's figures.
+     *
+     * @param loop          index in the worker group
+     * @param samples       lag samples in the window
+     * @param lagP99Nanos   99th percentile lag over the window
+     * @param lagMaxNanos   worst lag over the window, or the age of a probe still queued if that is larger
+     * @param stalledNanos  age of the probe still queued, 0 if none
+     * @param pendingTasks  queued tasks at the last probe
+     * @param taskMaxNanos  longest single task between the last two probes, -1 without task timing
+     * @param busyRatio     share of the last probe interval spent running tasks, -1 without task timing
+     */
+    public record LoopLag(String loop,
+                          int samples,
+                          long lagP99Nanos,
+                          long lagMaxNanos,
+                          long stalledNanos,
+                          int pendingTasks,
+                          long taskMaxNanos,
+                          double busyRatio) {
+    }
+
+    /** Reused probe for one loop. Fields after {@code submittedNanos} are written on the loop only. */
+    private static final class Probe implements Runnable {
+        final String name;
+        final EventExecutor loop;
+        final TimedTaskQueue queue;
+
+        /** Ring of lag samples in nanos; written on the loop, read by {@link #summarise}. */
+        final AtomicLongArray window;
+        volatile int written;
+
+        volatile boolean queued;
+        volatile long submittedNanos;
+
+        volatile int pendingTasks;
+        volatile long taskMaxNanos = -1;
+        volatile double busyRatio = -1;
+
+        long lastRunNanos;
+        long lastBusyNanos;
+
+        volatile Timer lagTimer;
+        volatile DistributionSummary pendingSummary;
+        volatile Timer taskTimer;
+
+        Probe(String name, EventExecutor loop, TimedTaskQueue queue, int windowSize) {
+            this.name = name;
+            this.loop = loop;
+            this.queue = queue;
+            this.window = new AtomicLongArray(windowSize);
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            long lag = now - submittedNanos;
+
+            int n = written;
+            window.lazySet(n % window.length(), lag);
+            written = n + 1;
+
+            int pending = loop instanceof SingleThreadEventExecutor st ? st.pendingTasks() : -1;
+            pendingTasks = pending;
+
+            long taskMax = -1;
+            if (queue != null) {
+                taskMax = queue.maxNanos();
+                queue.resetMax();
+                long busy = queue.busyNanos();
+                if (lastRunNanos != 0) {
+                    busyRatio = Math.min(1.0, (busy - lastBusyNanos) / (double) (now - lastRunNanos));
+                }
+                lastBusyNanos = busy;
+                taskMaxNanos = taskMax;
+            }
+            lastRunNanos = now;
+
+            Timer lt = lagTimer;
+            if (lt != null) {
+                lt.record(lag, TimeUnit.NANOSECONDS);
+                if (pending >= 0) {
+                    pendingSummary.record(pending);
+                }
+                if (taskMax >= 0) {
+                    taskTimer.record(taskMax, TimeUnit.NANOSECONDS);
+                }
+            }
+            queued = false;
+        }
+
+        void register(MeterRegistry registry) {
+            if (lagTimer != null) {
+                return;
+            }
+            taskTimer = Timer.builder("rps.eventloop.task.max")
+                    .tag("loop", name)
+                    .description("Longest task run time per sample interval")
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+            pendingSummary = DistributionSummary.builder("rps.eventloop.pending.tasks")
+                    .tag("loop", name)
+                    .description("Tasks queued on the event loop when the lag probe ran")
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(100_000.0)
+                    .register(registry);
+            Gauge.builder("rps.eventloop.busy", this, p -> p.busyRatio)
+                    .tag("loop", name)
+                    .description("Share of the last sample interval spent running tasks (-1 without task timing)")
+                    .register(registry);
+            lagTimer = Timer.builder("rps.eventloop.lag")
+                    .tag("loop", name)
+                    .description("Delay between handing the event loop a probe task and the task running")
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+        }
+
+        LoopLag summarise(long now) {
+            int n = Math.min(written, window.length());
+            long[] lags = new long[n];
+            for (int i = 0; i < n; i++) {
+                lags[i] = window.get(i);
+            }
+            Arrays.sort(lags);
+            long p99 = n == 0 ? 0 : lags[Math.min(n - 1, (int) Math.ceil(n * 0.99) - 1)];
+            long max = n == 0 ? 0 : lags[n - 1];
+            long stalled = queued ? Math.max(0, now - submittedNanos) : 0;
+            return new LoopLag(name, n, p99, Math.max(max, stalled), stalled,
+                    pendingTasks, taskMaxNanos, busyRatio);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.korolev.rps_game_server.net;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts messages and non-empty flushes that actually reach the transport (it sits next to the pipeline head).
+ * Each flush is roughly one {@code write(2)}/{@code writev(2)}; before batching every message was
+ * flushed on its own, so {@code writes - flushes} is the number of syscalls saved.
+ */
+@Component
+@ChannelHandler.Sharable
+public final class FlushCounter extends ChannelOutboundHandlerAdapter implements MeterBinder {
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        writes.increment();
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        // an empty flush is a no-op in the transport, don't count it
+        ChannelOutboundBuffer out = ctx.channel().unsafe().outboundBuffer();
+        if (out != null && out.totalPendingWriteBytes() > 0) {
+            flushes.increment();
+        }
+        ctx.flush();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    public long flushes() {
+        return flushes.sum();
+    }
+
+    public long flushesSaved() {
+        return Math.max(0, writes() - flushes());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rps.net.writes", this, FlushCounter::writes)
+                .description("Outbound messages written to the transport")
+                .register(registry);
+        FunctionCounter.builder("rps.net.flushes", this, FlushCounter::flushes)
+                .description("Flushes reaching the transport (~ write syscalls)")
+                .register(registry);
+        FunctionCounter.builder("rps.net.flushes.saved", this, FlushCounter::flushesSaved)
+                .description("Write syscalls saved by batching compared to flushing every message")
+                .register(registry);
+    }
+}
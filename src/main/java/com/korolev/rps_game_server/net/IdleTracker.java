@@ -0,0 +1,140 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.logging.LogContext;
+import io.netty.channel.Channel;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-state read-idle deadlines for all connections on one shared {@link HashedWheelTimer}.
+ * <p>
+ * A connection holds a single wheel timeout. Reads and state changes only stamp
+ * {@link PlayerContext#getLastActivityNanos()}; when the timeout fires the deadline is re-evaluated
+ * on the channel's event loop and either re-armed for the remaining time or turned into a
+ * {@link IdleStateEvent} for {@link RpsServerHandler}. No pipeline mutation, no per-state scheduled futures.
+ */
+@Component
+public final class IdleTracker implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IdleTracker.class);
+
+    private final Timer timer;
+    private final LongSupplier clock;
+    private final long[] timeoutNanos = new long[PlayerState.values().length];
+
+    @Autowired
+    public IdleTracker(@Value("${rps.idle.nick-seconds:180}") int nickSeconds,
+                       @Value("${rps.idle.wait-seconds:180}") int waitSeconds,
+                       @Value("${rps.idle.game-seconds:120}") int gameSeconds,
+                       @Value("${rps.idle.tick-millis:100}") int tickMillis) {
+        this(new HashedWheelTimer(new DefaultThreadFactory("rps-idle-wheel", true),
+                        tickMillis, TimeUnit.MILLISECONDS, 512),
+                System::nanoTime, nickSeconds, waitSeconds, gameSeconds);
+    }
+
+    IdleTracker(Timer timer, LongSupplier clock, int nickSeconds, int waitSeconds, int gameSeconds) {
+        this.timer = timer;
+        this.clock = clock;
+        timeoutNanos[PlayerState.WAIT_NICK.ordinal()] = TimeUnit.SECONDS.toNanos(nickSeconds);
+        timeoutNanos[PlayerState.WAIT_MATCH.ordinal()] = TimeUnit.SECONDS.toNanos(waitSeconds);
+        timeoutNanos[PlayerState.IN_GAME.ordinal()] = TimeUnit.SECONDS.toNanos(gameSeconds);
+        // deciding between /rematch and /queue is waiting too
+        timeoutNanos[PlayerState.GAME_OVER.ordinal()] = TimeUnit.SECONDS.toNanos(waitSeconds);
+        // spectators are touched by every round they receive; longer than a game's idle limit, so the
+        // session ends (and releases them) first
+        timeoutNanos[PlayerState.WATCHING.ordinal()] = TimeUnit.SECONDS.toNanos(Math.max(waitSeconds, gameSeconds + 1));
+    }
+
+    /** Arm the deadline for a freshly connected channel. */
+    public void start(Channel ch, PlayerContext pc) {
+        pc.setLastActivityNanos(clock.getAsLong());
+        arm(ch, pc, timeoutNanos(pc.getState()));
+    }
+
+    /**
+     * Inbound activity or state change: push the deadline out. Must run on the channel's event loop.
+     * <p>
+     * Usually just a field write: the armed check re-arms itself for the remainder when it fires early.
+     * Only a deadline that moved earlier than the armed check (a shorter timeout for the new state)
+     * cancels and re-arms.
+     */
+    public void touch(Channel ch, PlayerContext pc) {
+        long now = clock.getAsLong();
+        pc.setLastActivityNanos(now);
+
+        long deadline = now + timeoutNanos(pc.getState());
+        Timeout pending = pc.getIdleCheck();
+        if (pending != null && deadline - pc.getIdleCheckAtNanos() < 0 && pending.cancel()) {
+            arm(ch, pc, deadline - now);
+        }
+    }
+
+    public void stop(PlayerContext pc) {
+        Timeout pending = pc.getIdleCheck();
+        if (pending != null) {
+            pending.cancel();
+            pc.setIdleCheck(null);
+        }
+    }
+
+    /**
+     * Run {@code task} on {@code executor} after {@code delayNanos}, on the same wheel as the idle checks:
+     * for deadlines that are usually cancelled or rarely due, where a scheduled task per event loop would
+     * cost a priority-queue entry each.
+     */
+    public Timeout schedule(EventExecutor executor, Runnable task, long delayNanos) {
+        return timer.newTimeout(t -> executor.execute(task), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long timeoutNanos(PlayerState state) {
+        return timeoutNanos[state.ordinal()];
+    }
+
+    private void arm(Channel ch, PlayerContext pc, long delayNanos) {
+        pc.setIdleCheckAtNanos(clock.getAsLong() + delayNanos);
+        pc.setIdleCheck(timer.newTimeout(t -> ch.eventLoop().execute(() -> check(ch, pc)),
+                delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private void check(Channel ch, PlayerContext pc) {
+        if (!ch.isActive()) {
+            pc.setIdleCheck(null);
+            return;
+        }
+
+        long timeout = timeoutNanos(pc.getState());
+        long idle = clock.getAsLong() - pc.getLastActivityNanos();
+
+        if (idle < timeout) {
+            arm(ch, pc, timeout - idle);
+            return;
+        }
+
+        // Like IdleStateHandler: keep reporting every full period while the reader stays idle
+        // (an IN_GAME player who already moved ignores the event and keeps waiting).
+        arm(ch, pc, timeout);
+        if (log.isDebugEnabled() && LogContext.sampled(pc.getId())) {
+            log.debug("idle_deadline_expired ch={} state={} idleMs={}",
+                    pc.getId(), pc.getState(), TimeUnit.NANOSECONDS.toMillis(idle));
+        }
+        ch.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+    }
+
+    @Override
+    public void close() {
+        timer.stop();
+    }
+}
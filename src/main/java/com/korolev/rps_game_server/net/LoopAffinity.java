@@ -0,0 +1,133 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Puts both channels of a {@link GameSession} on the session's owner loop.
+ * <p>
+ * The matchmaker already prefers an opponent from the same loop; when it had to pair across loops the
+ * second player's channel is deregistered from its loop and registered on the owner, so every move,
+ * idle event and disconnect afterwards runs on one thread without the {@code owner.execute} hop.
+ * The session is started only once the channel has landed, so nothing is written to it mid-move.
+ * <p>
+ * Migration needs both loops to belong to the same group (same transport); otherwise, or with
+ * {@code rps.matchmaking.migrate=false}, the session simply stays cross-loop.
+ */
+@Component
+public final class LoopAffinity implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(LoopAffinity.class);
+
+    private final boolean migrate;
+
+    private final LongAdder sameLoop = new LongAdder();
+    private final LongAdder migrated = new LongAdder();
+    private final LongAdder crossLoop = new LongAdder();
+    private final LongAdder migrationFailed = new LongAdder();
+
+    public LoopAffinity(@Value("${rps.matchmaking.migrate:true}") boolean migrate) {
+        this.migrate = migrate;
+    }
+
+    /**
+     * Move the second player's channel onto the session owner if needed, then run {@code start}.
+     * Must be called on that channel's event loop. {@code start} runs on the owner after a migration,
+     * otherwise inline.
+     */
+    public void colocate(GameSession session, Runnable start) {
+        Channel ch = session.p2().channel();
+        EventExecutor owner = session.owner();
+
+        if (ch.eventLoop() == owner) {
+            sameLoop.increment();
+            start.run();
+            return;
+        }
+        if (!migrate || !(owner instanceof EventLoop target) || !canMigrate(ch, target)) {
+            crossLoop.increment();
+            start.run();
+            return;
+        }
+
+        ch.deregister().addListener(df -> {
+            if (!df.isSuccess() || !ch.isOpen()) {
+                start.run();
+                failed(session, ch, df.cause());
+                return;
+            }
+            target.register(ch).addListener(rf -> {
+                if (rf.isSuccess()) {
+                    migrated.increment();
+                    log.debug("channel_migrated ch={} to={}", ch.id().asShortText(), target);
+                    // anything left unflushed when the old loop let go of the socket
+                    ch.flush();
+                    start.run();
+                } else {
+                    // a failed register closes the channel without firing channelInactive
+                    start.run();
+                    failed(session, ch, rf.cause());
+                }
+            });
+        });
+    }
+
+    private void failed(GameSession session, Channel ch, Throwable cause) {
+        migrationFailed.increment();
+        log.warn("channel_migration_failed ch={}", ch.id().asShortText(), cause);
+        ch.close();
+        session.onDisconnect(session.p2());
+    }
+
+    /** Only loops of one group share a transport; embedded/test loops have no group. */
+    private static boolean canMigrate(Channel ch, EventLoop target) {
+        EventLoop from = ch.eventLoop();
+        return ch.isRegistered() && from.parent() != null && from.parent() == target.parent();
+    }
+
+    public long sameLoop() {
+        return sameLoop.sum();
+    }
+
+    public long migrated() {
+        return migrated.sum();
+    }
+
+    public long crossLoop() {
+        return crossLoop.sum();
+    }
+
+    public long migrationFailed() {
+        return migrationFailed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rps.sessions.affinity", this, LoopAffinity::sameLoop)
+                .description("Sessions by event-loop placement of the two players")
+                .tag("placement", "same_loop")
+                .register(registry);
+        FunctionCounter.builder("rps.sessions.affinity", this, LoopAffinity::migrated)
+                .description("Sessions by event-loop placement of the two players")
+                .tag("placement", "migrated")
+                .register(registry);
+        FunctionCounter.builder("rps.sessions.affinity", this, LoopAffinity::crossLoop)
+                .description("Sessions by event-loop placement of the two players")
+                .tag("placement", "cross_loop")
+                .register(registry);
+        FunctionCounter.builder("rps.sessions.affinity", this, LoopAffinity::migrationFailed)
+                .description("Sessions by event-loop placement of the two players")
+                .tag("placement", "migration_failed")
+                .register(registry);
+    }
+}
@@ -1,22 +1,40 @@
 package com.korolev.rps_game_server.net;
 
 import io.netty.channel.EventLoopGroup;
-import io.netty.util.concurrent.EventExecutor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Event loop health from {@link EventLoopLagSampler}'s cached samples; never waits on a loop.
+ * <p>
+ * DOWN when a group is shutting down or a worker loop has left a lag probe unrun for longer than
+ * {@code rps.health.lag.down-millis}. A loop whose p99 lag over the sample window exceeds
+ * {@code rps.health.lag.degraded-millis} is reported as degraded but keeps the status UP.
+ */
 @Component("nettyEventLoop")
 public class NettyEventLoopHealthIndicator implements HealthIndicator {
 
     private final NettyServer nettyServer;
+    private final EventLoopLagSampler lagSampler;
+    private final long degradedNanos;
+    private final long downNanos;
 
-    public NettyEventLoopHealthIndicator(NettyServer nettyServer) {
+    public NettyEventLoopHealthIndicator(NettyServer nettyServer,
+                                         EventLoopLagSampler lagSampler,
+                                         @Value("${rps.health.lag.degraded-millis:100}") long degradedMillis,
+                                         @Value("${rps.health.lag.down-millis:500}") long downMillis) {
         this.nettyServer = nettyServer;
+        this.lagSampler = lagSampler;
+        this.degradedNanos = TimeUnit.MILLISECONDS.toNanos(degradedMillis);
+        this.downNanos = TimeUnit.MILLISECONDS.toNanos(downMillis);
     }
 
     @Override
@@ -40,47 +58,50 @@ public class NettyEventLoopHealthIndicator implements HealthIndicator {
         details.put("worker.shuttingDown", workerShutting);
         details.put("worker.terminated", workerTerminated);
 
-        long start = System.nanoTime();
-        boolean workerOk = checkGroup(worker, "worker", details, start);
-        boolean bossOk = checkGroup(boss, "boss", details, start);
+        boolean workerOk = checkLoops(details);
 
-        boolean up = !(bossShutting || workerShutting || bossTerminated || workerTerminated) && workerOk && bossOk;
+        boolean up = !(bossShutting || workerShutting || bossTerminated || workerTerminated) && workerOk;
 
         return (up ? Health.up() : Health.down()).withDetails(details).build();
     }
 
-    private boolean checkGroup(EventLoopGroup group, String prefix, Map<String, Object> details, long startNano) {
-        if (group.isShuttingDown() || group.isTerminated()) {
-            return false;
-        }
+    private boolean checkLoops(Map<String, Object> details) {
+        List<EventLoopLagSampler.LoopLag> loops = lagSampler.snapshot();
+        long worstP99 = 0;
+        long worstMax = 0;
+        boolean stalled = false;
+        boolean degraded = false;
+        List<Map<String, Object>> perLoop = new ArrayList<>(loops.size());
+        for (EventLoopLagSampler.LoopLag l : loops) {
+            worstP99 = Math.max(worstP99, l.lagP99Nanos());
+            worstMax = Math.max(worstMax, l.lagMaxNanos());
+            stalled |= l.stalledNanos() > downNanos;
+            degraded |= l.lagP99Nanos() > degradedNanos;
 
-        // Prevent deadlock if health check is somehow called from the event loop itself
-        boolean alreadyInLoop = false;
-        for (EventExecutor executor : group) {
-            if (executor.inEventLoop()) {
-                alreadyInLoop = true;
-                break;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("loop", l.loop());
+            m.put("lagP99Ms", millis(l.lagP99Nanos()));
+            m.put("lagMaxMs", millis(l.lagMaxNanos()));
+            m.put("pendingTasks", l.pendingTasks());
+            if (l.taskMaxNanos() >= 0) {
+                m.put("taskMaxMs", millis(l.taskMaxNanos()));
+                m.put("busy", Math.round(l.busyRatio() * 1000) / 1000.0);
+            }
+            if (l.stalledNanos() > downNanos) {
+                m.put("stalledMs", millis(l.stalledNanos()));
             }
+            perLoop.add(m);
         }
-        if (alreadyInLoop) {
-            details.put(prefix + ".inEventLoop", true);
-            return true;
+        details.put("worker.lagP99Ms", millis(worstP99));
+        details.put("worker.lagMaxMs", millis(worstMax));
+        if (degraded) {
+            details.put("worker.performance", "degraded");
         }
+        details.put("worker.loops", perLoop);
+        return !stalled;
+    }
 
-        try {
-            group.submit(() -> {
-            }).get(500, TimeUnit.MILLISECONDS);
-            long lagMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNano);
-            details.put(prefix + ".lagMs", lagMs);
-            if (lagMs > 100) {
-                details.put(prefix + ".performance", "degraded");
-            }
-            details.put(prefix + ".canScheduleNoop", true);
-            return true;
-        } catch (Exception e) {
-            details.put(prefix + ".error", e.getMessage());
-            details.put(prefix + ".canScheduleNoop", false);
-            return false;
-        }
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
     }
 }
@@ -4,45 +4,152 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultSelectStrategyFactory;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.EventLoopTaskQueueFactory;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class NettyServer implements AutoCloseable{
 
+    private static final Logger log = LoggerFactory.getLogger(NettyServer.class);
+
     private final int port;
+    private final TransportOptions options;
+    /** Task queues for the worker loops, null = Netty's default. */
+    private final EventLoopTaskQueueFactory workerTaskQueues;
 
     @Getter
     private EventLoopGroup bossGroup;
     @Getter
     private EventLoopGroup workerGroup;
-    private Channel serverChannel;
+    @Getter
+    private boolean epoll;
+    private final List<Channel> serverChannels = new ArrayList<>();
 
     public NettyServer(int port) {
+        this(port, TransportOptions.defaults());
+    }
+
+    public NettyServer(int port, TransportOptions options) {
+        this(port, options, null);
+    }
+
+    public NettyServer(int port, TransportOptions options, EventLoopTaskQueueFactory workerTaskQueues) {
         this.port = port;
+        this.options = options;
+        this.workerTaskQueues = workerTaskQueues;
     }
 
     public void start(ChannelInitializer<Channel> channelInitializer) throws InterruptedException {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        epoll = useEpoll(options.transport());
+
+        // With SO_REUSEPORT every listener socket gets its own accept thread,
+        // so the kernel can spread incoming connections across them.
+        int acceptors = epoll ? Math.max(1, options.acceptors()) : 1;
+        if (!epoll && options.acceptors() > 1) {
+            log.warn("transport_reuseport_unsupported acceptors={} transport=nio -> binding one listener",
+                    options.acceptors());
+        }
+
+        Class<? extends ServerChannel> channelClass;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(acceptors);
+            workerGroup = workerTaskQueues == null
+                    ? new EpollEventLoopGroup(options.workerThreads())
+                    : new EpollEventLoopGroup(options.workerThreads(), (Executor) null,
+                            DefaultEventExecutorChooserFactory.INSTANCE, DefaultSelectStrategyFactory.INSTANCE,
+                            RejectedExecutionHandlers.reject(), workerTaskQueues);
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(1);
+            workerGroup = workerTaskQueues == null
+                    ? new NioEventLoopGroup(options.workerThreads())
+                    : new NioEventLoopGroup(options.workerThreads(), (Executor) null,
+                            DefaultEventExecutorChooserFactory.INSTANCE, SelectorProvider.provider(),
+                            DefaultSelectStrategyFactory.INSTANCE, RejectedExecutionHandlers.reject(), workerTaskQueues);
+            channelClass = NioServerSocketChannel.class;
+        }
 
         ServerBootstrap b = new ServerBootstrap()
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
                 .option(ChannelOption.SO_BACKLOG, 1024)
                 .childOption(ChannelOption.TCP_NODELAY, true)
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
                 .childHandler(channelInitializer);
 
-        serverChannel = b.bind(port).sync().channel();
+        if (epoll) {
+            applyEpollOptions(b, acceptors);
+        }
+
+        for (int i = 0; i < acceptors; i++) {
+            serverChannels.add(b.bind(port).sync().channel());
+        }
+
+        log.info("transport_started transport={} acceptors={} workers={}",
+                epoll ? "epoll" : "nio", acceptors, options.workerThreads());
+    }
+
+    private void applyEpollOptions(ServerBootstrap b, int acceptors) {
+        if (acceptors > 1) {
+            b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (options.tcpFastOpen() > 0) {
+            b.option(ChannelOption.TCP_FASTOPEN, options.tcpFastOpen());
+        }
+        if (options.tcpQuickAck()) {
+            // not sticky: the kernel drops back to delayed ACKs after it next ACKs, so this covers the first
+            // ACKs of a connection only (the nickname exchange), not every reply
+            b.childOption(EpollChannelOption.TCP_QUICKACK, true);
+        }
+        if (options.busyPollMicros() > 0) {
+            b.childOption(EpollChannelOption.SO_BUSY_POLL, options.busyPollMicros());
+        }
+    }
+
+    private static boolean useEpoll(String transport) {
+        String t = transport == null ? "auto" : transport.trim().toLowerCase(Locale.ROOT);
+        return switch (t) {
+            case "nio" -> false;
+            case "epoll" -> {
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("rps.transport=epoll but epoll is unavailable",
+                            Epoll.unavailabilityCause());
+                }
+                yield true;
+            }
+            case "auto" -> {
+                if (!Epoll.isAvailable()) {
+                    log.info("transport_epoll_unavailable -> nio cause={}", String.valueOf(Epoll.unavailabilityCause()));
+                }
+                yield Epoll.isAvailable();
+            }
+            default -> throw new IllegalArgumentException("Unknown rps.transport: " + transport);
+        };
     }
 
     @Override
     public void close() {
-        if (serverChannel != null) {
+        for (Channel serverChannel : serverChannels) {
             serverChannel.close().syncUninterruptibly();
         }
+        serverChannels.clear();
         if (workerGroup != null) {
             workerGroup.shutdownGracefully().syncUninterruptibly();
         }
@@ -1,34 +1,47 @@
 package com.korolev.rps_game_server.net;
 
+import com.korolev.rps_game_server.domain.Lobby;
 import com.korolev.rps_game_server.domain.Matchmaker;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
-import io.netty.handler.codec.LineBasedFrameDecoder;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import java.nio.charset.StandardCharsets;
-
-import static com.korolev.rps_game_server.net.RpsServerHandler.IDLE_HANDLER_NAME;
-import static com.korolev.rps_game_server.net.RpsServerHandler.NICK_IDLE_SECONDS;
 
 @Component
 public class RpsChannelInitializer extends ChannelInitializer<Channel> {
 
-    private final Matchmaker matchmaker;
+    private final FlushCounter flushCounter;
+    /** Stateless, so one instance serves every channel; per-connection state lives in {@link Attrs}. */
+    private final RpsServerHandler handler;
+    private final int consolidateAfterFlushes;
 
-    public RpsChannelInitializer(Matchmaker matchmaker) {
-        this.matchmaker = matchmaker;
+    public RpsChannelInitializer(Matchmaker matchmaker,
+                                 IdleTracker idleTracker,
+                                 FlushCounter flushCounter,
+                                 SessionLauncher sessionLauncher,
+                                 BotFill botFill,
+                                 ServerMetrics metrics,
+                                 Spectators spectators,
+                                 Lobby lobby,
+                                 SessionResumes resumes,
+                                 @Value("${rps.flush.consolidate-after:0}") int consolidateAfterFlushes) {
+        this.flushCounter = flushCounter;
+        this.handler = new RpsServerHandler(matchmaker, idleTracker, sessionLauncher, botFill, metrics, spectators, lobby, resumes);
+        this.consolidateAfterFlushes = consolidateAfterFlushes;
     }
 
     @Override
     protected void initChannel(Channel ch) {
-        ch.pipeline()
-                .addLast(IDLE_HANDLER_NAME, new IdleStateHandler(NICK_IDLE_SECONDS, 0, 0))
-                .addLast(new LineBasedFrameDecoder(256))
-                .addLast(new StringDecoder(StandardCharsets.UTF_8))
-                .addLast(new StringEncoder(StandardCharsets.UTF_8))
-                .addLast(new RpsServerHandler(matchmaker));
+        ChannelPipeline p = ch.pipeline();
+        p.addLast(flushCounter);
+        if (consolidateAfterFlushes > 0) {
+            // also merges flushes issued outside a read, e.g. by a GameSession owned by another loop
+            p.addLast(new FlushConsolidationHandler(consolidateAfterFlushes, true));
+        }
+        // the decoder holds the cumulation buffer and framing state, so it stays per channel
+        p.addLast(new CommandDecoder())
+                .addLast(handler);
     }
-}
\ No newline at end of file
+}
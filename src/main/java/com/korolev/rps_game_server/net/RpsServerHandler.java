@@ -1,174 +1,615 @@
 package com.korolev.rps_game_server.net;
 
+import com.korolev.rps_game_server.domain.ChallengeGone;
 import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.GroupEnded;
+import com.korolev.rps_game_server.domain.GroupSession;
+import com.korolev.rps_game_server.domain.Lobby;
 import com.korolev.rps_game_server.domain.Matchmaker;
 import com.korolev.rps_game_server.domain.Move;
 import com.korolev.rps_game_server.domain.Player;
 import com.korolev.rps_game_server.domain.PlayerContext;
 import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.SessionEnded;
+import com.korolev.rps_game_server.domain.Variant;
+import com.korolev.rps_game_server.logging.LogContext;
 import com.korolev.rps_game_server.protocol.Command;
-import com.korolev.rps_game_server.protocol.CommandParser;
-import com.korolev.rps_game_server.protocol.Messages;
+import com.korolev.rps_game_server.protocol.Reply;
+import com.korolev.rps_game_server.protocol.ReplyTemplates;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.handler.timeout.IdleStateHandler;
-import org.slf4j.MDC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class RpsServerHandler extends SimpleChannelInboundHandler<String> {
+/**
+ * Protocol state machine for one connection at a time. Holds no per-channel fields (the connection's
+ * {@link PlayerContext} and {@link GameSession} are channel attributes), so a single instance is shared
+ * by all channels.
+ */
+@ChannelHandler.Sharable
+public final class RpsServerHandler extends SimpleChannelInboundHandler<Command> {
 
     private static final Logger log = LoggerFactory.getLogger(RpsServerHandler.class);
 
-    public static final String IDLE_HANDLER_NAME = "idle";
-
-    public static final int NICK_IDLE_SECONDS = 180;
-    private static final int WAIT_IDLE_SECONDS = 180;
-    private static final int GAME_IDLE_SECONDS = 120;
+    private static final Runnable NO_OP = () -> {
+    };
 
     private final Matchmaker matchmaker;
-
-    public RpsServerHandler(Matchmaker matchmaker) {
+    private final IdleTracker idleTracker;
+    private final SessionLauncher sessionLauncher;
+    private final BotFill botFill;
+    private final ServerMetrics metrics;
+    private final Spectators spectators;
+    private final Lobby lobby;
+    private final SessionResumes resumes;
+
+    public RpsServerHandler(Matchmaker matchmaker,
+                            IdleTracker idleTracker,
+                            SessionLauncher sessionLauncher,
+                            BotFill botFill,
+                            ServerMetrics metrics,
+                            Spectators spectators,
+                            Lobby lobby,
+                            SessionResumes resumes) {
         this.matchmaker = matchmaker;
+        this.idleTracker = idleTracker;
+        this.sessionLauncher = sessionLauncher;
+        this.botFill = botFill;
+        this.metrics = metrics;
+        this.spectators = spectators;
+        this.lobby = lobby;
+        this.resumes = resumes;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
-        PlayerContext pc = new PlayerContext();
+        PlayerContext pc = new PlayerContext(metrics);
         ctx.channel().attr(Attrs.PLAYER_CTX).set(pc);
 
-        setIdleTimeout(ctx.channel(), NICK_IDLE_SECONDS);
+        idleTracker.start(ctx.channel(), pc);
 
-        log.info("client_connected ch={} remote={}", shortId(ctx.channel()), ctx.channel().remoteAddress());
-        ctx.writeAndFlush(Messages.WELCOME);
+        log.info("client_connected ch={} netty_ch={} remote={}",
+                pc.getId(), shortId(ctx.channel()), ctx.channel().remoteAddress());
+        ctx.writeAndFlush(Reply.WELCOME.encoded());
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+    protected void channelRead0(ChannelHandlerContext ctx, Command cmd) {
+        long startNanos = System.nanoTime();
         PlayerContext pc = ctx.channel().attr(Attrs.PLAYER_CTX).get();
         if (pc == null) {
-            pc = new PlayerContext();
+            pc = new PlayerContext(metrics);
             ctx.channel().attr(Attrs.PLAYER_CTX).set(pc);
             log.warn("player_context_missing_recreated ch={}", shortId(ctx.channel()));
         }
+        idleTracker.touch(ctx.channel(), pc);
 
-        MDC.put("ch", shortId(ctx.channel()));
-        MDC.put("nick", safeNick(pc));
+        LogContext lc = LogContext.current();
+        lc.enter(pc.getId(), pc.getNickname());
         try {
-            boolean expectingNick = pc.getState() == PlayerState.WAIT_NICK;
-            Command cmd = CommandParser.parse(msg, expectingNick);
-
             switch (cmd) {
-                case Command.Empty ignored -> ctx.writeAndFlush(Messages.EMPTY_INPUT);
+                case Command.Empty ignored -> ctx.write(Reply.EMPTY_INPUT.encoded());
 
-                case Command.Help ignored -> ctx.writeAndFlush(Messages.HELP);
+                case Command.Help ignored -> ctx.write(Reply.HELP.encoded());
 
                 case Command.Quit ignored -> {
                     log.info("client_quit state={}", pc.getState());
-                    ctx.writeAndFlush(Messages.BYE).addListener(f -> ctx.close());
+                    ctx.writeAndFlush(Reply.BYE.encoded()).addListener(f -> ctx.close());
+                    if (pc.getState() == PlayerState.IN_GAME) {
+                        // leaving on purpose forfeits now; only a lost connection is parked for /resume
+                        GameSession session = ctx.channel().attr(Attrs.SESSION).getAndSet(null);
+                        if (session != null) {
+                            session.onDisconnect(player(ctx.channel(), pc));
+                        }
+                        GroupSession group = ctx.channel().attr(Attrs.GROUP).getAndSet(null);
+                        if (group != null) {
+                            group.onDisconnect(player(ctx.channel(), pc));
+                        }
+                    }
                 }
 
                 case Command.Invalid inv -> {
+                    if (pc.getState() == PlayerState.WATCHING) {
+                        ctx.write(Reply.WATCHING_ONLY.encoded());
+                        return;
+                    }
                     log.debug("client_invalid_input state={} reason={}", pc.getState(), inv.reason());
-                    ctx.writeAndFlush(inv.reason());
+                    Variant variant = pc.getState() == PlayerState.IN_GAME ? variant(ctx.channel()) : null;
+                    if (inv.reason() == Reply.BAD_MOVE && variant != null) {
+                        // the prompt lists the moves of the session's variant
+                        ctx.write(ReplyTemplates.badMove(ctx.alloc(), variant));
+                        return;
+                    }
+                    ctx.write(inv.reason().encoded());
                 }
 
                 case Command.Nick nickCmd -> handleNick(ctx, pc, nickCmd.nickname());
 
+                case Command.Rematch ignored -> handleRematch(ctx, pc);
+
+                case Command.Queue ignored -> handleQueue(ctx, pc);
+
+                case Command.BestOf bestOf -> {
+                    ctx.channel().attr(Attrs.BEST_OF).set(bestOf.bestOf());
+                    log.info("best_of_requested n={}", bestOf.bestOf());
+                    ctx.write(ReplyTemplates.bestOf(ctx.alloc(), bestOf.bestOf()));
+                }
+
+                case Command.UseVariant use -> {
+                    ctx.channel().attr(Attrs.VARIANT).set(use.variant());
+                    log.info("variant_requested variant={}", use.variant());
+                    ctx.write(ReplyTemplates.variant(ctx.alloc(), use.variant()));
+                }
+
+                case Command.Watch watch -> handleWatch(ctx, pc, watch.sessionId());
+
+                case Command.Unwatch ignored -> {
+                    if (pc.getState() == PlayerState.WATCHING && spectators.unwatch(ctx.channel())) {
+                        pc.setState(PlayerState.WAIT_NICK);
+                        idleTracker.touch(ctx.channel(), pc);
+                        ctx.write(Reply.UNWATCHED.encoded());
+                    } else {
+                        ctx.write(Reply.NOT_WATCHING.encoded());
+                    }
+                }
+
+                case Command.Challenge challenge -> handleChallenge(ctx, pc, challenge.nickname());
+
+                case Command.Accept ignored -> handleAccept(ctx, pc);
+
+                case Command.Join join -> handleJoin(ctx, pc, join.room());
+
+                case Command.Leave ignored -> handleLeave(ctx, pc);
+
+                case Command.FreeForAll ignored -> handleFreeForAll(ctx, pc);
+
+                case Command.Resume resume -> handleResume(ctx, pc, resume.token());
+
                 case Command.MoveCmd moveCmd -> {
+                    if (pc.getState() == PlayerState.WATCHING) {
+                        ctx.write(Reply.WATCHING_ONLY.encoded());
+                        return;
+                    }
+                    if (pc.getState() == PlayerState.GAME_OVER) {
+                        ctx.write(Reply.GAME_OVER_NEXT.encoded());
+                        return;
+                    }
                     if (pc.getState() != PlayerState.IN_GAME) {
                         log.debug("move_while_not_in_game state={}", pc.getState());
-                        ctx.writeAndFlush(Messages.WAITING_OPPONENT);
+                        ctx.write(Reply.WAITING_OPPONENT.encoded());
                         return;
                     }
                     handleMove(ctx, pc, moveCmd.move());
                 }
             }
         } finally {
-            MDC.clear();
+            lc.clear();
+            metrics.commandHandled(cmd, System.nanoTime() - startNanos);
         }
     }
 
+    /**
+     * Replies to inbound commands are only written; everything produced by one socket read
+     * (possibly several pipelined commands) goes out with a single flush here.
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+        ctx.fireChannelReadComplete();
+    }
+
     private void handleNick(ChannelHandlerContext ctx, PlayerContext pc, String nick) {
         if (pc.getState() != PlayerState.WAIT_NICK) {
             log.debug("nick_received_in_non_wait_nick state={}", pc.getState());
         }
 
+        Player me = new Player(nick, ctx.channel());
+        if (lobby.register(me) == null) {
+            log.info("nick_taken nick={}", nick);
+            ctx.write(Reply.NICK_TAKEN.encoded());
+            return;
+        }
+
         pc.setNickname(nick);
-        MDC.put("nick", nick); // update MDC immediately
+        LogContext.current().nick(nick); // later lines of this read carry the new nick
         pc.setState(PlayerState.WAIT_MATCH);
-        setIdleTimeout(ctx.channel(), WAIT_IDLE_SECONDS);
+        idleTracker.touch(ctx.channel(), pc);
 
         log.info("nick_accepted");
 
-        ctx.writeAndFlush(String.format(Messages.HI_WAITING_TEMPLATE, nick));
+        ctx.write(ReplyTemplates.hiWaiting(ctx.alloc(), nick));
 
-        Player me = new Player(nick, ctx.channel());
+        ctx.channel().attr(Attrs.PLAYER).set(me);
+
+        enterQueue(ctx.channel(), pc, me);
+    }
 
+    /** Pair {@code me} or leave it waiting. Runs on the channel's loop; the caller flushes. */
+    private void enterQueue(Channel ch, PlayerContext pc, Player me) {
         GameSession session;
         try {
             session = matchmaker.tryMatch(me);
         } catch (RuntimeException e) {
             log.error("matchmaker_failed", e);
-            ctx.writeAndFlush(Messages.TIMEOUT_GENERIC).addListener(f -> ctx.close());
+            ch.writeAndFlush(Reply.TIMEOUT_GENERIC.encoded()).addListener(f -> ch.close());
             return;
         }
 
         if (session == null) {
+            // in batch mode the next matchmaker tick hands the session to SessionLauncher
             log.info("queued_for_match");
+            botFill.schedule(ch, pc);
             return;
         }
 
-        log.info("match_found vs={}",
-                session.p1().nickname().equals(nick) ? session.p2().nickname() : session.p1().nickname());
+        log.info("match_found vs={}", session.p1() == me ? session.p2().nickname() : session.p1().nickname());
 
-        attachSession(session);
-        session.start();
+        // p2 is this channel, so we are on p2's loop
+        sessionLauncher.launch(session);
     }
 
-    private void attachSession(GameSession session) {
-        Player p1 = session.p1();
-        Player p2 = session.p2();
+    /** Spectating is for connections that have not entered a nickname, so a player is never also a watcher. */
+    private void handleWatch(ChannelHandlerContext ctx, PlayerContext pc, long sessionId) {
+        if (pc.getState() == PlayerState.WATCHING) {
+            ctx.write(Reply.WATCHING_ONLY.encoded());
+            return;
+        }
+        if (pc.getState() != PlayerState.WAIT_NICK) {
+            ctx.write(Reply.WATCH_NOT_NOW.encoded());
+            return;
+        }
+        if (sessionId == Command.Watch.LIST) {
+            ctx.write(spectators.list(ctx.channel()));
+            return;
+        }
+        log.info("watch_requested sess={}", sessionId);
+        spectators.watch(ctx.channel(), sessionId);
+    }
 
-        p1.channel().attr(Attrs.SESSION).set(session);
-        p2.channel().attr(Attrs.SESSION).set(session);
+    // -------- lobby: challenges and rooms, all from WAIT_MATCH --------
 
-        setState(p1.channel(), PlayerState.IN_GAME);
-        setState(p2.channel(), PlayerState.IN_GAME);
+    private void handleChallenge(ChannelHandlerContext ctx, PlayerContext pc, String nick) {
+        Lobby.Member member = lobbyMember(ctx, pc);
+        if (member == null) {
+            return;
+        }
+        Lobby.Member target = lobby.find(nick);
+        if (target == null) {
+            ctx.write(Reply.NO_SUCH_PLAYER.encoded());
+            return;
+        }
+        if (target == member) {
+            ctx.write(Reply.CHALLENGE_SELF.encoded());
+            return;
+        }
+        PlayerContext targetPc = target.player().channel().attr(Attrs.PLAYER_CTX).get();
+        if (targetPc == null || targetPc.getState() != PlayerState.WAIT_MATCH) {
+            ctx.write(Reply.PLAYER_BUSY.encoded());
+            return;
+        }
+        Player me = member.player();
+        if (!leaveSpot(pc, member)) {
+            return; // already being paired; the session will announce itself
+        }
+        if (!lobby.challenge(member, target)) {
+            ctx.write(Reply.CHALLENGE_BUSY.encoded());
+            enterQueue(ctx.channel(), pc, me);
+            return;
+        }
+        log.info("challenge_sent target={}", target.player().nickname());
+        ctx.write(ReplyTemplates.challengeSent(ctx.alloc(), target.player().nickname()));
+        Channel tch = target.player().channel();
+        tch.writeAndFlush(ReplyTemplates.challenged(tch.alloc(), me.nickname()), tch.voidPromise());
+    }
 
-        setIdleTimeout(p1.channel(), GAME_IDLE_SECONDS);
-        setIdleTimeout(p2.channel(), GAME_IDLE_SECONDS);
+    private void handleAccept(ChannelHandlerContext ctx, PlayerContext pc) {
+        Lobby.Member member = lobbyMember(ctx, pc);
+        if (member == null) {
+            return;
+        }
+        if (!lobby.hasChallenge(member)) {
+            ctx.write(Reply.NO_CHALLENGE.encoded());
+            return;
+        }
+        Player me = member.player();
+        if (!leaveSpot(pc, member)) {
+            return;
+        }
+        Lobby.Member challenger = lobby.accept(member);
+        if (challenger == null) {
+            ctx.write(Reply.CHALLENGE_GONE.encoded());
+            enterQueue(ctx.channel(), pc, me);
+            return;
+        }
+        // p2 is this channel, so we are on p2's loop
+        sessionLauncher.launch(matchmaker.newSession(challenger.player(), me));
+    }
 
-        log.info("session_attached p1={}({}) p2={}({})",
-                p1.nickname(), shortId(p1.channel()),
-                p2.nickname(), shortId(p2.channel()));
+    private void handleJoin(ChannelHandlerContext ctx, PlayerContext pc, String room) {
+        Lobby.Member member = lobbyMember(ctx, pc);
+        if (member == null || !leaveSpot(pc, member)) {
+            return;
+        }
+        Lobby.Member opponent = lobby.join(member, room);
+        if (opponent == null) {
+            log.info("room_waiting room={}", room);
+            ctx.write(ReplyTemplates.roomWaiting(ctx.alloc(), room));
+            return;
+        }
+        sessionLauncher.launch(matchmaker.newSession(opponent.player(), member.player()));
+    }
+
+    /** Sit at the free-for-all table; the player who fills it starts the game, on its own loop. */
+    private void handleFreeForAll(ChannelHandlerContext ctx, PlayerContext pc) {
+        Lobby.Member member = lobbyMember(ctx, pc);
+        if (member == null) {
+            return;
+        }
+        int size = matchmaker.freeForAllSize();
+        if (member.atTable()) {
+            ctx.write(ReplyTemplates.ffaWaiting(ctx.alloc(), lobby.waitingFreeForAll(), size));
+            return;
+        }
+        if (!leaveSpot(pc, member)) {
+            return;
+        }
+        Lobby.Member[] table = lobby.joinFreeForAll(member, size);
+        if (table == null) {
+            log.info("ffa_waiting");
+            ctx.write(ReplyTemplates.ffaWaiting(ctx.alloc(), lobby.waitingFreeForAll(), size));
+            return;
+        }
+        Player[] players = new Player[table.length];
+        for (int i = 0; i < table.length; i++) {
+            players[i] = table[i].player();
+        }
+        sessionLauncher.launchGroup(matchmaker.newGroup(players));
+    }
+
+    private void handleLeave(ChannelHandlerContext ctx, PlayerContext pc) {
+        Lobby.Member member = lobbyMember(ctx, pc);
+        if (member == null) {
+            return;
+        }
+        if (!member.away()) {
+            ctx.write(Reply.NOT_AWAY.encoded());
+            return;
+        }
+        if (!leaveSpot(pc, member)) {
+            return;
+        }
+        log.info("lobby_left");
+        ctx.write(Reply.QUEUED.encoded());
+        enterQueue(ctx.channel(), pc, member.player());
+    }
+
+    /** The caller's lobby entry, or null (with a reply written) if it is not waiting for a match. */
+    private Lobby.Member lobbyMember(ChannelHandlerContext ctx, PlayerContext pc) {
+        Player me = ctx.channel().attr(Attrs.PLAYER).get();
+        Lobby.Member member = me == null ? null : lobby.member(me);
+        if (member == null || pc.getState() != PlayerState.WAIT_MATCH) {
+            ctx.write(Reply.LOBBY_NOT_NOW.encoded());
+            return null;
+        }
+        return member;
+    }
+
+    /**
+     * Give up the current waiting spot (a room, a challenge, or the open queue) before taking another.
+     * Leaving the open queue also cancels its bot-fill deadline; a new queue entry arms its own.
+     *
+     * @return false if a match claimed the player first; it is about to enter a session
+     */
+    private boolean leaveSpot(PlayerContext pc, Lobby.Member member) {
+        if (member.room() != null) {
+            return lobby.leaveRoom(member);
+        }
+        if (member.challenging() != null) {
+            return lobby.withdraw(member);
+        }
+        if (member.atTable()) {
+            return lobby.leaveFreeForAll(member);
+        }
+        if (!matchmaker.removeIfWaiting(member.player())) {
+            return false;
+        }
+        pc.cancelBotFill();
+        return true;
+    }
+
+    /** The target of our challenge left or was paired elsewhere: back to the open queue. */
+    private void onChallengeGone(ChannelHandlerContext ctx, String target) {
+        Channel ch = ctx.channel();
+        PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+        Player me = ch.attr(Attrs.PLAYER).get();
+        if (pc == null || me == null || pc.getState() != PlayerState.WAIT_MATCH) {
+            return;
+        }
+        Lobby.Member member = lobby.member(me);
+        if (member == null || member.away()) {
+            return; // moved on to a room or another challenge meanwhile
+        }
+        LogContext lc = LogContext.current();
+        lc.enter(pc.getId(), pc.getNickname());
+        try {
+            log.info("challenge_gone target={}", target);
+            ch.write(Reply.CHALLENGE_GONE.encoded(), ch.voidPromise());
+            enterQueue(ch, pc, me);
+            ch.flush();
+        } finally {
+            lc.clear();
+        }
+    }
+
+    /**
+     * Take back a parked seat on this new connection. The token is claimed and the nickname registered
+     * here; the owner loop then rebinds the seat and this channel enters the game, or it refuses and closes
+     * the channel if the session ended meanwhile. Until then the channel stays outside any session, so a
+     * refused resume is never parked.
+     */
+    private void handleResume(ChannelHandlerContext ctx, PlayerContext pc, long token) {
+        if (pc.getState() != PlayerState.WAIT_NICK) {
+            ctx.write(Reply.RESUME_NOT_NOW.encoded());
+            return;
+        }
+        SessionResumes.Seat seat = resumes.claim(token);
+        if (seat == null) {
+            ctx.write(Reply.RESUME_UNKNOWN.encoded());
+            return;
+        }
+        GameSession session = seat.session();
+        String nick = seat.nickname();
+        Player me = new Player(nick, ctx.channel());
+        if (lobby.register(me) == null) {
+            // someone took the nickname while the seat was parked; the token stays good until the grace ends
+            resumes.release(token, seat);
+            ctx.write(Reply.NICK_TAKEN.encoded());
+            return;
+        }
+
+        LogContext.current().nick(nick);
+        log.info("resume_requested sess={} seat={}", session.id(), seat.index());
+        Channel ch = ctx.channel();
+        resumes.resume(token, seat, me, () -> ch.eventLoop().execute(() -> enterResumed(ch, pc, session, me)));
+    }
+
+    /** The owner loop gave {@code me} its seat back; on this channel's loop. */
+    private void enterResumed(Channel ch, PlayerContext pc, GameSession session, Player me) {
+        if (!ch.isActive()) {
+            // dropped again before getting here, so channelInactive found no session to leave
+            if (!resumes.park(session, me)) {
+                session.onDisconnect(me);
+            }
+            return;
+        }
+        pc.setNickname(me.nickname());
+        ch.attr(Attrs.PLAYER).set(me);
+        ch.attr(Attrs.SESSION).set(session);
+        pc.setState(PlayerState.IN_GAME);
+        idleTracker.touch(ch, pc);
+    }
+
+    private void handleRematch(ChannelHandlerContext ctx, PlayerContext pc) {
+        GameSession ended = ctx.channel().attr(Attrs.SESSION).get();
+        if (pc.getState() != PlayerState.GAME_OVER || ended == null) {
+            ctx.write(Reply.NOT_AFTER_GAME.encoded());
+            return;
+        }
+        ended.offerRematch(player(ctx.channel(), pc), sessionLauncher::launch);
+    }
+
+    /** Back to the matchmaker on the same connection, once the finished session has let go of the player. */
+    private void handleQueue(ChannelHandlerContext ctx, PlayerContext pc) {
+        GameSession ended = ctx.channel().attr(Attrs.SESSION).get();
+        if (pc.getState() != PlayerState.GAME_OVER || ended == null) {
+            ctx.write(Reply.NOT_AFTER_GAME.encoded());
+            return;
+        }
+        Channel ch = ctx.channel();
+        Player me = player(ch, pc);
+        ended.declineRematch(me, () -> ch.eventLoop().execute(() -> requeue(ch, pc, me, ended)));
+    }
+
+    private void requeue(Channel ch, PlayerContext pc, Player me, GameSession ended) {
+        if (!ch.isActive() || pc.getState() != PlayerState.GAME_OVER || ch.attr(Attrs.SESSION).get() != ended) {
+            return;
+        }
+        LogContext lc = LogContext.current();
+        lc.enter(pc.getId(), pc.getNickname());
+        try {
+            ch.attr(Attrs.SESSION).set(null);
+            pc.setState(PlayerState.WAIT_MATCH);
+            idleTracker.touch(ch, pc);
+            log.info("requeued after_sess={}", ended.id());
+            ch.write(Reply.QUEUED.encoded(), ch.voidPromise());
+            enterQueue(ch, pc, me);
+            ch.flush();
+        } finally {
+            lc.clear();
+        }
+    }
+
+    /** A keep-alive session finished and left this connection open: wait for /rematch or /queue. */
+    private void onSessionEnded(ChannelHandlerContext ctx, GameSession ended) {
+        PlayerContext pc = ctx.channel().attr(Attrs.PLAYER_CTX).get();
+        if (pc == null || pc.getState() != PlayerState.IN_GAME || ctx.channel().attr(Attrs.SESSION).get() != ended) {
+            return;
+        }
+        if (ctx.channel() instanceof BotChannel) {
+            // a bot plays one game per channel; a /rematch against it finds the opponent gone
+            ctx.close();
+            return;
+        }
+        pc.setState(PlayerState.GAME_OVER);
+        idleTracker.touch(ctx.channel(), pc);
+        log.info("game_over_kept_open ch={} sess={}", pc.getId(), ended.id());
+    }
+
+    /**
+     * A free-for-all finished and left this connection open (keep-alive): there is no rematch for a group,
+     * so the player goes straight back to the queue.
+     */
+    private void onGroupEnded(ChannelHandlerContext ctx, GroupSession ended) {
+        Channel ch = ctx.channel();
+        PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+        if (pc == null || pc.getState() != PlayerState.IN_GAME || !ch.attr(Attrs.GROUP).compareAndSet(ended, null)) {
+            return;
+        }
+        LogContext lc = LogContext.current();
+        lc.enter(pc.getId(), pc.getNickname());
+        try {
+            pc.setState(PlayerState.WAIT_MATCH);
+            idleTracker.touch(ch, pc);
+            log.info("requeued after_group={}", ended.id());
+            ch.write(Reply.QUEUED.encoded(), ch.voidPromise());
+            enterQueue(ch, pc, player(ch, pc));
+            ch.flush();
+        } finally {
+            lc.clear();
+        }
     }
 
     private void handleMove(ChannelHandlerContext ctx, PlayerContext pc, Move move) {
+        GroupSession group = ctx.channel().attr(Attrs.GROUP).get();
+        if (group != null) {
+            group.submitMove(player(ctx.channel(), pc), move);
+            return;
+        }
         GameSession session = ctx.channel().attr(Attrs.SESSION).get();
         if (session == null) {
-            log.warn("move_but_no_session ch={} nick={} -> back_to_wait_match",
-                    shortId(ctx.channel()), safeNick(pc));
+            log.warn("move_but_no_session -> back_to_wait_match");
 
             pc.setState(PlayerState.WAIT_MATCH);
-            setIdleTimeout(ctx.channel(), WAIT_IDLE_SECONDS);
-            ctx.writeAndFlush(Messages.NO_ACTIVE_SESSION);
+            idleTracker.touch(ctx.channel(), pc);
+            ctx.write(Reply.NO_ACTIVE_SESSION.encoded());
             return;
         }
 
-        log.debug("move_received ch={} nick={} move={}",
-                shortId(ctx.channel()), safeNick(pc), move);
+        if (log.isDebugEnabled() && LogContext.sampled(pc.getId())) {
+            log.debug("move_received move={}", move);
+        }
 
-        Player me = new Player(safeNick(pc), ctx.channel());
-        session.submitMove(me, move);
+        session.submitMove(player(ctx.channel(), pc), move);
     }
 
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof SessionEnded ended) {
+            onSessionEnded(ctx, ended.session());
+            return;
+        }
+        if (evt instanceof GroupEnded ended) {
+            onGroupEnded(ctx, ended.group());
+            return;
+        }
+        if (evt instanceof ChallengeGone gone) {
+            onChallengeGone(ctx, gone.target());
+            return;
+        }
         if (evt instanceof IdleStateEvent e && e.state() == IdleState.READER_IDLE) {
 
             PlayerContext pc = ctx.channel().attr(Attrs.PLAYER_CTX).get();
@@ -178,31 +619,46 @@ public final class RpsServerHandler extends SimpleChannelInboundHandler<String>
                 return;
             }
 
-            Player me = new Player(safeNick(pc), ctx.channel());
+            Player me = player(ctx.channel(), pc);
 
             switch (pc.getState()) {
                 case WAIT_NICK -> {
-                    log.info("timeout_wait_nick ch={}", shortId(ctx.channel()));
-                    ctx.writeAndFlush(Messages.TIMEOUT_NICK).addListener(f -> ctx.close());
+                    log.info("timeout_wait_nick ch={}", pc.getId());
+                    ctx.writeAndFlush(Reply.TIMEOUT_NICK.encoded()).addListener(f -> ctx.close());
                 }
 
                 case WAIT_MATCH -> {
-                    log.info("timeout_wait_match ch={} nick={}", shortId(ctx.channel()), safeNick(pc));
+                    log.info("timeout_wait_match ch={} nick={}", pc.getId(), safeNick(pc));
                     matchmaker.removeIfWaiting(me);
-                    ctx.writeAndFlush(Messages.TIMEOUT_WAIT).addListener(f -> ctx.close());
+                    ctx.writeAndFlush(Reply.TIMEOUT_WAIT.encoded()).addListener(f -> ctx.close());
                 }
 
                 case IN_GAME -> {
-                    log.info("idle_in_game ch={} nick={}", shortId(ctx.channel()), safeNick(pc));
+                    log.info("idle_in_game ch={} nick={}", pc.getId(), safeNick(pc));
                     GameSession session = ctx.channel().attr(Attrs.SESSION).get();
-                    if (session != null) {
+                    GroupSession group = ctx.channel().attr(Attrs.GROUP).get();
+                    if (group != null) {
+                        group.onIdle(me);
+                    } else if (session != null) {
                         session.onIdle(me);
                     } else {
                         log.warn("idle_in_game_but_no_session ch={} nick={} -> close",
-                                shortId(ctx.channel()), safeNick(pc));
-                        ctx.writeAndFlush(Messages.TIMEOUT_GENERIC).addListener(f -> ctx.close());
+                                pc.getId(), safeNick(pc));
+                        ctx.writeAndFlush(Reply.TIMEOUT_GENERIC.encoded()).addListener(f -> ctx.close());
                     }
                 }
+
+                case WATCHING -> {
+                    log.info("timeout_watching ch={}", pc.getId());
+                    // channelInactive leaves the spectator group
+                    ctx.writeAndFlush(Reply.TIMEOUT_GENERIC.encoded()).addListener(f -> ctx.close());
+                }
+
+                case GAME_OVER -> {
+                    log.info("timeout_game_over ch={} nick={}", pc.getId(), safeNick(pc));
+                    // channelInactive declines the rematch for us
+                    ctx.writeAndFlush(Reply.TIMEOUT_GENERIC.encoded()).addListener(f -> ctx.close());
+                }
             }
             return;
         }
@@ -219,48 +675,66 @@ public final class RpsServerHandler extends SimpleChannelInboundHandler<String>
         }
 
         log.info("client_disconnected ch={} nick={} state={}",
-                shortId(ctx.channel()), safeNick(pc), pc.getState());
+                pc.getId(), safeNick(pc), pc.getState());
+
+        idleTracker.stop(pc);
+        pc.close();
 
-        Player me = new Player(safeNick(pc), ctx.channel());
+        Player me = player(ctx.channel(), pc);
+        lobby.unregister(me);
 
         if (pc.getState() == PlayerState.WAIT_MATCH) {
             boolean removed = matchmaker.removeIfWaiting(me);
             log.debug("removed_from_queue ch={} nick={} removed={}",
-                    shortId(ctx.channel()), safeNick(pc), removed);
+                    pc.getId(), safeNick(pc), removed);
         }
 
         if (pc.getState() == PlayerState.IN_GAME) {
             GameSession session = ctx.channel().attr(Attrs.SESSION).getAndSet(null);
-            if (session != null) {
+            if (session != null && !resumes.park(session, me)) {
                 session.onDisconnect(me);
             }
+            GroupSession group = ctx.channel().attr(Attrs.GROUP).getAndSet(null);
+            if (group != null) {
+                group.onDisconnect(me);
+            }
         }
-    }
 
-    private void setState(Channel ch, PlayerState state) {
-        PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
-        if (pc != null) pc.setState(state);
+        if (pc.getState() == PlayerState.WATCHING) {
+            spectators.unwatch(ctx.channel());
+        }
+
+        if (pc.getState() == PlayerState.GAME_OVER) {
+            GameSession ended = ctx.channel().attr(Attrs.SESSION).getAndSet(null);
+            if (ended != null) {
+                ended.declineRematch(me, NO_OP);
+            }
+        }
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         PlayerContext pc = ctx.channel().attr(Attrs.PLAYER_CTX).get();
         log.warn("channel_exception ch={} nick={} state={}",
-                shortId(ctx.channel()), pc == null ? "" : safeNick(pc), pc == null ? null : pc.getState(), cause);
+                pc == null ? shortId(ctx.channel()) : pc.getId(), pc == null ? "" : safeNick(pc),
+                pc == null ? null : pc.getState(), cause);
         ctx.close();
     }
 
-    private void setIdleTimeout(Channel ch, int seconds) {
-        ChannelPipeline p = ch.pipeline();
-        IdleStateHandler newIdle = new IdleStateHandler(seconds, 0, 0);
-
-        if (p.get(IDLE_HANDLER_NAME) != null) {
-            p.replace(IDLE_HANDLER_NAME, IDLE_HANDLER_NAME, newIdle);
-        } else {
-            p.addFirst(IDLE_HANDLER_NAME, newIdle);
+    /** Variant of the connection's session or free-for-all, null if it is in neither. */
+    private Variant variant(Channel ch) {
+        GroupSession group = ch.attr(Attrs.GROUP).get();
+        if (group != null) {
+            return group.variant();
         }
+        GameSession session = ch.attr(Attrs.SESSION).get();
+        return session == null ? null : session.variant();
+    }
 
-        log.debug("idle_timeout_set ch={} seconds={}", shortId(ch), seconds);
+    /** The cached identity; before a nickname is accepted there is none, so a throwaway one is made. */
+    private Player player(Channel ch, PlayerContext pc) {
+        Player p = ch.attr(Attrs.PLAYER).get();
+        return p != null ? p : new Player(safeNick(pc), ch);
     }
 
     private String safeNick(PlayerContext pc) {
@@ -0,0 +1,103 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.protocol.Command;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Connection and command meters: open connections by {@link PlayerState} (as the {@link PlayerContext}
+ * observer) and handling time per {@link Command} type.
+ * <p>
+ * One timer per command type is registered up front in {@link #bindTo}; the handler picks it by index,
+ * so recording on the event loop neither looks up nor creates meters.
+ */
+@Component
+public final class ServerMetrics implements PlayerContext.StateObserver, MeterBinder {
+
+    private static final String[] COMMAND_TYPES = {"nick", "move", "help", "quit", "rematch", "queue", "best_of",
+            "watch", "unwatch", "challenge", "accept", "join", "leave", "resume", "variant", "ffa",
+            "empty", "invalid"};
+
+    private final LongAdder[] connections = new LongAdder[PlayerState.values().length];
+    private final Timer[] commandTimers = new Timer[COMMAND_TYPES.length];
+    private volatile boolean bound;
+
+    public ServerMetrics() {
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onTransition(PlayerState from, PlayerState to) {
+        if (from != null) {
+            connections[from.ordinal()].decrement();
+        }
+        if (to != null) {
+            connections[to.ordinal()].increment();
+        }
+    }
+
+    public long connections(PlayerState state) {
+        return connections[state.ordinal()].sum();
+    }
+
+    /** Record one handled command; {@code nanos} is the time spent in the handler. */
+    public void commandHandled(Command cmd, long nanos) {
+        if (!bound) {
+            return;
+        }
+        commandTimers[typeIndex(cmd)].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static int typeIndex(Command cmd) {
+        return switch (cmd) {
+            case Command.Nick ignored -> 0;
+            case Command.MoveCmd ignored -> 1;
+            case Command.Help ignored -> 2;
+            case Command.Quit ignored -> 3;
+            case Command.Rematch ignored -> 4;
+            case Command.Queue ignored -> 5;
+            case Command.BestOf ignored -> 6;
+            case Command.Watch ignored -> 7;
+            case Command.Unwatch ignored -> 8;
+            case Command.Challenge ignored -> 9;
+            case Command.Accept ignored -> 10;
+            case Command.Join ignored -> 11;
+            case Command.Leave ignored -> 12;
+            case Command.Resume ignored -> 13;
+            case Command.UseVariant ignored -> 14;
+            case Command.FreeForAll ignored -> 15;
+            case Command.Empty ignored -> 16;
+            case Command.Invalid ignored -> 17;
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (PlayerState state : PlayerState.values()) {
+            Gauge.builder("rps.connections", connections[state.ordinal()], LongAdder::sum)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .description("Open client connections by player state")
+                    .register(registry);
+        }
+        for (int i = 0; i < COMMAND_TYPES.length; i++) {
+            commandTimers[i] = Timer.builder("rps.commands")
+                    .tag("type", COMMAND_TYPES[i])
+                    .description("Inbound commands by type and the time spent handling them")
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofMillis(100))
+                    .register(registry);
+        }
+        bound = true;
+    }
+}
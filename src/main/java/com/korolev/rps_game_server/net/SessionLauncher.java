@@ -0,0 +1,178 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.GroupSession;
+import com.korolev.rps_game_server.domain.Lobby;
+import com.korolev.rps_game_server.domain.MatchListener;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds freshly paired sessions to their channels and starts them.
+ * <p>
+ * Inline matches come from {@link RpsServerHandler} on the second player's loop. Batch-tick matches
+ * arrive on the tick thread and are grouped per loop, so each loop gets one task that launches all of
+ * its sessions back to back instead of one task per session.
+ */
+@Component
+public final class SessionLauncher implements MatchListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionLauncher.class);
+
+    private final IdleTracker idleTracker;
+    private final LoopAffinity loopAffinity;
+    private final Lobby lobby;
+    private final SessionResumes resumes;
+
+    public SessionLauncher(IdleTracker idleTracker, LoopAffinity loopAffinity, Lobby lobby, SessionResumes resumes) {
+        this.idleTracker = idleTracker;
+        this.loopAffinity = loopAffinity;
+        this.lobby = lobby;
+        this.resumes = resumes;
+    }
+
+    /**
+     * Attach both players and start the session, on p2's event loop (hopping there if called elsewhere,
+     * e.g. for a rematch agreed on the owner loop).
+     */
+    public void launch(GameSession session) {
+        Player p1 = session.p1();
+        Player p2 = session.p2();
+        if (!p2.channel().eventLoop().inEventLoop()) {
+            p2.channel().eventLoop().execute(() -> launch(session));
+            return;
+        }
+
+        applyVariant(session);
+        applyBestOf(session);
+        resumes.issue(session);
+        enterGame(p1, session);
+        enterGame(p2, session);
+
+        log.info("session_attached p1={}({}) p2={}({})",
+                p1.nickname(), shortId(p1.channel()),
+                p2.nickname(), shortId(p2.channel()));
+
+        // move p2 onto the owner loop (if it isn't there) before the first message
+        loopAffinity.colocate(session, session::start);
+    }
+
+    /**
+     * Put every player of a free-for-all into the game on its own event loop, and start it once the last of
+     * them is in, so nobody is prompted for a move before its state says IN_GAME. Can be called from any
+     * thread.
+     */
+    public void launchGroup(GroupSession group) {
+        Player[] players = group.players();
+        log.info("group_attached sess={} players={}", group.id(), players.length);
+        AtomicInteger pending = new AtomicInteger(players.length);
+        for (Player p : players) {
+            enterGroup(p, group, pending);
+        }
+    }
+
+    @Override
+    public void onMatched(List<GameSession> sessions) {
+        Map<EventLoop, List<GameSession>> byLoop = new IdentityHashMap<>();
+        for (GameSession s : sessions) {
+            byLoop.computeIfAbsent(s.p2().channel().eventLoop(), l -> new ArrayList<>()).add(s);
+        }
+        byLoop.forEach((loop, batch) -> loop.execute(() -> {
+            for (GameSession s : batch) {
+                launch(s);
+            }
+        }));
+    }
+
+    /**
+     * Variant from the players' /variant choices, settled the same way as {@link #applyBestOf}; runs first
+     * so the series length is checked against the variant it will be played in.
+     */
+    private static void applyVariant(GameSession session) {
+        Variant a = session.p1().channel().attr(Attrs.VARIANT).get();
+        Variant b = session.p2().channel().attr(Attrs.VARIANT).get();
+        Variant chosen = a == null ? b : b == null || b == a ? a : null;
+        if (chosen != null) {
+            session.variant(chosen);
+        }
+    }
+
+    /**
+     * Series length from the players' /bestof choices: the one that asked wins, and when both asked for
+     * different lengths the session keeps its own (the configured length, or the length of the series it
+     * is a rematch of). Runs before {@link GameSession#start()}.
+     */
+    private static void applyBestOf(GameSession session) {
+        Integer a = session.p1().channel().attr(Attrs.BEST_OF).get();
+        Integer b = session.p2().channel().attr(Attrs.BEST_OF).get();
+        Integer chosen = a == null ? b : b == null || b.equals(a) ? a : null;
+        if (chosen != null) {
+            session.bestOf(chosen);
+        }
+    }
+
+    /**
+     * Bind the session to a channel and switch it to IN_GAME, on that channel's own event loop.
+     * For p1 this is queued ahead of {@link GameSession#start()}, which runs on p1's loop.
+     * A challenge still pending for the player can no longer be accepted, so the lobby lets it go.
+     */
+    private void enterGame(Player player, GameSession session) {
+        Channel ch = player.channel();
+        if (!ch.eventLoop().inEventLoop()) {
+            ch.eventLoop().execute(() -> enterGame(player, session));
+            return;
+        }
+        if (!ch.isActive()) {
+            // gone between pairing and now (its channelInactive saw no session): finish for the other one
+            session.onDisconnect(player);
+            return;
+        }
+        ch.attr(Attrs.SESSION).set(session);
+        PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+        if (pc != null) {
+            pc.setState(PlayerState.IN_GAME);
+            idleTracker.touch(ch, pc);
+        }
+        lobby.engaged(player);
+    }
+
+    /** {@link #enterGame} for a free-for-all seat; the last seat in starts the game. */
+    private void enterGroup(Player player, GroupSession group, AtomicInteger pending) {
+        Channel ch = player.channel();
+        if (!ch.eventLoop().inEventLoop()) {
+            ch.eventLoop().execute(() -> enterGroup(player, group, pending));
+            return;
+        }
+        if (!ch.isActive()) {
+            // gone since the table filled: out before the first round
+            group.onDisconnect(player);
+        } else {
+            ch.attr(Attrs.GROUP).set(group);
+            PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+            if (pc != null) {
+                pc.setState(PlayerState.IN_GAME);
+                idleTracker.touch(ch, pc);
+            }
+            lobby.engaged(player);
+        }
+        if (pending.decrementAndGet() == 0) {
+            group.start();
+        }
+    }
+
+    private String shortId(Channel ch) {
+        return ch.id().asShortText();
+    }
+}
@@ -0,0 +1,181 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.SessionListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resume tokens ({@code rps.session.resume-grace-seconds}): a player who loses the connection mid-match
+ * can reconnect within the grace period and type {@code /resume <token>} to take its seat back.
+ * <p>
+ * Every human seat gets a random 64-bit token when its session is launched, announced with the match
+ * start and forgotten when the session finishes. A dropped player is {@link GameSession#park parked}
+ * instead of losing, and its forfeit is put on the idle tracker's timer wheel, to run on the session's
+ * owner loop when the grace period ends: one wheel entry per drop, no thread or loop-scheduled task per
+ * session. If the player has resumed by then, the forfeit names a connection that is no longer in the
+ * session and does nothing.
+ * <p>
+ * A resume {@link #claim claims} its token for the attempt with one compare-and-set, so of two connections
+ * presenting the same token only one gets through; the token is released again once the owner loop has
+ * decided, for a later drop, unless the session finished meanwhile and took it away.
+ */
+@Component
+public final class SessionResumes implements SessionListener, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionResumes.class);
+
+    private final IdleTracker idleTracker;
+    private final long graceNanos;
+    private final SecureRandom random = new SecureRandom();
+
+    /** Live tokens of started, unfinished sessions. */
+    private final ConcurrentHashMap<Long, Seat> seats = new ConcurrentHashMap<>();
+
+    private final LongAdder parked = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+
+    /** The seat (1 or 2) of a session that a token takes back; {@code claimed} while a resume is using it. */
+    public record Seat(GameSession session, int index, boolean claimed) {
+        /** The seat's nickname, which a resume keeps; safe off the owner loop. */
+        public String nickname() {
+            return (index == 1 ? session.p1() : session.p2()).nickname();
+        }
+
+        private Seat withClaimed(boolean claimed) {
+            return new Seat(session, index, claimed);
+        }
+    }
+
+    public SessionResumes(IdleTracker idleTracker,
+                          @Value("${rps.session.resume-grace-seconds:0}") int graceSeconds) {
+        if (graceSeconds < 0) {
+            throw new IllegalArgumentException("rps.session.resume-grace-seconds must be >= 0, got " + graceSeconds);
+        }
+        this.idleTracker = idleTracker;
+        this.graceNanos = TimeUnit.SECONDS.toNanos(graceSeconds);
+    }
+
+    public boolean isEnabled() {
+        return graceNanos > 0;
+    }
+
+    /** Give the session's human seats their tokens. Before {@link GameSession#start()}. */
+    public void issue(GameSession session) {
+        if (!isEnabled()) {
+            return;
+        }
+        session.resumeTokens(token(session, 1, session.p1()), token(session, 2, session.p2()));
+    }
+
+    private long token(GameSession session, int index, Player player) {
+        if (player.channel() instanceof BotChannel) {
+            return 0;
+        }
+        Seat seat = new Seat(session, index, false);
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == 0 || seats.putIfAbsent(token, seat) != null);
+        return token;
+    }
+
+    /**
+     * {@code leaver}'s channel closed during {@code session}: park it for the grace period.
+     *
+     * @return false when resuming is off, and the caller should forfeit the session at once
+     */
+    public boolean park(GameSession session, Player leaver) {
+        if (!isEnabled()) {
+            return false;
+        }
+        parked.increment();
+        log.info("session_parked sess={} leaver={} grace_ms={}",
+                session.id(), leaver.nickname(), TimeUnit.NANOSECONDS.toMillis(graceNanos));
+        session.park(leaver);
+        idleTracker.schedule(session.owner(), () -> session.onDisconnect(leaver), graceNanos);
+        return true;
+    }
+
+    /**
+     * Reserve {@code token} for one resume attempt; pass the seat to {@link #resume} or {@link #release}.
+     *
+     * @return the seat the token resumes, or null if no live session issued it or another attempt holds it
+     */
+    public Seat claim(long token) {
+        Seat seat = seats.get(token);
+        if (seat == null || seat.claimed() || !seats.replace(token, seat, seat.withClaimed(true))) {
+            return null;
+        }
+        return seat;
+    }
+
+    /** End the attempt on a claimed token; a no-op once the session has finished and dropped the token. */
+    public void release(long token, Seat seat) {
+        seats.replace(token, seat.withClaimed(true), seat);
+    }
+
+    /**
+     * Hand the claimed seat to {@code returning} and release the token whatever the owner loop decides.
+     * {@code onResumed} runs on the owner loop once the seat is rebound; on a refusal the session replies
+     * and closes {@code returning}'s channel.
+     */
+    public void resume(long token, Seat seat, Player returning, Runnable onResumed) {
+        seat.session().resume(seat.index(), returning, accepted -> {
+            release(token, seat);
+            if (accepted) {
+                resumed.increment();
+                onResumed.run();
+            }
+        });
+    }
+
+    @Override
+    public void onFinish(GameSession session, FinishReason reason) {
+        for (int index = 1; index <= 2; index++) {
+            long token = session.resumeToken(index);
+            if (token != 0) {
+                seats.remove(token);
+            }
+        }
+    }
+
+    public int liveTokens() {
+        return seats.size();
+    }
+
+    public long parked() {
+        return parked.sum();
+    }
+
+    public long resumed() {
+        return resumed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rps.sessions.resume.tokens", this, SessionResumes::liveTokens)
+                .description("Resume tokens of unfinished sessions")
+                .register(registry);
+        FunctionCounter.builder("rps.sessions.resume", this, SessionResumes::parked)
+                .tag("event", "parked")
+                .description("Dropped players kept in their session, and reconnects that took their seat back")
+                .register(registry);
+        FunctionCounter.builder("rps.sessions.resume", this, SessionResumes::resumed)
+                .tag("event", "resumed")
+                .description("Dropped players kept in their session, and reconnects that took their seat back")
+                .register(registry);
+    }
+}
@@ -0,0 +1,306 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.SessionListener;
+import com.korolev.rps_game_server.protocol.Messages;
+import com.korolev.rps_game_server.protocol.Reply;
+import com.korolev.rps_game_server.protocol.ReplyTemplates;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spectators of live sessions ({@code /watch <id>}), fed as a {@link SessionListener}.
+ * <p>
+ * Watchers are grouped per event loop. A round is encoded once on the session's owner loop and handed
+ * to each group in one task; the group writes a retained duplicate of the same buffer to each of its
+ * channels, so a thousand watchers cost a thousand writes but one encode and one task per loop. The
+ * owner never touches a spectator channel, and a spectator whose outbound buffer is over the high water
+ * mark is dropped instead of queueing more, so slow watchers cannot hold memory or delay the players.
+ * <p>
+ * Threading: the group list of a session is confined to its owner loop and each group's channels to the
+ * group's loop. A subscription is decided on the owner and applied by a task on the spectator's loop,
+ * queued ahead of any later round of that session, so no round is missed or seen twice.
+ */
+@Component
+public final class Spectators implements SessionListener, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(Spectators.class);
+
+    /** The group a spectator channel is in; set and cleared on that channel's loop. */
+    private static final AttributeKey<Watchers> WATCHERS = AttributeKey.valueOf("watchers");
+    private static final int LIST_LIMIT = 20;
+
+    private final IdleTracker idleTracker;
+
+    /** Started, unfinished sessions by id, for /watch. */
+    private final ConcurrentHashMap<Long, Watched> live = new ConcurrentHashMap<>();
+    /** The subset with spectators, by identity, so a round of an unwatched session does not box its id. */
+    private final ConcurrentHashMap<GameSession, Watched> watched = new ConcurrentHashMap<>();
+
+    private final LongAdder watching = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public Spectators(IdleTracker idleTracker) {
+        this.idleTracker = idleTracker;
+    }
+
+    // -------- SessionListener, on the owner loop --------
+
+    @Override
+    public void onStart(GameSession session) {
+        live.put(session.id(), new Watched(session));
+    }
+
+    @Override
+    public void onRound(GameSession session, Move p1Move, Move p2Move) {
+        Watched w = watched.get(session);
+        if (w == null) {
+            return;
+        }
+        int score = session.score();
+        ByteBuf line = ReplyTemplates.watchRound(session.p1().channel().alloc(),
+                session.p1().nickname(), p1Move, session.p2().nickname(), p2Move,
+                GameSession.p1Wins(score), GameSession.p2Wins(score));
+        w.fanOut(line, false);
+    }
+
+    @Override
+    public void onFinish(GameSession session, FinishReason reason) {
+        Watched w = live.remove(session.id());
+        if (w == null) {
+            return;
+        }
+        watched.remove(session);
+        w.finished = true;
+        if (w.groups.isEmpty()) {
+            return;
+        }
+        int score = session.score();
+        ByteBuf line = ReplyTemplates.watchOver(session.p1().channel().alloc(), reason.tag(),
+                GameSession.p1Wins(score), GameSession.p2Wins(score));
+        w.fanOut(line, true);
+    }
+
+    // -------- commands, on the spectator's loop --------
+
+    /**
+     * Start watching {@code sessionId}. The channel switches to WATCHING once the owner has accepted it;
+     * an unknown or already finished session gets {@link Reply#WATCH_UNKNOWN} instead.
+     */
+    public void watch(Channel ch, long sessionId) {
+        Watched w = live.get(sessionId);
+        if (w == null) {
+            ch.write(Reply.WATCH_UNKNOWN.encoded(), ch.voidPromise());
+            return;
+        }
+        w.session.owner().execute(() -> w.subscribe(ch));
+    }
+
+    /** @return whether the channel was watching; it no longer is */
+    public boolean unwatch(Channel ch) {
+        Watchers group = ch.attr(WATCHERS).getAndSet(null);
+        if (group == null) {
+            return false;
+        }
+        group.channels.remove(ch);
+        watching.decrement();
+        return true;
+    }
+
+    /** {@code Live matches: <id> <p1> vs <p2>, ...}, at most {@value #LIST_LIMIT} of them. */
+    public ByteBuf list(Channel ch) {
+        StringBuilder sb = new StringBuilder(Messages.WATCH_LIST_PREFIX);
+        int n = 0;
+        for (Watched w : live.values()) {
+            if (n++ == LIST_LIMIT) {
+                break;
+            }
+            sb.append(n == 1 ? " " : ", ").append(w.session.id()).append(' ')
+                    .append(w.session.p1().nickname()).append(Messages.WATCH_VS).append(w.session.p2().nickname());
+        }
+        if (n == 0) {
+            return Reply.WATCH_NONE.encoded();
+        }
+        sb.append(Messages.WATCH_LIST_SUFFIX);
+        return ByteBufUtil.writeUtf8(ch.alloc(), sb);
+    }
+
+    public long watching() {
+        return watching.sum();
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rps.spectators", this, Spectators::watching)
+                .description("Connections currently watching a session")
+                .register(registry);
+        FunctionCounter.builder("rps.spectators.delivered", this, Spectators::delivered)
+                .description("Session events written to spectators")
+                .register(registry);
+        FunctionCounter.builder("rps.spectators.dropped", this, Spectators::dropped)
+                .description("Spectators disconnected because they did not keep up")
+                .register(registry);
+    }
+
+    /** A live session and its spectator groups. */
+    private final class Watched {
+        final GameSession session;
+        /** Owner loop only; at most one group per event loop. */
+        final List<Watchers> groups = new ArrayList<>(2);
+        /** Owner loop only. */
+        boolean finished;
+
+        Watched(GameSession session) {
+            this.session = session;
+        }
+
+        /** Owner loop: pick the group for the channel's loop and queue the channel's entry on that loop. */
+        void subscribe(Channel ch) {
+            if (finished) {
+                ch.eventLoop().execute(() -> ch.writeAndFlush(Reply.WATCH_UNKNOWN.encoded(), ch.voidPromise()));
+                return;
+            }
+            Watchers group = group(ch.eventLoop());
+            int score = session.score();
+            ByteBuf header = ReplyTemplates.watchStart(ch.alloc(), session.id(),
+                    session.p1().nickname(), session.p2().nickname(), session.bestOf(),
+                    GameSession.p1Wins(score), GameSession.p2Wins(score));
+            group.loop.execute(() -> group.add(ch, header));
+        }
+
+        private Watchers group(EventLoop loop) {
+            for (Watchers g : groups) {
+                if (g.loop == loop) {
+                    return g;
+                }
+            }
+            Watchers g = new Watchers(loop);
+            groups.add(g);
+            if (groups.size() == 1) {
+                watched.put(session, this);
+            }
+            return g;
+        }
+
+        /** Owner loop: hand one reference of {@code line} to every group, then drop ours. */
+        void fanOut(ByteBuf line, boolean last) {
+            List<Watchers> gs = groups;
+            line.retain(gs.size());
+            for (int i = 0; i < gs.size(); i++) {
+                Watchers g = gs.get(i);
+                if (last) {
+                    g.loop.execute(() -> g.end(line));
+                } else {
+                    g.loop.execute(() -> g.deliver(line));
+                }
+            }
+            line.release();
+        }
+    }
+
+    /** The spectators of one session on one event loop; {@link #channels} is confined to {@link #loop}. */
+    private final class Watchers {
+        final EventLoop loop;
+        final ArrayList<Channel> channels = new ArrayList<>();
+
+        Watchers(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        void add(Channel ch, ByteBuf header) {
+            PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+            // gone, or moved on (a nickname, another /watch) while the owner was deciding
+            if (!ch.isActive() || pc == null || pc.getState() != PlayerState.WAIT_NICK) {
+                header.release();
+                return;
+            }
+            channels.add(ch);
+            ch.attr(WATCHERS).set(this);
+            watching.increment();
+            pc.setState(PlayerState.WATCHING);
+            idleTracker.touch(ch, pc);
+            ch.writeAndFlush(header, ch.voidPromise());
+        }
+
+        void deliver(ByteBuf line) {
+            ArrayList<Channel> chs = channels;
+            int written = 0;
+            for (int i = chs.size() - 1; i >= 0; i--) {
+                Channel ch = chs.get(i);
+                if (!ch.isWritable()) {
+                    // over the high water mark (or closed): stop feeding it rather than queue more
+                    removeAt(i);
+                    if (ch.attr(WATCHERS).getAndSet(null) != null) {
+                        watching.decrement();
+                    }
+                    if (ch.isActive()) {
+                        dropped.increment();
+                        log.info("spectator_dropped ch={} backlog={}", ch.id().asShortText(), ch.bytesBeforeWritable());
+                        ch.close();
+                    }
+                    continue;
+                }
+                PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+                if (pc != null) {
+                    idleTracker.touch(ch, pc);
+                }
+                ch.writeAndFlush(line.retainedDuplicate(), ch.voidPromise());
+                written++;
+            }
+            delivered.add(written);
+            line.release();
+        }
+
+        /** The session is over: last line, then the spectators are back where /watch found them. */
+        void end(ByteBuf line) {
+            for (Channel ch : channels) {
+                if (ch.attr(WATCHERS).getAndSet(null) == null) {
+                    continue;
+                }
+                watching.decrement();
+                PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+                if (pc != null) {
+                    pc.setState(PlayerState.WAIT_NICK);
+                    idleTracker.touch(ch, pc);
+                }
+                ch.writeAndFlush(line.retainedDuplicate(), ch.voidPromise());
+            }
+            channels.clear();
+            line.release();
+        }
+
+        /** Order does not matter, so removal swaps in the last element instead of shifting. */
+        private void removeAt(int i) {
+            int last = channels.size() - 1;
+            channels.set(i, channels.get(last));
+            channels.remove(last);
+        }
+    }
+}
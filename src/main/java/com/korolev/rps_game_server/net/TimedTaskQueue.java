@@ -0,0 +1,120 @@
+package com.korolev.rps_game_server.net;
+
+import io.netty.channel.EventLoopTaskQueueFactory;
+import io.netty.util.internal.PlatformDependent;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event loop task queue that times the tasks taken from it.
+ * <p>
+ * The loop polls its queue right before each task and once more after the last one of a batch, so the
+ * gap between two polls is the run time of the task returned by the first. Only the loop thread polls,
+ * which keeps the counters plain fields: one {@code nanoTime()} per poll and no allocation. They are read
+ * and reset by {@link EventLoopLagSampler}'s probe, which runs on the same loop.
+ * <p>
+ * A loop that leaves its task batch on the time budget (every 64 tasks under {@code ioRatio}) polls again
+ * only after its next I/O pass, so the task before that break is charged with the I/O time as well.
+ */
+final class TimedTaskQueue extends AbstractQueue<Runnable> {
+
+    private final Queue<Runnable> delegate;
+
+    private long lastPollNanos;
+    private boolean running;
+
+    private long tasks;
+    private long busyNanos;
+    private long maxNanos;
+
+    TimedTaskQueue(Queue<Runnable> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Factory for a loop group: every queue it creates is appended to {@code created}, in the order the
+     * group creates its loops (which is also the group's iteration order).
+     */
+    static EventLoopTaskQueueFactory factory(List<TimedTaskQueue> created) {
+        return maxCapacity -> {
+            TimedTaskQueue q = new TimedTaskQueue(maxCapacity == Integer.MAX_VALUE
+                    ? PlatformDependent.newMpscQueue()
+                    : PlatformDependent.newMpscQueue(maxCapacity));
+            created.add(q);
+            return q;
+        };
+    }
+
+    static List<TimedTaskQueue> newRegistry() {
+        return new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public Runnable poll() {
+        long now = System.nanoTime();
+        if (running) {
+            long d = now - lastPollNanos;
+            tasks++;
+            busyNanos += d;
+            if (d > maxNanos) {
+                maxNanos = d;
+            }
+        }
+        Runnable task = delegate.poll();
+        running = task != null;
+        lastPollNanos = now;
+        return task;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        return delegate.offer(task);
+    }
+
+    @Override
+    public Runnable peek() {
+        return delegate.peek();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return delegate.remove(o);
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        return delegate.iterator();
+    }
+
+    // -------- loop thread only --------
+
+    long tasks() {
+        return tasks;
+    }
+
+    long busyNanos() {
+        return busyNanos;
+    }
+
+    /** Longest task since the last {@link #resetMax()}. */
+    long maxNanos() {
+        return maxNanos;
+    }
+
+    void resetMax() {
+        maxNanos = 0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.korolev.rps_game_server.net;
+
+/**
+ * Socket/transport settings for {@link NettyServer}, bound from {@code rps.*} properties.
+ *
+ * @param transport        {@code auto} (epoll when available, NIO otherwise), {@code epoll} or {@code nio}
+ * @param acceptors        number of listener sockets bound with SO_REUSEPORT (epoll only, 1 = plain bind)
+ * @param workerThreads    worker event loop threads, 0 = Netty default (2 * cores)
+ * @param tcpQuickAck      TCP_QUICKACK on accepted sockets (epoll only); set once at accept, and Linux leaves
+ *                         quick-ack mode again on its own, so it only speeds up the first ACKs
+ * @param tcpFastOpen      TCP_FASTOPEN pending-SYN queue length on listeners, 0 = disabled (epoll only)
+ * @param busyPollMicros   SO_BUSY_POLL on accepted sockets in microseconds, 0 = disabled (epoll only)
+ */
+public record TransportOptions(String transport,
+                               int acceptors,
+                               int workerThreads,
+                               boolean tcpQuickAck,
+                               int tcpFastOpen,
+                               int busyPollMicros) {
+
+    public static TransportOptions defaults() {
+        return new TransportOptions("auto", 1, 0, false, 0, 0);
+    }
+}
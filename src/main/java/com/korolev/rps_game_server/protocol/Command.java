@@ -1,16 +1,111 @@
 package com.korolev.rps_game_server.protocol;
 
 import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.SessionOptions;
+import com.korolev.rps_game_server.domain.Variant;
 
 public sealed interface Command
-        permits Command.Nick, Command.MoveCmd, Command.Help, Command.Quit, Command.Empty, Command.Invalid {
+        permits Command.Nick, Command.MoveCmd, Command.Help, Command.Quit, Command.Rematch, Command.Queue,
+        Command.BestOf, Command.UseVariant, Command.Watch, Command.Unwatch, Command.Challenge, Command.Accept, Command.Join,
+        Command.Leave, Command.FreeForAll, Command.Resume, Command.Empty, Command.Invalid {
+
+    // Stateless commands are shared: the hot path never allocates a Command.
+    Help HELP = new Help();
+    Quit QUIT = new Quit();
+    Rematch REMATCH = new Rematch();
+    Queue QUEUE = new Queue();
+    Empty EMPTY = new Empty();
+    Invalid BAD_MOVE = new Invalid(Reply.BAD_MOVE);
+    Invalid BAD_NICK = new Invalid(Reply.BAD_NICK);
+    Invalid BAD_BEST_OF = new Invalid(Reply.BAD_BEST_OF);
+    Invalid BAD_VARIANT = new Invalid(Reply.BAD_VARIANT);
+    Watch WATCH_LIST = new Watch(Watch.LIST);
+    Unwatch UNWATCH = new Unwatch();
+    Invalid BAD_WATCH = new Invalid(Reply.BAD_WATCH);
+    Accept ACCEPT = new Accept();
+    Leave LEAVE = new Leave();
+    FreeForAll FREE_FOR_ALL = new FreeForAll();
+    Invalid BAD_CHALLENGE = new Invalid(Reply.BAD_CHALLENGE);
+    Invalid BAD_ROOM = new Invalid(Reply.BAD_ROOM);
+    Invalid BAD_RESUME = new Invalid(Reply.BAD_RESUME);
 
     record Nick(String nickname) implements Command {}
-    record MoveCmd(Move move) implements Command {}
+
+    record MoveCmd(Move move) implements Command {
+        private static final MoveCmd[] CACHE = new MoveCmd[Move.values().length];
+
+        static {
+            for (Move m : Move.values()) {
+                CACHE[m.ordinal()] = new MoveCmd(m);
+            }
+        }
+
+        public static MoveCmd of(Move move) {
+            return CACHE[move.ordinal()];
+        }
+    }
 
     record Help() implements Command {}
     record Quit() implements Command {}
 
+    /** After a kept-alive game: play the same opponent again. */
+    record Rematch() implements Command {}
+    /** After a kept-alive game: look for a new opponent. */
+    record Queue() implements Command {}
+
+    /** Series length the player asks for in their next match; always a valid best-of. */
+    record BestOf(int bestOf) implements Command {
+        private static final BestOf[] CACHE = new BestOf[SessionOptions.MAX_BEST_OF + 1];
+
+        static {
+            for (int n = 1; n <= SessionOptions.MAX_BEST_OF; n += 2) {
+                CACHE[n] = new BestOf(n);
+            }
+        }
+
+        /** @return the shared instance, or {@link #BAD_BEST_OF} if {@code bestOf} is not a valid series length */
+        public static Command of(int bestOf) {
+            return SessionOptions.isValidBestOf(bestOf) ? CACHE[bestOf] : BAD_BEST_OF;
+        }
+    }
+
+    /** Rules the player asks for in their next match. */
+    record UseVariant(Variant variant) implements Command {
+        private static final UseVariant[] CACHE = new UseVariant[Variant.values().length];
+
+        static {
+            for (Variant v : Variant.values()) {
+                CACHE[v.ordinal()] = new UseVariant(v);
+            }
+        }
+
+        /** @return the shared instance, or {@link #BAD_VARIANT} for an unknown variant (null) */
+        public static Command of(Variant variant) {
+            return variant == null ? BAD_VARIANT : CACHE[variant.ordinal()];
+        }
+    }
+
+    /** Spectate the live session {@code sessionId}, or list live sessions for {@link #LIST}. */
+    record Watch(long sessionId) implements Command {
+        public static final long LIST = 0;
+    }
+    /** Stop spectating. */
+    record Unwatch() implements Command {}
+
+    /** Offer a match to the waiting player {@code nickname}. */
+    record Challenge(String nickname) implements Command {}
+    /** Take the challenge pending for this player. */
+    record Accept() implements Command {}
+    /** Wait in the named room, or play whoever is already waiting there. */
+    record Join(String room) implements Command {}
+    /** Leave a room, the free-for-all table or withdraw a challenge, back to the open queue. */
+    record Leave() implements Command {}
+    /** Wait for a free-for-all against several players. */
+    record FreeForAll() implements Command {}
+
+    /** Rejoin a match after a lost connection; {@code token} is never 0. */
+    record Resume(long token) implements Command {}
+
     record Empty() implements Command {}
-    record Invalid(String reason) implements Command {}
+    record Invalid(Reply reason) implements Command {}
 }
@@ -1,36 +1,271 @@
 package com.korolev.rps_game_server.protocol;
 
 import com.korolev.rps_game_server.domain.Move;
-
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
-import static com.korolev.rps_game_server.protocol.Messages.BAD_MOVE;
-
 public final class CommandParser {
 
     private static final Pattern NICK = Pattern.compile("^[A-Za-z0-9_-]{3,16}$");
 
+    private static final String BEST_OF = "/bestof";
+    private static final String VARIANT = "/variant";
+    private static final String WATCH = "/watch";
+    private static final String CHALLENGE = "/challenge";
+    private static final String JOIN = "/join";
+    private static final String RESUME = "/resume";
+    /** Session ids fit in 18 digits long before they could overflow a long. */
+    private static final int MAX_ID_DIGITS = 18;
+
+    private static final int NICK_MIN = 3;
+    private static final int NICK_MAX = 16;
+
+    /** [A-Za-z0-9_-] indexed by unsigned byte value. */
+    private static final boolean[] NICK_BYTES = new boolean[256];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) NICK_BYTES[c] = true;
+        for (int c = 'A'; c <= 'Z'; c++) NICK_BYTES[c] = true;
+        for (int c = '0'; c <= '9'; c++) NICK_BYTES[c] = true;
+        NICK_BYTES['_'] = true;
+        NICK_BYTES['-'] = true;
+    }
+
     public static Command parse(String raw, boolean expectingNick) {
-        if (raw == null) return new Command.Empty();
+        if (raw == null) return Command.EMPTY;
 
         String line = raw.trim();
-        if (line.isEmpty()) return new Command.Empty();
+        if (line.isEmpty()) return Command.EMPTY;
 
         // slash commands
-        if (line.equalsIgnoreCase("/help")) return new Command.Help();
-        if (line.equalsIgnoreCase("/quit")) return new Command.Quit();
+        if (line.equalsIgnoreCase("/help")) return Command.HELP;
+        if (line.equalsIgnoreCase("/quit")) return Command.QUIT;
+        if (line.equalsIgnoreCase("/rematch")) return Command.REMATCH;
+        if (line.equalsIgnoreCase("/queue")) return Command.QUEUE;
+        if (line.equalsIgnoreCase("/unwatch")) return Command.UNWATCH;
+        if (line.equalsIgnoreCase("/accept")) return Command.ACCEPT;
+        if (line.equalsIgnoreCase("/leave")) return Command.LEAVE;
+        if (line.equalsIgnoreCase("/ffa")) return Command.FREE_FOR_ALL;
+        if (line.regionMatches(true, 0, BEST_OF, 0, BEST_OF.length())) {
+            return parseBestOf(line.substring(BEST_OF.length()));
+        }
+        if (line.regionMatches(true, 0, VARIANT, 0, VARIANT.length())) {
+            return parseVariant(line.substring(VARIANT.length()));
+        }
+        if (line.regionMatches(true, 0, WATCH, 0, WATCH.length())) {
+            return parseWatch(line.substring(WATCH.length()));
+        }
+        if (line.regionMatches(true, 0, CHALLENGE, 0, CHALLENGE.length())) {
+            String nick = parseName(line.substring(CHALLENGE.length()));
+            return nick == null ? Command.BAD_CHALLENGE : new Command.Challenge(nick);
+        }
+        if (line.regionMatches(true, 0, JOIN, 0, JOIN.length())) {
+            String room = parseName(line.substring(JOIN.length()));
+            return room == null ? Command.BAD_ROOM : new Command.Join(room);
+        }
+        if (line.regionMatches(true, 0, RESUME, 0, RESUME.length())) {
+            return parseResume(line.substring(RESUME.length()));
+        }
 
         if (expectingNick) {
             if (!NICK.matcher(line).matches()) {
-                return new Command.Invalid("Invalid nickname. Use 3-16 chars [A-Za-z0-9_-].\r\n");
+                return Command.BAD_NICK;
             }
             return new Command.Nick(line);
         }
 
         Move move = Move.parse(line);
         if (move == null) {
-            return new Command.Invalid(BAD_MOVE);
+            return Command.BAD_MOVE;
+        }
+        return Command.MoveCmd.of(move);
+    }
+
+    /** {@code " N"} after /bestof, N being one or two ASCII digits. */
+    private static Command parseBestOf(String arg) {
+        int len = arg.length();
+        if (len < 2 || len > 3 || arg.charAt(0) != ' ') return Command.BAD_BEST_OF;
+        int n = 0;
+        for (int i = 1; i < len; i++) {
+            char c = arg.charAt(i);
+            if (c < '0' || c > '9') return Command.BAD_BEST_OF;
+            n = n * 10 + (c - '0');
+        }
+        return Command.BestOf.of(n);
+    }
+
+    /** {@code " <name>"} after /variant, the name being a {@link Variant#id()} of either case. */
+    private static Command parseVariant(String arg) {
+        if (arg.length() < 2 || arg.charAt(0) != ' ') return Command.BAD_VARIANT;
+        return Command.UseVariant.of(Variant.byId(arg.substring(1)));
+    }
+
+    /** Nothing (list) or {@code " <id>"} after /watch, the id being a positive decimal. */
+    private static Command parseWatch(String arg) {
+        int len = arg.length();
+        if (len == 0) return Command.WATCH_LIST;
+        if (len < 2 || len > MAX_ID_DIGITS + 1 || arg.charAt(0) != ' ') return Command.BAD_WATCH;
+        long id = 0;
+        for (int i = 1; i < len; i++) {
+            char c = arg.charAt(i);
+            if (c < '0' || c > '9') return Command.BAD_WATCH;
+            id = id * 10 + (c - '0');
+        }
+        return id == Command.Watch.LIST ? Command.BAD_WATCH : new Command.Watch(id);
+    }
+
+    /** {@code " <token>"} after /resume, the token being 16 hex digits of either case and not all zero. */
+    private static Command parseResume(String arg) {
+        if (arg.length() != ReplyTemplates.TOKEN_DIGITS + 1 || arg.charAt(0) != ' ') return Command.BAD_RESUME;
+        long token = 0;
+        for (int i = 1; i < arg.length(); i++) {
+            int d = hexDigit(arg.charAt(i));
+            if (d < 0) return Command.BAD_RESUME;
+            token = token << 4 | d;
+        }
+        return token == 0 ? Command.BAD_RESUME : new Command.Resume(token);
+    }
+
+    /** {@code " <name>"} after /challenge or /join, the name following the nickname rules; null if not. */
+    private static String parseName(String arg) {
+        if (arg.isEmpty() || arg.charAt(0) != ' ') return null;
+        String name = arg.substring(1);
+        return NICK.matcher(name).matches() ? name : null;
+    }
+
+    /**
+     * Byte-level twin of {@link #parse(String, boolean)} over {@code buf[from, to)}, without
+     * touching reader/writer indexes. Only a valid nickname allocates (its String).
+     * <p>
+     * Matching is ASCII-only: unlike {@code String.equalsIgnoreCase}/{@code toUpperCase} it does not
+     * fold exotic Unicode case variants (e.g. dotless i) into commands or moves.
+     */
+    public static Command parse(ByteBuf buf, int from, int to, boolean expectingNick) {
+        // trim(): drop everything <= ' ' at both ends
+        while (from < to && (buf.getByte(from) & 0xFF) <= ' ') from++;
+        while (to > from && (buf.getByte(to - 1) & 0xFF) <= ' ') to--;
+
+        int len = to - from;
+        if (len == 0) return Command.EMPTY;
+
+        if (buf.getByte(from) == '/') {
+            Command slash = parseSlash(buf, from + 1, len - 1);
+            if (slash != null) return slash;
+        }
+
+        if (expectingNick) {
+            if (!isNick(buf, from, len)) {
+                return Command.BAD_NICK;
+            }
+            return new Command.Nick(buf.toString(from, len, StandardCharsets.US_ASCII));
+        }
+
+        Move move = Move.parse(buf, from, len);
+        if (move == null) {
+            return Command.BAD_MOVE;
+        }
+        return Command.MoveCmd.of(move);
+    }
+
+    private static Command parseSlash(ByteBuf buf, int from, int len) {
+        if (len >= 6 && equalsLowerAscii(buf, from, "bestof")) {
+            return parseBestOf(buf, from + 6, len - 6);
+        }
+        if (len >= 7 && equalsLowerAscii(buf, from, "variant")) {
+            return parseVariant(buf, from + 7, len - 7);
+        }
+        if (len >= 5 && equalsLowerAscii(buf, from, "watch")) {
+            return parseWatch(buf, from + 5, len - 5);
+        }
+        if (len >= 9 && equalsLowerAscii(buf, from, "challenge")) {
+            return parseName(buf, from + 9, len - 9, Command.BAD_CHALLENGE, true);
+        }
+        if (len >= 4 && equalsLowerAscii(buf, from, "join")) {
+            return parseName(buf, from + 4, len - 4, Command.BAD_ROOM, false);
+        }
+        if (len >= 6 && equalsLowerAscii(buf, from, "resume")) {
+            return parseResume(buf, from + 6, len - 6);
+        }
+        return switch (len) {
+            case 3 -> equalsLowerAscii(buf, from, "ffa") ? Command.FREE_FOR_ALL : null;
+            case 4 -> equalsLowerAscii(buf, from, "help") ? Command.HELP
+                    : equalsLowerAscii(buf, from, "quit") ? Command.QUIT : null;
+            case 5 -> equalsLowerAscii(buf, from, "queue") ? Command.QUEUE
+                    : equalsLowerAscii(buf, from, "leave") ? Command.LEAVE : null;
+            case 6 -> equalsLowerAscii(buf, from, "accept") ? Command.ACCEPT : null;
+            case 7 -> equalsLowerAscii(buf, from, "rematch") ? Command.REMATCH
+                    : equalsLowerAscii(buf, from, "unwatch") ? Command.UNWATCH : null;
+            default -> null;
+        };
+    }
+
+    private static Command parseBestOf(ByteBuf buf, int from, int len) {
+        if (len < 2 || len > 3 || buf.getByte(from) != ' ') return Command.BAD_BEST_OF;
+        int n = 0;
+        for (int i = from + 1, end = from + len; i < end; i++) {
+            int c = buf.getByte(i);
+            if (c < '0' || c > '9') return Command.BAD_BEST_OF;
+            n = n * 10 + (c - '0');
+        }
+        return Command.BestOf.of(n);
+    }
+
+    private static Command parseVariant(ByteBuf buf, int from, int len) {
+        if (len < 2 || buf.getByte(from) != ' ') return Command.BAD_VARIANT;
+        return Command.UseVariant.of(Variant.byId(buf, from + 1, len - 1));
+    }
+
+    private static Command parseWatch(ByteBuf buf, int from, int len) {
+        if (len == 0) return Command.WATCH_LIST;
+        if (len < 2 || len > MAX_ID_DIGITS + 1 || buf.getByte(from) != ' ') return Command.BAD_WATCH;
+        long id = 0;
+        for (int i = from + 1, end = from + len; i < end; i++) {
+            int c = buf.getByte(i);
+            if (c < '0' || c > '9') return Command.BAD_WATCH;
+            id = id * 10 + (c - '0');
+        }
+        return id == Command.Watch.LIST ? Command.BAD_WATCH : new Command.Watch(id);
+    }
+
+    private static Command parseResume(ByteBuf buf, int from, int len) {
+        if (len != ReplyTemplates.TOKEN_DIGITS + 1 || buf.getByte(from) != ' ') return Command.BAD_RESUME;
+        long token = 0;
+        for (int i = from + 1, end = from + len; i < end; i++) {
+            int d = hexDigit(buf.getByte(i));
+            if (d < 0) return Command.BAD_RESUME;
+            token = token << 4 | d;
+        }
+        return token == 0 ? Command.BAD_RESUME : new Command.Resume(token);
+    }
+
+    private static int hexDigit(int c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        int lower = c | 0x20;
+        return lower >= 'a' && lower <= 'f' ? lower - 'a' + 10 : -1;
+    }
+
+    /** {@code " <name>"} after /challenge or /join, the name following the nickname rules. */
+    private static Command parseName(ByteBuf buf, int from, int len, Command bad, boolean challenge) {
+        if (len < 2 || buf.getByte(from) != ' ' || !isNick(buf, from + 1, len - 1)) return bad;
+        String name = buf.toString(from + 1, len - 1, StandardCharsets.US_ASCII);
+        return challenge ? new Command.Challenge(name) : new Command.Join(name);
+    }
+
+    private static boolean isNick(ByteBuf buf, int from, int len) {
+        if (len < NICK_MIN || len > NICK_MAX) return false;
+        for (int i = from, end = from + len; i < end; i++) {
+            if (!NICK_BYTES[buf.getByte(i) & 0xFF]) return false;
+        }
+        return true;
+    }
+
+    /** Case-insensitive compare against a lowercase ASCII letter literal. */
+    private static boolean equalsLowerAscii(ByteBuf buf, int from, String lower) {
+        for (int i = 0; i < lower.length(); i++) {
+            if ((buf.getByte(from + i) | 0x20) != lower.charAt(i)) return false;
         }
-        return new Command.MoveCmd(move);
+        return true;
     }
 }
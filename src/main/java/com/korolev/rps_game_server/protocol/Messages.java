@@ -19,11 +19,21 @@ public final class Messages {
     public static final String EMPTY_INPUT = "Empty input. Try again:\r\n";
     public static final String WAITING_OPPONENT = "Still waiting for an opponent...\r\n";
 
-    public static final String HI_WAITING_TEMPLATE = "Hi, %s! Waiting for an opponent...\r\n";
+    public static final String HI_PREFIX = "Hi, ";
+    public static final String HI_WAITING_SUFFIX = "! Waiting for an opponent...\r\n";
 
     public static final String NO_ACTIVE_SESSION = "No active session. Waiting for an opponent...\r\n";
 
-    public static final String BAD_MOVE = "Invalid move. Type ROCK/PAPER/SCISSORS.\r\n";
+    /**
+     * Moves of the classic game as the prompts below list them; a session of another {@code /variant}
+     * puts its own list in the same place (see {@link ReplyTemplates}).
+     */
+    public static final String CLASSIC_MOVES = "ROCK/PAPER/SCISSORS";
+
+    public static final String BAD_MOVE_PREFIX = "Invalid move. Type ";
+    public static final String BAD_MOVE_SUFFIX = ".\r\n";
+    public static final String BAD_MOVE = BAD_MOVE_PREFIX + CLASSIC_MOVES + BAD_MOVE_SUFFIX;
+    public static final String BAD_NICK = "Invalid nickname. Use 3-16 chars [A-Za-z0-9_-].\r\n";
 
     public static final String TIMEOUT_NICK = "Timeout waiting for nickname. Bye!\r\n";
     public static final String TIMEOUT_WAIT = "Timeout waiting for opponent. Bye!\r\n";
@@ -31,16 +41,184 @@ public final class Messages {
 
     public static final String BYE = "Bye!\r\n";
 
+    // -------- session --------
+
+    public static final String OPPONENT_FOUND_PREFIX = "Opponent found: ";
+    public static final String TYPE_MOVE_PREFIX = "\r\nType ";
+    public static final String TYPE_MOVE_SUFFIX = ":\r\n";
+    public static final String OPPONENT_FOUND_SUFFIX = TYPE_MOVE_PREFIX + CLASSIC_MOVES + TYPE_MOVE_SUFFIX;
+
+    public static final String YOUR_TURN_PREFIX = "Your turn. Type ";
+    public static final String YOUR_TURN = YOUR_TURN_PREFIX + CLASSIC_MOVES + TYPE_MOVE_SUFFIX;
+    public static final String WAITING_MOVE = "Waiting for opponent's move...\r\n";
+    public static final String ALREADY_MOVED = "You already made a move. Waiting for opponent...\r\n";
+
+    public static final String DRAW_PREFIX = "Draw! You chose ";
+    public static final String DRAW_TRY_AGAIN = ". Try again: ";
+    public static final String DRAW_SUFFIX = DRAW_TRY_AGAIN + CLASSIC_MOVES + "\r\n";
+
+    public static final String RESULT_PREFIX = "You chose ";
+    public static final String RESULT_OPPONENT = ", opponent chose ";
+    public static final String RESULT_YOU = ". You ";
+    public static final String RESULT_SUFFIX = "!\r\nGame over. Bye!\r\n";
+
+    public static final String TIMEOUT_LOSE = "Timeout. You LOSE.\r\nGame over. Bye!\r\n";
+    public static final String OPPONENT_TIMEOUT_WIN = "Opponent timeout. You WIN!\r\nGame over. Bye!\r\n";
+    public static final String OPPONENT_DISCONNECTED_WIN = "Opponent disconnected. You WIN!\r\nGame over. Bye!\r\n";
+
+    // -------- keep-alive (rps.session.keep-alive) --------
+
+    public static final String GAME_OVER_NEXT =
+            "Game over. Type /rematch to play again, /queue for a new opponent or /quit:\r\n";
+    public static final String GAME_OVER_QUEUE = "Game over. Type /queue for a new opponent or /quit:\r\n";
+
+    public static final String RESULT_SUFFIX_NEXT = "!\r\n" + GAME_OVER_NEXT;
+    public static final String OPPONENT_TIMEOUT_WIN_NEXT = "Opponent timeout. You WIN!\r\n" + GAME_OVER_QUEUE;
+    public static final String OPPONENT_DISCONNECTED_WIN_NEXT = "Opponent disconnected. You WIN!\r\n" + GAME_OVER_QUEUE;
+
+    public static final String REMATCH_WAITING = "Rematch offered. Waiting for your opponent...\r\n";
+    public static final String REMATCH_OFFERED =
+            "Your opponent wants a rematch. Type /rematch to accept or /queue for a new opponent:\r\n";
+    public static final String REMATCH_UNAVAILABLE = "Your opponent has left. Type /queue for a new opponent or /quit:\r\n";
+    public static final String QUEUED = "Waiting for an opponent...\r\n";
+    public static final String NOT_AFTER_GAME = "/rematch and /queue are only available after a game.\r\n";
+
+    // -------- best-of-N series (rps.series.best-of, /bestof) --------
+
+    public static final String SERIES_BEST_OF = "\r\nBest of ";
+    public static final String SERIES_FIRST_TO = ": first to ";
+    public static final String SERIES_ROUND_WINS = " round wins.";
+
+    public static final String ROUND_PREFIX = "Round ";
+    public static final String ROUND_CHOSE = ": You chose ";
+    public static final String ROUND_SCORE = ". Score ";
+    public static final String ROUND_BEST_OF = " (best of ";
+    public static final String ROUND_NEXT_PREFIX = "). Next round: ";
+    public static final String ROUND_NEXT = ROUND_NEXT_PREFIX + CLASSIC_MOVES + "\r\n";
+    public static final String SERIES_YOU = ").\r\nYou ";
+    public static final String SERIES_SUFFIX = " the series!\r\n";
+    public static final String GAME_OVER_BYE = "Game over. Bye!\r\n";
+
+    public static final String BEST_OF_PREFIX = "Next match: best of ";
+    public static final String BEST_OF_SUFFIX = ", unless your opponent asks for another length.\r\n";
+    public static final String BAD_BEST_OF = "Invalid series length. Type /bestof 1, 3, 5, ... up to 15.\r\n";
+
+    // -------- variants (rps.rules.variant, /variant) --------
+
+    /** Rules line of a non-classic match, between the series line and the move prompt. */
+    public static final String VARIANT_RULES_PREFIX = "\r\nVariant ";
+    public static final String VARIANT_RULES_BEATS = ": each move beats the next ";
+    public static final String VARIANT_RULES_OF = " in ";
+    public static final String VARIANT_RULES_SUFFIX = " (wrapping around).";
+
+    public static final String VARIANT_PREFIX = "Next match: ";
+    public static final String VARIANT_SUFFIX = ", unless your opponent asks for another variant.\r\n";
+    public static final String BAD_VARIANT = "Unknown variant. Type /variant classic, rpsls, rps7 or rps15.\r\n";
+
+    // -------- spectators (/watch) --------
+
+    public static final String WATCH_PREFIX = "Watching match ";
+    public static final String WATCH_SEPARATOR = ": ";
+    public static final String WATCH_VS = " vs ";
+    public static final String WATCH_BEST_OF = ", best of ";
+    public static final String WATCH_SCORE = ". Score ";
+    public static final String WATCH_SUFFIX = ". Type /unwatch to stop.\r\n";
+    public static final String WATCH_ROUND_SUFFIX = "\r\n";
+    public static final String WATCH_OVER_PREFIX = "Match over (";
+    public static final String WATCH_OVER_SCORE = "). Final score ";
+    public static final String WATCH_OVER_SUFFIX = ".\r\n" + "Type /watch to see live matches, or enter your nickname to play:\r\n";
+    public static final String WATCH_LIST_PREFIX = "Live matches:";
+    public static final String WATCH_LIST_SUFFIX = "\r\nType /watch <id> to watch one.\r\n";
+    public static final String WATCH_NONE = "No live matches. Enter your nickname to play:\r\n";
+    public static final String WATCH_UNKNOWN = "No live match with that id. Type /watch to see live matches.\r\n";
+    public static final String WATCH_NOT_NOW = "/watch is only available before you enter a nickname.\r\n";
+    public static final String WATCHING_ONLY = "You are watching a match. Type /unwatch to stop.\r\n";
+    public static final String UNWATCHED = "Stopped watching. Enter your nickname to play, or type /watch:\r\n";
+    public static final String NOT_WATCHING = "You are not watching a match.\r\n";
+    public static final String BAD_WATCH = "Invalid match id. Type /watch <id>, or /watch to see live matches.\r\n";
+
+    // -------- lobby (/challenge, /join) --------
+
+    public static final String NICK_TAKEN = "That nickname is taken. Choose another:\r\n";
+    public static final String CHALLENGE_SENT_PREFIX = "Challenge sent to ";
+    public static final String CHALLENGE_SENT_SUFFIX = ". Waiting for them to /accept (type /leave to cancel)...\r\n";
+    public static final String CHALLENGED_PREFIX = "Challenge from ";
+    public static final String CHALLENGED_SUFFIX = ". Type /accept to play them.\r\n";
+    public static final String ROOM_WAITING_PREFIX = "Waiting in room ";
+    public static final String ROOM_WAITING_SUFFIX = " for a second player (type /leave to cancel)...\r\n";
+    public static final String NO_SUCH_PLAYER = "No player with that nickname is online.\r\n";
+    public static final String CHALLENGE_SELF = "You cannot challenge yourself.\r\n";
+    public static final String PLAYER_BUSY = "That player is not waiting for an opponent.\r\n";
+    public static final String CHALLENGE_BUSY =
+            "That player already has a challenge pending. Waiting for an opponent...\r\n";
+    public static final String NO_CHALLENGE = "Nobody has challenged you.\r\n";
+    public static final String CHALLENGE_GONE = "The challenge is no longer open. Waiting for an opponent...\r\n";
+    public static final String NOT_AWAY = "You are already in the open queue.\r\n";
+    public static final String LOBBY_NOT_NOW =
+            "/challenge, /accept, /join, /ffa and /leave are only available while waiting for an opponent.\r\n";
+    public static final String BAD_CHALLENGE = "Invalid nickname. Type /challenge <nickname>.\r\n";
+    public static final String BAD_ROOM = "Invalid room name. Type /join <room> (3-16 chars [A-Za-z0-9_-]).\r\n";
+
+    // -------- free-for-all (/ffa, rps.ffa.players) --------
+
+    public static final String FFA_WAITING_PREFIX = "Waiting for a free-for-all: ";
+    public static final String FFA_WAITING_OF = " of ";
+    public static final String FFA_WAITING_SUFFIX = " players are in (type /leave to cancel)...\r\n";
+    public static final String FFA_STARTED_PREFIX = "Free-for-all with ";
+    public static final String FFA_STARTED_PLAYERS = " players: ";
+    public static final String FFA_SEPARATOR = ", ";
+    public static final String FFA_ROUND_MOVES = ": ";
+    public static final String FFA_COUNT = " x";
+    public static final String FFA_NOBODY_OUT = ". Nobody is out.";
+    public static final String FFA_OUT_PREFIX = ". Out: ";
+    public static final String FFA_OUT_SUFFIX = ".";
+    public static final String FFA_NEXT_ROUND = " Next round: ";
+    public static final String FFA_WINNER = " wins the free-for-all!\r\n";
+    public static final String FFA_LEFT = " left and is out.\r\n";
+    public static final String FFA_TIMED_OUT = " timed out and is out.\r\n";
+    public static final String FFA_OUT = "You are out. You will see the remaining rounds until the free-for-all ends.\r\n";
+    public static final String FFA_ALREADY_OUT = "You are out of this free-for-all. Wait for it to end.\r\n";
+    public static final String FFA_TIMEOUT_OUT = "Timeout. You are out.\r\nGame over. Bye!\r\n";
+    public static final String FFA_WAITING_MOVES = "Waiting for the other players' moves...\r\n";
+
+    // -------- resume (rps.session.resume-grace-seconds, /resume) --------
+
+    public static final String RESUME_TOKEN_PREFIX = "Resume token: ";
+    public static final String RESUME_TOKEN_SUFFIX = " (if you lose the connection, reconnect and type /resume <token>)\r\n";
+    public static final String RESUMED_PREFIX = "Welcome back! Playing ";
+    public static final String RESUMED_SCORE = ", score ";
+    public static final String RESUMED_BEST_OF = " (best of ";
+    public static final String RESUMED_SUFFIX = ").\r\n";
+    public static final String OPPONENT_AWAY = "Opponent lost the connection. Waiting for them to come back...\r\n";
+    public static final String OPPONENT_BACK = "Opponent is back.\r\n";
+    public static final String RESUME_UNKNOWN = "No match to resume with that token.\r\n";
+    public static final String RESUME_FAILED = "The match can no longer be resumed. Bye!\r\n";
+    public static final String RESUME_NOT_NOW = "/resume is only available before you enter a nickname.\r\n";
+    public static final String BAD_RESUME = "Invalid token. Type /resume <token>.\r\n";
+
     public static final String HELP =
             """
                     Commands:\r
                       /help - show this message\r
                       /quit - disconnect\r
+                      /rematch - after a game: play the same opponent again\r
+                      /queue - after a game: find a new opponent\r
+                      /bestof N - ask for a best-of-N series (odd N, up to 15)\r
+                      /variant NAME - ask for another game: classic, rpsls, rps7 or rps15\r
+                      /watch [id] - before entering a nickname: list live matches, or watch one\r
+                      /unwatch - stop watching\r
+                      /challenge NICK - while waiting: offer a match to another waiting player\r
+                      /accept - take the challenge offered to you\r
+                      /join ROOM - while waiting: play whoever joins the same room\r
+                      /ffa - while waiting: play a free-for-all against several players\r
+                      /leave - leave a room, a free-for-all or a challenge\r
+                      /resume TOKEN - after a lost connection: rejoin your match\r
                     \r
                     Rules:\r
                       ROCK beats SCISSORS\r
                       SCISSORS beat PAPER\r
                       PAPER beats ROCK\r
+                      (other variants show their rules when the match starts)\r
                     \r
                     Gameplay:\r
                       Enter nickname (3-16 chars: A-Za-z0-9_-)\r
@@ -0,0 +1,113 @@
+package com.korolev.rps_game_server.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Static server replies, UTF-8 encoded once into read-only direct buffers.
+ * <p>
+ * The catalogue buffers are never released; {@link #encoded()} hands out a
+ * retained duplicate with its own reader index, which the transport releases after the write.
+ * {@link #encoded(ByteBufAllocator)} copies the bytes into a pooled buffer instead, which costs a
+ * short copy but no wrapper objects; the per-move replies use it.
+ */
+public enum Reply {
+    WELCOME(Messages.WELCOME),
+    HELP(Messages.HELP),
+    BYE(Messages.BYE),
+    EMPTY_INPUT(Messages.EMPTY_INPUT),
+    WAITING_OPPONENT(Messages.WAITING_OPPONENT),
+    NO_ACTIVE_SESSION(Messages.NO_ACTIVE_SESSION),
+    BAD_MOVE(Messages.BAD_MOVE),
+    BAD_NICK(Messages.BAD_NICK),
+    TIMEOUT_NICK(Messages.TIMEOUT_NICK),
+    TIMEOUT_WAIT(Messages.TIMEOUT_WAIT),
+    TIMEOUT_GENERIC(Messages.TIMEOUT_GENERIC),
+
+    YOUR_TURN(Messages.YOUR_TURN),
+    WAITING_MOVE(Messages.WAITING_MOVE),
+    ALREADY_MOVED(Messages.ALREADY_MOVED),
+    TIMEOUT_LOSE(Messages.TIMEOUT_LOSE),
+    OPPONENT_TIMEOUT_WIN(Messages.OPPONENT_TIMEOUT_WIN),
+    OPPONENT_DISCONNECTED_WIN(Messages.OPPONENT_DISCONNECTED_WIN),
+
+    OPPONENT_TIMEOUT_WIN_NEXT(Messages.OPPONENT_TIMEOUT_WIN_NEXT),
+    OPPONENT_DISCONNECTED_WIN_NEXT(Messages.OPPONENT_DISCONNECTED_WIN_NEXT),
+    GAME_OVER_NEXT(Messages.GAME_OVER_NEXT),
+    REMATCH_WAITING(Messages.REMATCH_WAITING),
+    REMATCH_OFFERED(Messages.REMATCH_OFFERED),
+    REMATCH_UNAVAILABLE(Messages.REMATCH_UNAVAILABLE),
+    QUEUED(Messages.QUEUED),
+    NOT_AFTER_GAME(Messages.NOT_AFTER_GAME),
+
+    BAD_BEST_OF(Messages.BAD_BEST_OF),
+    BAD_VARIANT(Messages.BAD_VARIANT),
+
+    WATCH_NONE(Messages.WATCH_NONE),
+    WATCH_UNKNOWN(Messages.WATCH_UNKNOWN),
+    WATCH_NOT_NOW(Messages.WATCH_NOT_NOW),
+    WATCHING_ONLY(Messages.WATCHING_ONLY),
+    UNWATCHED(Messages.UNWATCHED),
+    NOT_WATCHING(Messages.NOT_WATCHING),
+    BAD_WATCH(Messages.BAD_WATCH),
+
+    NICK_TAKEN(Messages.NICK_TAKEN),
+    NO_SUCH_PLAYER(Messages.NO_SUCH_PLAYER),
+    CHALLENGE_SELF(Messages.CHALLENGE_SELF),
+    PLAYER_BUSY(Messages.PLAYER_BUSY),
+    CHALLENGE_BUSY(Messages.CHALLENGE_BUSY),
+    NO_CHALLENGE(Messages.NO_CHALLENGE),
+    CHALLENGE_GONE(Messages.CHALLENGE_GONE),
+    NOT_AWAY(Messages.NOT_AWAY),
+    LOBBY_NOT_NOW(Messages.LOBBY_NOT_NOW),
+    BAD_CHALLENGE(Messages.BAD_CHALLENGE),
+    BAD_ROOM(Messages.BAD_ROOM),
+
+    FFA_OUT(Messages.FFA_OUT),
+    FFA_ALREADY_OUT(Messages.FFA_ALREADY_OUT),
+    FFA_TIMEOUT_OUT(Messages.FFA_TIMEOUT_OUT),
+    FFA_WAITING_MOVES(Messages.FFA_WAITING_MOVES),
+
+    OPPONENT_AWAY(Messages.OPPONENT_AWAY),
+    OPPONENT_BACK(Messages.OPPONENT_BACK),
+    RESUME_UNKNOWN(Messages.RESUME_UNKNOWN),
+    RESUME_FAILED(Messages.RESUME_FAILED),
+    RESUME_NOT_NOW(Messages.RESUME_NOT_NOW),
+    BAD_RESUME(Messages.BAD_RESUME);
+
+    private final String text;
+    private final byte[] bytes;
+    private final ByteBuf buf;
+
+    Reply(String text) {
+        this.text = text;
+        this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        this.buf = preEncode(text);
+    }
+
+    /**
+     * @return a retained duplicate of the shared buffer, safe to pass to {@code write()}
+     */
+    public ByteBuf encoded() {
+        return buf.retainedDuplicate();
+    }
+
+    /**
+     * @return a pooled copy of the reply from {@code alloc}; no heap allocation once the pool is warm
+     */
+    public ByteBuf encoded(ByteBufAllocator alloc) {
+        return alloc.buffer(bytes.length).writeBytes(bytes);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    static ByteBuf preEncode(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return Unpooled.unreleasableBuffer(
+                Unpooled.directBuffer(bytes.length, bytes.length).writeBytes(bytes).asReadOnly());
+    }
+}
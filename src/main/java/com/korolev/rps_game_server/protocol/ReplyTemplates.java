@@ -0,0 +1,521 @@
+package com.korolev.rps_game_server.protocol;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Outcome;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.RpsRules;
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Templated replies assembled from pre-encoded fragments straight into an allocator buffer,
+ * sized exactly up front: no {@code String.format}, no intermediate strings.
+ * <p>
+ * Round replies depend only on the two moves, so they are encoded whole at class init into
+ * tables indexed by {@code [mine.ordinal()][theirs.ordinal()]} and written with one copy.
+ * Series round replies add the round number and score, written from a small table of
+ * pre-encoded numbers around the tabled move fragment.
+ * <p>
+ * Replies that list the moves to type come per {@link Variant}, from tables indexed by its ordinal;
+ * the classic tables hold exactly the classic strings of {@link Messages}.
+ * <p>
+ * Free-for-all replies name every player and go to all of them alike, so they are built once per event
+ * and shared by the session's writes.
+ */
+public final class ReplyTemplates {
+    private ReplyTemplates() {}
+
+    private static final byte[] HI_PREFIX = bytes(Messages.HI_PREFIX);
+    private static final byte[] HI_WAITING_SUFFIX = bytes(Messages.HI_WAITING_SUFFIX);
+
+    private static final byte[] OPPONENT_FOUND_PREFIX = bytes(Messages.OPPONENT_FOUND_PREFIX);
+
+    private static final byte[] DRAW_PREFIX = bytes(Messages.DRAW_PREFIX);
+
+    private static final byte[] RESULT_PREFIX = bytes(Messages.RESULT_PREFIX);
+    private static final byte[] RESULT_OPPONENT = bytes(Messages.RESULT_OPPONENT);
+    private static final byte[] RESULT_YOU = bytes(Messages.RESULT_YOU);
+    private static final byte[] RESULT_SUFFIX = bytes(Messages.RESULT_SUFFIX);
+    private static final byte[] RESULT_SUFFIX_NEXT = bytes(Messages.RESULT_SUFFIX_NEXT);
+
+    private static final byte[] SERIES_BEST_OF = bytes(Messages.SERIES_BEST_OF);
+    private static final byte[] SERIES_FIRST_TO = bytes(Messages.SERIES_FIRST_TO);
+    private static final byte[] SERIES_ROUND_WINS = bytes(Messages.SERIES_ROUND_WINS);
+
+    private static final byte[] ROUND_PREFIX = bytes(Messages.ROUND_PREFIX);
+    private static final byte[] ROUND_CHOSE = bytes(Messages.ROUND_CHOSE);
+    private static final byte[] ROUND_SCORE = bytes(Messages.ROUND_SCORE);
+    private static final byte[] ROUND_BEST_OF = bytes(Messages.ROUND_BEST_OF);
+    private static final byte DASH = '-';
+
+    private static final byte[] BEST_OF_PREFIX = bytes(Messages.BEST_OF_PREFIX);
+    private static final byte[] BEST_OF_SUFFIX = bytes(Messages.BEST_OF_SUFFIX);
+
+    private static final byte[] VARIANT_PREFIX = bytes(Messages.VARIANT_PREFIX);
+    private static final byte[] VARIANT_SUFFIX = bytes(Messages.VARIANT_SUFFIX);
+
+    private static final byte[] WATCH_PREFIX = bytes(Messages.WATCH_PREFIX);
+    private static final byte[] WATCH_SEPARATOR = bytes(Messages.WATCH_SEPARATOR);
+    private static final byte[] WATCH_VS = bytes(Messages.WATCH_VS);
+    private static final byte[] WATCH_BEST_OF = bytes(Messages.WATCH_BEST_OF);
+    private static final byte[] WATCH_SCORE = bytes(Messages.WATCH_SCORE);
+    private static final byte[] WATCH_SUFFIX = bytes(Messages.WATCH_SUFFIX);
+    private static final byte[] WATCH_ROUND_SUFFIX = bytes(Messages.WATCH_ROUND_SUFFIX);
+    private static final byte[] WATCH_OVER_PREFIX = bytes(Messages.WATCH_OVER_PREFIX);
+    private static final byte[] WATCH_OVER_SCORE = bytes(Messages.WATCH_OVER_SCORE);
+    private static final byte[] WATCH_OVER_SUFFIX = bytes(Messages.WATCH_OVER_SUFFIX);
+    private static final byte SPACE = ' ';
+
+    private static final byte[] CHALLENGE_SENT_PREFIX = bytes(Messages.CHALLENGE_SENT_PREFIX);
+    private static final byte[] CHALLENGE_SENT_SUFFIX = bytes(Messages.CHALLENGE_SENT_SUFFIX);
+    private static final byte[] CHALLENGED_PREFIX = bytes(Messages.CHALLENGED_PREFIX);
+    private static final byte[] CHALLENGED_SUFFIX = bytes(Messages.CHALLENGED_SUFFIX);
+    private static final byte[] ROOM_WAITING_PREFIX = bytes(Messages.ROOM_WAITING_PREFIX);
+    private static final byte[] ROOM_WAITING_SUFFIX = bytes(Messages.ROOM_WAITING_SUFFIX);
+
+    private static final byte[] FFA_WAITING_PREFIX = bytes(Messages.FFA_WAITING_PREFIX);
+    private static final byte[] FFA_WAITING_OF = bytes(Messages.FFA_WAITING_OF);
+    private static final byte[] FFA_WAITING_SUFFIX = bytes(Messages.FFA_WAITING_SUFFIX);
+    private static final byte[] FFA_STARTED_PREFIX = bytes(Messages.FFA_STARTED_PREFIX);
+    private static final byte[] FFA_STARTED_PLAYERS = bytes(Messages.FFA_STARTED_PLAYERS);
+    private static final byte[] FFA_SEPARATOR = bytes(Messages.FFA_SEPARATOR);
+    private static final byte[] FFA_ROUND_MOVES = bytes(Messages.FFA_ROUND_MOVES);
+    private static final byte[] FFA_COUNT = bytes(Messages.FFA_COUNT);
+    private static final byte[] FFA_NOBODY_OUT = bytes(Messages.FFA_NOBODY_OUT);
+    private static final byte[] FFA_OUT_PREFIX = bytes(Messages.FFA_OUT_PREFIX);
+    private static final byte[] FFA_OUT_SUFFIX = bytes(Messages.FFA_OUT_SUFFIX);
+    private static final byte[] FFA_WINNER = bytes(Messages.FFA_WINNER);
+    private static final byte[] FFA_LEFT = bytes(Messages.FFA_LEFT);
+    private static final byte[] FFA_TIMED_OUT = bytes(Messages.FFA_TIMED_OUT);
+    private static final byte[] GAME_OVER_BYE = bytes(Messages.GAME_OVER_BYE);
+
+    private static final byte[] RESUME_TOKEN_PREFIX = bytes(Messages.RESUME_TOKEN_PREFIX);
+    private static final byte[] RESUME_TOKEN_SUFFIX = bytes(Messages.RESUME_TOKEN_SUFFIX);
+    private static final byte[] RESUMED_PREFIX = bytes(Messages.RESUMED_PREFIX);
+    private static final byte[] RESUMED_SCORE = bytes(Messages.RESUMED_SCORE);
+    private static final byte[] RESUMED_BEST_OF = bytes(Messages.RESUMED_BEST_OF);
+    private static final byte[] RESUMED_SUFFIX = bytes(Messages.RESUMED_SUFFIX);
+    private static final byte[] HEX = bytes("0123456789abcdef");
+    /** A resume token is a long written as 16 lowercase hex digits. */
+    public static final int TOKEN_DIGITS = 16;
+
+    /** ASCII decimal of 0..99, enough for any round number or score of a series. */
+    private static final byte[][] NUMBERS = new byte[100][];
+
+    private static final byte[][] MOVES = new byte[Move.values().length][];
+    private static final byte[][] OUTCOMES = new byte[Outcome.values().length][];
+
+    /** Full draw replies by {@code [variant][move]}: both chose the move, then the variant's prompt. */
+    private static final byte[][][] DRAWS = new byte[Variant.values().length][Move.values().length][];
+    /** Full result replies by {@code [mine][theirs]} move ordinal, for the pairs some variant plays. */
+    private static final byte[][][] RESULTS = new byte[Move.values().length][Move.values().length][];
+    /** Result replies of keep-alive sessions, which end with the /rematch prompt instead of "Bye!". */
+    private static final byte[][][] RESULTS_NEXT = new byte[Move.values().length][Move.values().length][];
+    /** {@code : You chose <mine>, opponent chose <theirs>. You <outcome>} of a series round. */
+    private static final byte[][][] ROUNDS = new byte[Move.values().length][Move.values().length][];
+    /** Series verdict by {@code [outcome][keepAlive ? 1 : 0]}, including the game over line. */
+    private static final byte[][][] SERIES_ENDS = new byte[Outcome.values().length][2][];
+
+    // By variant ordinal: the replies that list the moves.
+    private static final byte[][] OPPONENT_FOUND_SUFFIXES = new byte[Variant.values().length][];
+    private static final byte[][] YOUR_TURNS = new byte[Variant.values().length][];
+    private static final byte[][] BAD_MOVES = new byte[Variant.values().length][];
+    private static final byte[][] ROUND_NEXTS = new byte[Variant.values().length][];
+    private static final byte[][] VARIANT_NAMES = new byte[Variant.values().length][];
+    private static final byte[][] FFA_NEXT_ROUNDS = new byte[Variant.values().length][];
+
+    static {
+        for (int i = 0; i < NUMBERS.length; i++) {
+            NUMBERS[i] = bytes(Integer.toString(i));
+        }
+        for (Move m : Move.values()) {
+            MOVES[m.ordinal()] = bytes(m.name());
+        }
+        for (Outcome o : Outcome.values()) {
+            OUTCOMES[o.ordinal()] = bytes(o.name());
+        }
+        for (Move mine : Move.values()) {
+            for (Move theirs : Move.values()) {
+                Outcome outcome = RpsRules.outcome(mine, theirs);
+                if (outcome == null) {
+                    continue; // no variant has both
+                }
+                byte[] a = MOVES[mine.ordinal()];
+                byte[] b = MOVES[theirs.ordinal()];
+                byte[] o = OUTCOMES[outcome.ordinal()];
+                RESULTS[mine.ordinal()][theirs.ordinal()] =
+                        concat(RESULT_PREFIX, a, RESULT_OPPONENT, b, RESULT_YOU, o, RESULT_SUFFIX);
+                RESULTS_NEXT[mine.ordinal()][theirs.ordinal()] =
+                        concat(RESULT_PREFIX, a, RESULT_OPPONENT, b, RESULT_YOU, o, RESULT_SUFFIX_NEXT);
+                ROUNDS[mine.ordinal()][theirs.ordinal()] =
+                        concat(ROUND_CHOSE, a, RESULT_OPPONENT, b, RESULT_YOU, o, ROUND_SCORE);
+            }
+        }
+        for (Outcome o : Outcome.values()) {
+            byte[] verdict = concat(bytes(Messages.SERIES_YOU), OUTCOMES[o.ordinal()], bytes(Messages.SERIES_SUFFIX));
+            SERIES_ENDS[o.ordinal()][0] = concat(verdict, bytes(Messages.GAME_OVER_BYE));
+            SERIES_ENDS[o.ordinal()][1] = concat(verdict, bytes(Messages.GAME_OVER_NEXT));
+        }
+        for (Variant v : Variant.values()) {
+            int i = v.ordinal();
+            String moves = v.prompt();
+            String rules = v == Variant.CLASSIC ? "" : Messages.VARIANT_RULES_PREFIX + v.id()
+                    + Messages.VARIANT_RULES_BEATS + v.beatsNext() + Messages.VARIANT_RULES_OF + v.cycleText()
+                    + Messages.VARIANT_RULES_SUFFIX;
+            OPPONENT_FOUND_SUFFIXES[i] = bytes(rules + Messages.TYPE_MOVE_PREFIX + moves + Messages.TYPE_MOVE_SUFFIX);
+            YOUR_TURNS[i] = bytes(Messages.YOUR_TURN_PREFIX + moves + Messages.TYPE_MOVE_SUFFIX);
+            BAD_MOVES[i] = bytes(Messages.BAD_MOVE_PREFIX + moves + Messages.BAD_MOVE_SUFFIX);
+            ROUND_NEXTS[i] = bytes(Messages.ROUND_NEXT_PREFIX + moves + "\r\n");
+            VARIANT_NAMES[i] = bytes(v.id());
+            FFA_NEXT_ROUNDS[i] = bytes(Messages.FFA_NEXT_ROUND + moves + "\r\n");
+            byte[] tryAgain = bytes(Messages.DRAW_TRY_AGAIN + moves + "\r\n");
+            for (Move m : Move.values()) {
+                if (v.allows(m)) {
+                    byte[] a = MOVES[m.ordinal()];
+                    DRAWS[i][m.ordinal()] = concat(DRAW_PREFIX, a, RESULT_OPPONENT, a, tryAgain);
+                }
+            }
+        }
+    }
+
+    /** {@code Hi, <nick>! Waiting for an opponent...} */
+    public static ByteBuf hiWaiting(ByteBufAllocator alloc, String nick) {
+        int nickLen = ByteBufUtil.utf8Bytes(nick);
+        ByteBuf buf = alloc.buffer(HI_PREFIX.length + nickLen + HI_WAITING_SUFFIX.length);
+        buf.writeBytes(HI_PREFIX);
+        ByteBufUtil.reserveAndWriteUtf8(buf, nick, nickLen);
+        buf.writeBytes(HI_WAITING_SUFFIX);
+        return buf;
+    }
+
+    /**
+     * {@code Opponent found: <nick>}, then the series length when the match is longer than a single game,
+     * the rules of a non-classic variant and the move prompt.
+     */
+    public static ByteBuf opponentFound(ByteBufAllocator alloc, String opponentNick, int bestOf, Variant variant) {
+        byte[] suffix = OPPONENT_FOUND_SUFFIXES[variant.ordinal()];
+        int nickLen = ByteBufUtil.utf8Bytes(opponentNick);
+        if (bestOf == 1) {
+            ByteBuf buf = alloc.buffer(OPPONENT_FOUND_PREFIX.length + nickLen + suffix.length);
+            buf.writeBytes(OPPONENT_FOUND_PREFIX);
+            ByteBufUtil.reserveAndWriteUtf8(buf, opponentNick, nickLen);
+            return buf.writeBytes(suffix);
+        }
+        byte[] n = NUMBERS[bestOf];
+        byte[] wins = NUMBERS[(bestOf + 1) / 2];
+        ByteBuf buf = alloc.buffer(OPPONENT_FOUND_PREFIX.length + nickLen + SERIES_BEST_OF.length + n.length
+                + SERIES_FIRST_TO.length + wins.length + SERIES_ROUND_WINS.length + suffix.length);
+        buf.writeBytes(OPPONENT_FOUND_PREFIX);
+        ByteBufUtil.reserveAndWriteUtf8(buf, opponentNick, nickLen);
+        buf.writeBytes(SERIES_BEST_OF).writeBytes(n)
+                .writeBytes(SERIES_FIRST_TO).writeBytes(wins)
+                .writeBytes(SERIES_ROUND_WINS)
+                .writeBytes(suffix);
+        return buf;
+    }
+
+    /** {@code Your turn. Type <moves>:} */
+    public static ByteBuf yourTurn(ByteBufAllocator alloc, Variant variant) {
+        return copy(alloc, YOUR_TURNS[variant.ordinal()]);
+    }
+
+    /** {@code Invalid move. Type <moves>.} */
+    public static ByteBuf badMove(ByteBufAllocator alloc, Variant variant) {
+        return copy(alloc, BAD_MOVES[variant.ordinal()]);
+    }
+
+    /** {@code Draw! You chose <move>, opponent chose <move>. Try again: <moves>} */
+    public static ByteBuf draw(ByteBufAllocator alloc, Variant variant, Move move) {
+        return copy(alloc, DRAWS[variant.ordinal()][move.ordinal()]);
+    }
+
+    /** {@code You chose <mine>, opponent chose <theirs>. You <outcome>!} followed by game over. */
+    public static ByteBuf result(ByteBufAllocator alloc, Move mine, Move theirs) {
+        return copy(alloc, RESULTS[mine.ordinal()][theirs.ordinal()]);
+    }
+
+    /** As {@link #result}, followed by the /rematch and /queue prompt instead of "Bye!". */
+    public static ByteBuf resultNext(ByteBufAllocator alloc, Move mine, Move theirs) {
+        return copy(alloc, RESULTS_NEXT[mine.ordinal()][theirs.ordinal()]);
+    }
+
+    /**
+     * One decided round of a best-of-{@code bestOf} series, the only reply a player gets for it:
+     * {@code Round <n>: You chose <mine>, opponent chose <theirs>. You <outcome>. Score <myWins>-<theirWins>
+     * (best of <bestOf>)}, then either the variant's next-round prompt or, on the {@code last} round, the series
+     * verdict and game over line ({@code keepAlive} picks the /rematch prompt over "Bye!").
+     */
+    public static ByteBuf round(ByteBufAllocator alloc, Variant variant, int round, Move mine, Move theirs,
+                                int myWins, int theirWins, int bestOf, boolean last, boolean keepAlive) {
+        byte[] n = NUMBERS[round];
+        byte[] body = ROUNDS[mine.ordinal()][theirs.ordinal()];
+        byte[] w1 = NUMBERS[myWins];
+        byte[] w2 = NUMBERS[theirWins];
+        byte[] b = NUMBERS[bestOf];
+        byte[] tail = last
+                ? SERIES_ENDS[(myWins > theirWins ? Outcome.WIN : Outcome.LOSE).ordinal()][keepAlive ? 1 : 0]
+                : ROUND_NEXTS[variant.ordinal()];
+        ByteBuf buf = alloc.buffer(ROUND_PREFIX.length + n.length + body.length + w1.length + 1 + w2.length
+                + ROUND_BEST_OF.length + b.length + tail.length);
+        return buf.writeBytes(ROUND_PREFIX).writeBytes(n)
+                .writeBytes(body)
+                .writeBytes(w1).writeByte(DASH).writeBytes(w2)
+                .writeBytes(ROUND_BEST_OF).writeBytes(b)
+                .writeBytes(tail);
+    }
+
+    /** {@code Next match: best of <n>, unless your opponent asks for another length.} */
+    public static ByteBuf bestOf(ByteBufAllocator alloc, int bestOf) {
+        byte[] n = NUMBERS[bestOf];
+        return alloc.buffer(BEST_OF_PREFIX.length + n.length + BEST_OF_SUFFIX.length)
+                .writeBytes(BEST_OF_PREFIX).writeBytes(n).writeBytes(BEST_OF_SUFFIX);
+    }
+
+    /** {@code Next match: <variant>, unless your opponent asks for another variant.} */
+    public static ByteBuf variant(ByteBufAllocator alloc, Variant variant) {
+        byte[] name = VARIANT_NAMES[variant.ordinal()];
+        return alloc.buffer(VARIANT_PREFIX.length + name.length + VARIANT_SUFFIX.length)
+                .writeBytes(VARIANT_PREFIX).writeBytes(name).writeBytes(VARIANT_SUFFIX);
+    }
+
+    /**
+     * First line for a new spectator:
+     * {@code Watching match <id>: <p1> vs <p2>, best of <n>. Score <p1Wins>-<p2Wins>. Type /unwatch to stop.}
+     */
+    public static ByteBuf watchStart(ByteBufAllocator alloc, long sessionId, String p1, String p2,
+                                     int bestOf, int p1Wins, int p2Wins) {
+        ByteBuf buf = alloc.buffer(WATCH_PREFIX.length + 20 + WATCH_SEPARATOR.length + ByteBufUtil.utf8MaxBytes(p1)
+                + WATCH_VS.length + ByteBufUtil.utf8MaxBytes(p2) + WATCH_BEST_OF.length + 2 + WATCH_SCORE.length
+                + 5 + WATCH_SUFFIX.length);
+        buf.writeBytes(WATCH_PREFIX);
+        ByteBufUtil.writeAscii(buf, Long.toString(sessionId));
+        buf.writeBytes(WATCH_SEPARATOR);
+        ByteBufUtil.writeUtf8(buf, p1);
+        buf.writeBytes(WATCH_VS);
+        ByteBufUtil.writeUtf8(buf, p2);
+        return buf.writeBytes(WATCH_BEST_OF).writeBytes(NUMBERS[bestOf])
+                .writeBytes(WATCH_SCORE).writeBytes(NUMBERS[p1Wins]).writeByte(DASH).writeBytes(NUMBERS[p2Wins])
+                .writeBytes(WATCH_SUFFIX);
+    }
+
+    /**
+     * One round as spectators see it, encoded once and shared by all of them:
+     * {@code <p1> <move> vs <p2> <move>. Score <p1Wins>-<p2Wins>}.
+     */
+    public static ByteBuf watchRound(ByteBufAllocator alloc, String p1, Move m1, String p2, Move m2,
+                                     int p1Wins, int p2Wins) {
+        int len1 = ByteBufUtil.utf8Bytes(p1);
+        int len2 = ByteBufUtil.utf8Bytes(p2);
+        byte[] a = MOVES[m1.ordinal()];
+        byte[] b = MOVES[m2.ordinal()];
+        byte[] w1 = NUMBERS[p1Wins];
+        byte[] w2 = NUMBERS[p2Wins];
+        ByteBuf buf = alloc.buffer(len1 + 1 + a.length + WATCH_VS.length + len2 + 1 + b.length
+                + WATCH_SCORE.length + w1.length + 1 + w2.length + WATCH_ROUND_SUFFIX.length);
+        ByteBufUtil.reserveAndWriteUtf8(buf, p1, len1);
+        buf.writeByte(SPACE).writeBytes(a).writeBytes(WATCH_VS);
+        ByteBufUtil.reserveAndWriteUtf8(buf, p2, len2);
+        return buf.writeByte(SPACE).writeBytes(b)
+                .writeBytes(WATCH_SCORE).writeBytes(w1).writeByte(DASH).writeBytes(w2)
+                .writeBytes(WATCH_ROUND_SUFFIX);
+    }
+
+    /** {@code Match over (<reason>). Final score <p1Wins>-<p2Wins>.} followed by what spectators can do next. */
+    public static ByteBuf watchOver(ByteBufAllocator alloc, String reason, int p1Wins, int p2Wins) {
+        byte[] w1 = NUMBERS[p1Wins];
+        byte[] w2 = NUMBERS[p2Wins];
+        ByteBuf buf = alloc.buffer(WATCH_OVER_PREFIX.length + reason.length() + WATCH_OVER_SCORE.length
+                + w1.length + 1 + w2.length + WATCH_OVER_SUFFIX.length);
+        buf.writeBytes(WATCH_OVER_PREFIX);
+        ByteBufUtil.writeAscii(buf, reason);
+        return buf.writeBytes(WATCH_OVER_SCORE).writeBytes(w1).writeByte(DASH).writeBytes(w2)
+                .writeBytes(WATCH_OVER_SUFFIX);
+    }
+
+    /** {@code Challenge sent to <nick>. Waiting for them to /accept...} */
+    public static ByteBuf challengeSent(ByteBufAllocator alloc, String nick) {
+        return around(alloc, CHALLENGE_SENT_PREFIX, nick, CHALLENGE_SENT_SUFFIX);
+    }
+
+    /** {@code Challenge from <nick>. Type /accept to play them.} */
+    public static ByteBuf challenged(ByteBufAllocator alloc, String nick) {
+        return around(alloc, CHALLENGED_PREFIX, nick, CHALLENGED_SUFFIX);
+    }
+
+    /** {@code Waiting in room <room> for a second player...} */
+    public static ByteBuf roomWaiting(ByteBufAllocator alloc, String room) {
+        return around(alloc, ROOM_WAITING_PREFIX, room, ROOM_WAITING_SUFFIX);
+    }
+
+    /** {@code Resume token: <16 hex digits> (if you lose the connection, ...)} */
+    public static ByteBuf resumeToken(ByteBufAllocator alloc, long token) {
+        ByteBuf buf = alloc.buffer(RESUME_TOKEN_PREFIX.length + TOKEN_DIGITS + RESUME_TOKEN_SUFFIX.length);
+        buf.writeBytes(RESUME_TOKEN_PREFIX);
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            buf.writeByte(HEX[(int) (token >>> shift) & 0xF]);
+        }
+        return buf.writeBytes(RESUME_TOKEN_SUFFIX);
+    }
+
+    /** {@code Welcome back! Playing <nick>, score <mine>-<theirs> (best of <n>).} */
+    public static ByteBuf resumed(ByteBufAllocator alloc, String opponentNick, int myWins, int theirWins, int bestOf) {
+        byte[] w1 = NUMBERS[myWins];
+        byte[] w2 = NUMBERS[theirWins];
+        byte[] n = NUMBERS[bestOf];
+        int nickLen = ByteBufUtil.utf8Bytes(opponentNick);
+        ByteBuf buf = alloc.buffer(RESUMED_PREFIX.length + nickLen + RESUMED_SCORE.length
+                + w1.length + 1 + w2.length + RESUMED_BEST_OF.length + n.length + RESUMED_SUFFIX.length);
+        buf.writeBytes(RESUMED_PREFIX);
+        ByteBufUtil.reserveAndWriteUtf8(buf, opponentNick, nickLen);
+        return buf.writeBytes(RESUMED_SCORE).writeBytes(w1).writeByte(DASH).writeBytes(w2)
+                .writeBytes(RESUMED_BEST_OF).writeBytes(n).writeBytes(RESUMED_SUFFIX);
+    }
+
+    /** {@code Waiting for a free-for-all: <waiting> of <size> players are in...} */
+    public static ByteBuf ffaWaiting(ByteBufAllocator alloc, int waiting, int size) {
+        byte[] w = NUMBERS[waiting];
+        byte[] n = NUMBERS[size];
+        return alloc.buffer(FFA_WAITING_PREFIX.length + w.length + FFA_WAITING_OF.length + n.length
+                        + FFA_WAITING_SUFFIX.length)
+                .writeBytes(FFA_WAITING_PREFIX).writeBytes(w).writeBytes(FFA_WAITING_OF).writeBytes(n)
+                .writeBytes(FFA_WAITING_SUFFIX);
+    }
+
+    /** {@code Free-for-all with <n> players: <nick>, <nick>, ...} then the variant's rules and move prompt. */
+    public static ByteBuf groupStarted(ByteBufAllocator alloc, Player[] players, Variant variant) {
+        byte[] n = NUMBERS[players.length];
+        byte[] suffix = OPPONENT_FOUND_SUFFIXES[variant.ordinal()];
+        ByteBuf buf = alloc.buffer(FFA_STARTED_PREFIX.length + n.length + FFA_STARTED_PLAYERS.length
+                + namesLength(players, -1L) + suffix.length);
+        buf.writeBytes(FFA_STARTED_PREFIX).writeBytes(n).writeBytes(FFA_STARTED_PLAYERS);
+        writeNames(buf, players, -1L);
+        return buf.writeBytes(suffix);
+    }
+
+    /**
+     * One free-for-all round for everyone: {@code Round <n>: ROCK x2, SCISSORS x1. Out: <nick>, ...} and then
+     * either the next round's prompt or, if {@code winner} is a seat, the winner and (unless kept alive) the
+     * game over line.
+     *
+     * @param counts  players per move, by move ordinal
+     * @param present bit per move ordinal that was played this round
+     * @param out     bit per seat knocked out this round; 0 for a drawn round
+     * @param winner  seat of the last player in, or -1 while the game goes on
+     */
+    public static ByteBuf groupRound(ByteBufAllocator alloc, Variant variant, int round, int[] counts, int present,
+                                     Player[] players, long out, int winner, boolean keepAlive) {
+        byte[] r = number(round);
+        int len = ROUND_PREFIX.length + r.length + FFA_ROUND_MOVES.length;
+        for (int p = present; p != 0; p &= p - 1) {
+            int m = Integer.numberOfTrailingZeros(p);
+            len += MOVES[m].length + FFA_COUNT.length + NUMBERS[counts[m]].length + FFA_SEPARATOR.length;
+        }
+        len -= FFA_SEPARATOR.length;
+        len += out == 0 ? FFA_NOBODY_OUT.length : FFA_OUT_PREFIX.length + namesLength(players, out) + FFA_OUT_SUFFIX.length;
+        byte[] next = FFA_NEXT_ROUNDS[variant.ordinal()];
+        if (winner < 0) {
+            len += next.length;
+        } else {
+            len += 1 + players[winner].nickname().length() + FFA_WINNER.length + (keepAlive ? 0 : GAME_OVER_BYE.length);
+        }
+
+        ByteBuf buf = alloc.buffer(len);
+        buf.writeBytes(ROUND_PREFIX).writeBytes(r).writeBytes(FFA_ROUND_MOVES);
+        for (int p = present; p != 0; p &= p - 1) {
+            int m = Integer.numberOfTrailingZeros(p);
+            buf.writeBytes(MOVES[m]).writeBytes(FFA_COUNT).writeBytes(NUMBERS[counts[m]]);
+            if ((p & p - 1) != 0) {
+                buf.writeBytes(FFA_SEPARATOR);
+            }
+        }
+        if (out == 0) {
+            buf.writeBytes(FFA_NOBODY_OUT);
+        } else {
+            buf.writeBytes(FFA_OUT_PREFIX);
+            writeNames(buf, players, out);
+            buf.writeBytes(FFA_OUT_SUFFIX);
+        }
+        if (winner < 0) {
+            return buf.writeBytes(next);
+        }
+        buf.writeByte(SPACE);
+        ByteBufUtil.writeAscii(buf, players[winner].nickname());
+        buf.writeBytes(FFA_WINNER);
+        return keepAlive ? buf : buf.writeBytes(GAME_OVER_BYE);
+    }
+
+    /** {@code <nick> left and is out.} or {@code <nick> timed out and is out.} */
+    public static ByteBuf groupLeft(ByteBufAllocator alloc, String nick, boolean timedOut) {
+        byte[] suffix = timedOut ? FFA_TIMED_OUT : FFA_LEFT;
+        ByteBuf buf = alloc.buffer(nick.length() + suffix.length);
+        ByteBufUtil.writeAscii(buf, nick);
+        return buf.writeBytes(suffix);
+    }
+
+    /** {@code <nick> wins the free-for-all!}, the game over line unless kept alive. */
+    public static ByteBuf groupWinner(ByteBufAllocator alloc, String nick, boolean keepAlive) {
+        ByteBuf buf = alloc.buffer(nick.length() + FFA_WINNER.length + (keepAlive ? 0 : GAME_OVER_BYE.length));
+        ByteBufUtil.writeAscii(buf, nick);
+        buf.writeBytes(FFA_WINNER);
+        return keepAlive ? buf : buf.writeBytes(GAME_OVER_BYE);
+    }
+
+    private static int namesLength(Player[] players, long seats) {
+        int len = -FFA_SEPARATOR.length;
+        for (long s = seats & seatMask(players.length); s != 0; s &= s - 1) {
+            len += players[Long.numberOfTrailingZeros(s)].nickname().length() + FFA_SEPARATOR.length;
+        }
+        return len;
+    }
+
+    private static void writeNames(ByteBuf buf, Player[] players, long seats) {
+        for (long s = seats & seatMask(players.length); s != 0; s &= s - 1) {
+            ByteBufUtil.writeAscii(buf, players[Long.numberOfTrailingZeros(s)].nickname());
+            if ((s & s - 1) != 0) {
+                buf.writeBytes(FFA_SEPARATOR);
+            }
+        }
+    }
+
+    private static long seatMask(int seats) {
+        return seats == 64 ? -1L : (1L << seats) - 1;
+    }
+
+    /** Pre-encoded below 100; a free-for-all full of draws can count rounds past that. */
+    private static byte[] number(int n) {
+        return n < NUMBERS.length ? NUMBERS[n] : bytes(Integer.toString(n));
+    }
+
+    /** Nicknames and room names are ASCII by the parser's rules. */
+    private static ByteBuf around(ByteBufAllocator alloc, byte[] prefix, String name, byte[] suffix) {
+        ByteBuf buf = alloc.buffer(prefix.length + name.length() + suffix.length);
+        buf.writeBytes(prefix);
+        ByteBufUtil.writeAscii(buf, name);
+        return buf.writeBytes(suffix);
+    }
+
+    private static ByteBuf copy(ByteBufAllocator alloc, byte[] reply) {
+        return alloc.buffer(reply.length).writeBytes(reply);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int n = 0;
+        for (byte[] p : parts) {
+            n += p.length;
+        }
+        byte[] out = new byte[n];
+        int at = 0;
+        for (byte[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,24 @@
 package com.korolev.rps_game_server.domain;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.sun.management.ThreadMXBean;
+import io.netty.buffer.ByteBuf;
+import com.korolev.rps_game_server.protocol.Messages;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,6 +73,26 @@ class GameSessionTest {
         assertFalse(c2.isActive());
     }
 
+    @Test
+    void resultUpdatesRatings() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        Ratings ratings = new Ratings(32);
+
+        GameSession s = new GameSession(p1, p2, ratings);
+        s.start();
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.PAPER); // draws are not rated
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.SCISSORS);
+        flush(c1, c2);
+
+        assertEquals(Ratings.INITIAL - 16, ratings.rating("p1"));
+        assertEquals(Ratings.INITIAL + 16, ratings.rating("p2"));
+    }
+
     @Test
     void drawResetsRoundAndAsksAgain() {
         EmbeddedChannel c1 = new EmbeddedChannel();
@@ -153,6 +190,104 @@ class GameSessionTest {
         assertFalse(c2.isActive());
     }
 
+    @Test
+    void parkedSeatIsResumedOnANewConnection() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        EmbeddedChannel c3 = new EmbeddedChannel();
+
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+
+        GameSession s = new GameSession(p1, p2);
+        s.resumeTokens(0xabcL, 0);
+        s.start();
+        flush(c1, c2);
+        assertTrue(takeAllOutbound(c1).contains("Resume token: 0000000000000abc"));
+        assertFalse(takeAllOutbound(c2).contains("Resume token"));
+
+        s.submitMove(p1, Move.ROCK);
+        flush(c1, c2);
+        takeAllOutbound(c1);
+        takeAllOutbound(c2);
+
+        c1.close();
+        s.park(p1);
+        flush(c1, c2);
+        assertEquals(Messages.OPPONENT_AWAY, takeAllOutbound(c2));
+
+        Player back = new Player("p1", c3);
+        AtomicReference<Boolean> accepted = new AtomicReference<>();
+        s.resume(1, back, accepted::set);
+        flush(c1, c2, c3);
+        assertEquals(Boolean.TRUE, accepted.get());
+        String out3 = takeAllOutbound(c3);
+        assertTrue(out3.startsWith("Welcome back! Playing p2, score 0-0 (best of 1)"), out3);
+        assertTrue(out3.endsWith(Messages.WAITING_MOVE), out3);
+        assertEquals(Messages.OPPONENT_BACK, takeAllOutbound(c2));
+        assertSame(back, s.p1());
+
+        // the grace-period forfeit names the old connection, which is no longer in the session
+        s.onDisconnect(p1);
+        flush(c1, c2, c3);
+        assertTrue(c2.isActive());
+
+        s.submitMove(p2, Move.SCISSORS);
+        flush(c1, c2, c3);
+        assertTrue(takeAllOutbound(c3).contains("You WIN"));
+    }
+
+    @Test
+    void resumeIsRefusedWhileTheOldConnectionIsOpen() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        EmbeddedChannel c3 = new EmbeddedChannel();
+
+        Player p1 = new Player("p1", c1);
+        GameSession s = new GameSession(p1, new Player("p2", c2));
+        s.start();
+        flush(c1, c2);
+
+        AtomicReference<Boolean> accepted = new AtomicReference<>();
+        s.resume(1, new Player("p1", c3), accepted::set);
+        flush(c1, c2, c3);
+        assertEquals(Boolean.FALSE, accepted.get());
+        assertEquals(Messages.RESUME_FAILED, takeAllOutbound(c3));
+        assertFalse(c3.isActive());
+        assertSame(p1, s.p1());
+    }
+
+    @Test
+    void composedListenerKeepsGoingPastOneThatThrows() {
+        List<String> seen = new ArrayList<>();
+        SessionListener failing = new SessionListener() {
+            @Override
+            public void onRound(GameSession session, Move p1Move, Move p2Move) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        SessionListener recording = new SessionListener() {
+            @Override
+            public void onRound(GameSession session, Move p1Move, Move p2Move) {
+                seen.add(p1Move + "/" + p2Move);
+            }
+        };
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        GameSession s = new GameSession(p1, p2, SessionListener.compose(failing, recording), SessionOptions.defaults());
+        s.start();
+        s.submitMove(p1, Move.ROCK);
+        s.submitMove(p2, Move.PAPER);
+        flush(c1, c2);
+
+        assertEquals(List.of("ROCK/PAPER"), seen);
+        assertTrue(takeAllOutbound(c2).contains("You WIN"));
+        c1.finishAndReleaseAll();
+        c2.finishAndReleaseAll();
+    }
+
     @Test
     void disconnectFinishesSession() {
         EmbeddedChannel c1 = new EmbeddedChannel();
@@ -177,8 +312,249 @@ class GameSessionTest {
         assertFalse(c2.isActive());
     }
 
+    @Test
+    void bestOfThreeTracksPackedScoreAndSendsOneReplyPerRound() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        Ratings ratings = new Ratings(32);
+
+        GameSession s = new GameSession(p1, p2, ratings, new SessionOptions(false, 3));
+        s.start();
+        flush(c1, c2);
+        assertTrue(takeAllOutbound(c1).contains("Best of 3: first to 2 round wins."));
+        takeAllOutbound(c2);
+
+        s.submitMove(p1, Move.ROCK);
+        flush(c1, c2);
+        takeAllOutbound(c1);
+        takeAllOutbound(c2);
+        s.submitMove(p2, Move.SCISSORS);
+        flush(c1, c2);
+        assertEquals(1, c1.outboundMessages().size());
+        assertEquals(1, c2.outboundMessages().size());
+        takeAllOutbound(c1);
+        assertEquals("Round 1: You chose SCISSORS, opponent chose ROCK. You LOSE. Score 0-1 (best of 3)."
+                + " Next round: ROCK/PAPER/SCISSORS\r\n", takeAllOutbound(c2));
+
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.PAPER); // draws are replayed, not counted
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.SCISSORS);
+        flush(c1, c2);
+        assertTrue(c1.isActive() && c2.isActive());
+        assertEquals(Ratings.INITIAL, ratings.rating("p1"));
+
+        s.submitMove(p1, Move.ROCK);
+        s.submitMove(p2, Move.PAPER);
+        flush(c1, c2);
+
+        int score = s.score();
+        assertEquals(1, GameSession.p1Wins(score));
+        assertEquals(2, GameSession.p2Wins(score));
+        assertEquals(3, GameSession.rounds(score));
+        long history = s.history();
+        assertEquals(Move.ROCK, GameSession.p1Move(Variant.CLASSIC, history, 0));
+        assertEquals(Move.SCISSORS, GameSession.p2Move(Variant.CLASSIC, history, 0));
+        assertEquals(Move.PAPER, GameSession.p1Move(Variant.CLASSIC, history, 1));
+        assertEquals(Move.PAPER, GameSession.p2Move(Variant.CLASSIC, history, 2));
+
+        assertTrue(takeAllOutbound(c2).endsWith("Score 2-1 (best of 3).\r\nYou WIN the series!\r\nGame over. Bye!\r\n"));
+        assertTrue(takeAllOutbound(c1).contains("You LOSE the series!"));
+        assertEquals(Ratings.INITIAL + 16, ratings.rating("p2"));
+        assertFalse(c1.isActive());
+        assertFalse(c2.isActive());
+    }
+
+    @Test
+    void variantDecidesWhichMovesAreAccepted() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+
+        GameSession classic = new GameSession(p1, p2);
+        classic.start();
+        flush(c1, c2);
+        takeAllOutbound(c1);
+        takeAllOutbound(c2);
+        classic.submitMove(p1, Move.LIZARD);
+        flush(c1);
+        assertEquals(Messages.BAD_MOVE, takeAllOutbound(c1));
+
+        EmbeddedChannel c3 = new EmbeddedChannel();
+        EmbeddedChannel c4 = new EmbeddedChannel();
+        Player p3 = new Player("p3", c3);
+        Player p4 = new Player("p4", c4);
+        GameSession s = new GameSession(p3, p4, SessionListener.NONE, new SessionOptions(false, 3, Variant.RPSLS));
+        s.start();
+        flush(c3, c4);
+        String found = takeAllOutbound(c3);
+        assertTrue(found.contains("Variant rpsls: each move beats the next 2 in ROCK > SCISSORS > LIZARD > PAPER > SPOCK"));
+        assertTrue(found.endsWith("Type ROCK/PAPER/SCISSORS/LIZARD/SPOCK:\r\n"));
+        takeAllOutbound(c4);
+
+        s.submitMove(p3, Move.SPOCK);
+        s.submitMove(p4, Move.SCISSORS);
+        flush(c3, c4);
+        assertTrue(takeAllOutbound(c3).endsWith("Round 1: You chose SPOCK, opponent chose SCISSORS. You WIN."
+                + " Score 1-0 (best of 3). Next round: ROCK/PAPER/SCISSORS/LIZARD/SPOCK\r\n"));
+        assertEquals(Move.SPOCK, GameSession.p1Move(Variant.RPSLS, s.history(), 0));
+        assertEquals(Move.SCISSORS, GameSession.p2Move(Variant.RPSLS, s.history(), 0));
+    }
+
+    @Test
+    void variantCapsTheSeriesToItsHistory() {
+        GameSession s = new GameSession(new Player("p1", new EmbeddedChannel()), new Player("p2", new EmbeddedChannel()));
+        s.bestOf(SessionOptions.MAX_BEST_OF);
+        s.variant(Variant.RPS15);
+        assertEquals(Variant.RPS15.maxBestOf(), s.bestOf());
+        assertThrows(IllegalArgumentException.class,
+                () -> new SessionOptions(false, Variant.RPS15.maxBestOf() + 2, Variant.RPS15));
+    }
+
+    @Test
+    void bestOfMustBeOddAndBounded() {
+        GameSession s = new GameSession(new Player("p1", new EmbeddedChannel()), new Player("p2", new EmbeddedChannel()));
+        s.bestOf(5);
+        assertEquals(5, s.bestOf());
+        assertThrows(IllegalArgumentException.class, () -> s.bestOf(4));
+        assertThrows(IllegalArgumentException.class, () -> s.bestOf(SessionOptions.MAX_BEST_OF + 2));
+        assertThrows(IllegalArgumentException.class, () -> new SessionOptions(false, 0));
+    }
+
+    @Test
+    void keepAliveFinishLeavesWinnerOpenAndDropsIdleLoser() {
+        List<Object> events1 = new ArrayList<>();
+        List<Object> events2 = new ArrayList<>();
+        EmbeddedChannel c1 = new EmbeddedChannel(recordEvents(events1));
+        EmbeddedChannel c2 = new EmbeddedChannel(recordEvents(events2));
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+
+        GameSession s = new GameSession(p1, p2, SessionListener.NONE, new SessionOptions(true, 1));
+        s.start();
+        s.submitMove(p1, Move.ROCK);
+        s.onIdle(p2);
+        flush(c1, c2);
+
+        assertTrue(takeAllOutbound(c1).contains(Messages.GAME_OVER_QUEUE));
+        assertTrue(c1.isActive());
+        assertFalse(c2.isActive());
+        assertEquals(List.of(new SessionEnded(s)), events1);
+        assertTrue(events2.isEmpty());
+
+        // the opponent is gone, so there is nothing to rematch
+        AtomicReference<GameSession> next = new AtomicReference<>();
+        s.offerRematch(p1, next::set);
+        flush(c1);
+        assertNull(next.get());
+        assertTrue(takeAllOutbound(c1).contains(Messages.REMATCH_UNAVAILABLE));
+    }
+
+    @Test
+    void keepAliveRematchNeedsBothPlayers() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        GameSession s = new GameSession(p1, p2, SessionListener.NONE, new SessionOptions(true, 1));
+        s.start();
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.ROCK);
+        flush(c1, c2);
+        assertTrue(takeAllOutbound(c2).contains("You LOSE!\r\n" + Messages.GAME_OVER_NEXT));
+        assertTrue(c1.isActive() && c2.isActive());
+
+        AtomicReference<GameSession> next = new AtomicReference<>();
+        s.offerRematch(p2, next::set);
+        flush(c1, c2);
+        assertNull(next.get());
+        assertTrue(takeAllOutbound(c1).contains(Messages.REMATCH_OFFERED));
+
+        s.offerRematch(p1, next::set);
+        flush(c1, c2);
+        assertNotNull(next.get());
+        assertEquals(s.id(), next.get().rematchOf());
+        assertSame(p1, next.get().p1());
+        assertSame(s.owner(), next.get().owner());
+
+        // agreed: a late decline no longer pulls the player out
+        AtomicBoolean requeued = new AtomicBoolean();
+        s.declineRematch(p2, () -> requeued.set(true));
+        flush(c1, c2);
+        assertFalse(requeued.get());
+    }
+
+    @Test
+    void steadyStateDrawRoundAllocatesLittle() throws Exception {
+        // a sampled session id logs every move at DEBUG, and logback-spring.xml may already be loaded in this JVM
+        Logger sessionLog = (Logger) LoggerFactory.getLogger(GameSession.class);
+        Level sessionLevel = sessionLog.getLevel();
+        sessionLog.setLevel(Level.INFO);
+        long perRound;
+        try {
+            // an event-loop thread, so pooled buffers come from the thread cache as they do in production
+            FutureTask<Long> measure = new FutureTask<>(() -> drawRoundAllocation(200_000));
+            new FastThreadLocalThread(measure).start();
+            perRound = measure.get();
+        } finally {
+            sessionLog.setLevel(sessionLevel);
+        }
+
+        // before replies became pooled copies of precomputed bytes a round allocated ~150 bytes
+        assertTrue(perRound < 64, "allocated " + perRound + " bytes per draw round");
+    }
+
+    private static long drawRoundAllocation(int rounds) {
+        ThreadMXBean mx = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        GameSession s = new GameSession(p1, p2);
+        s.start();
+
+        for (int i = 0; i < rounds; i++) { // warm-up
+            drawRound(s, p1, p2, c1, c2);
+        }
+        long tid = Thread.currentThread().threadId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < rounds; i++) {
+            drawRound(s, p1, p2, c1, c2);
+        }
+        long perRound = (mx.getThreadAllocatedBytes(tid) - before) / rounds;
+        c1.finishAndReleaseAll();
+        c2.finishAndReleaseAll();
+        return perRound;
+    }
+
+    private static void drawRound(GameSession s, Player p1, Player p2, EmbeddedChannel c1, EmbeddedChannel c2) {
+        s.submitMove(p1, Move.ROCK);
+        s.submitMove(p2, Move.ROCK);
+        release(c1);
+        release(c2);
+    }
+
+    private static void release(EmbeddedChannel ch) {
+        ch.runPendingTasks();
+        for (Object o; (o = ch.readOutbound()) != null; ) {
+            ReferenceCountUtil.release(o);
+        }
+    }
+
     // -------- helpers --------
 
+    private static ChannelInboundHandlerAdapter recordEvents(List<Object> events) {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                events.add(evt);
+            }
+        };
+    }
+
     private static void flush(EmbeddedChannel... chs) {
         for (EmbeddedChannel ch : chs) {
             ch.runPendingTasks();
@@ -191,7 +567,12 @@ class GameSessionTest {
         for (;;) {
             Object o = ch.readOutbound();
             if (o == null) break;
-            sb.append(o);
+            if (o instanceof ByteBuf buf) {
+                sb.append(buf.toString(StandardCharsets.UTF_8));
+                buf.release();
+            } else {
+                sb.append(o);
+            }
         }
         return sb.toString();
     }
@@ -0,0 +1,204 @@
+package com.korolev.rps_game_server.domain;
+
+import com.korolev.rps_game_server.protocol.Messages;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupSessionTest {
+
+    /** Every channel a test made, released afterwards with whatever replies it left unread. */
+    private final List<EmbeddedChannel> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (EmbeddedChannel ch : opened) {
+            ch.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void startAnnouncesEveryPlayer() {
+        EmbeddedChannel[] chs = channels(3);
+        GroupSession g = new GroupSession(players(chs), SessionOptions.defaults());
+        g.start();
+        flush(chs);
+
+        String out = takeAllOutbound(chs[0]);
+        assertTrue(out.contains("p1, p2, p3"), out);
+        assertTrue(out.endsWith("Type ROCK/PAPER/SCISSORS:\r\n"), out);
+    }
+
+    @Test
+    void beatenMovesAreKnockedOutUntilOneIsLeft() {
+        EmbeddedChannel[] chs = channels(3);
+        Player[] ps = players(chs);
+        GroupSession g = new GroupSession(ps, SessionOptions.defaults());
+        g.start();
+        flush(chs);
+        drain(chs);
+
+        g.submitMove(ps[0], Move.ROCK);
+        flush(chs);
+        assertEquals(Messages.FFA_WAITING_MOVES, takeAllOutbound(chs[0]));
+        g.submitMove(ps[0], Move.PAPER);
+        flush(chs);
+        assertEquals(Messages.ALREADY_MOVED, takeAllOutbound(chs[0]));
+
+        g.submitMove(ps[1], Move.ROCK);
+        g.submitMove(ps[2], Move.SCISSORS);
+        flush(chs);
+        assertEquals("Round 1: ROCK x2, SCISSORS x1. Out: p3. Next round: ROCK/PAPER/SCISSORS\r\n",
+                takeAllOutbound(chs[0]));
+        assertTrue(takeAllOutbound(chs[2]).endsWith(Messages.FFA_OUT));
+        assertEquals(0b011, g.alive());
+
+        // the knocked-out player can only watch
+        g.submitMove(ps[2], Move.ROCK);
+        flush(chs);
+        assertEquals(Messages.FFA_ALREADY_OUT, takeAllOutbound(chs[2]));
+
+        g.submitMove(ps[0], Move.PAPER);
+        g.submitMove(ps[1], Move.ROCK);
+        flush(chs);
+        String last = takeAllOutbound(chs[2]);
+        assertTrue(last.contains("Round 2: ROCK x1, PAPER x1. Out: p2. p1" + Messages.FFA_WINNER), last);
+        for (EmbeddedChannel ch : chs) {
+            assertFalse(ch.isActive());
+        }
+    }
+
+    @Test
+    void allThreeMovesIsADraw() {
+        EmbeddedChannel[] chs = channels(3);
+        Player[] ps = players(chs);
+        GroupSession g = new GroupSession(ps, SessionOptions.defaults());
+        g.start();
+        flush(chs);
+        drain(chs);
+
+        g.submitMove(ps[0], Move.ROCK);
+        g.submitMove(ps[1], Move.PAPER);
+        g.submitMove(ps[2], Move.SCISSORS);
+        flush(chs);
+
+        assertTrue(takeAllOutbound(chs[1]).contains("Nobody is out."));
+        assertEquals(0b111, g.alive());
+        assertEquals(1, g.draws());
+        assertEquals(1, g.round());
+    }
+
+    @Test
+    void leaversAreAnnouncedAndTheLastOneWins() {
+        EmbeddedChannel[] chs = channels(3);
+        Player[] ps = players(chs);
+        GroupSession g = new GroupSession(ps, SessionOptions.defaults());
+        g.start();
+        flush(chs);
+        drain(chs);
+
+        g.submitMove(ps[0], Move.ROCK);
+        g.submitMove(ps[1], Move.ROCK);
+        g.onDisconnect(ps[2]);
+        flush(chs);
+        // everyone still in had moved, so the round settles without the leaver: a draw
+        String out = takeAllOutbound(chs[0]);
+        assertTrue(out.contains(Messages.FFA_WAITING_MOVES + "p3" + Messages.FFA_LEFT), out);
+        assertTrue(out.contains("Round 1: ROCK x2. Nobody is out."), out);
+
+        g.onIdle(ps[1]);
+        flush(chs);
+        assertTrue(takeAllOutbound(chs[1]).endsWith(Messages.FFA_TIMEOUT_OUT));
+        assertTrue(takeAllOutbound(chs[0]).contains("p1" + Messages.FFA_WINNER));
+        assertFalse(chs[0].isActive());
+        assertFalse(chs[1].isActive());
+    }
+
+    @Test
+    void keepAliveFinishHandsTheChannelsBack() {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel[] chs = {
+                new EmbeddedChannel(recordEvents(events)), new EmbeddedChannel(), new EmbeddedChannel() };
+        opened.addAll(List.of(chs));
+        Player[] ps = players(chs);
+        GroupSession g = new GroupSession(ps, new SessionOptions(true, 1));
+        g.start();
+        g.onDisconnect(ps[1]);
+        g.onDisconnect(ps[2]);
+        flush(chs);
+
+        assertTrue(takeAllOutbound(chs[0]).contains("p1" + Messages.FFA_WINNER));
+        assertTrue(chs[0].isActive());
+        assertEquals(List.of(new GroupEnded(g)), events);
+    }
+
+    @Test
+    void sizeIsBounded() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GroupSession(players(channels(2)), SessionOptions.defaults()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GroupSession(players(channels(GroupSession.MAX_PLAYERS + 1)), SessionOptions.defaults()));
+    }
+
+    private EmbeddedChannel[] channels(int n) {
+        EmbeddedChannel[] chs = new EmbeddedChannel[n];
+        for (int i = 0; i < n; i++) {
+            chs[i] = new EmbeddedChannel();
+            opened.add(chs[i]);
+        }
+        return chs;
+    }
+
+    private static Player[] players(EmbeddedChannel[] chs) {
+        Player[] ps = new Player[chs.length];
+        for (int i = 0; i < chs.length; i++) {
+            ps[i] = new Player("p" + (i + 1), chs[i]);
+        }
+        return ps;
+    }
+
+    private static ChannelInboundHandlerAdapter recordEvents(List<Object> events) {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                events.add(evt);
+            }
+        };
+    }
+
+    private static void flush(EmbeddedChannel... chs) {
+        for (EmbeddedChannel ch : chs) {
+            ch.runPendingTasks();
+            ch.runScheduledPendingTasks();
+        }
+    }
+
+    private static void drain(EmbeddedChannel... chs) {
+        for (EmbeddedChannel ch : chs) {
+            takeAllOutbound(ch);
+        }
+    }
+
+    private static String takeAllOutbound(EmbeddedChannel ch) {
+        StringBuilder sb = new StringBuilder();
+        for (;;) {
+            Object o = ch.readOutbound();
+            if (o == null) break;
+            if (o instanceof ByteBuf buf) {
+                sb.append(buf.toString(StandardCharsets.UTF_8));
+                buf.release();
+            } else {
+                sb.append(o);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package com.korolev.rps_game_server.domain;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyTest {
+
+    private final Lobby lobby = new Lobby();
+
+    @Test
+    void nicknamesAreUniqueIgnoringCaseUntilUnregistered() {
+        Player alice = new Player("alice", new EmbeddedChannel());
+        Lobby.Member m = lobby.register(alice);
+
+        assertNotNull(m);
+        assertNull(lobby.register(new Player("ALICE", new EmbeddedChannel())));
+        assertSame(m, lobby.find("Alice"));
+        assertSame(m, lobby.member(alice));
+
+        lobby.unregister(alice);
+        assertNull(lobby.find("alice"));
+        assertNull(lobby.member(alice));
+        assertNotNull(lobby.register(new Player("Alice", new EmbeddedChannel())));
+        assertEquals(1, lobby.online());
+    }
+
+    @Test
+    void secondPlayerInARoomTakesTheFirst() {
+        Lobby.Member a = lobby.register(new Player("alice", new EmbeddedChannel()));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+
+        assertNull(lobby.join(a, "Den"));
+        assertEquals("den", a.room());
+        assertTrue(a.away());
+        assertEquals(1, lobby.waitingRooms());
+
+        assertSame(a, lobby.join(b, "den"));
+        assertNull(a.room());
+        assertNull(b.room());
+        assertEquals(0, lobby.waitingRooms());
+        // taken out of the room, so it cannot leave it any more
+        assertFalse(lobby.leaveRoom(a));
+    }
+
+    @Test
+    void leavingOrDisconnectingFreesTheSeat() {
+        Lobby.Member a = lobby.register(new Player("alice", new EmbeddedChannel()));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+
+        lobby.join(a, "den");
+        assertTrue(lobby.leaveRoom(a));
+        assertFalse(a.away());
+        assertNull(lobby.join(b, "den"));
+
+        lobby.unregister(b.player());
+        assertEquals(0, lobby.waitingRooms());
+        assertNull(lobby.join(a, "den"));
+    }
+
+    @Test
+    void challengeIsAcceptedOnceAndOnlyOnePendsPerTarget() {
+        Lobby.Member a = lobby.register(new Player("alice", new EmbeddedChannel()));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+        Lobby.Member c = lobby.register(new Player("carol", new EmbeddedChannel()));
+
+        assertTrue(lobby.challenge(a, b));
+        assertFalse(lobby.challenge(c, b));
+        assertFalse(c.away());
+        assertTrue(lobby.hasChallenge(b));
+
+        assertSame(a, lobby.accept(b));
+        assertFalse(a.away());
+        assertNull(lobby.accept(b));
+    }
+
+    @Test
+    void withdrawnChallengeCannotBeAccepted() {
+        Lobby.Member a = lobby.register(new Player("alice", new EmbeddedChannel()));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+
+        lobby.challenge(a, b);
+        assertTrue(lobby.withdraw(a));
+        assertFalse(lobby.withdraw(a));
+        assertFalse(lobby.hasChallenge(b));
+        assertNull(lobby.accept(b));
+    }
+
+    @Test
+    void challengerHearsWhenTheTargetLeavesOrIsPairedElsewhere() {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel challengerCh = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                events.add(evt);
+            }
+        });
+        Lobby.Member a = lobby.register(new Player("alice", challengerCh));
+        Player bob = new Player("bob", new EmbeddedChannel());
+        Player carol = new Player("carol", new EmbeddedChannel());
+        lobby.register(bob);
+        lobby.register(carol);
+
+        lobby.challenge(a, lobby.member(bob));
+        lobby.engaged(bob);
+        assertEquals(List.of(new ChallengeGone("bob")), events);
+        assertFalse(a.away());
+
+        lobby.challenge(a, lobby.member(carol));
+        lobby.unregister(carol);
+        assertEquals(List.of(new ChallengeGone("bob"), new ChallengeGone("carol")), events);
+        assertFalse(a.away());
+    }
+
+    @Test
+    void freeForAllTableFillsThenEmpties() {
+        Lobby.Member a = lobby.register(new Player("alice", new EmbeddedChannel()));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+        Lobby.Member c = lobby.register(new Player("carol", new EmbeddedChannel()));
+
+        assertNull(lobby.joinFreeForAll(a, 3));
+        assertNull(lobby.joinFreeForAll(b, 3));
+        assertTrue(b.atTable());
+        assertTrue(b.away());
+        assertEquals(2, lobby.waitingFreeForAll());
+
+        assertTrue(lobby.leaveFreeForAll(b));
+        assertFalse(b.away());
+        assertFalse(lobby.leaveFreeForAll(b));
+        assertNull(lobby.joinFreeForAll(b, 3));
+
+        Lobby.Member[] table = lobby.joinFreeForAll(c, 3);
+        assertArrayEquals(new Lobby.Member[] {a, b, c}, table);
+        assertEquals(0, lobby.waitingFreeForAll());
+        assertFalse(a.atTable());
+        assertFalse(lobby.leaveFreeForAll(a));
+    }
+
+    @Test
+    void disconnectedPlayersAreDroppedFromTheTable() {
+        EmbeddedChannel gone = new EmbeddedChannel();
+        Lobby.Member a = lobby.register(new Player("alice", gone));
+        Lobby.Member b = lobby.register(new Player("bob", new EmbeddedChannel()));
+
+        lobby.joinFreeForAll(a, 3);
+        lobby.unregister(a.player());
+        assertEquals(0, lobby.waitingFreeForAll());
+        assertNull(lobby.joinFreeForAll(b, 3));
+        assertEquals(1, lobby.waitingFreeForAll());
+    }
+}
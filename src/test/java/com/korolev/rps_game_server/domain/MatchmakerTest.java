@@ -1,6 +1,18 @@
 package com.korolev.rps_game_server.domain;
 
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
 import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,4 +47,183 @@ class MatchmakerTest {
         assertTrue(mm.removeIfWaiting(p1));
         assertFalse(mm.removeIfWaiting(p1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void removedAndInactivePlayersAreSkipped() {
+        Matchmaker mm = new Matchmaker(2);
+        Player gone = new Player("gone", new EmbeddedChannel());
+        Player closed = new Player("closed", new EmbeddedChannel());
+        Player waiting = new Player("waiting", new EmbeddedChannel());
+        Player me = new Player("me", new EmbeddedChannel());
+
+        assertNull(mm.tryMatch(gone));
+        assertTrue(mm.removeIfWaiting(gone));
+        assertNull(mm.tryMatch(closed));
+        closed.channel().close();
+        assertNull(mm.tryMatch(waiting));
+
+        GameSession s = mm.tryMatch(me);
+        assertNotNull(s);
+        assertSame(waiting.channel(), s.p1().channel());
+        assertEquals(0, mm.waitingCount());
+    }
+
+    @Test
+    void matchedPlayerIsNoLongerWaiting() {
+        Matchmaker mm = new Matchmaker();
+        Player p1 = new Player("a", new EmbeddedChannel());
+        Player p2 = new Player("b", new EmbeddedChannel());
+
+        assertNull(mm.tryMatch(p1));
+        assertNotNull(mm.tryMatch(p2));
+        assertFalse(mm.removeIfWaiting(p1));
+        assertEquals(0, mm.waitingCount());
+    }
+
+    @Test
+    void concurrentArrivalsPairEveryoneAtMostOnce() throws Exception {
+        Matchmaker mm = new Matchmaker(4);
+        int threads = 4;
+        int perThread = 200;
+
+        List<GameSession> sessions = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread w = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    GameSession s = mm.tryMatch(new Player("t" + id + "-" + i, new EmbeddedChannel()));
+                    if (s != null) sessions.add(s);
+                }
+            });
+            w.start();
+            workers.add(w);
+        }
+        go.countDown();
+        for (Thread w : workers) w.join();
+
+        Set<Channel> seen = new HashSet<>();
+        for (GameSession s : sessions) {
+            assertTrue(seen.add(s.p1().channel()), "p1 matched twice");
+            assertTrue(seen.add(s.p2().channel()), "p2 matched twice");
+        }
+        assertEquals(threads * perThread, sessions.size() * 2 + mm.waitingCount());
+    }
+
+    @Test
+    void batchModeOnlyQueues() {
+        try (Matchmaker mm = new Matchmaker(2, 50)) {
+            assertTrue(mm.isBatch());
+            assertNull(mm.tryMatch(new Player("a", new EmbeddedChannel())));
+            assertNull(mm.tryMatch(new Player("b", new EmbeddedChannel())));
+            assertEquals(2, mm.waitingCount());
+        }
+    }
+
+    @Test
+    void batchTickPairsSameLoopFirstThenOldest() throws Exception {
+        EventLoop l1 = new DefaultEventLoop();
+        EventLoop l2 = new DefaultEventLoop();
+        EventLoop l3 = new DefaultEventLoop();
+        try (Matchmaker mm = new Matchmaker(1, 1)) {
+            Player a = new Player("a", new LoopChannel(l1));
+            Player b = new Player("b", new LoopChannel(l2));
+            Player c = new Player("c", new LoopChannel(l1));
+            Player d = new Player("d", new LoopChannel(l2));
+            Player e = new Player("e", new LoopChannel(l3));
+            for (Player p : List.of(a, b, c, d, e)) {
+                assertNull(mm.tryMatch(p));
+            }
+
+            // ticks are no-ops until someone listens, so the first real tick sees all five
+            CompletableFuture<List<GameSession>> batch = new CompletableFuture<>();
+            mm.setMatchListener(batch::complete);
+            List<GameSession> sessions = batch.get(5, TimeUnit.SECONDS);
+
+            assertEquals(2, sessions.size());
+            for (GameSession s : sessions) {
+                assertSame(s.p1().channel().eventLoop(), s.p2().channel().eventLoop());
+            }
+            assertEquals(1, mm.waitingCount());
+            assertFalse(mm.removeIfWaiting(a));
+            assertTrue(mm.removeIfWaiting(e));
+        } finally {
+            l1.shutdownGracefully();
+            l2.shutdownGracefully();
+            l3.shutdownGracefully();
+        }
+    }
+
+    @Test
+    void batchTickOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Matchmaker(1, 51));
+    }
+
+    @Test
+    void ratedMatchPrefersNearestRating() {
+        Ratings ratings = new Ratings(32);
+        for (int i = 0; i < 10; i++) {
+            ratings.record("strong", "weak");
+        }
+        try (Matchmaker mm = new Matchmaker(rated(), ratings, new AtomicLong()::get)) {
+            Player weak = new Player("weak", new EmbeddedChannel());
+            Player mid = new Player("mid", new EmbeddedChannel());
+            Player mid2 = new Player("mid2", new EmbeddedChannel());
+
+            assertNull(mm.tryMatch(weak));
+            assertNull(mm.tryMatch(mid), "gap to weak is outside the initial window");
+
+            GameSession s = mm.tryMatch(mid2);
+            assertNotNull(s);
+            assertSame(mid.channel(), s.p1().channel());
+            assertEquals(1, mm.waitingCount());
+        }
+    }
+
+    @Test
+    void ratedWindowWidensWithWaitingTime() {
+        Ratings ratings = new Ratings(32);
+        for (int i = 0; i < 10; i++) {
+            ratings.record("strong", "weak");
+        }
+        AtomicLong clock = new AtomicLong();
+        try (Matchmaker mm = new Matchmaker(rated(), ratings, clock::get)) {
+            List<GameSession> delivered = new ArrayList<>();
+            mm.setMatchListener(delivered::addAll);
+
+            assertNull(mm.tryMatch(new Player("weak", new EmbeddedChannel())));
+            assertNull(mm.tryMatch(new Player("strong", new EmbeddedChannel())));
+            assertTrue(mm.sweep().isEmpty());
+
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(10)); // window 100 -> 600
+            assertEquals(1, mm.sweep().size());
+            assertEquals(1, delivered.size());
+            assertEquals(0, mm.waitingCount());
+        }
+    }
+
+    /** Window 100 widening by 50/s; the background sweep is pushed out so tests drive {@code sweep()}. */
+    private static MatchmakingOptions rated() {
+        return new MatchmakingOptions(1, 0, true, 100, 50, 3_600_000);
+    }
+
+    /** Embedded channel that claims to live on the given loop, to model several players per worker. */
+    private static final class LoopChannel extends EmbeddedChannel {
+        private final EventLoop loop;
+
+        LoopChannel(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public EventLoop eventLoop() {
+            return loop != null ? loop : super.eventLoop();
+        }
+    }
+}
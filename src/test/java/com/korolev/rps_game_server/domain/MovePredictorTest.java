@@ -0,0 +1,78 @@
+package com.korolev.rps_game_server.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovePredictorTest {
+
+    @Test
+    void unknownPlayerHasNoPrediction() {
+        MovePredictor p = new MovePredictor();
+        assertNull(p.predict("nobody", Variant.CLASSIC));
+        assertNotNull(p.counter("nobody", Variant.CLASSIC));
+    }
+
+    @Test
+    void favouriteMoveIsPredictedAndCountered() {
+        MovePredictor p = new MovePredictor();
+        p.record("rocky", Move.ROCK);
+        p.record("rocky", Move.ROCK);
+        p.record("rocky", Move.PAPER);
+        p.record("rocky", Move.ROCK);
+
+        assertEquals(Move.ROCK, p.predict("rocky", Variant.CLASSIC));
+        assertEquals(Move.PAPER, p.counter("rocky", Variant.CLASSIC));
+    }
+
+    @Test
+    void predictionStaysInsideTheVariant() {
+        MovePredictor p = new MovePredictor();
+        for (int i = 0; i < 4; i++) {
+            p.record("trekkie", Move.SPOCK);
+        }
+        assertEquals(Move.SPOCK, p.predict("trekkie", Variant.RPSLS));
+        Move counter = p.counter("trekkie", Variant.RPSLS);
+        assertEquals(Outcome.WIN, RpsRules.outcome(counter, Move.SPOCK));
+        assertNull(p.predict("trekkie", Variant.CLASSIC));
+        assertTrue(Variant.CLASSIC.allows(p.counter("trekkie", Variant.CLASSIC)));
+    }
+
+    @Test
+    void cycleIsLearnedFromTransitions() {
+        MovePredictor p = new MovePredictor();
+        Move[] cycle = {Move.ROCK, Move.PAPER, Move.SCISSORS};
+        for (int i = 0; i < 10; i++) {
+            p.record("cycler", cycle[i % 3]);
+        }
+        // last move was ROCK (i = 9); ROCK has always been followed by PAPER
+        assertEquals(Move.PAPER, p.predict("cycler", Variant.CLASSIC));
+    }
+
+    @Test
+    void ringKeepsOnlyRecentHistory() {
+        MovePredictor p = new MovePredictor();
+        for (int i = 0; i < MovePredictor.HISTORY; i++) {
+            p.record("changed", Move.SCISSORS);
+        }
+        for (int i = 0; i < MovePredictor.HISTORY; i++) {
+            p.record("changed", Move.PAPER);
+        }
+        assertEquals(Move.PAPER, p.predict("changed", Variant.CLASSIC));
+    }
+
+    @Test
+    void leastRecentlySeenPlayersAreForgottenPastTheCap() {
+        MovePredictor p = new MovePredictor(16);
+        for (int i = 0; i < 16; i++) {
+            p.record("p" + i, Move.ROCK);
+        }
+        p.record("p0", Move.PAPER);
+        p.record("late", Move.SCISSORS);
+
+        assertTrue(p.players() <= 16, "players=" + p.players());
+        assertNull(p.predict("p1", Variant.CLASSIC));
+        assertNotNull(p.predict("p0", Variant.CLASSIC));
+        assertEquals(Move.SCISSORS, p.predict("late", Variant.CLASSIC));
+    }
+}
@@ -0,0 +1,61 @@
+package com.korolev.rps_game_server.domain;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RatingsTest {
+
+    @Test
+    void newPlayersStartAtInitialRating() {
+        assertEquals(Ratings.INITIAL, new Ratings().rating("nobody"));
+    }
+
+    @Test
+    void evenGameMovesHalfTheKFactor() {
+        Ratings r = new Ratings(32);
+        assertEquals(16, r.record("a", "b"));
+        assertEquals(1516, r.rating("a"));
+        assertEquals(1484, r.rating("b"));
+    }
+
+    @Test
+    void upsetIsWorthMoreThanExpectedWin() {
+        assertTrue(Ratings.delta(1300, 1700, 32) > Ratings.delta(1700, 1300, 32));
+        assertEquals(1, Ratings.delta(3000, 1000, 32));
+    }
+
+    @Test
+    void nicknamesAreRatedRegardlessOfCase() {
+        Ratings r = new Ratings(32);
+        r.record("Alice", "bob");
+        assertEquals(1516, r.rating("alice"));
+        assertEquals(1516, r.rating("ALICE"));
+        assertEquals(2, r.players());
+    }
+
+    @Test
+    void gamesAgainstABotAreNotRated() {
+        Ratings r = new Ratings(32);
+        EmbeddedChannel bot = new EmbeddedChannel();
+        bot.attr(Player.BOT).set(Boolean.TRUE);
+        r.onResult(null, new Player("alice", new EmbeddedChannel()), new Player("RPS-Bot", bot));
+        assertEquals(Ratings.INITIAL, r.rating("alice"));
+        assertEquals(0, r.players());
+    }
+
+    @Test
+    void leastRecentlyRatedPlayersAreDroppedPastTheCap() {
+        Ratings r = new Ratings(32, 16);
+        for (int i = 0; i < 8; i++) {
+            r.record("w" + i, "l" + i);
+        }
+        r.record("w0", "late");
+
+        assertTrue(r.players() <= 16, "players=" + r.players());
+        assertTrue(r.rating("w0") > Ratings.INITIAL);
+        assertTrue(r.rating("late") < Ratings.INITIAL);
+        assertEquals(Ratings.INITIAL, r.rating("w1"));
+    }
+}
@@ -20,4 +20,33 @@ class RpsRulesTest {
         assertEquals(Outcome.WIN,  RpsRules.outcome(Move.SCISSORS, Move.PAPER));
         assertEquals(Outcome.DRAW, RpsRules.outcome(Move.SCISSORS, Move.SCISSORS));
     }
+
+    @Test
+    void everyVariantIsBalanced() {
+        for (Variant v : Variant.values()) {
+            for (Move a : Move.values()) {
+                if (!v.allows(a)) continue;
+                int wins = 0;
+                for (Move b : Move.values()) {
+                    if (!v.allows(b)) continue;
+                    Outcome o = RpsRules.outcome(a, b);
+                    assertNotNull(o, v + ": " + a + " vs " + b);
+                    assertEquals(o == Outcome.WIN ? Outcome.LOSE : o == Outcome.LOSE ? Outcome.WIN : Outcome.DRAW,
+                            RpsRules.outcome(b, a));
+                    if (o == Outcome.WIN) wins++;
+                }
+                assertEquals(v.beatsNext(), wins, v + ": " + a);
+                assertEquals(Outcome.WIN, RpsRules.outcome(v.counter(a), a));
+            }
+        }
+    }
+
+    @Test
+    void rpslsOutcomes() {
+        assertEquals(Outcome.WIN, RpsRules.outcome(Move.SPOCK, Move.SCISSORS));
+        assertEquals(Outcome.WIN, RpsRules.outcome(Move.LIZARD, Move.SPOCK));
+        assertEquals(Outcome.WIN, RpsRules.outcome(Move.ROCK, Move.LIZARD));
+        assertEquals(Outcome.LOSE, RpsRules.outcome(Move.SPOCK, Move.PAPER));
+        assertNull(RpsRules.outcome(Move.SPOCK, Move.FIRE));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.korolev.rps_game_server.domain;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionMetricsTest {
+
+    @Test
+    void tracksActiveSessionsDrawsAndFinishReasons() {
+        SessionMetrics metrics = new SessionMetrics();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        Player p2 = new Player("p2", c2);
+        GameSession s = new GameSession(p1, p2, metrics);
+
+        s.start();
+        assertEquals(1, metrics.active());
+        assertEquals(1, registry.get("rps.sessions.active").gauge().value());
+
+        s.submitMove(p1, Move.ROCK);
+        s.submitMove(p2, Move.ROCK);
+        s.submitMove(p1, Move.PAPER);
+        s.submitMove(p2, Move.ROCK);
+
+        assertEquals(0, metrics.active());
+        assertEquals(1, metrics.finished(FinishReason.RESULT));
+        assertEquals(1, registry.get("rps.sessions.finished").tag("reason", "result").functionCounter().count());
+        assertEquals(0, registry.get("rps.sessions.finished").tag("reason", "disconnect").functionCounter().count());
+        assertEquals(1, registry.get("rps.sessions.duration").timer().count());
+        assertEquals(1, registry.get("rps.sessions.draws").summary().totalAmount());
+    }
+
+    @Test
+    void sessionEndedBeforeStartIsNotActive() {
+        SessionMetrics metrics = new SessionMetrics();
+        metrics.bindTo(new SimpleMeterRegistry());
+
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player("p1", c1);
+        GameSession s = new GameSession(p1, new Player("p2", c2), metrics);
+
+        s.onDisconnect(p1);
+        s.start(); // ignored, already finished
+
+        assertEquals(0, metrics.active());
+        assertEquals(1, metrics.finished(FinishReason.DISCONNECT));
+    }
+}
@@ -0,0 +1,168 @@
+package com.korolev.rps_game_server.journal;
+
+import com.korolev.rps_game_server.domain.FinishReason;
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.SessionOptions;
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bestOfThreeIsReplayedRoundByRound() {
+        try (MatchJournal journal = new MatchJournal(JournalOptions.defaults(dir))) {
+            GameSession s = play(journal, "alice", "bob", new SessionOptions(false, 3),
+                    Move.ROCK, Move.ROCK,
+                    Move.PAPER, Move.ROCK,
+                    Move.SCISSORS, Move.PAPER);
+            awaitWritten(journal, 12);
+
+            // readable while the journal is open, up to what the writer published
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (visible(journal.reader()) < 12) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.onSpinWait();
+            }
+            JournalMatch m = journal.reader().replay(s.id());
+            assertNotNull(m);
+            assertEquals("alice", m.p1());
+            assertEquals("bob", m.p2());
+            assertEquals(Variant.CLASSIC, m.variant());
+            assertEquals(3, m.bestOf());
+            assertEquals(3, m.rounds().size());
+            JournalMatch.Round draw = m.rounds().get(0);
+            assertTrue(draw.draw());
+            assertEquals(Move.ROCK, draw.p1Move());
+            assertTrue(draw.p1MovedAt() > 0 && draw.p2MovedAt() > 0);
+            JournalMatch.Round last = m.rounds().get(2);
+            assertEquals(Move.SCISSORS, last.p1Move());
+            assertEquals(Move.PAPER, last.p2Move());
+            assertEquals(2, last.p1Wins());
+            assertEquals(0, last.p2Wins());
+            assertEquals("alice", m.winner());
+            assertEquals(FinishReason.RESULT, m.reason());
+            assertTrue(m.finishedAt() >= m.startedAt());
+        }
+    }
+
+    @Test
+    void recentListsTheLatestFinishedMatchesFirst() {
+        List<Long> ids = new ArrayList<>();
+        try (MatchJournal journal = new MatchJournal(JournalOptions.defaults(dir))) {
+            for (int i = 0; i < 5; i++) {
+                ids.add(play(journal, "p" + i, "q" + i, SessionOptions.defaults(), Move.ROCK, Move.SCISSORS).id());
+            }
+            awaitWritten(journal, 30);
+        }
+        List<JournalMatch> recent = new JournalReader(dir).recent(3);
+        assertEquals(3, recent.size());
+        assertEquals(ids.get(4), recent.get(0).id());
+        assertEquals("p4", recent.get(0).winner());
+        assertEquals(ids.get(2), recent.get(2).id());
+        assertTrue(new JournalReader(dir).recent(0).isEmpty());
+    }
+
+    @Test
+    void fullSegmentsRotateAndOnlyTheNewestAreKept() {
+        JournalOptions small = new JournalOptions(dir, 4, 2, 1000, 1024);
+        GameSession last;
+        try (MatchJournal journal = new MatchJournal(small)) {
+            for (int i = 0; i < 5; i++) {
+                play(journal, "a" + i, "b" + i, SessionOptions.defaults(), Move.PAPER, Move.ROCK);
+            }
+            last = play(journal, "carol", "dave", SessionOptions.defaults(), Move.PAPER, Move.SCISSORS);
+            awaitWritten(journal, 36);
+        }
+        assertEquals(2, JournalReader.segments(dir).size());
+
+        JournalReader reader = new JournalReader(dir);
+        JournalMatch m = reader.replay(last.id());
+        assertNotNull(m);
+        assertEquals("dave", m.winner());
+        List<JournalRecord> all = new ArrayList<>();
+        reader.forEach(all::add);
+        assertEquals(8, all.size());
+        assertEquals(JournalRecord.Type.FINISH, all.get(7).type());
+    }
+
+    @Test
+    void eachRunStartsANewSegmentAndReplayPrefersTheLatestRun() {
+        GameSession first;
+        try (MatchJournal journal = new MatchJournal(JournalOptions.defaults(dir))) {
+            first = play(journal, "old1", "old2", SessionOptions.defaults(), Move.ROCK, Move.PAPER);
+            awaitWritten(journal, 6);
+        }
+        try (MatchJournal journal = new MatchJournal(JournalOptions.defaults(dir))) {
+            assertEquals(2, JournalReader.segments(dir).size());
+            assertEquals("old2", journal.reader().replay(first.id()).winner());
+        }
+        assertNull(new JournalReader(dir).replay(-1));
+    }
+
+    @Test
+    void recordsRoundTripThroughTheirSlot() {
+        ByteBuffer buf = ByteBuffer.allocate(2 * JournalRecord.SIZE);
+        JournalRecord start = new JournalRecord(JournalRecord.Type.START, 42, 1_700_000_000_000L, 0, null, null,
+                Variant.RPS15, 7, null, 0, 0, "alice", "a-very-long-bot-name");
+        start.writeTo(buf, JournalRecord.SIZE);
+
+        JournalRecord read = JournalRecord.readFrom(buf, JournalRecord.SIZE);
+        assertEquals(start.session(), read.session());
+        assertEquals(Variant.RPS15, read.variant());
+        assertEquals(7, read.bestOf());
+        assertEquals("alice", read.p1());
+        assertEquals("a-very-long-bot-", read.p2());
+        assertNull(JournalRecord.readFrom(buf, 0));
+    }
+
+    @Test
+    void invalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MatchJournal(new JournalOptions(dir, 0, 1, 1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> new MatchJournal(new JournalOptions(dir, 4, 0, 1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> new MatchJournal(new JournalOptions(dir, 4, 1, 0, 1)));
+    }
+
+    /** Plays a whole session on embedded channels; {@code moves} are p1/p2 pairs. */
+    private static GameSession play(MatchJournal journal, String n1, String n2, SessionOptions options, Move... moves) {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        Player p1 = new Player(n1, c1);
+        Player p2 = new Player(n2, c2);
+        GameSession s = new GameSession(p1, p2, journal, options);
+        s.start();
+        for (int i = 0; i < moves.length; i += 2) {
+            s.submitMove(p1, moves[i]);
+            s.submitMove(p2, moves[i + 1]);
+        }
+        c1.finishAndReleaseAll();
+        c2.finishAndReleaseAll();
+        return s;
+    }
+
+    private static void awaitWritten(MatchJournal journal, long records) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (journal.written() < records) {
+            assertTrue(System.nanoTime() < deadline, "journal wrote " + journal.written() + " of " + records);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static int visible(JournalReader reader) {
+        int[] n = {0};
+        reader.forEach(r -> n[0]++);
+        return n[0];
+    }
+}
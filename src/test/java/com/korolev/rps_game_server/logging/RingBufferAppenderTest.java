@@ -0,0 +1,151 @@
+package com.korolev.rps_game_server.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("test");
+    private final Collecting sink = new Collecting();
+    private final RingBufferAppender ring = new RingBufferAppender();
+
+    @BeforeEach
+    void setUp() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        sink.setContext(context);
+        sink.start();
+        ring.setContext(context);
+        ring.setName("ring");
+        ring.setIdleMicros(100);
+        logger.setAdditive(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ring.stop();
+        LogContext.current().clear();
+    }
+
+    @Test
+    void eventsCarryTheLogContextOfTheCallingThread() throws Exception {
+        ring.addAppender(sink);
+        ring.start();
+        logger.addAppender(ring);
+
+        LogContext lc = LogContext.current();
+        lc.enter(7, "alice");
+        long outer = lc.enterSession(42);
+        logger.info("in_session");
+        lc.exitSession(outer);
+        logger.info("in_channel");
+        lc.clear();
+        logger.info("outside");
+
+        sink.await(3);
+        assertEquals("7", sink.events.get(0).getMDCPropertyMap().get("ch"));
+        assertEquals("alice", sink.events.get(0).getMDCPropertyMap().get("nick"));
+        assertEquals("42", sink.events.get(0).getMDCPropertyMap().get("sess"));
+        assertNull(sink.events.get(1).getMDCPropertyMap().get("sess"));
+        assertEquals("7", sink.events.get(1).getMDCPropertyMap().get("ch"));
+        assertTrue(sink.events.get(2).getMDCPropertyMap().isEmpty());
+        assertTrue(sink.threads.stream().allMatch(t -> t.startsWith("rps-log-writer-")));
+    }
+
+    @Test
+    void fullRingDropsWithoutBlockingAndReportsTheCount() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Collecting blocking = new Collecting() {
+            @Override
+            protected void append(ILoggingEvent e) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.append(e);
+            }
+        };
+        blocking.setContext(context);
+        blocking.start();
+        ring.setBufferSize(4);
+        ring.addAppender(blocking);
+        ring.start();
+        logger.addAppender(ring);
+
+        long droppedBefore = RingBufferAppender.droppedTotal();
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            logger.info("e{}", i);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        long dropped = RingBufferAppender.droppedTotal() - droppedBefore;
+        assertTrue(dropped >= 100 - 5, "dropped " + dropped);
+
+        release.countDown();
+        blocking.await((int) (100 - dropped) + 1);
+        ILoggingEvent report = blocking.events.get(blocking.events.size() - 1);
+        assertEquals(Level.WARN, report.getLevel());
+        assertEquals("log_events_dropped appender=ring count=" + dropped, report.getFormattedMessage());
+    }
+
+    @Test
+    void startsOnlyWithAnAttachedAppender() {
+        ring.start();
+        assertFalse(ring.isStarted());
+    }
+
+    @Test
+    void samplingKeepsOneIdInN() {
+        LogContext.sampleEvery(4);
+        try {
+            assertTrue(LogContext.sampled(8));
+            assertFalse(LogContext.sampled(9));
+            LogContext lc = LogContext.current();
+            lc.enter(4, "bob");
+            assertTrue(lc.sampled());
+            long outer = lc.enterSession(5);
+            assertFalse(lc.sampled());
+            lc.exitSession(outer);
+            assertTrue(lc.sampled());
+        } finally {
+            LogContext.sampleEvery(16);
+        }
+    }
+
+    private static class Collecting extends AppenderBase<ILoggingEvent> {
+        final List<ILoggingEvent> events = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void append(ILoggingEvent e) {
+            events.add(e);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        void await(int n) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < n && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(n, events.size());
+        }
+    }
+}
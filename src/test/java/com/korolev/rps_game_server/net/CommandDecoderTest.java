@@ -0,0 +1,136 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.protocol.Command;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandDecoderTest {
+
+    @Test
+    void framesLinesAcrossReads() {
+        EmbeddedChannel ch = newChannel(PlayerState.IN_GAME);
+
+        ch.writeInbound(ascii("ro"));
+        assertNull(ch.readInbound());
+
+        ch.writeInbound(ascii("ck\r\nS\npap"));
+        assertSame(Command.MoveCmd.of(Move.ROCK), ch.readInbound());
+        assertSame(Command.MoveCmd.of(Move.SCISSORS), ch.readInbound());
+        assertNull(ch.readInbound());
+
+        ch.writeInbound(ascii("er\r\n"));
+        assertSame(Command.MoveCmd.of(Move.PAPER), ch.readInbound());
+    }
+
+    @Test
+    void partialLineIsCompactedOutOfTheReadBuffer() {
+        EmbeddedChannel ch = newChannel(PlayerState.WAIT_NICK);
+        CommandDecoder decoder = ch.pipeline().get(CommandDecoder.class);
+        ByteBuf read = PooledByteBufAllocator.DEFAULT.directBuffer(2048);
+        read.writeBytes("rock\r\nplay".getBytes(StandardCharsets.US_ASCII));
+        List<Object> out = new ArrayList<>(2);
+
+        decoder.decode(ch.pipeline().context(decoder), read, out);
+        decoder.decode(ch.pipeline().context(decoder), read, out);
+        assertEquals(1, out.size());
+        assertEquals(4, read.capacity());
+        assertEquals(4, read.readableBytes());
+
+        read.writeBytes("er1\r\n".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(ch.pipeline().context(decoder), read, out);
+        assertEquals("player1", ((Command.Nick) out.get(1)).nickname());
+        read.release();
+    }
+
+    @Test
+    void expectingNickFollowsPlayerState() {
+        EmbeddedChannel ch = newChannel(PlayerState.WAIT_NICK);
+
+        ch.writeInbound(ascii("rock\r\n"));
+        Command c = ch.readInbound();
+        assertInstanceOf(Command.Nick.class, c);
+        assertEquals("rock", ((Command.Nick) c).nickname());
+
+        ch.attr(Attrs.PLAYER_CTX).get().setState(PlayerState.WAIT_MATCH);
+        ch.writeInbound(ascii("rock\r\n"));
+        assertSame(Command.MoveCmd.of(Move.ROCK), ch.readInbound());
+    }
+
+    @Test
+    void tooLongLineIsDiscardedAndReported() {
+        EmbeddedChannel ch = newChannel(PlayerState.IN_GAME);
+        String longLine = "x".repeat(CommandDecoder.MAX_LINE_LENGTH + 10);
+
+        ch.writeInbound(ascii(longLine.substring(0, 200)));
+        assertThrows(TooLongFrameException.class,
+                () -> ch.writeInbound(ascii(longLine.substring(200) + "\r\nrock\r\n")));
+
+        ch.writeInbound(Unpooled.EMPTY_BUFFER);
+        assertSame(Command.MoveCmd.of(Move.ROCK), ch.readInbound());
+    }
+
+    @Test
+    void steadyStateMoveDecodingDoesNotAllocate() {
+        ThreadMXBean mx = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        EmbeddedChannel ch = newChannel(PlayerState.IN_GAME);
+        CommandDecoder decoder = ch.pipeline().get(CommandDecoder.class);
+        ByteBuf line = Unpooled.directBuffer().writeBytes("rock\r\n".getBytes(StandardCharsets.US_ASCII));
+        List<Object> out = new ArrayList<>(4);
+
+        int ops = 200_000;
+        for (int i = 0; i < ops; i++) { // warm-up
+            decodeOnce(decoder, ch, line, out);
+        }
+
+        long tid = Thread.currentThread().threadId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            decodeOnce(decoder, ch, line, out);
+        }
+        long allocated = mx.getThreadAllocatedBytes(tid) - before;
+        line.release();
+
+        // a single allocation per op would be >= 16 bytes * ops
+        assertTrue(allocated < ops, "allocated " + allocated + " bytes for " + ops + " moves");
+    }
+
+    private static void decodeOnce(CommandDecoder decoder, EmbeddedChannel ch, ByteBuf line, List<Object> out) {
+        line.readerIndex(0);
+        decoder.decode(ch.pipeline().context(decoder), line, out);
+        if (out.get(0) != Command.MoveCmd.of(Move.ROCK)) {
+            throw new AssertionError(out.get(0));
+        }
+        out.clear();
+    }
+
+    private static EmbeddedChannel newChannel(PlayerState state) {
+        EmbeddedChannel ch = new EmbeddedChannel(new CommandDecoder());
+        PlayerContext pc = new PlayerContext();
+        pc.setState(state);
+        ch.attr(Attrs.PLAYER_CTX).set(pc);
+        return ch;
+    }
+
+    private static ByteBuf ascii(String s) {
+        return Unpooled.copiedBuffer(s, StandardCharsets.US_ASCII);
+    }
+}
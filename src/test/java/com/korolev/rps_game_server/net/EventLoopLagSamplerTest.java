@@ -0,0 +1,133 @@
+package com.korolev.rps_game_server.net;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultSelectStrategyFactory;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import java.nio.channels.spi.SelectorProvider;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventLoopLagSamplerTest {
+
+    private EventLoopLagSampler sampler;
+    private NioEventLoopGroup group;
+    private EventExecutor loop0;
+
+    @BeforeEach
+    void setUp() {
+        // long interval: the test drives sample() itself
+        sampler = new EventLoopLagSampler(10_000, 60);
+        group = new NioEventLoopGroup(2, (Executor) null, DefaultEventExecutorChooserFactory.INSTANCE,
+                SelectorProvider.provider(), DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject(), sampler.taskQueueFactory());
+        Iterator<EventExecutor> it = group.iterator();
+        loop0 = it.next();
+        sampler.start(group);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sampler.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void blockedLoopShowsStallThenLagAndLongTask() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        sampler.bindTo(registry);
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        loop0.execute(() -> {
+            blocked.countDown();
+            sleep(200);
+        });
+        blocked.await();
+        sampler.sample();
+
+        EventLoopLagSampler.LoopLag during = sampler.snapshot().get(0);
+        assertTrue(during.stalledNanos() > 0);
+
+        awaitProbes();
+        List<EventLoopLagSampler.LoopLag> after = sampler.snapshot();
+        EventLoopLagSampler.LoopLag l0 = after.get(0);
+        EventLoopLagSampler.LoopLag l1 = after.get(1);
+        assertEquals(1, l0.samples());
+        assertEquals(0, l0.stalledNanos());
+        assertTrue(l0.lagMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(100), l0.toString());
+        assertTrue(l0.taskMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(150), l0.toString());
+        assertTrue(l1.lagMaxNanos() < TimeUnit.MILLISECONDS.toNanos(100), l1.toString());
+        assertEquals(1, registry.get("rps.eventloop.lag").tag("loop", "0").timer().count());
+        assertEquals(1, registry.get("rps.eventloop.pending.tasks").tag("loop", "1").summary().count());
+    }
+
+    @Test
+    void healthGoesDownWhileALoopIsStalledWithoutBlockingTheCaller() throws Exception {
+        NettyServer server = mock(NettyServer.class);
+        when(server.getBossGroup()).thenReturn(group);
+        when(server.getWorkerGroup()).thenReturn(group);
+        NettyEventLoopHealthIndicator health = new NettyEventLoopHealthIndicator(server, sampler, 100, 50);
+
+        sampler.sample();
+        awaitProbes();
+        assertEquals(Status.UP, health.health().getStatus());
+
+        CountDownLatch release = new CountDownLatch(1);
+        loop0.execute(() -> await(release));
+        sampler.sample();
+        sleep(100);
+
+        // loop0 stays blocked until release, so a health check that waited on it would never come back
+        Health h = assertTimeoutPreemptively(Duration.ofSeconds(5), health::health);
+        assertEquals(Status.DOWN, h.getStatus());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> first = ((List<Map<String, Object>>) h.getDetails().get("worker.loops")).get(0);
+        assertTrue(first.containsKey("stalledMs"));
+
+        release.countDown();
+        awaitProbes();
+        assertEquals(Status.UP, health.health().getStatus());
+    }
+
+    private void awaitProbes() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sampler.snapshot().stream().anyMatch(l -> l.stalledNanos() > 0 || l.samples() == 0)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.korolev.rps_game_server.net;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client side of {@link IdleConnectionMemoryTest}, run as a separate JVM so its sockets do not count
+ * towards the server's memory.
+ * <p>
+ * Arguments: {@code port connections}. Opens the connections (spreading source addresses over
+ * 127.0.0.0/8 so each address stays within the ephemeral port range), prints {@code connected}, then
+ * follows commands read from stdin: {@code partial} sends an unfinished nickname line on every
+ * connection and prints {@code sent}; end of input closes everything.
+ */
+final class IdleClients {
+
+    private static final int PER_SOURCE_ADDRESS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        int count = Integer.parseInt(args[1]);
+        InetSocketAddress server = new InetSocketAddress("127.0.0.1", port);
+
+        List<SocketChannel> sockets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int source = i / PER_SOURCE_ADDRESS;
+            SocketChannel s = SocketChannel.open();
+            s.bind(new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, (byte) (1 + source)}), 0));
+            s.connect(server);
+            sockets.add(s);
+        }
+        System.out.println("connected");
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+        String cmd;
+        while ((cmd = in.readLine()) != null) {
+            if (cmd.equals("partial")) {
+                ByteBuffer partial = ByteBuffer.wrap("player_w".getBytes(StandardCharsets.US_ASCII));
+                for (SocketChannel s : sockets) {
+                    s.write(partial.duplicate());
+                }
+                System.out.println("sent");
+            }
+        }
+        for (SocketChannel s : sockets) {
+            s.close();
+        }
+    }
+
+    private IdleClients() {
+    }
+}
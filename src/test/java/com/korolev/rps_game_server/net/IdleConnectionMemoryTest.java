@@ -0,0 +1,154 @@
+package com.korolev.rps_game_server.net;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.korolev.rps_game_server.domain.Lobby;
+import com.korolev.rps_game_server.domain.Matchmaker;
+import com.korolev.rps_game_server.domain.MovePredictor;
+import com.korolev.rps_game_server.domain.PlayerState;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Memory cost of an idle connection, for sizing nodes towards a million parked sockets.
+ * <p>
+ * Opens {@code rps.memtest.connections} (default 100000) loopback connections from a separate client JVM
+ * ({@link IdleClients}) to a server with the production pipeline, and reports the server's retained heap
+ * and pooled direct memory per connection: first parked in WAIT_NICK, then with an unfinished line
+ * buffered on every connection. Needs an open-file limit above the connection count.
+ * <p>
+ * Not part of the default build; run with {@code mvn test -Pmemory-test}.
+ */
+@Tag("memory")
+class IdleConnectionMemoryTest {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    @Test
+    void bytesPerIdleConnection() throws Exception {
+        int connections = Integer.getInteger("rps.memtest.connections", 100_000);
+        PooledByteBufAllocator alloc = (PooledByteBufAllocator) ByteBufAllocator.DEFAULT;
+        // per-connection log lines would be measured as retained heap (and reset storms at the end are noise)
+        Logger appLog = (Logger) LoggerFactory.getLogger("com.korolev.rps_game_server");
+        Level appLevel = appLog.getLevel();
+        appLog.setLevel(Level.ERROR);
+
+        IdleTracker idle = new IdleTracker(180, 180, 120, 100);
+        ServerMetrics metrics = new ServerMetrics();
+        Matchmaker matchmaker = new Matchmaker();
+        Lobby lobby = new Lobby();
+        SessionResumes resumes = new SessionResumes(idle, 0);
+        SessionLauncher launcher = new SessionLauncher(idle, new LoopAffinity(true), lobby, resumes);
+        Spectators spectators = new Spectators(idle);
+        BotFill bots = new BotFill(matchmaker, idle, launcher, new MovePredictor(), metrics, spectators, lobby, resumes, 0, "bot");
+        RpsChannelInitializer initializer =
+                new RpsChannelInitializer(matchmaker, idle, new FlushCounter(), launcher, bots, metrics, spectators, lobby, resumes, 0);
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        try (NettyServer server = new NettyServer(port)) {
+            server.start(initializer);
+
+            long heap0 = settledHeap();
+            long direct0 = alloc.pinnedDirectMemory();
+
+            Process clients = new ProcessBuilder(
+                    ProcessHandle.current().info().command().orElse("java"),
+                    "-Xmx1g", "-cp", System.getProperty("java.class.path"),
+                    IdleClients.class.getName(), Integer.toString(port), Integer.toString(connections))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(clients.getInputStream(), StandardCharsets.US_ASCII));
+                 Writer in = new OutputStreamWriter(clients.getOutputStream(), StandardCharsets.US_ASCII)) {
+
+                assertEquals("connected", out.readLine());
+                await(() -> metrics.connections(PlayerState.WAIT_NICK) == connections);
+
+                long heap1 = settledHeap();
+                long direct1 = alloc.pinnedDirectMemory();
+
+                in.write("partial\n");
+                in.flush();
+                assertEquals("sent", out.readLine());
+                awaitStable(alloc);
+
+                long heap2 = settledHeap();
+                long direct2 = alloc.pinnedDirectMemory();
+
+                System.out.printf("%n%,d idle connections (%s)%n", connections, server.isEpoll() ? "epoll" : "nio");
+                System.out.printf("%-24s %12s %12s%n", "", "heap B/conn", "direct B/conn");
+                System.out.printf("%-24s %12.0f %12.0f%n", "parked in WAIT_NICK",
+                        perConnection(heap1 - heap0, connections), perConnection(direct1 - direct0, connections));
+                System.out.printf("%-24s %12.0f %12.0f%n", "holding a partial line",
+                        perConnection(heap2 - heap0, connections), perConnection(direct2 - direct0, connections));
+                System.out.printf("projected for 1M idle: heap %,d MiB, direct %,d MiB%n%n",
+                        Math.round(perConnection(heap2 - heap0, connections) * 1_000_000 / (1 << 20)),
+                        Math.round(perConnection(direct2 - direct0, connections) * 1_000_000 / (1 << 20)));
+
+                // the unfinished line is compacted out of the (2 KiB+) socket read buffer
+                assertTrue(perConnection(direct2 - direct0, connections) < 128,
+                        "direct bytes per connection with a partial line: " + perConnection(direct2 - direct0, connections));
+            } finally {
+                clients.destroy();
+                clients.waitFor(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            idle.close();
+            matchmaker.close();
+            appLog.setLevel(appLevel);
+        }
+    }
+
+    private static double perConnection(long bytes, int connections) {
+        return (double) bytes / connections;
+    }
+
+    private static long settledHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(50);
+        }
+    }
+
+    /** Wait until pinned direct memory stops changing, i.e. the server has read the partial lines. */
+    private static void awaitStable(PooledByteBufAllocator alloc) throws InterruptedException {
+        long last = -1;
+        int stable = 0;
+        while (stable < 5) {
+            Thread.sleep(200);
+            long now = alloc.pinnedDirectMemory();
+            stable = now == last ? stable + 1 : 0;
+            last = now;
+        }
+    }
+}
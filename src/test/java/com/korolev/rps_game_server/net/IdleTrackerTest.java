@@ -0,0 +1,101 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdleTrackerTest {
+
+    private static final long SEC = TimeUnit.SECONDS.toNanos(1);
+
+    private final ManualTimer timer = new ManualTimer();
+    private final IdleTracker tracker = new IdleTracker(timer, () -> timer.now, 10, 30, 5);
+
+    @Test
+    void firesAfterStateTimeoutWithoutActivity() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        Events events = new Events();
+        ch.pipeline().addLast(events);
+        PlayerContext pc = new PlayerContext();
+
+        tracker.start(ch, pc);
+        timer.advance(9 * SEC, ch);
+        assertEquals(0, events.count);
+
+        timer.advance(1 * SEC, ch);
+        assertEquals(1, events.count);
+
+        // keeps reporting every full period while idle
+        timer.advance(10 * SEC, ch);
+        assertEquals(2, events.count);
+    }
+
+    @Test
+    void activityPushesDeadlineWithoutRearmingEagerly() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        Events events = new Events();
+        ch.pipeline().addLast(events);
+        PlayerContext pc = new PlayerContext();
+
+        tracker.start(ch, pc);
+        timer.advance(8 * SEC, ch);
+        tracker.touch(ch, pc);
+        assertEquals(1, timer.scheduled(), "touch must not schedule a new check");
+
+        timer.advance(2 * SEC, ch); // original check fires early, re-arms for the remainder
+        assertEquals(0, events.count);
+
+        timer.advance(8 * SEC, ch);
+        assertEquals(1, events.count);
+    }
+
+    @Test
+    void shorterStateTimeoutRearmsImmediately() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        Events events = new Events();
+        ch.pipeline().addLast(events);
+        PlayerContext pc = new PlayerContext();
+        pc.setState(PlayerState.WAIT_MATCH);
+
+        tracker.start(ch, pc); // 30s
+        pc.setState(PlayerState.IN_GAME);
+        tracker.touch(ch, pc); // 5s
+
+        timer.advance(5 * SEC, ch);
+        assertEquals(1, events.count);
+    }
+
+    @Test
+    void stopCancelsCheck() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        Events events = new Events();
+        ch.pipeline().addLast(events);
+        PlayerContext pc = new PlayerContext();
+
+        tracker.start(ch, pc);
+        tracker.stop(pc);
+        assertNull(pc.getIdleCheck());
+
+        timer.advance(60 * SEC, ch);
+        assertEquals(0, events.count);
+    }
+
+    private static final class Events extends ChannelInboundHandlerAdapter {
+        int count;
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            if (evt instanceof IdleStateEvent) {
+                count++;
+            }
+        }
+    }
+}
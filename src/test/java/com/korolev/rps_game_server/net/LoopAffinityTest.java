@@ -0,0 +1,97 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Player;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoopAffinityTest {
+
+    @Test
+    void secondPlayerIsMigratedOntoOwnerLoop() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(2);
+        try {
+            EventLoop a = group.next();
+            EventLoop b = group.next();
+            assertNotSame(a, b);
+
+            Channel c1 = register(a);
+            Channel c2 = register(b);
+            GameSession session = new GameSession(new Player("a", c1), new Player("b", c2));
+
+            LoopAffinity affinity = new LoopAffinity(true);
+            CompletableFuture<Boolean> started = new CompletableFuture<>();
+            b.execute(() -> affinity.colocate(session, () -> started.complete(a.inEventLoop())));
+
+            assertTrue(started.get(5, TimeUnit.SECONDS), "session must start on the owner loop");
+            assertSame(a, c2.eventLoop());
+            assertTrue(c2.isRegistered());
+            assertEquals(1, affinity.migrated());
+            assertEquals(0, affinity.crossLoop());
+
+            c1.close().sync();
+            c2.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    void migrationDisabledLeavesSessionCrossLoop() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(2);
+        try {
+            EventLoop a = group.next();
+            EventLoop b = group.next();
+
+            Channel c1 = register(a);
+            Channel c2 = register(b);
+            GameSession session = new GameSession(new Player("a", c1), new Player("b", c2));
+
+            LoopAffinity affinity = new LoopAffinity(false);
+            CompletableFuture<Void> started = new CompletableFuture<>();
+            b.execute(() -> affinity.colocate(session, () -> started.complete(null)));
+
+            started.get(5, TimeUnit.SECONDS);
+            assertSame(b, c2.eventLoop());
+            assertEquals(1, affinity.crossLoop());
+            assertEquals(0, affinity.migrated());
+
+            c1.close().sync();
+            c2.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    void loopsWithoutCommonGroupAreNotMigrated() {
+        EmbeddedChannel c1 = new EmbeddedChannel();
+        EmbeddedChannel c2 = new EmbeddedChannel();
+        GameSession session = new GameSession(new Player("a", c1), new Player("b", c2));
+
+        LoopAffinity affinity = new LoopAffinity(true);
+        boolean[] started = new boolean[1];
+        affinity.colocate(session, () -> started[0] = true);
+
+        assertTrue(started[0]);
+        assertEquals(1, affinity.crossLoop());
+        assertTrue(c2.isRegistered());
+    }
+
+    private static Channel register(EventLoop loop) throws InterruptedException {
+        NioSocketChannel ch = new NioSocketChannel();
+        loop.register(ch).sync();
+        return ch;
+    }
+}
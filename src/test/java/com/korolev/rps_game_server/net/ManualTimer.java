@@ -0,0 +1,82 @@
+package com.korolev.rps_game_server.net;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** Deterministic stand-in for HashedWheelTimer driven by a fake nanosecond clock. */
+final class ManualTimer implements Timer {
+    long now;
+    private final List<Task> tasks = new ArrayList<>();
+
+    void advance(long nanos, EmbeddedChannel ch) {
+        long target = now + nanos;
+        while (true) {
+            Task next = null;
+            for (Task t : tasks) {
+                if (!t.cancelled && t.deadline <= target && (next == null || t.deadline < next.deadline)) {
+                    next = t;
+                }
+            }
+            if (next == null) break;
+            tasks.remove(next);
+            now = next.deadline;
+            next.expired = true;
+            try {
+                next.task.run(next);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            ch.runPendingTasks();
+        }
+        now = target;
+        tasks.removeIf(t -> t.cancelled);
+    }
+
+    int scheduled() {
+        return (int) tasks.stream().filter(t -> !t.cancelled).count();
+    }
+
+    @Override
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        Task t = new Task(this, task, now + unit.toNanos(delay));
+        tasks.add(t);
+        return t;
+    }
+
+    @Override
+    public Set<Timeout> stop() {
+        return Set.of();
+    }
+
+    private static final class Task implements Timeout {
+        private final Timer timer;
+        private final TimerTask task;
+        private final long deadline;
+        boolean cancelled;
+        boolean expired;
+
+        Task(Timer timer, TimerTask task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override public Timer timer() { return timer; }
+        @Override public TimerTask task() { return task; }
+        @Override public boolean isExpired() { return expired; }
+        @Override public boolean isCancelled() { return cancelled; }
+
+        @Override
+        public boolean cancel() {
+            if (expired || cancelled) return false;
+            cancelled = true;
+            return true;
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package com.korolev.rps_game_server.net;
 
 import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.GroupSession;
+import com.korolev.rps_game_server.domain.Lobby;
 import com.korolev.rps_game_server.domain.Matchmaker;
+import com.korolev.rps_game_server.domain.MovePredictor;
 import com.korolev.rps_game_server.domain.Player;
 import com.korolev.rps_game_server.domain.PlayerContext;
 import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.SessionListener;
+import com.korolev.rps_game_server.domain.SessionOptions;
 import com.korolev.rps_game_server.protocol.Messages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.timeout.IdleStateEvent;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
@@ -24,6 +36,16 @@ import static org.mockito.Mockito.when;
 
 class RpsServerHandlerTest {
 
+    private static final IdleTracker IDLE = new IdleTracker(180, 180, 120, 100);
+    private static final ServerMetrics METRICS = new ServerMetrics();
+    private static final Spectators SPECTATORS = new Spectators(IDLE);
+    private static final SessionResumes RESUMES = new SessionResumes(IDLE, 0);
+
+    // per test: nicknames stay taken while a test's channels are open
+    private final Lobby lobby = new Lobby();
+    private final SessionLauncher launcher = new SessionLauncher(IDLE, new LoopAffinity(true), lobby, RESUMES);
+    private final BotFill noBots = new BotFill(null, IDLE, launcher, new MovePredictor(), METRICS, SPECTATORS, lobby, RESUMES, 0, "bot");
+
     @Test
     void welcomeOnConnect() {
         Matchmaker mm = mock(Matchmaker.class);
@@ -42,7 +64,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("/help");
+        writeLine(ch, "/help");
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -50,13 +72,33 @@ class RpsServerHandlerTest {
         assertTrue(ch.isActive());
     }
 
+    @Test
+    void pipelinedCommandsAreFlushedOncePerRead() {
+        Matchmaker mm = mock(Matchmaker.class);
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel ch = new EmbeddedChannel(counter, new CommandDecoder(), new RpsServerHandler(mm, IDLE, launcher, noBots, METRICS, SPECTATORS, lobby, RESUMES));
+        ch.pipeline().fireChannelActive();
+        flush(ch);
+        takeAllOutbound(ch); // welcome
+        long writes = counter.writes();
+        long flushes = counter.flushes();
+
+        ch.writeInbound(Unpooled.copiedBuffer("/help\r\n \r\n/help\r\n", StandardCharsets.UTF_8));
+        flush(ch);
+
+        assertEquals(3, counter.writes() - writes);
+        assertEquals(1, counter.flushes() - flushes);
+        String out = takeAllOutbound(ch);
+        assertTrue(out.contains(Messages.EMPTY_INPUT.trim()));
+    }
+
     @Test
     void quitClosesChannel() {
         Matchmaker mm = mock(Matchmaker.class);
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("/quit");
+        writeLine(ch, "/quit");
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -71,7 +113,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("   ");
+        writeLine(ch, "   ");
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -84,7 +126,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("ab"); // too short
+        writeLine(ch, "ab"); // too short
         flush(ch);
 
         String out = takeAllOutbound(ch).toLowerCase();
@@ -100,7 +142,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("kirill");
+        writeLine(ch, "kirill");
         flush(ch);
 
         verify(mm, times(1)).tryMatch(any(Player.class));
@@ -122,11 +164,11 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("player1"); // -> WAIT_MATCH
+        writeLine(ch, "player1"); // -> WAIT_MATCH
         flush(ch);
         takeAllOutbound(ch); // hi waiting
 
-        ch.writeInbound("rock");
+        writeLine(ch, "rock");
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -141,11 +183,11 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("player1"); // -> WAIT_MATCH
+        writeLine(ch, "player1"); // -> WAIT_MATCH
         flush(ch);
         takeAllOutbound(ch);
 
-        ch.writeInbound("abracadabra"); // expectingNick=false -> Invalid(BAD_MOVE)
+        writeLine(ch, "abracadabra"); // expectingNick=false -> Invalid(BAD_MOVE)
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -173,11 +215,11 @@ class RpsServerHandlerTest {
         takeAllOutbound(ch1); // welcome
         takeAllOutbound(ch2); // welcome
 
-        ch1.writeInbound("player1");
+        writeLine(ch1, "player1");
         flush(ch1, ch2);
         takeAllOutbound(ch1); // hi waiting
 
-        ch2.writeInbound("player2");
+        writeLine(ch2, "player2");
         flush(ch1, ch2);
         flush(ch1, ch2);
 
@@ -194,6 +236,347 @@ class RpsServerHandlerTest {
         assertTrue(out2.contains("Opponent found"));
     }
 
+    @Test
+    void takenNicknameIsRefusedUntilItsHolderLeaves() {
+        Matchmaker mm = mock(Matchmaker.class);
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+
+        writeLine(ch1, "alice");
+        writeLine(ch2, "Alice");
+        flush(ch1, ch2);
+
+        assertEquals(Messages.NICK_TAKEN, takeAllOutbound(ch2));
+        assertEquals(PlayerState.WAIT_NICK, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+
+        ch1.close();
+        writeLine(ch2, "Alice");
+        flush(ch2);
+        assertTrue(takeAllOutbound(ch2).startsWith("Hi, Alice!"));
+        assertEquals(PlayerState.WAIT_MATCH, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+    }
+
+    @Test
+    void challengeAndAcceptStartASessionBetweenTheTwo() {
+        Matchmaker mm = lobbyMatchmaker();
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        writeLine(ch1, "alice");
+        writeLine(ch2, "bob");
+        flush(ch1, ch2);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+
+        writeLine(ch1, "/challenge BOB");
+        flush(ch1, ch2);
+        assertTrue(takeAllOutbound(ch1).startsWith("Challenge sent to bob."));
+        assertTrue(takeAllOutbound(ch2).startsWith("Challenge from alice."));
+        verify(mm).removeIfWaiting(ch1.attr(Attrs.PLAYER).get());
+
+        writeLine(ch2, "/accept");
+        flush(ch1, ch2);
+        flush(ch1, ch2);
+
+        GameSession session = ch1.attr(Attrs.SESSION).get();
+        assertNotNull(session);
+        assertSame(session, ch2.attr(Attrs.SESSION).get());
+        assertEquals("alice", session.p1().nickname());
+        assertEquals(PlayerState.IN_GAME, ch1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertTrue(takeAllOutbound(ch2).contains("Opponent found: alice"));
+
+        // nothing left to accept or leave
+        writeLine(ch2, "/accept");
+        flush(ch2);
+        assertEquals(Messages.LOBBY_NOT_NOW, takeAllOutbound(ch2));
+    }
+
+    @Test
+    void secondPlayerInARoomIsPairedWithTheFirst() {
+        Matchmaker mm = lobbyMatchmaker();
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        writeLine(ch1, "alice");
+        writeLine(ch2, "bob");
+        flush(ch1, ch2);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+
+        writeLine(ch1, "/join den");
+        flush(ch1);
+        assertTrue(takeAllOutbound(ch1).startsWith("Waiting in room den"));
+
+        writeLine(ch1, "/leave");
+        flush(ch1);
+        assertEquals(Messages.QUEUED, takeAllOutbound(ch1));
+        writeLine(ch1, "/leave");
+        flush(ch1);
+        assertEquals(Messages.NOT_AWAY, takeAllOutbound(ch1));
+
+        writeLine(ch1, "/join den");
+        writeLine(ch2, "/join DEN");
+        flush(ch1, ch2);
+        flush(ch1, ch2);
+
+        assertEquals(PlayerState.IN_GAME, ch1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertEquals(PlayerState.IN_GAME, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+        assertSame(ch1.attr(Attrs.SESSION).get(), ch2.attr(Attrs.SESSION).get());
+        assertEquals(0, lobby.waitingRooms());
+    }
+
+    @Test
+    void thirdPlayerAtTheTableStartsTheFreeForAll() {
+        Matchmaker mm = lobbyMatchmaker();
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        EmbeddedChannel ch3 = newChannel(mm);
+        writeLine(ch1, "alice");
+        writeLine(ch2, "bob");
+        writeLine(ch3, "carol");
+        flush(ch1, ch2, ch3);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+        takeAllOutbound(ch3);
+
+        writeLine(ch1, "/ffa");
+        flush(ch1);
+        assertEquals("Waiting for a free-for-all: 1 of 3" + Messages.FFA_WAITING_SUFFIX, takeAllOutbound(ch1));
+        writeLine(ch1, "/leave");
+        flush(ch1);
+        assertEquals(Messages.QUEUED, takeAllOutbound(ch1));
+
+        writeLine(ch1, "/ffa");
+        writeLine(ch2, "/ffa");
+        writeLine(ch3, "/FFA");
+        flush(ch1, ch2, ch3);
+        flush(ch1, ch2, ch3);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+        assertTrue(takeAllOutbound(ch3).contains("alice, bob, carol"));
+
+        GroupSession group = ch1.attr(Attrs.GROUP).get();
+        assertNotNull(group);
+        assertSame(group, ch3.attr(Attrs.GROUP).get());
+        assertEquals(PlayerState.IN_GAME, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+
+        writeLine(ch1, "lizard");
+        flush(ch1);
+        assertEquals("Invalid move. Type ROCK/PAPER/SCISSORS.\r\n", takeAllOutbound(ch1));
+
+        writeLine(ch1, "rock");
+        writeLine(ch2, "paper");
+        ch3.close();
+        flush(ch1, ch2, ch3);
+        flush(ch1, ch2, ch3);
+        assertTrue(takeAllOutbound(ch2).contains("bob" + Messages.FFA_WINNER));
+        assertFalse(ch1.isActive());
+        assertFalse(ch2.isActive());
+        assertEquals(0, lobby.waitingFreeForAll());
+    }
+
+    @Test
+    void droppedPlayerResumesItsSeatWithTheToken() {
+        SessionResumes resumes = new SessionResumes(IDLE, 30);
+        SessionLauncher withResumes = new SessionLauncher(IDLE, new LoopAffinity(true), lobby, resumes);
+        Matchmaker mm = lobbyMatchmaker();
+        EmbeddedChannel ch1 = newChannel(mm, withResumes, resumes);
+        EmbeddedChannel ch2 = newChannel(mm, withResumes, resumes);
+        writeLine(ch1, "alice");
+        writeLine(ch2, "bob");
+        writeLine(ch1, "/challenge bob");
+        flush(ch1, ch2);
+        writeLine(ch2, "/accept");
+        flush(ch1, ch2);
+        flush(ch1, ch2);
+
+        String out1 = takeAllOutbound(ch1);
+        int at = out1.indexOf(Messages.RESUME_TOKEN_PREFIX);
+        assertTrue(at >= 0, out1);
+        String token = out1.substring(at + Messages.RESUME_TOKEN_PREFIX.length(), at + Messages.RESUME_TOKEN_PREFIX.length() + 16);
+        assertEquals(2, resumes.liveTokens());
+        takeAllOutbound(ch2);
+
+        ch1.close();
+        flush(ch1, ch2);
+        assertEquals(Messages.OPPONENT_AWAY, takeAllOutbound(ch2));
+        assertEquals(1, resumes.parked());
+
+        EmbeddedChannel ch3 = newChannel(mm, withResumes, resumes);
+        takeAllOutbound(ch3);
+        writeLine(ch3, "/resume 0000000000000001");
+        flush(ch3);
+        assertEquals(Messages.RESUME_UNKNOWN, takeAllOutbound(ch3));
+
+        writeLine(ch3, "/resume " + token);
+        flush(ch1, ch2, ch3);
+        flush(ch1, ch2, ch3);
+        assertTrue(takeAllOutbound(ch3).startsWith("Welcome back! Playing bob"));
+        assertEquals(Messages.OPPONENT_BACK, takeAllOutbound(ch2));
+        assertEquals(PlayerState.IN_GAME, ch3.attr(Attrs.PLAYER_CTX).get().getState());
+        assertSame(ch3, ch2.attr(Attrs.SESSION).get().p1().channel());
+        assertNotNull(lobby.find("alice"));
+        assertEquals(1, resumes.resumed());
+        assertEquals(2, resumes.liveTokens());
+
+        playDecisiveRound(ch3, ch2);
+        flush(ch1, ch2, ch3);
+        assertTrue(takeAllOutbound(ch3).contains("You WIN"));
+    }
+
+    @Test
+    void refusedResumeIsNotParkedAndLeavesTheTokenUsable() {
+        SessionResumes resumes = new SessionResumes(IDLE, 30);
+        SessionLauncher withResumes = new SessionLauncher(IDLE, new LoopAffinity(true), lobby, resumes);
+        Matchmaker mm = lobbyMatchmaker();
+        EmbeddedChannel ch1 = newChannel(mm, withResumes, resumes);
+        EmbeddedChannel ch2 = newChannel(mm, withResumes, resumes);
+        writeLine(ch1, "alice");
+        writeLine(ch2, "bob");
+        writeLine(ch1, "/challenge bob");
+        flush(ch1, ch2);
+        writeLine(ch2, "/accept");
+        flush(ch1, ch2);
+        flush(ch1, ch2);
+        String out1 = takeAllOutbound(ch1);
+        int at = out1.indexOf(Messages.RESUME_TOKEN_PREFIX) + Messages.RESUME_TOKEN_PREFIX.length();
+        String token = out1.substring(at, at + 16);
+        takeAllOutbound(ch2);
+
+        // alice is still connected: her nickname is held, so the resume goes nowhere
+        EmbeddedChannel ch3 = newChannel(mm, withResumes, resumes);
+        takeAllOutbound(ch3);
+        writeLine(ch3, "/resume " + token);
+        flush(ch3);
+        assertEquals(Messages.NICK_TAKEN, takeAllOutbound(ch3));
+        assertEquals(PlayerState.WAIT_NICK, ch3.attr(Attrs.PLAYER_CTX).get().getState());
+
+        // with the nickname free the owner loop still refuses while the seat's connection is open
+        lobby.unregister(ch1.attr(Attrs.PLAYER).get());
+        writeLine(ch3, "/resume " + token);
+        flush(ch1, ch2, ch3);
+        flush(ch1, ch2, ch3);
+        assertEquals(Messages.RESUME_FAILED, takeAllOutbound(ch3));
+        assertFalse(ch3.isActive());
+        assertNull(ch3.attr(Attrs.SESSION).get());
+        assertEquals(0, resumes.parked());
+        assertEquals(0, resumes.resumed());
+        assertEquals("", takeAllOutbound(ch2));
+
+        // the token was released for a later drop
+        assertNotNull(resumes.claim(Long.parseUnsignedLong(token, 16)));
+        assertNull(resumes.claim(Long.parseUnsignedLong(token, 16)));
+    }
+
+    @Test
+    void keepAliveSessionEndsInGameOverThenRematchOrRequeue() {
+        Matchmaker mm = mock(Matchmaker.class);
+        AtomicReference<Player> waiting = new AtomicReference<>();
+        when(mm.tryMatch(any(Player.class))).thenAnswer(inv -> {
+            Player me = inv.getArgument(0);
+            Player prev = waiting.getAndSet(null);
+            if (prev == null) {
+                waiting.set(me);
+                return null;
+            }
+            return new GameSession(prev, me, SessionListener.NONE, new SessionOptions(true, 1));
+        });
+
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        writeLine(ch1, "player1");
+        writeLine(ch2, "player2");
+        flush(ch1, ch2);
+        GameSession first = ch1.attr(Attrs.SESSION).get();
+        playDecisiveRound(ch1, ch2);
+
+        assertEquals(PlayerState.GAME_OVER, ch1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertEquals(PlayerState.GAME_OVER, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+        assertTrue(ch1.isActive() && ch2.isActive());
+        assertTrue(takeAllOutbound(ch1).contains(Messages.GAME_OVER_NEXT));
+        takeAllOutbound(ch2);
+
+        writeLine(ch1, "/rematch");
+        flush(ch1, ch2);
+        assertTrue(takeAllOutbound(ch1).contains(Messages.REMATCH_WAITING));
+        assertTrue(takeAllOutbound(ch2).contains(Messages.REMATCH_OFFERED));
+        writeLine(ch2, "/rematch");
+        flush(ch1, ch2);
+
+        GameSession rematch = ch1.attr(Attrs.SESSION).get();
+        assertEquals(first.id(), rematch.rematchOf());
+        assertEquals(rematch, ch2.attr(Attrs.SESSION).get());
+        assertEquals(first.owner(), rematch.owner());
+        assertEquals(PlayerState.IN_GAME, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+        assertTrue(takeAllOutbound(ch2).contains("Opponent found: player1"));
+        takeAllOutbound(ch1);
+
+        playDecisiveRound(ch1, ch2);
+        takeAllOutbound(ch1);
+        takeAllOutbound(ch2);
+        writeLine(ch2, "/rematch");
+        flush(ch1, ch2);
+        writeLine(ch1, "/queue");
+        flush(ch1, ch2);
+
+        assertEquals(PlayerState.WAIT_MATCH, ch1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertTrue(takeAllOutbound(ch1).contains(Messages.QUEUED));
+        assertTrue(takeAllOutbound(ch2).contains(Messages.REMATCH_UNAVAILABLE));
+        verify(mm, times(3)).tryMatch(any(Player.class));
+
+        writeLine(ch2, "/rematch");
+        flush(ch1, ch2);
+        assertTrue(takeAllOutbound(ch2).contains(Messages.REMATCH_UNAVAILABLE));
+        assertEquals(PlayerState.GAME_OVER, ch2.attr(Attrs.PLAYER_CTX).get().getState());
+    }
+
+    @Test
+    void bestOfChoiceIsAppliedWhenTheMatchIsLaunched() {
+        Matchmaker mm = mock(Matchmaker.class);
+        AtomicReference<Player> waiting = new AtomicReference<>();
+        when(mm.tryMatch(any(Player.class))).thenAnswer(inv -> {
+            Player me = inv.getArgument(0);
+            Player prev = waiting.getAndSet(null);
+            if (prev == null) {
+                waiting.set(me);
+                return null;
+            }
+            return new GameSession(prev, me);
+        });
+
+        EmbeddedChannel ch1 = newChannel(mm);
+        EmbeddedChannel ch2 = newChannel(mm);
+        writeLine(ch1, "/bestof 3");
+        assertTrue(takeAllOutbound(ch1).contains("Next match: best of 3"));
+        writeLine(ch1, "player1");
+        writeLine(ch2, "player2");
+        flush(ch1, ch2);
+
+        assertEquals(3, ch1.attr(Attrs.SESSION).get().bestOf());
+        assertTrue(takeAllOutbound(ch2).contains("Best of 3: first to 2 round wins."));
+        takeAllOutbound(ch1);
+
+        // one decided round no longer ends the match
+        playDecisiveRound(ch1, ch2);
+        assertEquals(PlayerState.IN_GAME, ch1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertTrue(takeAllOutbound(ch2).contains("Score 0-1 (best of 3). Next round"));
+    }
+
+    @Test
+    void rematchAndQueueOutsideGameOverAreRejected() {
+        Matchmaker mm = mock(Matchmaker.class);
+        EmbeddedChannel ch = newChannel(mm);
+        writeLine(ch, "player1");
+        takeAllOutbound(ch);
+
+        writeLine(ch, "/rematch");
+        writeLine(ch, "/queue");
+        flush(ch);
+
+        assertEquals(Messages.NOT_AFTER_GAME + Messages.NOT_AFTER_GAME, takeAllOutbound(ch));
+        assertEquals(PlayerState.WAIT_MATCH, ch.attr(Attrs.PLAYER_CTX).get().getState());
+    }
+
     @Test
     void inGameButNoSessionSendsNoActiveSessionAndMovesToWaitMatch() {
         Matchmaker mm = mock(Matchmaker.class);
@@ -205,7 +588,7 @@ class RpsServerHandlerTest {
         pc.setState(PlayerState.IN_GAME);
         ch.attr(Attrs.SESSION).set(null);
 
-        ch.writeInbound("rock"); // MoveCmd
+        writeLine(ch, "rock"); // MoveCmd
         flush(ch);
 
         String out = takeAllOutbound(ch);
@@ -236,7 +619,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("kirill"); // -> WAIT_MATCH
+        writeLine(ch, "kirill"); // -> WAIT_MATCH
         flush(ch);
         takeAllOutbound(ch); // hi waiting
 
@@ -272,17 +655,17 @@ class RpsServerHandlerTest {
         takeAllOutbound(ch1);
         takeAllOutbound(ch2);
 
-        ch1.writeInbound("player1");
+        writeLine(ch1, "player1");
         flush(ch1, ch2);
         takeAllOutbound(ch1);
 
-        ch2.writeInbound("player2");
+        writeLine(ch2, "player2");
         flush(ch1, ch2);
         flush(ch1, ch2);
         takeAllOutbound(ch1);
         takeAllOutbound(ch2);
 
-        ch1.writeInbound("rock");
+        writeLine(ch1, "rock");
         flush(ch1, ch2);
         flush(ch1, ch2);
         takeAllOutbound(ch1);
@@ -304,7 +687,7 @@ class RpsServerHandlerTest {
         EmbeddedChannel ch = newChannel(mm);
         takeAllOutbound(ch); // welcome
 
-        ch.writeInbound("kirill");
+        writeLine(ch, "kirill");
         flush(ch);
         takeAllOutbound(ch);
 
@@ -314,15 +697,136 @@ class RpsServerHandlerTest {
         verify(mm, atLeastOnce()).removeIfWaiting(any(Player.class));
     }
 
+    @Test
+    void waitingPastFillDeadlinePlaysAgainstBot() {
+        Matchmaker mm = new Matchmaker(1);
+        ManualTimer wheel = new ManualTimer();
+        IdleTracker idle = new IdleTracker(wheel, () -> wheel.now, 180, 180, 120);
+        BotFill bots = new BotFill(mm, idle, launcher, new MovePredictor(), METRICS, SPECTATORS, lobby, RESUMES, 30, "RPS-Bot");
+        EmbeddedChannel ch = new EmbeddedChannel(new CommandDecoder(), new RpsServerHandler(mm, idle, launcher, bots, METRICS, SPECTATORS, lobby, RESUMES));
+        flush(ch);
+        takeAllOutbound(ch); // welcome
+
+        writeLine(ch, "kirill");
+        flush(ch);
+        assertEquals(1, mm.waitingCount());
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(30), ch);
+        flush(ch);
+        assertEquals(0, mm.waitingCount());
+        assertEquals(1, bots.games());
+        assertTrue(takeAllOutbound(ch).contains("Opponent found: RPS-Bot"));
+
+        // the bot has already moved; keep playing until someone wins
+        String out = "";
+        for (int i = 0; i < 50 && !out.contains("Game over"); i++) {
+            writeLine(ch, "ROCK");
+            flush(ch);
+            out = takeAllOutbound(ch);
+        }
+        assertTrue(out.contains("Game over"), out);
+        flush(ch);
+        assertFalse(ch.isActive());
+    }
+
+    @Test
+    void leavingTheQueueCancelsTheBotDeadlineAndRequeueingRestartsIt() {
+        Matchmaker mm = new Matchmaker(1);
+        ManualTimer wheel = new ManualTimer();
+        IdleTracker idle = new IdleTracker(wheel, () -> wheel.now, 180, 180, 120);
+        BotFill bots = new BotFill(mm, idle, launcher, new MovePredictor(), METRICS, SPECTATORS, lobby, RESUMES, 30, "RPS-Bot");
+        EmbeddedChannel ch = new EmbeddedChannel(new CommandDecoder(), new RpsServerHandler(mm, idle, launcher, bots, METRICS, SPECTATORS, lobby, RESUMES));
+        flush(ch);
+        writeLine(ch, "kirill");
+        writeLine(ch, "/join den");
+        flush(ch);
+        assertEquals(1, wheel.scheduled(), "only the idle check is armed while in a room");
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(20), ch);
+        writeLine(ch, "/leave");
+        flush(ch);
+        // the first entry's deadline (at 30 s) is gone; the new one is due at 50 s
+        wheel.advance(TimeUnit.SECONDS.toNanos(29), ch);
+        flush(ch);
+        assertEquals(0, bots.games());
+        assertEquals(1, mm.waitingCount());
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(1), ch);
+        flush(ch);
+        assertEquals(1, bots.games());
+        PlayerContext pc = ch.attr(Attrs.PLAYER_CTX).get();
+        assertEquals(PlayerState.IN_GAME, pc.getState());
+        assertNull(pc.getBotFill(), "the deadline is not left armed once matched");
+        takeAllOutbound(ch);
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void connectionsByStateAndCommandsAreMetered() {
+        Matchmaker mm = mock(Matchmaker.class);
+        when(mm.tryMatch(any(Player.class))).thenReturn(null);
+        ServerMetrics metrics = new ServerMetrics();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+
+        EmbeddedChannel ch = new EmbeddedChannel(new CommandDecoder(), new RpsServerHandler(mm, IDLE, launcher, noBots, metrics, SPECTATORS, lobby, RESUMES));
+        flush(ch);
+        assertEquals(1, metrics.connections(PlayerState.WAIT_NICK));
+
+        writeLine(ch, "/help");
+        writeLine(ch, "kirill");
+        writeLine(ch, "rock");
+        flush(ch);
+        assertEquals(0, metrics.connections(PlayerState.WAIT_NICK));
+        assertEquals(1, metrics.connections(PlayerState.WAIT_MATCH));
+        assertEquals(1, registry.get("rps.connections").tag("state", "wait_match").gauge().value());
+        assertEquals(1, registry.get("rps.commands").tag("type", "help").timer().count());
+        assertEquals(1, registry.get("rps.commands").tag("type", "nick").timer().count());
+        assertEquals(1, registry.get("rps.commands").tag("type", "move").timer().count());
+
+        ch.close();
+        flush(ch);
+        for (PlayerState state : PlayerState.values()) {
+            assertEquals(0, metrics.connections(state), state.name());
+        }
+    }
+
     // -------- helpers --------
 
-    private static EmbeddedChannel newChannel(Matchmaker mm) {
-        EmbeddedChannel ch = new EmbeddedChannel(new RpsServerHandler(mm));
+    /** Never pairs from the open queue, so only lobby commands make sessions. */
+    private static Matchmaker lobbyMatchmaker() {
+        Matchmaker mm = mock(Matchmaker.class);
+        when(mm.removeIfWaiting(any(Player.class))).thenReturn(true);
+        when(mm.newSession(any(Player.class), any(Player.class)))
+                .thenAnswer(inv -> new GameSession(inv.getArgument(0), inv.getArgument(1)));
+        when(mm.freeForAllSize()).thenReturn(3);
+        when(mm.newGroup(any(Player[].class)))
+                .thenAnswer(inv -> new GroupSession(inv.getArgument(0), SessionOptions.defaults()));
+        return mm;
+    }
+
+    /** ch1 plays ROCK, ch2 SCISSORS. */
+    private static void playDecisiveRound(EmbeddedChannel ch1, EmbeddedChannel ch2) {
+        writeLine(ch1, "rock");
+        writeLine(ch2, "scissors");
+        flush(ch1, ch2);
+    }
+
+    private EmbeddedChannel newChannel(Matchmaker mm) {
+        return newChannel(mm, launcher, RESUMES);
+    }
+
+    private EmbeddedChannel newChannel(Matchmaker mm, SessionLauncher launcher, SessionResumes resumes) {
+        EmbeddedChannel ch = new EmbeddedChannel(new CommandDecoder(), new RpsServerHandler(mm, IDLE, launcher, noBots, METRICS, SPECTATORS, lobby, resumes));
         ch.pipeline().fireChannelActive();
         flush(ch);
         return ch;
     }
 
+    private static void writeLine(EmbeddedChannel ch, String line) {
+        ch.writeInbound(Unpooled.copiedBuffer(line + "\r\n", StandardCharsets.UTF_8));
+    }
+
     private static void flush(EmbeddedChannel... chs) {
         for (int i = 0; i < 20; i++) {
             for (EmbeddedChannel ch : chs) {
@@ -339,7 +843,12 @@ class RpsServerHandlerTest {
             if (o == null) {
                 break;
             }
-            sb.append(o);
+            if (o instanceof ByteBuf buf) {
+                sb.append(buf.toString(StandardCharsets.UTF_8));
+                buf.release();
+            } else {
+                sb.append(o);
+            }
         }
         return sb.toString();
     }
@@ -0,0 +1,174 @@
+package com.korolev.rps_game_server.net;
+
+import com.korolev.rps_game_server.domain.GameSession;
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Player;
+import com.korolev.rps_game_server.domain.PlayerContext;
+import com.korolev.rps_game_server.domain.PlayerState;
+import com.korolev.rps_game_server.domain.SessionOptions;
+import com.korolev.rps_game_server.protocol.Messages;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpectatorsTest {
+
+    private final IdleTracker idle = new IdleTracker(180, 180, 120, 100);
+    private final Spectators spectators = new Spectators(idle);
+
+    private final EmbeddedChannel c1 = new EmbeddedChannel();
+    private final EmbeddedChannel c2 = new EmbeddedChannel();
+    private final Player p1 = new Player("alice", c1);
+    private final Player p2 = new Player("bob", c2);
+    private final GameSession session = new GameSession(p1, p2, spectators, new SessionOptions(false, 3));
+
+    @AfterEach
+    void tearDown() {
+        c1.finishAndReleaseAll();
+        c2.finishAndReleaseAll();
+        idle.close();
+    }
+
+    @Test
+    void everySpectatorGetsTheSameEncodedRound() {
+        session.start();
+        EmbeddedChannel s1 = spectator();
+        EmbeddedChannel s2 = spectator();
+        spectators.watch(s1, session.id());
+        spectators.watch(s2, session.id());
+        flush(c1, c2, s1, s2);
+
+        assertEquals("Watching match " + session.id() + ": alice vs bob, best of 3. Score 0-0."
+                + " Type /unwatch to stop.\r\n", take(s1));
+        take(s2);
+        assertEquals(PlayerState.WATCHING, s1.attr(Attrs.PLAYER_CTX).get().getState());
+        assertEquals(2, spectators.watching());
+
+        session.submitMove(p1, Move.ROCK);
+        session.submitMove(p2, Move.SCISSORS);
+        flush(c1, c2, s1, s2);
+
+        ByteBuf a = s1.readOutbound();
+        ByteBuf b = s2.readOutbound();
+        // retained duplicates of one buffer, not copies
+        assertSame(a.unwrap(), b.unwrap());
+        assertEquals("alice ROCK vs bob SCISSORS. Score 1-0\r\n", a.toString(StandardCharsets.UTF_8));
+        a.release();
+        b.release();
+        assertEquals(2, spectators.delivered());
+    }
+
+    @Test
+    void sessionEndReturnsSpectatorsToWaitNick() {
+        session.start();
+        EmbeddedChannel s = spectator();
+        spectators.watch(s, session.id());
+        flush(c1, c2, s);
+        take(s);
+
+        session.onDisconnect(p2);
+        flush(c1, c2, s);
+
+        assertEquals("Match over (disconnect). Final score 0-0" + Messages.WATCH_OVER_SUFFIX, take(s));
+        assertEquals(PlayerState.WAIT_NICK, s.attr(Attrs.PLAYER_CTX).get().getState());
+        assertEquals(0, spectators.watching());
+
+        // finished sessions cannot be watched any more
+        spectators.watch(s, session.id());
+        s.flush();
+        assertEquals(Messages.WATCH_UNKNOWN, take(s));
+    }
+
+    @Test
+    void slowSpectatorIsDroppedWithoutStallingTheOthers() {
+        session.start();
+        EmbeddedChannel slow = spectator();
+        EmbeddedChannel fast = spectator();
+        spectators.watch(slow, session.id());
+        spectators.watch(fast, session.id());
+        flush(c1, c2, slow, fast);
+        take(slow);
+        take(fast);
+
+        // an unflushed backlog over the high water mark makes the channel unwritable
+        slow.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        slow.write(Unpooled.wrappedBuffer(new byte[64]));
+        assertFalse(slow.isWritable());
+
+        session.submitMove(p1, Move.PAPER);
+        session.submitMove(p2, Move.PAPER);
+        flush(c1, c2, slow, fast);
+
+        assertFalse(slow.isActive());
+        assertEquals(1, spectators.dropped());
+        assertEquals(1, spectators.watching());
+        assertEquals("alice PAPER vs bob PAPER. Score 0-0\r\n", take(fast));
+        assertTrue(c1.isActive() && c2.isActive());
+    }
+
+    @Test
+    void listAndUnwatch() {
+        session.start();
+        EmbeddedChannel s = spectator();
+        assertEquals("Live matches: " + session.id() + " alice vs bob" + Messages.WATCH_LIST_SUFFIX,
+                drain(spectators.list(s)));
+
+        spectators.watch(s, session.id());
+        flush(c1, s);
+        assertTrue(spectators.unwatch(s));
+        assertFalse(spectators.unwatch(s));
+
+        session.submitMove(p1, Move.PAPER);
+        session.submitMove(p2, Move.ROCK);
+        flush(c1, c2, s);
+        List<String> lines = new ArrayList<>();
+        for (Object o; (o = s.readOutbound()) != null; ) {
+            lines.add(drain((ByteBuf) o));
+        }
+        assertEquals(1, lines.size()); // just the header
+    }
+
+    // -------- helpers --------
+
+    private static EmbeddedChannel spectator() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        ch.attr(Attrs.PLAYER_CTX).set(new PlayerContext());
+        return ch;
+    }
+
+    private static void flush(EmbeddedChannel... chs) {
+        // two passes: owner tasks queue work on the spectator loops
+        for (int pass = 0; pass < 2; pass++) {
+            for (EmbeddedChannel ch : chs) {
+                ch.runPendingTasks();
+            }
+        }
+    }
+
+    private static String take(EmbeddedChannel ch) {
+        StringBuilder sb = new StringBuilder();
+        for (Object o; (o = ch.readOutbound()) != null; ) {
+            sb.append(drain((ByteBuf) o));
+        }
+        return sb.toString();
+    }
+
+    private static String drain(ByteBuf buf) {
+        try {
+            return buf.toString(StandardCharsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.korolev.rps_game_server.protocol;
 
 import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class CommandParserTest {
 
@@ -29,9 +35,115 @@ class CommandParserTest {
         assertEquals(Move.ROCK, ((Command.MoveCmd) c).move());
     }
 
+    @Test
+    void parsesEveryVariantsMoves() {
+        for (Move m : Move.values()) {
+            assertSame(Command.MoveCmd.of(m), CommandParser.parse(m.name().toLowerCase(Locale.ROOT), false));
+            assertSame(Command.MoveCmd.of(m), CommandParser.parse(" " + m.name() + " ", false));
+        }
+        assertSame(Command.BAD_MOVE, CommandParser.parse("l", false));
+        assertSame(Command.BAD_MOVE, CommandParser.parse("spocks", false));
+    }
+
+    @Test
+    void parsesVariant() {
+        assertSame(Command.UseVariant.of(Variant.RPSLS), CommandParser.parse("/variant rpsls", false));
+        assertEquals(Variant.RPS15, ((Command.UseVariant) CommandParser.parse("/Variant RPS15", true)).variant());
+        assertSame(Command.BAD_VARIANT, CommandParser.parse("/variant rps9", false));
+        assertSame(Command.BAD_VARIANT, CommandParser.parse("/variant", false));
+    }
+
     @Test
     void parsesHelpAndQuit() {
         assertInstanceOf(Command.Help.class, CommandParser.parse("/help", true));
         assertInstanceOf(Command.Quit.class, CommandParser.parse("/quit", false));
+        assertInstanceOf(Command.Rematch.class, CommandParser.parse("/rematch", false));
+        assertInstanceOf(Command.Queue.class, CommandParser.parse("/Queue", false));
+    }
+
+    @Test
+    void parsesBestOf() {
+        assertSame(Command.BestOf.of(5), CommandParser.parse("/bestof 5", false));
+        assertEquals(5, ((Command.BestOf) Command.BestOf.of(5)).bestOf());
+        assertSame(Command.BAD_BEST_OF, CommandParser.parse("/bestof 2", true));
+        assertSame(Command.BAD_BEST_OF, CommandParser.parse("/bestof three", false));
+    }
+
+    @Test
+    void parsesWatch() {
+        assertSame(Command.WATCH_LIST, CommandParser.parse("/watch", true));
+        assertEquals(new Command.Watch(42), CommandParser.parse("/watch 42", true));
+        assertSame(Command.BAD_WATCH, CommandParser.parse("/watch 0", true));
+        assertSame(Command.UNWATCH, CommandParser.parse("/unwatch", false));
+    }
+
+    @Test
+    void parsesLobbyCommands() {
+        assertEquals(new Command.Challenge("bob_7"), CommandParser.parse("/challenge bob_7", false));
+        assertSame(Command.BAD_CHALLENGE, CommandParser.parse("/challenge b", false));
+        assertSame(Command.ACCEPT, CommandParser.parse("/ACCEPT", false));
+        assertEquals(new Command.Join("lobby-1"), CommandParser.parse("/join lobby-1", true));
+        assertSame(Command.BAD_ROOM, CommandParser.parse("/join", false));
+        assertSame(Command.LEAVE, CommandParser.parse("/leave", false));
+    }
+
+    @Test
+    void parsesResumeTokens() {
+        assertEquals(new Command.Resume(0x0123456789abcdefL), CommandParser.parse("/resume 0123456789abcdef", true));
+        assertEquals(new Command.Resume(-1L), CommandParser.parse("/RESUME FFFFFFFFFFFFFFFF", true));
+        assertSame(Command.BAD_RESUME, CommandParser.parse("/resume 0000000000000000", true));
+        assertSame(Command.BAD_RESUME, CommandParser.parse("/resume abc", true));
+        assertSame(Command.BAD_RESUME, CommandParser.parse("/resume", true));
+    }
+
+    @Test
+    void byteParserMatchesStringParser() {
+        String[] lines = {
+                "kirill", "k!", "rock", "/help", "/quit",
+                "", "   ", "\t", " /HELP ", "/Quit", "/help me", "/hel",
+                "/rematch", "/REMATCH ", "/rematc", "/queue", "/Queue", "/queues",
+                "/bestof 3", "/BestOf 15", " /bestof 07 ", "/bestof", "/bestof 4", "/bestof 17", "/bestof  3",
+                "/bestof 3x", "/bestof 103", "/bestofs", "/bestof\t3",
+                "/watch", "/WATCH 42", "/watch 0", "/watch  42", "/watch 4x", "/watch 1234567890123456789",
+                "/watchers", "/unwatch", "/UnWatch ", "/unwatch 1",
+                "/challenge bob", "/Challenge Bob_1", "/challenge", "/challenge ", "/challenge  bob", "/challengebob",
+                "/challenge b", "/challenge bob!", "/accept", "/Accept ", "/accepts", "/join room", "/JOIN Room-2",
+                "/join", "/joinery", "/join ab", "/join a b", "/leave", "/LEAVE", "/leaves",
+                "/resume 0123456789abcdef", "/Resume 0123456789ABCDEF", "/resume 0000000000000000", "/resume",
+                "/resume ", "/resumes", "/resume 0123456789abcde", "/resume 0123456789abcdef0", "/resume 0123456789abcdeg",
+                "/resume  0123456789abcdef", "/resume ffffffffffffffff",
+                "/ffa", "/FFA", " /ffa ", "/ffas", "/ff",
+                "/variant rpsls", "/VARIANT Classic", " /variant rps7 ", "/variant RPS15", "/variant", "/variant ",
+                "/variant  rpsls", "/variant rps", "/variant rps155", "/variants", "/variantrpsls", "/variant rps\u00177",
+                "ab", "abc", "abcdefghijklmnop", "abcdefghijklmnopq", "a_b-c", "ni ck", "ник",
+                "r", "R", "p", "P", "s", "S", " Rock ", "PAPER", "ScIsSoRs", "x", "rocks", "abracadabra", "\u0001rock\u0001",
+                "lizard", "Spock", "SPOCK", "lightning", "gun", "fire", "air", "l", "k", "spoc", "gunn", "dragons",
+                "w@ter", "w`ter", "Wolf", "tree", "HUMAN", "sponge", "snake", "devil", "water"
+        };
+        for (String line : lines) {
+            for (boolean expectingNick : new boolean[]{true, false}) {
+                Command expected = CommandParser.parse(line, expectingNick);
+                Command actual = parseBytes(line, expectingNick);
+                assertEquals(expected, actual, () -> "line='" + line + "' expectingNick=" + expectingNick);
+            }
+        }
+    }
+
+    @Test
+    void statelessCommandsAreShared() {
+        assertSame(Command.HELP, parseBytes("/help", false));
+        assertSame(Command.EMPTY, parseBytes(" ", true));
+        assertSame(Command.MoveCmd.of(Move.PAPER), parseBytes("paper", false));
+        assertSame(Command.BAD_MOVE, parseBytes("nope", false));
+    }
+
+    private static Command parseBytes(String line, boolean expectingNick) {
+        // pad both sides so the parser must honour the [from, to) window
+        ByteBuf buf = Unpooled.copiedBuffer("##" + line + "##", StandardCharsets.UTF_8);
+        try {
+            return CommandParser.parse(buf, 2, buf.writerIndex() - 2, expectingNick);
+        } finally {
+            buf.release();
+        }
     }
 }
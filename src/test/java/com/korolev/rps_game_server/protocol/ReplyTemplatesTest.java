@@ -0,0 +1,74 @@
+package com.korolev.rps_game_server.protocol;
+
+import com.korolev.rps_game_server.domain.Move;
+import com.korolev.rps_game_server.domain.Variant;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplyTemplatesTest {
+
+    private final ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+
+    @Test
+    void templatesMatchPlainStrings() {
+        assertEquals("Hi, kirill! Waiting for an opponent...\r\n",
+                take(ReplyTemplates.hiWaiting(alloc, "kirill")));
+        assertEquals("Opponent found: p2\r\nType ROCK/PAPER/SCISSORS:\r\n",
+                take(ReplyTemplates.opponentFound(alloc, "p2", 1, Variant.CLASSIC)));
+        assertEquals("Draw! You chose ROCK, opponent chose ROCK. Try again: ROCK/PAPER/SCISSORS\r\n",
+                take(ReplyTemplates.draw(alloc, Variant.CLASSIC, Move.ROCK)));
+        assertEquals("You chose PAPER, opponent chose ROCK. You WIN!\r\nGame over. Bye!\r\n",
+                take(ReplyTemplates.result(alloc, Move.PAPER, Move.ROCK)));
+        assertEquals("You chose ROCK, opponent chose PAPER. You LOSE!\r\n" + Messages.GAME_OVER_NEXT,
+                take(ReplyTemplates.resultNext(alloc, Move.ROCK, Move.PAPER)));
+    }
+
+    @Test
+    void seriesTemplatesMatchPlainStrings() {
+        assertEquals("Opponent found: p2\r\nBest of 5: first to 3 round wins.\r\nType ROCK/PAPER/SCISSORS:\r\n",
+                take(ReplyTemplates.opponentFound(alloc, "p2", 5, Variant.CLASSIC)));
+        assertEquals("Round 2: You chose SCISSORS, opponent chose PAPER. You WIN. Score 1-1 (best of 3)."
+                        + " Next round: ROCK/PAPER/SCISSORS\r\n",
+                take(ReplyTemplates.round(alloc, Variant.CLASSIC, 2, Move.SCISSORS, Move.PAPER, 1, 1, 3, false, false)));
+        assertEquals("Round 11: You chose ROCK, opponent chose PAPER. You LOSE. Score 5-6 (best of 11).\r\n"
+                        + "You LOSE the series!\r\nGame over. Bye!\r\n",
+                take(ReplyTemplates.round(alloc, Variant.CLASSIC, 11, Move.ROCK, Move.PAPER, 5, 6, 11, true, false)));
+        assertEquals("Round 3: You chose PAPER, opponent chose ROCK. You WIN. Score 2-1 (best of 3).\r\n"
+                        + "You WIN the series!\r\n" + Messages.GAME_OVER_NEXT,
+                take(ReplyTemplates.round(alloc, Variant.CLASSIC, 3, Move.PAPER, Move.ROCK, 2, 1, 3, true, true)));
+        assertEquals("Next match: best of 7, unless your opponent asks for another length.\r\n", take(ReplyTemplates.bestOf(alloc, 7)));
+    }
+
+    @Test
+    void variantTemplatesListTheVariantsMoves() {
+        assertEquals(Messages.CLASSIC_MOVES, Variant.CLASSIC.prompt());
+        assertEquals(Messages.YOUR_TURN, take(ReplyTemplates.yourTurn(alloc, Variant.CLASSIC)));
+        assertEquals(Messages.BAD_MOVE, take(ReplyTemplates.badMove(alloc, Variant.CLASSIC)));
+        assertEquals("Draw! You chose SPOCK, opponent chose SPOCK. Try again: ROCK/PAPER/SCISSORS/LIZARD/SPOCK\r\n",
+                take(ReplyTemplates.draw(alloc, Variant.RPSLS, Move.SPOCK)));
+        assertEquals("Next match: rps7, unless your opponent asks for another variant.\r\n",
+                take(ReplyTemplates.variant(alloc, Variant.RPS7)));
+    }
+
+    @Test
+    void encodedReplyDoesNotConsumeSharedBuffer() {
+        for (int i = 0; i < 3; i++) {
+            ByteBuf dup = Reply.HELP.encoded();
+            assertEquals(Messages.HELP, take(dup));
+        }
+        assertTrue(Reply.WELCOME.encoded().isReadOnly());
+    }
+
+    private static String take(ByteBuf buf) {
+        try {
+            return buf.toString(StandardCharsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+}